@@ -0,0 +1,114 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.cdxserver;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.cdxserver.CDXQuery.SortType;
+import org.archive.cdxserver.auth.AuthToken;
+import org.archive.cdxserver.writer.CDXListWriter;
+import org.archive.wayback.benchmark.BenchmarkData;
+import org.archive.wayback.util.WrappedCloseableIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The parsing, filtering and collapsing pipeline of
+ * {@link CDXServer#writeCdxResponse}, run over every line of
+ * {@code sample.cdx}. Lives in this package because
+ * {@code writeCdxResponse} is protected.
+ * <p>The {@code query} parameter selects the processing chain:</p>
+ * <ul>
+ * <li>{@code all}: no filters, every line is written,</li>
+ * <li>{@code range}: {@code from} / {@code to} timestamp range,</li>
+ * <li>{@code filter}: two field regex filters,</li>
+ * <li>{@code collapse}: collapse on digest,</li>
+ * <li>{@code dupecount}: {@code showDupeCount},</li>
+ * <li>{@code closest}: closest-timestamp sort with a limit.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CDXServerBenchmark {
+
+	@Param({"all", "range", "filter", "collapse", "dupecount", "closest"})
+	public String query;
+
+	private CDXServer server;
+	private List<String> lines;
+	private AuthToken authToken;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = new CDXServer();
+		server.afterPropertiesSet();
+		lines = BenchmarkData.cdxLines();
+		authToken = new AuthToken();
+		authToken.setAllCdxFieldsAllow();
+	}
+
+	private CDXQuery createQuery() {
+		// writeCdxResponse() consumes limit and offset, so use a fresh one
+		CDXQuery q = new CDXQuery("example.com");
+		if (query.equals("range")) {
+			q.setFrom("2008");
+			q.setTo("2011");
+		} else if (query.equals("filter")) {
+			q.setFilter(new String[] {
+				"statuscode:200", "!mimetype:warc/revisit"
+			});
+		} else if (query.equals("collapse")) {
+			q.setCollapse(new String[] { "digest" });
+		} else if (query.equals("dupecount")) {
+			q.setShowDupeCount(true);
+		} else if (query.equals("closest")) {
+			q.setClosest("20100101000000");
+			q.setSort(SortType.closest);
+			q.setLimit(10);
+		}
+		return q;
+	}
+
+	/**
+	 * @return number of lines written
+	 */
+	@Benchmark
+	public int writeCdxResponse() {
+		CDXListWriter writer = new CDXListWriter();
+		server.writeCdxResponse(writer,
+				new WrappedCloseableIterator<String>(lines.iterator()),
+				Integer.MAX_VALUE, createQuery(), authToken, null);
+		return writer.getCDXLines().size();
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.archive.wayback.core.CaptureSearchResult;
+
+/**
+ * Access to the sample documents bundled with the benchmarks, so that every
+ * run works on exactly the same input.
+ * <ul>
+ * <li>{@code sample.cdx}: 1489 sorted CDX-11 lines for ten hosts,</li>
+ * <li>{@code article.html}: UTF-8 news article with inline CSS and JS,</li>
+ * <li>{@code legacy.html}: ISO-8859-1 table layout declared in a META tag,</li>
+ * <li>{@code script.html}: script heavy page with no charset declaration,</li>
+ * <li>{@code robots.txt}: robots.txt with several user-agent groups.</li>
+ * </ul>
+ */
+public class BenchmarkData {
+	/** names of the bundled HTML pages, usable as a JMH {@code @Param} */
+	public static final String ARTICLE_PAGE = "article.html";
+	public static final String LEGACY_PAGE = "legacy.html";
+	public static final String SCRIPT_PAGE = "script.html";
+
+	public static final String CDX_FILE = "sample.cdx";
+	public static final String ROBOTS_FILE = "robots.txt";
+
+	/** capture timestamp used for all sample pages */
+	public static final String CAPTURE_TIMESTAMP = "20140611093012";
+	/** replay prefix used for all rewritten URLs */
+	public static final String REPLAY_PREFIX = "http://localhost:8080/wayback/";
+
+	private static final Map<String, String> PAGE_URLS =
+		new HashMap<String, String>();
+	private static final Map<String, String> PAGE_CONTENT_TYPES =
+		new HashMap<String, String>();
+	static {
+		PAGE_URLS.put(ARTICLE_PAGE,
+				"http://news.example.net/2014/06/harbour-lights.html");
+		PAGE_URLS.put(LEGACY_PAGE, "http://www.beispiel.example/index.html");
+		PAGE_URLS.put(SCRIPT_PAGE,
+				"https://docs.example.io/guide/getting-started.html");
+		PAGE_CONTENT_TYPES.put(ARTICLE_PAGE, "text/html; charset=UTF-8");
+		PAGE_CONTENT_TYPES.put(LEGACY_PAGE, "text/html");
+		PAGE_CONTENT_TYPES.put(SCRIPT_PAGE, "text/html");
+	}
+
+	/**
+	 * @param name bundled resource name
+	 * @return raw bytes of the resource
+	 * @throws IOException if the resource is missing
+	 */
+	public static byte[] load(String name) throws IOException {
+		InputStream is = BenchmarkData.class.getResourceAsStream(name);
+		if (is == null) {
+			throw new IOException("No bundled resource " + name);
+		}
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			for (int r = -1; (r = is.read(buf)) != -1;) {
+				baos.write(buf, 0, r);
+			}
+			return baos.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * @return lines of {@code sample.cdx}, in file (sorted) order
+	 * @throws IOException if the resource is missing
+	 */
+	public static List<String> cdxLines() throws IOException {
+		String text = new String(load(CDX_FILE), "UTF-8");
+		List<String> lines = new ArrayList<String>();
+		int start = 0;
+		for (int nl; (nl = text.indexOf('\n', start)) != -1; start = nl + 1) {
+			if (nl > start) {
+				lines.add(text.substring(start, nl));
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * @param cdxLines lines as returned by {@link #cdxLines()}
+	 * @param field zero based, space separated field index
+	 * @return the given field of each line
+	 */
+	public static String[] cdxField(List<String> cdxLines, int field) {
+		String[] values = new String[cdxLines.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = cdxLines.get(i).split(" ")[field];
+		}
+		return values;
+	}
+
+	/**
+	 * @param page one of the bundled page names
+	 * @return capture of {@code page}, as found in an index
+	 */
+	public static CaptureSearchResult pageCapture(String page) {
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setOriginalUrl(PAGE_URLS.get(page));
+		result.setCaptureTimestamp(CAPTURE_TIMESTAMP);
+		result.setMimeType("text/html");
+		result.setHttpCode("200");
+		return result;
+	}
+
+	/**
+	 * @param page one of the bundled page names
+	 * @param payload the page bytes, as returned by {@link #load(String)}
+	 * @return a fresh, unread Resource for {@code page}
+	 */
+	public static MemoryResource pageResource(String page, byte[] payload) {
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("Content-Type", PAGE_CONTENT_TYPES.get(page));
+		headers.put("Content-Length", String.valueOf(payload.length));
+		headers.put("Date", "Wed, 11 Jun 2014 09:30:12 GMT");
+		headers.put("Server", "Apache");
+		return new MemoryResource(200, headers, payload);
+	}
+}
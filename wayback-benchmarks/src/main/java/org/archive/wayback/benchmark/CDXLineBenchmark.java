@@ -0,0 +1,82 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.cdx.CDXLine;
+import org.archive.format.cdx.StandardCDXLineFactory;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.resourceindex.cdx.CDXLineToSearchResultAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of all of {@code sample.cdx}, with the CDX server's
+ * {@link StandardCDXLineFactory} and with the
+ * {@link CDXLineToSearchResultAdapter} used by the local resource indexes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CDXLineBenchmark {
+
+	private List<String> lines;
+	private StandardCDXLineFactory lineFactory;
+	private CDXLineToSearchResultAdapter adapter;
+
+	@Setup
+	public void setUp() throws IOException {
+		lines = BenchmarkData.cdxLines();
+		lineFactory = new StandardCDXLineFactory("cdx11");
+		adapter = new CDXLineToSearchResultAdapter();
+	}
+
+	@Benchmark
+	public void standardCDXLine(Blackhole bh) {
+		for (String line : lines) {
+			CDXLine cdxLine = lineFactory.createStandardCDXLine(line,
+					StandardCDXLineFactory.cdx11);
+			bh.consume(cdxLine.getTimestamp());
+		}
+	}
+
+	@Benchmark
+	public void captureSearchResult(Blackhole bh) {
+		for (String line : lines) {
+			CaptureSearchResult result = adapter.adapt(line);
+			bh.consume(result.getCaptureTimestamp());
+		}
+	}
+}
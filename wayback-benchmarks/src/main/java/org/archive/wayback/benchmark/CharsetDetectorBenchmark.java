@@ -0,0 +1,83 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.charset.CharsetDetector;
+import org.archive.wayback.replay.charset.RotatingCharsetDetector;
+import org.archive.wayback.replay.charset.StandardCharsetDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Character set detection for the bundled pages. The pages cover the three
+ * usual outcomes: a charset in the Content-Type header
+ * ({@code article.html}), one in a META tag ({@code legacy.html}), and none
+ * at all, which falls through to universalchardet ({@code script.html}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharsetDetectorBenchmark {
+
+	@Param({BenchmarkData.ARTICLE_PAGE, BenchmarkData.LEGACY_PAGE,
+		BenchmarkData.SCRIPT_PAGE})
+	public String page;
+
+	@Param({"standard", "rotating"})
+	public String detector;
+
+	private byte[] payload;
+	private CharsetDetector charsetDetector;
+	private WaybackRequest wbRequest;
+
+	@Setup
+	public void setUp() throws IOException {
+		payload = BenchmarkData.load(page);
+		if (detector.equals("rotating")) {
+			charsetDetector = new RotatingCharsetDetector();
+		} else {
+			charsetDetector = new StandardCharsetDetector();
+		}
+		wbRequest = new WaybackRequest();
+	}
+
+	@Benchmark
+	public String getCharset() throws IOException {
+		Resource resource = BenchmarkData.pageResource(page, payload);
+		return charsetDetector.getCharset(resource, resource, wbRequest);
+	}
+}
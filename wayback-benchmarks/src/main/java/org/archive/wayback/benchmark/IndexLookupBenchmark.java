@@ -0,0 +1,244 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.format.gzip.zipnum.ZipNumCluster;
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.util.flatfile.FlatFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Prefix lookups against a sorted flat CDX file ({@link FlatFile}) and
+ * against a ZipNum cluster built from the same lines.
+ * <p>{@code sample.cdx} is repeated {@code copies} times, each copy under
+ * its own SURT prefix ({@code z0000,}, {@code z0001,} ...), so the larger
+ * setting exercises a deeper binary search while staying sorted. One in
+ * eight lookups is for a key that is not in the index.</p>
+ * <p>The ZipNum cluster uses 3000 lines per gzip block, the default for
+ * clusters built by the IA tools; its summary lines are
+ * {@code key TAB part TAB offset TAB length} and its location file maps the
+ * single part to a local path.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexLookupBenchmark {
+	private static final int ZIPNUM_BLOCK_LINES = 3000;
+	private static final String ZIPNUM_PART = "part-00000";
+
+	@Param({"1", "64"})
+	public int copies;
+
+	private File dir;
+	private FlatFile flatFile;
+	private RandomAccessFile flatFileHandle;
+	private ZipNumCluster cluster;
+	private ZipNumParams params;
+	private String[] keys;
+	private int next = 0;
+
+	@Setup
+	public void setUp() throws Exception {
+		dir = File.createTempFile("wayback-bench-index-", "");
+		dir.delete();
+		dir.mkdirs();
+		List<String> sample = BenchmarkData.cdxLines();
+		List<String> lines = new ArrayList<String>(sample.size() * copies);
+		for (int c = 0; c < copies; c++) {
+			String prefix = String.format("z%04d,", c);
+			for (String line : sample) {
+				lines.add(prefix + line);
+			}
+		}
+
+		File cdx = new File(dir, "index.cdx");
+		writeFlatFile(cdx, lines);
+		flatFile = new FlatFile(cdx.getAbsolutePath());
+		flatFileHandle = new RandomAccessFile(cdx, "r");
+
+		writeZipNum(lines);
+		cluster = new ZipNumCluster();
+		cluster.setSummaryFile(
+				new File(dir, "index.summary").getAbsolutePath());
+		cluster.setLocFile(new File(dir, "index.loc").getAbsolutePath());
+		cluster.setUseNio(false);
+		cluster.init();
+		params = new ZipNumParams();
+
+		LinkedHashSet<String> urlKeys = new LinkedHashSet<String>();
+		for (String line : lines) {
+			urlKeys.add(line.substring(0, line.indexOf(' ')));
+		}
+		List<String> all = new ArrayList<String>(urlKeys);
+		Random random = new Random(42);
+		keys = new String[4096];
+		for (int i = 0; i < keys.length; i++) {
+			String key = all.get(random.nextInt(all.size()));
+			if (i % 8 == 7) {
+				key = key + "missing/";
+			}
+			keys[i] = key + " ";
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		flatFileHandle.close();
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private static void writeFlatFile(File file, List<String> lines)
+			throws IOException {
+		Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			for (String line : lines) {
+				w.write(line);
+				w.write('\n');
+			}
+		} finally {
+			w.close();
+		}
+	}
+
+	private void writeZipNum(List<String> lines) throws IOException {
+		File part = new File(dir, ZIPNUM_PART + ".gz");
+		FileOutputStream partOut = new FileOutputStream(part);
+		StringBuilder summary = new StringBuilder();
+		try {
+			long offset = 0;
+			for (int i = 0; i < lines.size(); i += ZIPNUM_BLOCK_LINES) {
+				int end = Math.min(i + ZIPNUM_BLOCK_LINES, lines.size());
+				StringBuilder block = new StringBuilder();
+				for (int j = i; j < end; j++) {
+					block.append(lines.get(j)).append('\n');
+				}
+				// each block is a complete gzip member:
+				ByteArrayOutputStream member = new ByteArrayOutputStream();
+				OutputStream gz = new GZIPOutputStream(member);
+				gz.write(block.toString().getBytes("UTF-8"));
+				gz.close();
+				partOut.write(member.toByteArray());
+
+				String first = lines.get(i);
+				int keyEnd = first.indexOf(' ', first.indexOf(' ') + 1);
+				summary.append(first.substring(0, keyEnd)).append('\t')
+					.append(ZIPNUM_PART).append('\t')
+					.append(offset).append('\t')
+					.append(member.size()).append('\n');
+				offset += member.size();
+			}
+		} finally {
+			partOut.close();
+		}
+		writeText(new File(dir, "index.summary"), summary.toString());
+		writeText(new File(dir, "index.loc"),
+				ZIPNUM_PART + "\t" + part.getAbsolutePath() + "\n");
+	}
+
+	private static void writeText(File file, String text) throws IOException {
+		Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			w.write(text);
+		} finally {
+			w.close();
+		}
+	}
+
+	private String nextKey() {
+		String key = keys[next];
+		next = (next + 1) & (keys.length - 1);
+		return key;
+	}
+
+	/**
+	 * binary search only, on an already open file
+	 */
+	@Benchmark
+	public long flatFileFindKeyOffset() throws IOException {
+		return flatFile.findKeyOffset(flatFileHandle, nextKey());
+	}
+
+	/**
+	 * open, search and read all matching lines, as {@code CDXIndex} does
+	 */
+	@Benchmark
+	public int flatFilePrefix() throws IOException {
+		String key = nextKey();
+		CloseableIterator<String> itr = flatFile.getRecordIterator(key);
+		try {
+			int matches = 0;
+			while (itr.hasNext() && itr.next().startsWith(key)) {
+				matches++;
+			}
+			return matches;
+		} finally {
+			itr.close();
+		}
+	}
+
+	@Benchmark
+	public int zipNumPrefix() throws IOException {
+		String key = nextKey();
+		CloseableIterator<String> itr =
+			cluster.getCDXIterator(key, key, true, params);
+		try {
+			int matches = 0;
+			while (itr.hasNext() && itr.next().startsWith(key)) {
+				matches++;
+			}
+			return matches;
+		} finally {
+			itr.close();
+		}
+	}
+}
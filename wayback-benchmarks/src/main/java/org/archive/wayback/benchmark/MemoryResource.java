@@ -0,0 +1,70 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.archive.wayback.core.Resource;
+
+/**
+ * Resource backed by a byte array, standing in for an ARC/WARC record so
+ * that benchmarks measure replay code rather than record parsing and gzip.
+ * Each instance can be read once; create a new one per invocation.
+ */
+public class MemoryResource extends Resource {
+	private int statusCode;
+	private Map<String, String> httpHeaders;
+	private long recordLength;
+
+	/**
+	 * @param statusCode HTTP status code
+	 * @param httpHeaders HTTP headers, which replay code may modify
+	 * @param payload HTTP entity body
+	 */
+	public MemoryResource(int statusCode, Map<String, String> httpHeaders,
+			byte[] payload) {
+		this.statusCode = statusCode;
+		this.httpHeaders = httpHeaders;
+		this.recordLength = payload.length;
+		setInputStream(new ByteArrayInputStream(payload));
+	}
+
+	@Override
+	public void close() throws IOException {
+		// nothing to release
+	}
+
+	@Override
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	@Override
+	public long getRecordLength() {
+		return recordLength;
+	}
+
+	@Override
+	public Map<String, String> getHttpHeaders() {
+		return httpHeaders;
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.benchmark;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.wayback.archivalurl.ArchivalUrlResultURIConverter;
+import org.archive.wayback.archivalurl.ArchivalUrlSAXRewriteReplayRenderer;
+import org.archive.wayback.archivalurl.FastArchivalUrlReplayParseEventHandler;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.RedirectRewritingHttpHeaderProcessor;
+import org.archive.wayback.replay.template.InsertTemplateRegistry;
+import org.archive.wayback.webapp.AccessPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * The complete {@link ArchivalUrlSAXRewriteReplayRenderer}, configured as in
+ * {@code ArchivalUrlReplay.xml}: header rewriting, charset detection,
+ * parsing, attribute / CSS / JS rewriting and the banner and comment
+ * inserts.
+ * <p>There is no servlet container, so the inserts come from an
+ * {@link InsertTemplateRegistry} rather than from JSPs, and the request and
+ * response are Spring mocks. {@code streamingLexer} selects between the
+ * htmlparser {@code Lexer} and the streaming tokenizer.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayRendererBenchmark {
+	private static final String BANNER_TEMPLATE =
+		"<div id=\"wm-ipp\"><a href=\"${queryUrl}\">${captureDate}</a> " +
+		"${url}</div>";
+	private static final String COMMENT_TEMPLATE =
+		"\n<!-- archived ${captureTimestamp} from ${url} -->\n";
+
+	@Param({BenchmarkData.ARTICLE_PAGE, BenchmarkData.LEGACY_PAGE,
+		BenchmarkData.SCRIPT_PAGE})
+	public String page;
+
+	@Param({"false", "true"})
+	public boolean streamingLexer;
+
+	private byte[] payload;
+	private ArchivalUrlSAXRewriteReplayRenderer renderer;
+	private ArchivalUrlResultURIConverter uriConverter;
+	private WaybackRequest wbRequest;
+	private CaptureSearchResult result;
+	private MockHttpServletRequest httpRequest;
+
+	@Setup
+	public void setUp() throws IOException {
+		payload = BenchmarkData.load(page);
+
+		RedirectRewritingHttpHeaderProcessor headerProcessor =
+			new RedirectRewritingHttpHeaderProcessor();
+		headerProcessor.setPrefix("X-Archive-Orig-");
+		FastArchivalUrlReplayParseEventHandler delegator =
+			new FastArchivalUrlReplayParseEventHandler();
+		delegator.init();
+		renderer = new ArchivalUrlSAXRewriteReplayRenderer(headerProcessor);
+		renderer.setDelegator(delegator);
+		renderer.setStreamingLexer(streamingLexer);
+
+		Map<String, String> templates = new HashMap<String, String>();
+		templates.put(delegator.getJspInsertPath(), BANNER_TEMPLATE);
+		templates.put(delegator.getEndJsp(), COMMENT_TEMPLATE);
+		InsertTemplateRegistry registry = new InsertTemplateRegistry();
+		registry.setTemplates(templates);
+		AccessPoint accessPoint = new AccessPoint();
+		accessPoint.setInsertTemplates(registry);
+		accessPoint.setReplayPrefix(BenchmarkData.REPLAY_PREFIX);
+		accessPoint.setQueryPrefix(BenchmarkData.REPLAY_PREFIX);
+
+		uriConverter = new ArchivalUrlResultURIConverter();
+		uriConverter.setReplayURIPrefix(BenchmarkData.REPLAY_PREFIX);
+		wbRequest = new WaybackRequest();
+		wbRequest.setAccessPoint(accessPoint);
+		wbRequest.setFrameWrapperContext(false);
+		result = BenchmarkData.pageCapture(page);
+		httpRequest = new MockHttpServletRequest("GET",
+				"/wayback/" + result.getCaptureTimestamp() + "/" +
+				result.getOriginalUrl());
+	}
+
+	/**
+	 * @return size of the rewritten document
+	 */
+	@Benchmark
+	public int renderResource() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MemoryResource resource = BenchmarkData.pageResource(page, payload);
+		renderer.renderResource(httpRequest, response, wbRequest, result,
+				resource, uriConverter, null);
+		return response.getContentAsByteArray().length;
+	}
+}
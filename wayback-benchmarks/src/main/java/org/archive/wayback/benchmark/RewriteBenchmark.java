@@ -0,0 +1,123 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.benchmark;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.archive.wayback.archivalurl.ArchivalUrlContextResultURIConverterFactory;
+import org.archive.wayback.archivalurl.ArchivalUrlResultURIConverter;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.replay.TagMagix;
+import org.archive.wayback.replay.TextDocument;
+import org.archive.wayback.replay.html.ReplayParseContext;
+import org.archive.wayback.replay.html.transformer.JSStringTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The two regular expression based rewriters on the bundled pages:
+ * <ul>
+ * <li>{@link JSStringTransformer} over the text of every SCRIPT element, as
+ * the SAX renderer calls it,</li>
+ * <li>{@link TagMagix}, through {@link TextDocument#resolveAllPageUrls()},
+ * over the whole page, as the regex based Archival URL renderer does.</li>
+ * </ul>
+ * A new {@link ReplayParseContext} is created per invocation, so its URL
+ * cache starts cold, as it does for each replayed document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RewriteBenchmark {
+	private static final Pattern SCRIPT_TEXT = Pattern.compile(
+			"<script[^>]*>(.*?)</script>",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	@Param({BenchmarkData.ARTICLE_PAGE, BenchmarkData.LEGACY_PAGE,
+		BenchmarkData.SCRIPT_PAGE})
+	public String page;
+
+	private byte[] payload;
+	private String charset;
+	private String[] scripts;
+	private CaptureSearchResult result;
+	private URL baseUrl;
+	private ArchivalUrlResultURIConverter uriConverter;
+	private JSStringTransformer jsTransformer;
+
+	@Setup
+	public void setUp() throws IOException {
+		payload = BenchmarkData.load(page);
+		charset = page.equals(BenchmarkData.LEGACY_PAGE) ?
+				"ISO-8859-1" : "UTF-8";
+		List<String> found = new ArrayList<String>();
+		Matcher m = SCRIPT_TEXT.matcher(new String(payload, charset));
+		while (m.find()) {
+			if (m.group(1).trim().length() > 0) {
+				found.add(m.group(1));
+			}
+		}
+		scripts = found.toArray(new String[found.size()]);
+		result = BenchmarkData.pageCapture(page);
+		baseUrl = new URL(result.getOriginalUrl());
+		uriConverter = new ArchivalUrlResultURIConverter();
+		uriConverter.setReplayURIPrefix(BenchmarkData.REPLAY_PREFIX);
+		jsTransformer = new JSStringTransformer();
+	}
+
+	@Benchmark
+	public void jsStringTransformer(Blackhole bh) {
+		ReplayParseContext context = new ReplayParseContext(
+				new ArchivalUrlContextResultURIConverterFactory(uriConverter),
+				baseUrl, result.getCaptureTimestamp());
+		for (String script : scripts) {
+			bh.consume(jsTransformer.transform(context, script));
+		}
+	}
+
+	@Benchmark
+	public int tagMagix() throws IOException {
+		TextDocument doc = new TextDocument(
+				BenchmarkData.pageResource(page, payload), result,
+				uriConverter);
+		doc.readFully(charset);
+		doc.resolveAllPageUrls();
+		return doc.sb.length();
+	}
+}
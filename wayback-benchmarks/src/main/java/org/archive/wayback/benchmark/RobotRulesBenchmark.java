@@ -0,0 +1,89 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.wayback.accesscontrol.robotstxt.RobotRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of the bundled {@code robots.txt} and
+ * {@link RobotRules#blocksPathForUA(String, String)} for the paths of
+ * {@code sample.cdx}, alternating between a user agent with its own group
+ * and one that falls back to {@code *}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RobotRulesBenchmark {
+	private static final String[] USER_AGENTS = {
+		"ia_archiver", "wayback-benchmark"
+	};
+
+	private byte[] robotsTxt;
+	private RobotRules rules;
+	private String[] paths;
+	private int next = 0;
+
+	@Setup
+	public void setUp() throws IOException {
+		robotsTxt = BenchmarkData.load(BenchmarkData.ROBOTS_FILE);
+		rules = parse();
+		List<String> lines = BenchmarkData.cdxLines();
+		String[] urls = BenchmarkData.cdxField(lines, 2);
+		paths = new String[urls.length];
+		for (int i = 0; i < urls.length; i++) {
+			paths[i] = urls[i].substring(urls[i].indexOf('/', 8));
+		}
+	}
+
+	@Benchmark
+	public RobotRules parse() throws IOException {
+		RobotRules r = new RobotRules();
+		r.parse(new ByteArrayInputStream(robotsTxt));
+		return r;
+	}
+
+	@Benchmark
+	public boolean blocksPathForUA() {
+		String path = paths[next];
+		String ua = USER_AGENTS[next & 1];
+		if (++next == paths.length) {
+			next = 0;
+		}
+		return rules.blocksPathForUA(path, ua);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.wayback.util.url.AggressiveUrlCanonicalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link AggressiveUrlCanonicalizer#urlStringToKey(String)}, which runs for
+ * every replay and query request and for every line written by the
+ * indexers.
+ * <p>{@code clean} uses the original URLs of {@code sample.cdx} as they are;
+ * {@code dirty} adds the noise the canonicalizer exists to remove: upper
+ * case hosts, {@code www} prefixes, default ports, session ids and
+ * fragments.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlCanonicalizerBenchmark {
+
+	@Param({"clean", "dirty"})
+	public String urls;
+
+	private AggressiveUrlCanonicalizer canonicalizer;
+	private String[] input;
+	private int next = 0;
+
+	@Setup
+	public void setUp() throws IOException {
+		canonicalizer = new AggressiveUrlCanonicalizer();
+		List<String> lines = BenchmarkData.cdxLines();
+		input = BenchmarkData.cdxField(lines, 2);
+		if (urls.equals("dirty")) {
+			for (int i = 0; i < input.length; i++) {
+				input[i] = dirty(input[i], i);
+			}
+		}
+	}
+
+	private static String dirty(String url, int i) {
+		int hostStart = url.indexOf("://") + 3;
+		int pathStart = url.indexOf('/', hostStart);
+		String host = url.substring(hostStart, pathStart);
+		String path = url.substring(pathStart);
+		switch (i % 4) {
+		case 0:
+			host = host.toUpperCase();
+			break;
+		case 1:
+			host = host.startsWith("www.") ? "www2." + host.substring(4)
+					: "www." + host;
+			break;
+		case 2:
+			host = host + ":80";
+			break;
+		default:
+			break;
+		}
+		if (i % 3 == 0) {
+			path += (path.indexOf('?') == -1 ? "?" : "&") +
+				"jsessionid=0123456789ABCDEF0123456789ABCDEF";
+		}
+		if (i % 5 == 0) {
+			path += "#section-" + i;
+		}
+		return url.substring(0, hostStart) + host + path;
+	}
+
+	@Benchmark
+	public String urlStringToKey() throws URIException {
+		String url = input[next];
+		if (++next == input.length) {
+			next = 0;
+		}
+		return canonicalizer.urlStringToKey(url);
+	}
+}
@@ -2,6 +2,7 @@ package org.archive.cdxserver;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.archive.cdxserver.filter.FieldExpressionFilter;
 import org.archive.url.UrlSurtRangeComputer;
 import org.archive.url.UrlSurtRangeComputer.MatchType;
 import org.springframework.web.bind.ServletRequestBindingException;
@@ -38,6 +39,8 @@ public class CDXQuery {
     String output = EMPTY_STRING;
 
     String[] filter = null;
+    String filterExpr = EMPTY_STRING;
+    FieldExpressionFilter compiledFilterExpr = null;
     String[] collapse = null;
 
     boolean showDupeCount = false;
@@ -120,6 +123,8 @@ public class CDXQuery {
                 output);
 
         filter = ServletRequestUtils.getStringParameters(request, "filter");
+        filterExpr = ServletRequestUtils.getStringParameter(request,
+                "filterExpr", "");
         collapse = ServletRequestUtils.getStringParameters(request, "collapse");
 
         showDupeCount = ServletRequestUtils.getBooleanParameter(request,
@@ -242,6 +247,32 @@ public class CDXQuery {
         this.filter = filter;
     }
 
+    public String getFilterExpr() {
+        return filterExpr;
+    }
+
+    /**
+     * @param filterExpr {@link org.archive.cdxserver.filter.FilterExpression}
+     *        lines must match, in addition to {@code filter}
+     */
+    public void setFilterExpr(String filterExpr) {
+        this.filterExpr = filterExpr;
+        this.compiledFilterExpr = null;
+    }
+
+    public FieldExpressionFilter getCompiledFilterExpr() {
+        return compiledFilterExpr;
+    }
+
+    /**
+     * @param compiledFilterExpr filter compiled in advance, used in place of
+     *        compiling {@code filterExpr} for this query
+     */
+    public void setCompiledFilterExpr(FieldExpressionFilter compiledFilterExpr) {
+        this.compiledFilterExpr = compiledFilterExpr;
+        this.filterExpr = compiledFilterExpr.getExpression();
+    }
+
     public String[] getCollapse() {
         return collapse;
     }
@@ -14,6 +14,7 @@ import org.archive.cdxserver.CDXQuery.SortType;
 import org.archive.cdxserver.auth.AuthToken;
 import org.archive.cdxserver.filter.CDXAccessFilter;
 import org.archive.cdxserver.filter.CollapseFieldFilter;
+import org.archive.cdxserver.filter.FieldExpressionFilter;
 import org.archive.cdxserver.filter.FieldRegexFilter;
 import org.archive.cdxserver.processor.BaseProcessor;
 import org.archive.cdxserver.processor.ClosestTimestampSorted;
@@ -452,6 +453,19 @@ public class CDXServer extends BaseCDXServer {
 			filterMatcher = new FieldRegexFilter(query.filter, parseFormat);
 		}
 
+		FieldExpressionFilter exprMatcher = query.compiledFilterExpr;
+
+		if (exprMatcher == null && query.filterExpr != null
+				&& !query.filterExpr.isEmpty()) {
+			try {
+				exprMatcher = new FieldExpressionFilter(query.filterExpr,
+						parseFormat);
+			} catch (IllegalArgumentException e) {
+				responseWriter.printError(e.getMessage());
+				return;
+			}
+		}
+
 		CollapseFieldFilter collapser = null;
 
 		if (query.collapse != null && (query.collapse.length > 0)) {
@@ -557,6 +571,10 @@ public class CDXServer extends BaseCDXServer {
 				continue;
 			}
 
+			if ((exprMatcher != null) && !exprMatcher.include(line)) {
+				continue;
+			}
+
 			// Check collapser
 			if ((collapser != null) && !collapser.include(line)) {
 				continue;
@@ -0,0 +1,165 @@
+package org.archive.cdxserver.filter;
+
+import org.archive.format.cdx.CDXFieldConstants;
+import org.archive.format.cdx.CDXLine;
+import org.archive.format.cdx.FieldSplitFormat;
+
+/**
+ * Filters CDXLines by a {@link FilterExpression} over their fields, named
+ * as in the parse format, or by number:
+ * 
+ * {@code statuscode in [200,299] && mimetype ^= text/}
+ * 
+ * The "timestamp" field is compared as a timestamp. The expression is
+ * compiled once, when the filter is created.
+ */
+public class FieldExpressionFilter implements CDXFilter {
+
+	final static String TIMESTAMP = "timestamp";
+
+	final protected String source;
+	final protected FilterExpression<CDXLine> expression;
+
+	static class FieldIndexAccessor implements
+			FilterExpression.FieldAccessor<CDXLine> {
+		final int index;
+
+		FieldIndexAccessor(int index) {
+			this.index = index;
+		}
+
+		public String get(CDXLine line) {
+			if (index >= line.getNumFields()) {
+				return null;
+			}
+			return line.getField(index);
+		}
+	}
+
+	static class TimestampIndexAccessor extends FieldIndexAccessor implements
+			FilterExpression.TimestampAccessor<CDXLine> {
+		TimestampIndexAccessor(int index) {
+			super(index);
+		}
+	}
+
+	/**
+	 * index of a named field in the last format seen
+	 */
+	static class FieldBinding {
+		final FieldSplitFormat names;
+		final int index;
+
+		FieldBinding(FieldSplitFormat names, int index) {
+			this.names = names;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * reads a field by name from the format of each line. Lines of a query
+	 * share one format, so the index is only looked up again when it
+	 * changes.
+	 */
+	static class FieldNameAccessor implements
+			FilterExpression.FieldAccessor<CDXLine> {
+		final String name;
+		volatile FieldBinding binding = null;
+
+		FieldNameAccessor(String name) {
+			this.name = name;
+		}
+
+		public String get(CDXLine line) {
+			FieldSplitFormat names = line.getNames();
+			FieldBinding current = binding;
+			if ((current == null) || (current.names != names)) {
+				current = new FieldBinding(names, names.getFieldIndex(name));
+				binding = current;
+			}
+			if ((current.index < 0) || (current.index >= line.getNumFields())) {
+				return null;
+			}
+			return line.getField(current.index);
+		}
+	}
+
+	static class TimestampNameAccessor extends FieldNameAccessor implements
+			FilterExpression.TimestampAccessor<CDXLine> {
+		TimestampNameAccessor(String name) {
+			super(name);
+		}
+	}
+
+	/**
+	 * @param expression filter expression
+	 * @param names names of the fields of each line
+	 * @throws IllegalArgumentException if the expression is not valid
+	 */
+	public FieldExpressionFilter(String expression, final FieldSplitFormat names)
+	{
+		this.source = expression;
+		this.expression = FilterExpression.compile(expression,
+				new FilterExpression.FieldResolver<CDXLine>() {
+					public FilterExpression.FieldAccessor<CDXLine> resolve(
+							String name) {
+						int index = -1;
+						try {
+							index = Integer.parseInt(name);
+						} catch (NumberFormatException n) {
+							if (names != null) {
+								index = names.getFieldIndex(name);
+							}
+						}
+						if (index < 0) {
+							return null;
+						}
+						if ((names != null) && 
+								(index == names.getFieldIndex(TIMESTAMP))) {
+							return new TimestampIndexAccessor(index);
+						}
+						return new FieldIndexAccessor(index);
+					}
+				});
+	}
+
+	/**
+	 * Filter over the standard CDX field names
+	 * ({@link CDXFieldConstants#CDX_ALL_NAMES}), which are looked up in the
+	 * format of each line, so that it can be compiled once, and shared by
+	 * queries of any output format.
+	 * @param expression filter expression
+	 * @throws IllegalArgumentException if the expression is not valid
+	 */
+	public FieldExpressionFilter(String expression)
+	{
+		this.source = expression;
+		this.expression = FilterExpression.compile(expression,
+				new FilterExpression.FieldResolver<CDXLine>() {
+					public FilterExpression.FieldAccessor<CDXLine> resolve(
+							String name) {
+						if (CDXFieldConstants.CDX_ALL_NAMES
+								.getFieldIndex(name) < 0) {
+							return null;
+						}
+						if (TIMESTAMP.equals(name)) {
+							return new TimestampNameAccessor(name);
+						}
+						return new FieldNameAccessor(name);
+					}
+				});
+	}
+
+	/**
+	 * @return the filter expression
+	 */
+	public String getExpression()
+	{
+		return source;
+	}
+
+	public boolean include(CDXLine line)
+	{
+		return expression.matches(line);
+	}
+}
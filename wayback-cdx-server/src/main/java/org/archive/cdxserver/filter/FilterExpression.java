@@ -0,0 +1,497 @@
+package org.archive.cdxserver.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Boolean expression over the named String fields of a record, parsed once
+ * and compiled into a tree of matchers:
+ *
+ * <pre>
+ * expr      := and ( ('||' | 'or') and )*
+ * and       := unary ( ('&amp;&amp;' | 'and') unary )*
+ * unary     := ('!' | 'not') unary | '(' expr ')' | field op
+ * op        := '==' value | '!=' value
+ *            | '&lt;' value | '&lt;=' value | '&gt;' value | '&gt;=' value
+ *            | '=~' regex | '!~' regex
+ *            | '^=' prefix | '*=' substring
+ *            | 'in' '[' value ',' value ']'
+ * </pre>
+ *
+ * Values are either quoted with ' or ", where \' or \" stands for the quote
+ * character and any other \ is kept as is, or bare words running up to the
+ * next space or one of ()[],&amp;|. Ordering comparisons and ranges compare
+ * numerically if their values are integers, in which case fields which are
+ * not integers do not match, and compare Strings otherwise. Regexes must
+ * match the whole field.
+ * <p>Timestamp fields (see {@link TimestampAccessor}) are always compared as
+ * Strings, with partial timestamps standing for the whole period they name:
+ * {@code timestamp >= 2006} matches captures from the start of 2006 on,
+ * and {@code timestamp <= 2006} those up to its end.</p>
+ *
+ * eg: {@code statuscode in [200,299] && mimetype ^= text/ && !(original =~ '.*\?.*')}
+ *
+ * Compiled expressions hold no state, and can be shared between threads.
+ *
+ * @param <T> type of record
+ */
+public abstract class FilterExpression<T> {
+
+	/**
+	 * Reads a field of a record.
+	 * @param <T> type of record
+	 */
+	public interface FieldAccessor<T> {
+		/**
+		 * @param record record to read
+		 * @return field value, or null if not present
+		 */
+		public String get(T record);
+	}
+
+	/**
+	 * Reads a 14 digit timestamp field of a record.
+	 * @param <T> type of record
+	 */
+	public interface TimestampAccessor<T> extends FieldAccessor<T> {
+	}
+
+	/**
+	 * Maps field names used in expressions to accessors.
+	 * @param <T> type of record
+	 */
+	public interface FieldResolver<T> {
+		/**
+		 * @param name field name
+		 * @return accessor for {@code name}, or null if there is no such field
+		 */
+		public FieldAccessor<T> resolve(String name);
+	}
+
+	/**
+	 * @param record record to test
+	 * @return true if {@code record} matches this expression
+	 */
+	public abstract boolean matches(T record);
+
+	/**
+	 * @param expression expression String
+	 * @param resolver field names allowed in {@code expression}
+	 * @return compiled expression
+	 * @throws IllegalArgumentException if {@code expression} cannot be parsed,
+	 * or names an unknown field
+	 */
+	public static <T> FilterExpression<T> compile(String expression,
+			FieldResolver<T> resolver) {
+		return new Parser<T>(expression, resolver).parse();
+	}
+
+	private static class Or<T> extends FilterExpression<T> {
+		private final FilterExpression<T>[] terms;
+
+		Or(FilterExpression<T>[] terms) {
+			this.terms = terms;
+		}
+
+		public boolean matches(T record) {
+			for (FilterExpression<T> term : terms) {
+				if (term.matches(record)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static class And<T> extends FilterExpression<T> {
+		private final FilterExpression<T>[] terms;
+
+		And(FilterExpression<T>[] terms) {
+			this.terms = terms;
+		}
+
+		public boolean matches(T record) {
+			for (FilterExpression<T> term : terms) {
+				if (!term.matches(record)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static class Not<T> extends FilterExpression<T> {
+		private final FilterExpression<T> term;
+
+		Not(FilterExpression<T> term) {
+			this.term = term;
+		}
+
+		public boolean matches(T record) {
+			return !term.matches(record);
+		}
+	}
+
+	private static abstract class FieldMatch<T> extends FilterExpression<T> {
+		private final FieldAccessor<T> field;
+
+		FieldMatch(FieldAccessor<T> field) {
+			this.field = field;
+		}
+
+		public boolean matches(T record) {
+			String value = field.get(record);
+			return (value != null) && matchesValue(value);
+		}
+
+		abstract boolean matchesValue(String value);
+	}
+
+	private static class Equals<T> extends FieldMatch<T> {
+		private final String operand;
+
+		Equals(FieldAccessor<T> field, String operand) {
+			super(field);
+			this.operand = operand;
+		}
+
+		boolean matchesValue(String value) {
+			return value.equals(operand);
+		}
+	}
+
+	private static class Prefix<T> extends FieldMatch<T> {
+		private final String operand;
+
+		Prefix(FieldAccessor<T> field, String operand) {
+			super(field);
+			this.operand = operand;
+		}
+
+		boolean matchesValue(String value) {
+			return value.startsWith(operand);
+		}
+	}
+
+	private static class Contains<T> extends FieldMatch<T> {
+		private final String operand;
+
+		Contains(FieldAccessor<T> field, String operand) {
+			super(field);
+			this.operand = operand;
+		}
+
+		boolean matchesValue(String value) {
+			return value.contains(operand);
+		}
+	}
+
+	private static class Regex<T> extends FieldMatch<T> {
+		private final Pattern pattern;
+
+		Regex(FieldAccessor<T> field, Pattern pattern) {
+			super(field);
+			this.pattern = pattern;
+		}
+
+		boolean matchesValue(String value) {
+			return pattern.matcher(value).matches();
+		}
+	}
+
+	/**
+	 * String range, either bound may be null
+	 */
+	private static class StringRange<T> extends FieldMatch<T> {
+		private final String min;
+		private final String max;
+		// lowest allowed result of compareTo(min), and highest of compareTo(max)
+		private final int minCmp;
+		private final int maxCmp;
+
+		StringRange(FieldAccessor<T> field, String min, boolean minInclusive,
+				String max, boolean maxInclusive) {
+			super(field);
+			this.min = min;
+			this.max = max;
+			this.minCmp = minInclusive ? 0 : 1;
+			this.maxCmp = maxInclusive ? 0 : -1;
+		}
+
+		boolean matchesValue(String value) {
+			return ((min == null) || (value.compareTo(min) >= minCmp)) &&
+					((max == null) || (value.compareTo(max) <= maxCmp));
+		}
+	}
+
+	/**
+	 * inclusive numeric range
+	 */
+	private static class NumericRange<T> extends FieldMatch<T> {
+		private final long min;
+		private final long max;
+
+		NumericRange(FieldAccessor<T> field, long min, long max) {
+			super(field);
+			this.min = min;
+			this.max = max;
+		}
+
+		boolean matchesValue(String value) {
+			long number;
+			try {
+				number = Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				return false;
+			}
+			return (number >= min) && (number <= max);
+		}
+	}
+
+	private static class Parser<T> {
+		private final static int TIMESTAMP_LENGTH = 14;
+
+		private final String input;
+		private final FieldResolver<T> resolver;
+		private int pos = 0;
+
+		Parser(String input, FieldResolver<T> resolver) {
+			this.input = input;
+			this.resolver = resolver;
+		}
+
+		FilterExpression<T> parse() {
+			FilterExpression<T> expr = parseOr();
+			skipSpace();
+			if (pos < input.length()) {
+				throw error("unexpected '" + input.charAt(pos) + "'");
+			}
+			return expr;
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException("Bad filter expression("
+					+ input + ") at " + pos + ": " + message);
+		}
+
+		private void skipSpace() {
+			while ((pos < input.length())
+					&& Character.isWhitespace(input.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		/**
+		 * consume {@code token} if it is next
+		 */
+		private boolean accept(String token) {
+			skipSpace();
+			if (!input.startsWith(token, pos)) {
+				return false;
+			}
+			int end = pos + token.length();
+			if (Character.isLetter(token.charAt(0)) && (end < input.length())
+					&& isWordChar(input.charAt(end))) {
+				// "or" is not a prefix of "original"
+				return false;
+			}
+			pos = end;
+			return true;
+		}
+
+		private void expect(String token) {
+			if (!accept(token)) {
+				throw error("expected '" + token + "'");
+			}
+		}
+
+		private static boolean isWordChar(char c) {
+			return Character.isLetterOrDigit(c) || (c == '_');
+		}
+
+		@SuppressWarnings("unchecked")
+		private FilterExpression<T> parseOr() {
+			List<FilterExpression<T>> terms = new ArrayList<FilterExpression<T>>();
+			terms.add(parseAnd());
+			while (accept("||") || accept("or")) {
+				terms.add(parseAnd());
+			}
+			if (terms.size() == 1) {
+				return terms.get(0);
+			}
+			return new Or<T>(terms.toArray(new FilterExpression[terms.size()]));
+		}
+
+		@SuppressWarnings("unchecked")
+		private FilterExpression<T> parseAnd() {
+			List<FilterExpression<T>> terms = new ArrayList<FilterExpression<T>>();
+			terms.add(parseUnary());
+			while (accept("&&") || accept("and")) {
+				terms.add(parseUnary());
+			}
+			if (terms.size() == 1) {
+				return terms.get(0);
+			}
+			return new And<T>(terms.toArray(new FilterExpression[terms.size()]));
+		}
+
+		private FilterExpression<T> parseUnary() {
+			if (accept("(")) {
+				FilterExpression<T> expr = parseOr();
+				expect(")");
+				return expr;
+			}
+			if (accept("not") || accept("!")) {
+				return new Not<T>(parseUnary());
+			}
+			return parsePredicate();
+		}
+
+		private FilterExpression<T> parsePredicate() {
+			skipSpace();
+			int start = pos;
+			while ((pos < input.length()) && isWordChar(input.charAt(pos))) {
+				pos++;
+			}
+			if (start == pos) {
+				throw error("expected field name");
+			}
+			String name = input.substring(start, pos);
+			FieldAccessor<T> field = resolver.resolve(name);
+			if (field == null) {
+				pos = start;
+				throw error("unknown field '" + name + "'");
+			}
+
+			// longer operators first:
+			if (accept("==")) {
+				return new Equals<T>(field, parseValue());
+			} else if (accept("!=")) {
+				return new Not<T>(new Equals<T>(field, parseValue()));
+			} else if (accept("=~")) {
+				return new Regex<T>(field, parsePattern());
+			} else if (accept("!~")) {
+				return new Not<T>(new Regex<T>(field, parsePattern()));
+			} else if (accept("^=")) {
+				return new Prefix<T>(field, parseValue());
+			} else if (accept("*=")) {
+				return new Contains<T>(field, parseValue());
+			} else if (accept("<=")) {
+				return range(field, null, false, parseValue(), true);
+			} else if (accept(">=")) {
+				return range(field, parseValue(), true, null, false);
+			} else if (accept("<")) {
+				return range(field, null, false, parseValue(), false);
+			} else if (accept(">")) {
+				return range(field, parseValue(), false, null, false);
+			} else if (accept("in")) {
+				expect("[");
+				String min = parseValue();
+				expect(",");
+				String max = parseValue();
+				expect("]");
+				return range(field, min, true, max, true);
+			}
+			throw error("expected operator after '" + name + "'");
+		}
+
+		/**
+		 * @return numeric range if the given bounds are integers, String
+		 * range otherwise
+		 */
+		private FilterExpression<T> range(FieldAccessor<T> field, String min,
+				boolean minInclusive, String max, boolean maxInclusive) {
+			if (field instanceof TimestampAccessor) {
+				// 2006 is from 20060000000000 to 20069999999999:
+				return new StringRange<T>(field, 
+						padTimestamp(min, minInclusive ? '0' : '9'),
+						minInclusive,
+						padTimestamp(max, maxInclusive ? '9' : '0'),
+						maxInclusive);
+			}
+			long minN;
+			long maxN;
+			try {
+				minN = (min == null) ? Long.MIN_VALUE : Long.parseLong(min);
+				maxN = (max == null) ? Long.MAX_VALUE : Long.parseLong(max);
+			} catch (NumberFormatException e) {
+				return new StringRange<T>(field, min, minInclusive, max,
+						maxInclusive);
+			}
+			if (!minInclusive && (min != null)) {
+				if (minN == Long.MAX_VALUE) {
+					// empty range
+					return new NumericRange<T>(field, 1, 0);
+				}
+				minN++;
+			}
+			if (!maxInclusive && (max != null)) {
+				if (maxN == Long.MIN_VALUE) {
+					return new NumericRange<T>(field, 1, 0);
+				}
+				maxN--;
+			}
+			return new NumericRange<T>(field, minN, maxN);
+		}
+
+		private static String padTimestamp(String timestamp, char digit) {
+			if ((timestamp == null) 
+					|| (timestamp.length() >= TIMESTAMP_LENGTH)) {
+				return timestamp;
+			}
+			StringBuilder sb = new StringBuilder(TIMESTAMP_LENGTH);
+			sb.append(timestamp);
+			while (sb.length() < TIMESTAMP_LENGTH) {
+				sb.append(digit);
+			}
+			return sb.toString();
+		}
+
+		private Pattern parsePattern() {
+			int start = pos;
+			String regex = parseValue();
+			try {
+				return Pattern.compile(regex);
+			} catch (PatternSyntaxException e) {
+				pos = start;
+				throw error(e.getDescription());
+			}
+		}
+
+		private String parseValue() {
+			skipSpace();
+			if (pos >= input.length()) {
+				throw error("expected value");
+			}
+			char quote = input.charAt(pos);
+			if ((quote == '\'') || (quote == '"')) {
+				StringBuilder sb = new StringBuilder();
+				pos++;
+				while (pos < input.length()) {
+					char c = input.charAt(pos++);
+					if (c == quote) {
+						return sb.toString();
+					}
+					if ((c == '\\') && (pos < input.length())
+							&& (input.charAt(pos) == quote)) {
+						c = input.charAt(pos++);
+					}
+					sb.append(c);
+				}
+				throw error("unterminated string");
+			}
+			int start = pos;
+			while ((pos < input.length())
+					&& !Character.isWhitespace(input.charAt(pos))
+					&& ("()[],&|".indexOf(input.charAt(pos)) < 0)) {
+				pos++;
+			}
+			if (start == pos) {
+				throw error("expected value");
+			}
+			return input.substring(start, pos);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package org.archive.cdxserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.cdxserver.filter.FieldExpressionFilter;
+import org.archive.cdxserver.writer.CDXListWriter;
+import org.archive.format.cdx.CDXInputSource;
+import org.archive.format.cdx.CDXLine;
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Test for {@link CDXServer} queries with {@code filterExpr}.
+ */
+public class CDXServerTest extends TestCase {
+
+	static final String[] CDX = {
+		"com,example)/ 20040101000000 http://example.com/ text/html 200 AAAA - - 1000 0 a.warc.gz",
+		"com,example)/ 20050614070159 http://example.com/ text/html 404 BBBB - - 900 100 a.warc.gz",
+		"com,example)/ 20060101000000 http://example.com/ warc/revisit - AAAA - - 300 200 a.warc.gz",
+		"com,example)/ 20070101000000 http://example.com/ text/html 200 CCCC - - 1100 300 a.warc.gz",
+	};
+
+	/**
+	 * sorted lines held in memory
+	 */
+	static class ListSource implements CDXInputSource {
+		List<String> lines;
+
+		ListSource(String... lines) {
+			this.lines = Arrays.asList(lines);
+		}
+
+		public CloseableIterator<String> getCDXIterator(String key,
+				String prefix, boolean exact, ZipNumParams params) {
+			throw new UnsupportedOperationException();
+		}
+
+		public CloseableIterator<String> getCDXIterator(String key,
+				String start, String end, ZipNumParams params) {
+			List<String> range = new ArrayList<String>();
+			for (String line : lines) {
+				if ((line.compareTo(key) >= 0) &&
+						((end == null) || (line.compareTo(end) < 0))) {
+					range.add(line);
+				}
+			}
+			final Iterator<String> i = range.iterator();
+			return new CloseableIterator<String>() {
+				public boolean hasNext() {
+					return i.hasNext();
+				}
+				public String next() {
+					return i.next();
+				}
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+				public void close() {
+				}
+			};
+		}
+
+		public long getTotalLines() {
+			return lines.size();
+		}
+	}
+
+	/**
+	 * records errors as well as lines
+	 */
+	static class ErrorListWriter extends CDXListWriter {
+		List<String> errors = new ArrayList<String>();
+
+		@Override
+		public void printError(String msg) {
+			errors.add(msg);
+		}
+	}
+
+	CDXServer cdxServer;
+
+	@Override
+	protected void setUp() throws Exception {
+		cdxServer = new CDXServer();
+		cdxServer.setSurtMode(true);
+		cdxServer.setCdxFormat("cdx11");
+		cdxServer.setCdxSource(new ListSource(CDX));
+		cdxServer.afterPropertiesSet();
+	}
+
+	private List<String> timestamps(ErrorListWriter writer) {
+		List<String> timestamps = new ArrayList<String>();
+		for (CDXLine line : writer.getCDXLines()) {
+			timestamps.add(line.getTimestamp());
+		}
+		return timestamps;
+	}
+
+	private ErrorListWriter query(CDXQuery query) throws IOException {
+		ErrorListWriter writer = new ErrorListWriter();
+		cdxServer.getCdx(query, null, writer);
+		return writer;
+	}
+
+	public void testFilterExpr() throws IOException {
+		CDXQuery query = new CDXQuery("http://example.com/");
+		ErrorListWriter writer = query(query);
+		assertEquals(4, writer.getCDXLines().size());
+
+		query = new CDXQuery("http://example.com/");
+		query.setFilterExpr("statuscode == 200 && timestamp >= 2005");
+		writer = query(query);
+		assertEquals(Arrays.asList("20070101000000"), timestamps(writer));
+		assertTrue(writer.errors.isEmpty());
+
+		query = new CDXQuery("http://example.com/");
+		query.setFilterExpr("mimetype != warc/revisit && timestamp < 2007");
+		query.setFilter(new String[] { "statuscode:200" });
+		writer = query(query);
+		assertEquals(Arrays.asList("20040101000000"), timestamps(writer));
+	}
+
+	public void testCompiledFilterExpr() throws IOException {
+		FieldExpressionFilter filter = new FieldExpressionFilter(
+				"length < 1000");
+		// shared by several queries:
+		for (int i = 0; i < 2; i++) {
+			CDXQuery query = new CDXQuery("http://example.com/");
+			query.setCompiledFilterExpr(filter);
+			assertEquals("length < 1000", query.getFilterExpr());
+			ErrorListWriter writer = query(query);
+			assertEquals(Arrays.asList("20050614070159", "20060101000000"),
+					timestamps(writer));
+		}
+	}
+
+	public void testBadFilterExpr() throws IOException {
+		CDXQuery query = new CDXQuery("http://example.com/");
+		query.setFilterExpr("statuscode === 200");
+		ErrorListWriter writer = query(query);
+		assertEquals(1, writer.errors.size());
+		assertTrue(writer.getCDXLines().isEmpty());
+	}
+}
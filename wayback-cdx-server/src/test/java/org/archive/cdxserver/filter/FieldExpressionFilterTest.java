@@ -0,0 +1,68 @@
+package org.archive.cdxserver.filter;
+
+import junit.framework.TestCase;
+
+import org.archive.format.cdx.CDXFieldConstants;
+import org.archive.format.cdx.CDXLine;
+import org.archive.format.cdx.FieldSplitFormat;
+
+/**
+ * Test for {@link FieldExpressionFilter}.
+ */
+public class FieldExpressionFilterTest extends TestCase {
+
+	static final FieldSplitFormat NAMES = CDXFieldConstants.CDX_ALL_NAMES;
+
+	static final String LINE1 = "com,example)/ 20050614070159 http://example.com/"
+			+ " text/html 200 AAAA - - 1200 3456 a.warc.gz";
+	static final String LINE2 = "com,example)/ 20070101000000 http://example.com/"
+			+ " warc/revisit - AAAA - - 500 7890 b.warc.gz";
+
+	public void testIndexedFields() {
+		FieldExpressionFilter filter = new FieldExpressionFilter(
+				"statuscode in [200,299] && timestamp < 2006", NAMES);
+		assertTrue(filter.include(new CDXLine(LINE1, NAMES)));
+		assertFalse(filter.include(new CDXLine(LINE2, NAMES)));
+
+		// by field number:
+		filter = new FieldExpressionFilter("3 == warc/revisit", NAMES);
+		assertFalse(filter.include(new CDXLine(LINE1, NAMES)));
+		assertTrue(filter.include(new CDXLine(LINE2, NAMES)));
+
+		try {
+			new FieldExpressionFilter("dupecount > 1", NAMES);
+			fail("unknown field accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testNamedFields() {
+		FieldExpressionFilter filter = new FieldExpressionFilter(
+				"mimetype != warc/revisit && length > 1000 && timestamp >= 2005");
+		assertEquals(
+				"mimetype != warc/revisit && length > 1000 && timestamp >= 2005",
+				filter.getExpression());
+		assertTrue(filter.include(new CDXLine(LINE1, NAMES)));
+		assertFalse(filter.include(new CDXLine(LINE2, NAMES)));
+
+		// same filter, lines of another format:
+		FieldSplitFormat reordered = new FieldSplitFormat(
+				"length,mimetype,timestamp");
+		assertTrue(filter.include(new CDXLine(
+				"1200 text/html 20050614070159", reordered)));
+		assertFalse(filter.include(new CDXLine(
+				"1200 text/html 20040614070159", reordered)));
+		assertFalse(filter.include(new CDXLine(
+				"900 text/html 20050614070159", reordered)));
+		// and back:
+		assertTrue(filter.include(new CDXLine(LINE1, NAMES)));
+
+		try {
+			new FieldExpressionFilter("nosuchfield == 1");
+			fail("unknown field accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package org.archive.cdxserver.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link FilterExpression}, over records which are Maps.
+ */
+public class FilterExpressionTest extends TestCase {
+
+	static class MapAccessor implements
+			FilterExpression.FieldAccessor<Map<String, String>> {
+		final String name;
+
+		MapAccessor(String name) {
+			this.name = name;
+		}
+
+		public String get(Map<String, String> record) {
+			return record.get(name);
+		}
+	}
+
+	static class MapTimestampAccessor extends MapAccessor implements
+			FilterExpression.TimestampAccessor<Map<String, String>> {
+		MapTimestampAccessor(String name) {
+			super(name);
+		}
+	}
+
+	static final FilterExpression.FieldResolver<Map<String, String>> RESOLVER =
+		new FilterExpression.FieldResolver<Map<String, String>>() {
+		public FilterExpression.FieldAccessor<Map<String, String>> resolve(
+				String name) {
+			if (name.equals("timestamp")) {
+				return new MapTimestampAccessor(name);
+			}
+			if (name.equals("status") || name.equals("type")
+					|| name.equals("id") || name.equals("missing")) {
+				return new MapAccessor(name);
+			}
+			return null;
+		}
+	};
+
+	private Map<String, String> record;
+
+	@Override
+	protected void setUp() throws Exception {
+		record = new HashMap<String, String>();
+		record.put("timestamp", "20050614070159");
+		record.put("status", "404");
+		record.put("type", "text/html");
+		record.put("id", "b10");
+	}
+
+	private boolean matches(String expression) {
+		return FilterExpression.compile(expression, RESOLVER).matches(record);
+	}
+
+	public void testOperators() {
+		assertTrue(matches("status == 404"));
+		assertFalse(matches("status == 200"));
+		assertTrue(matches("status != 200"));
+		assertTrue(matches("type ^= text/"));
+		assertFalse(matches("type ^= image/"));
+		assertTrue(matches("type *= '/ht'"));
+		assertTrue(matches("type =~ 'text/.*'"));
+		assertFalse(matches("type =~ 'text'"));
+		assertTrue(matches("type !~ 'image/.*'"));
+		// numeric ordering:
+		assertTrue(matches("status > 99"));
+		assertFalse(matches("status in [200, 299]"));
+		assertTrue(matches("status in [400, 499]"));
+		// String ordering, where "b10" < "b9":
+		assertTrue(matches("id < b9"));
+		assertFalse(matches("id > b9"));
+		// absent fields never match:
+		assertFalse(matches("missing == ''"));
+		assertTrue(matches("!(missing == '')"));
+	}
+
+	public void testBooleans() {
+		assertTrue(matches("status == 404 && type ^= text/"));
+		assertFalse(matches("status == 404 and type ^= image/"));
+		assertTrue(matches("status == 200 || type ^= text/"));
+		assertFalse(matches("status == 200 or type ^= image/"));
+		assertTrue(matches("not (status == 200 || type ^= image/)"));
+		assertFalse(matches("!(status == 404) && type ^= text/"));
+		// && binds tighter than ||:
+		assertTrue(matches("status == 404 || status == 200 && type == x"));
+		assertFalse(matches("(status == 404 || status == 200) && type == x"));
+	}
+
+	public void testTimestamps() {
+		assertTrue(matches("timestamp >= 2005"));
+		assertFalse(matches("timestamp >= 2006"));
+		assertTrue(matches("timestamp <= 2005"));
+		assertFalse(matches("timestamp < 2005"));
+		assertTrue(matches("timestamp < 2006"));
+		assertFalse(matches("timestamp > 2005"));
+		assertTrue(matches("timestamp > 2004"));
+		assertTrue(matches("timestamp in [200506, 200506]"));
+		assertFalse(matches("timestamp in [2004, 200505]"));
+		assertTrue(matches("timestamp == 20050614070159"));
+		assertFalse(matches("timestamp == 2005"));
+		assertTrue(matches("timestamp ^= 2005"));
+	}
+
+	public void testQuoting() {
+		record.put("type", "it's \\ \"quoted\"");
+		assertTrue(matches("type == 'it\\'s \\ \"quoted\"'"));
+		assertTrue(matches("type == \"it's \\ \\\"quoted\\\"\""));
+	}
+
+	public void testErrors() {
+		String[] bad = {
+			"", "status", "status ==", "nosuch == 1", "status == 1 &&",
+			"(status == 1", "status == 1)", "status in [1 2]", "type =~ '('",
+			"type == 'unterminated", "status <> 1"
+		};
+		for (String expression : bad) {
+			try {
+				FilterExpression.compile(expression, RESOLVER);
+				fail("expected failure for " + expression);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -12,7 +12,6 @@ import java.util.logging.Logger;
 
 import org.archive.accesscontrol.RobotsUnavailableException;
 import org.archive.accesscontrol.RuleOracleUnavailableException;
-import org.archive.util.ArchiveUtils;
 import org.archive.wayback.core.CaptureSearchResult;
 
 public class CustomPolicyOracleFilter extends OracleExclusionFilter {
@@ -48,11 +47,10 @@ public class CustomPolicyOracleFilter extends OracleExclusionFilter {
 	public int filterObject(CaptureSearchResult o) {
 		String url = o.getOriginalUrl();
 		Date captureDate = o.getCaptureDate();
-		Date retrievalDate = new Date();
 
 		String policy;
 		try {
-			policy = client.getPolicy(ArchiveUtils.addImpliedHttpIfNecessary(url), captureDate, retrievalDate, accessGroup);
+			policy = getPolicy(url, captureDate);
 			
 			o.setOraclePolicy(policy);
 			
@@ -81,6 +79,10 @@ public class CustomPolicyOracleFilter extends OracleExclusionFilter {
 		} catch (RobotsUnavailableException e) {
 			e.printStackTrace();
 		} catch (RuleOracleUnavailableException e) {
+			if (snapshot != null) {
+				oracleUnavailable(e);
+				return defaultFilter;
+			}
 			LOGGER.warning("Oracle Unavailable/not running, default to allow all until it responds. Details: " + e.toString());
 		}
 		
@@ -5,6 +5,8 @@ public class CustomPolicyOracleFilterFactory extends OracleExclusionFilterFactor
 
 	@Override
 	public ExclusionFilter get() {
-		return new CustomPolicyOracleFilter(this.getOracleUrl(), this.getAccessGroup(), this.getProxyHostPort());
+		CustomPolicyOracleFilter filter = new CustomPolicyOracleFilter(this.getOracleUrl(), this.getAccessGroup(), this.getProxyHostPort());
+		filter.setPolicySnapshot(createPolicySnapshot());
+		return filter;
 	}
 }
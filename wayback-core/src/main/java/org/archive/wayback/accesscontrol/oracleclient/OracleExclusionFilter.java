@@ -19,6 +19,7 @@
 package org.archive.wayback.accesscontrol.oracleclient;
 
 import java.util.Date;
+import java.util.logging.Logger;
 
 import org.archive.accesscontrol.AccessControlClient;
 import org.archive.accesscontrol.RobotsUnavailableException;
@@ -32,8 +33,12 @@ import org.archive.wayback.resourceindex.filters.ExclusionFilter;
  *
  */
 public class OracleExclusionFilter extends ExclusionFilter {
+	private static final Logger LOGGER = Logger.getLogger(
+			OracleExclusionFilter.class.getName());
+
 	protected AccessControlClient client = null;
 	protected String accessGroup = null;
+	protected OraclePolicySnapshot snapshot = null;
 	
 	private final static String POLICY_ALLOW = "allow";
 	private final static String POLICY_BLOCK = "block";
@@ -42,6 +47,7 @@ public class OracleExclusionFilter extends ExclusionFilter {
 //	private boolean notifiedRobotPassed = false;
 	private boolean notifiedAdminSeen = false;
 	private boolean notifiedAdminPassed = false;
+	private boolean notifiedOracleUnavailable = false;
 	
 	/**
 	 * @param oracleUrl String URL prefix for the Oracle HTTP server
@@ -69,6 +75,61 @@ public class OracleExclusionFilter extends ExclusionFilter {
 		this.accessGroup = accessGroup;
 	}
 	
+	/**
+	 * @param snapshot OraclePolicySnapshot to evaluate policies with, instead
+	 * of asking the client for each capture, or null to always ask the client
+	 */
+	public void setPolicySnapshot(OraclePolicySnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * @return OraclePolicySnapshot policies are evaluated with, or null
+	 */
+	public OraclePolicySnapshot getPolicySnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Find the policy for a capture, from the snapshot if there is one.
+	 * "robots" policies, which the client may resolve by fetching robots.txt,
+	 * are always passed on to the client.
+	 * @param url original URL of the capture
+	 * @param captureDate Date of the capture
+	 * @return policy String, or null if no rule matches
+	 * @throws RobotsUnavailableException
+	 * @throws RuleOracleUnavailableException
+	 */
+	protected String getPolicy(String url, Date captureDate)
+			throws RobotsUnavailableException, RuleOracleUnavailableException {
+		Date retrievalDate;
+		if(snapshot != null) {
+			String policy = snapshot.getPolicy(url, captureDate);
+			if(!POLICY_ROBOT.equals(policy)) {
+				return policy;
+			}
+			retrievalDate = snapshot.getRetrievalDate();
+		} else {
+			retrievalDate = new Date();
+		}
+		return client.getPolicy(ArchiveUtils.addImpliedHttpIfNecessary(url),
+				captureDate, retrievalDate, accessGroup);
+	}
+
+	/**
+	 * Log that the oracle could not be reached, once per query when using
+	 * a snapshot, for every capture otherwise.
+	 * @param e RuleOracleUnavailableException thrown
+	 */
+	protected void oracleUnavailable(RuleOracleUnavailableException e) {
+		if(snapshot == null) {
+			e.printStackTrace();
+		} else if(!notifiedOracleUnavailable) {
+			notifiedOracleUnavailable = true;
+			LOGGER.warning("Oracle unavailable: " + e.toString());
+		}
+	}
+
 	protected int handleAllow()
 	{
 		if(!notifiedAdminSeen) {
@@ -129,12 +190,10 @@ public class OracleExclusionFilter extends ExclusionFilter {
 	public int filterObject(CaptureSearchResult o) {
 		String url = o.getOriginalUrl();
 		Date captureDate = o.getCaptureDate();
-		Date retrievalDate = new Date();
 		
 		String policy;
 		try {
-			policy = client.getPolicy(ArchiveUtils.addImpliedHttpIfNecessary(url), captureDate, retrievalDate, 
-					accessGroup);
+			policy = getPolicy(url, captureDate);
 			if(policy != null) {
 				if(policy.equals(POLICY_ALLOW)) {
 					return handleAllow();
@@ -147,7 +206,7 @@ public class OracleExclusionFilter extends ExclusionFilter {
 		} catch (RobotsUnavailableException e) {
 			e.printStackTrace();
 		} catch (RuleOracleUnavailableException e) {
-			e.printStackTrace();
+			oracleUnavailable(e);
 		}
 		return FILTER_EXCLUDE;			
 	}
@@ -19,12 +19,18 @@
  */
 package org.archive.wayback.accesscontrol.oracleclient;
 
+import org.archive.accesscontrol.HttpRuleDao;
 import org.archive.wayback.accesscontrol.ExclusionFilterFactory;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 
 /**
  * ExclusionFilterFactory implementation which connects to an Exclusion Oracle
  * via HTTP to determine which SearchResults can be exposed
+ * <p>By default the Oracle client is asked about every capture. With
+ * ruleSnapshot enabled, each query fetches the rule trees it needs once, and
+ * matches captures against them locally. Rule trees are then also cached
+ * across queries for up to ruleCacheTTL (60 seconds by default), so rule
+ * changes on the Oracle may take that long to be seen.</p>
  * @author brad
  *
  */
@@ -33,15 +39,53 @@ public class OracleExclusionFilterFactory implements ExclusionFilterFactory {
 	private String oracleUrl = null;
 	private String accessGroup = null;
 	private String proxyHostPort = null;
+	private boolean ruleSnapshot = false;
+	private long ruleCacheTTL = RuleSetCache.DEFAULT_TTL_MILLIS;
+	private int ruleCacheSize = RuleSetCache.DEFAULT_MAX_ENTRIES;
+	private RuleSetCache ruleSetCache = null;
 	
 	public ExclusionFilter get() {
 		OracleExclusionFilter filter = new OracleExclusionFilter(oracleUrl,
 				accessGroup, proxyHostPort);
+		filter.setPolicySnapshot(createPolicySnapshot());
 		return filter;
 	}
 
+	/**
+	 * @return new OraclePolicySnapshot for one query, sharing this factory's
+	 * RuleSetCache, or null if rule snapshots are disabled
+	 */
+	protected OraclePolicySnapshot createPolicySnapshot() {
+		if(!ruleSnapshot) {
+			return null;
+		}
+		return new OraclePolicySnapshot(getRuleSetCache(), accessGroup);
+	}
+
+	/**
+	 * @param ruleSetCache RuleSetCache to share with other factories using
+	 * the same Oracle, instead of one built from ruleCacheTTL and
+	 * ruleCacheSize
+	 */
+	public synchronized void setRuleSetCache(RuleSetCache ruleSetCache) {
+		this.ruleSetCache = ruleSetCache;
+	}
+
+	/**
+	 * @return RuleSetCache shared by all filters from this factory
+	 */
+	public synchronized RuleSetCache getRuleSetCache() {
+		if(ruleSetCache == null) {
+			ruleSetCache = new RuleSetCache(new HttpRuleDao(oracleUrl),
+					ruleCacheTTL, ruleCacheSize);
+		}
+		return ruleSetCache;
+	}
+
 	public void shutdown() {
-		// no-op... yet..
+		if(ruleSetCache != null) {
+			ruleSetCache.clear();
+		}
 	}
 
 	/**
@@ -86,4 +130,49 @@ public class OracleExclusionFilterFactory implements ExclusionFilterFactory {
 		this.proxyHostPort = proxyHostPort;
 	}
 
+	/**
+	 * @return true if each query fetches rule trees once, and matches
+	 * captures against them locally
+	 */
+	public boolean isRuleSnapshot() {
+		return ruleSnapshot;
+	}
+
+	/**
+	 * @param ruleSnapshot true to fetch rule trees once per query, and cache
+	 * them across queries for ruleCacheTTL; false (default) to ask the Oracle
+	 * client about every capture
+	 */
+	public void setRuleSnapshot(boolean ruleSnapshot) {
+		this.ruleSnapshot = ruleSnapshot;
+	}
+
+	/**
+	 * @return milliseconds rule trees are cached across queries
+	 */
+	public long getRuleCacheTTL() {
+		return ruleCacheTTL;
+	}
+
+	/**
+	 * @param ruleCacheTTL milliseconds rule trees are cached across queries:
+	 * the longest time before rule changes on the Oracle are seen
+	 */
+	public void setRuleCacheTTL(long ruleCacheTTL) {
+		this.ruleCacheTTL = ruleCacheTTL;
+	}
+
+	/**
+	 * @return maximum number of rule trees cached across queries
+	 */
+	public int getRuleCacheSize() {
+		return ruleCacheSize;
+	}
+
+	/**
+	 * @param ruleCacheSize maximum number of rule trees cached across queries
+	 */
+	public void setRuleCacheSize(int ruleCacheSize) {
+		this.ruleCacheSize = ruleCacheSize;
+	}
 }
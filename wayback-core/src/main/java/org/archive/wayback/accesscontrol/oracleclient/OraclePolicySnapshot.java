@@ -0,0 +1,154 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.oracleclient;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.archive.accesscontrol.RuleOracleUnavailableException;
+import org.archive.accesscontrol.model.Rule;
+import org.archive.accesscontrol.model.RuleSet;
+import org.archive.util.ArchiveUtils;
+import org.archive.util.SURT;
+
+/**
+ * Oracle policies for the captures of one query, all evaluated as of the
+ * same retrieval date.
+ * <p>The rule tree for each URL is fetched once, through a shared
+ * {@link RuleSetCache}, and the rule matching each capture is then found
+ * locally in that tree, by SURT, capture date, retrieval date and access
+ * group, as AccessControlClient.getRule() does, instead of asking the
+ * client for every capture.</p>
+ * <p>If the Oracle cannot be reached for a URL, that is remembered, and
+ * later captures of the URL fail at once, without trying again.</p>
+ * <p>Not thread safe: use one instance per query.</p>
+ */
+public class OraclePolicySnapshot {
+	private final static int MAX_URLS = 1000;
+	private final static String SCHEME_SEPARATOR = "://";
+
+	private final RuleSetCache ruleSets;
+	private final String accessGroup;
+	private final Date retrievalDate;
+
+	private final Map<String, String> surts = new HashMap<String, String>();
+	private final Map<String, RuleSet> trees = new HashMap<String, RuleSet>();
+	private final Map<String, RuleOracleUnavailableException> failures =
+		new HashMap<String, RuleOracleUnavailableException>();
+
+	/**
+	 * @param ruleSets where to get rule trees
+	 * @param accessGroup String group to match rules against
+	 */
+	public OraclePolicySnapshot(RuleSetCache ruleSets, String accessGroup) {
+		this(ruleSets, accessGroup, new Date());
+	}
+
+	/**
+	 * @param ruleSets where to get rule trees
+	 * @param accessGroup String group to match rules against
+	 * @param retrievalDate Date of the retrieval all captures are checked for
+	 */
+	public OraclePolicySnapshot(RuleSetCache ruleSets, String accessGroup,
+			Date retrievalDate) {
+		this.ruleSets = ruleSets;
+		this.accessGroup = accessGroup;
+		this.retrievalDate = retrievalDate;
+	}
+
+	/**
+	 * @return Date of the retrieval all captures are checked for
+	 */
+	public Date getRetrievalDate() {
+		return retrievalDate;
+	}
+
+	/**
+	 * @param url original URL of a capture
+	 * @param captureDate Date of the capture
+	 * @return policy of the rule matching the capture, or null if no rule
+	 * matches
+	 * @throws RuleOracleUnavailableException if the rules for {@code url}
+	 * cannot be fetched from the Oracle
+	 */
+	public String getPolicy(String url, Date captureDate)
+			throws RuleOracleUnavailableException {
+		Rule rule = getRule(url, captureDate);
+		return (rule == null) ? null : rule.getPolicy();
+	}
+
+	/**
+	 * @param url original URL of a capture
+	 * @param captureDate Date of the capture
+	 * @return rule matching the capture, or null if no rule matches
+	 * @throws RuleOracleUnavailableException if the rules for {@code url}
+	 * cannot be fetched from the Oracle
+	 */
+	public Rule getRule(String url, Date captureDate)
+			throws RuleOracleUnavailableException {
+		String surt = surts.get(url);
+		if (surt == null) {
+			if (surts.size() >= MAX_URLS) {
+				surts.clear();
+			}
+			surt = SURT.fromURI(ArchiveUtils.addImpliedHttpIfNecessary(url));
+			surts.put(url, surt);
+		}
+		RuleSet tree = getRuleTree(publicSurt(surt));
+		return tree.getMatchingRule(surt, captureDate, retrievalDate,
+				accessGroup);
+	}
+
+	private RuleSet getRuleTree(String publicSurt)
+			throws RuleOracleUnavailableException {
+		RuleSet tree = trees.get(publicSurt);
+		if (tree != null) {
+			return tree;
+		}
+		RuleOracleUnavailableException failure = failures.get(publicSurt);
+		if (failure != null) {
+			throw failure;
+		}
+		if (trees.size() + failures.size() >= MAX_URLS) {
+			trees.clear();
+			failures.clear();
+		}
+		try {
+			tree = ruleSets.getRuleTree(publicSurt);
+		} catch (RuleOracleUnavailableException e) {
+			failures.put(publicSurt, e);
+			throw e;
+		}
+		trees.put(publicSurt, tree);
+		return tree;
+	}
+
+	/**
+	 * @return {@code surt} less its scheme, as rule trees are keyed
+	 */
+	private static String publicSurt(String surt) {
+		int idx = surt.indexOf(SCHEME_SEPARATOR);
+		if (idx >= 0) {
+			return surt.substring(idx + SCHEME_SEPARATOR.length());
+		}
+		return surt;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.oracleclient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.archive.accesscontrol.HttpRuleDao;
+import org.archive.accesscontrol.RuleDao;
+import org.archive.accesscontrol.RuleOracleUnavailableException;
+import org.archive.accesscontrol.model.RuleSet;
+
+/**
+ * Cache of the rule trees fetched from an Exclusion Oracle, shared by all the
+ * queries of an {@link OracleExclusionFilterFactory}.
+ * <p>Each rule tree is kept for {@code ttlMillis} after it is fetched, so
+ * changes to the rules on the Oracle are seen after at most that long. At
+ * most {@code maxEntries} trees are kept, least recently used first out.</p>
+ */
+public class RuleSetCache {
+	/** default time to keep a rule tree: one minute */
+	public final static long DEFAULT_TTL_MILLIS = 60 * 1000;
+	/** default number of rule trees kept */
+	public final static int DEFAULT_MAX_ENTRIES = 1000;
+
+	private final RuleDao ruleDao;
+	private final long ttlMillis;
+	private final Map<String, Entry> entries;
+
+	private static class Entry {
+		final RuleSet rules;
+		final long expires;
+		Entry(RuleSet rules, long expires) {
+			this.rules = rules;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * @param oracleUrl String URL prefix for the Oracle HTTP server
+	 */
+	public RuleSetCache(String oracleUrl) {
+		this(new HttpRuleDao(oracleUrl), DEFAULT_TTL_MILLIS,
+				DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param ruleDao where to fetch rule trees
+	 * @param ttlMillis how long to keep each rule tree, in milliseconds
+	 * @param maxEntries maximum number of rule trees kept
+	 */
+	public RuleSetCache(RuleDao ruleDao, long ttlMillis, final int maxEntries) {
+		this.ruleDao = ruleDao;
+		this.ttlMillis = ttlMillis;
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> e) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param surt public SURT, without scheme, of a URL
+	 * @return rule tree holding all rules which may apply to {@code surt}
+	 * @throws RuleOracleUnavailableException if the tree is not cached, and
+	 * cannot be fetched from the Oracle
+	 */
+	public RuleSet getRuleTree(String surt)
+			throws RuleOracleUnavailableException {
+		long now = System.currentTimeMillis();
+		synchronized (entries) {
+			Entry entry = entries.get(surt);
+			if (entry != null && entry.expires > now) {
+				return entry.rules;
+			}
+		}
+		// fetched outside the lock, so one slow fetch does not hold up
+		// queries for other URLs:
+		RuleSet rules = ruleDao.getRuleTree(surt);
+		synchronized (entries) {
+			entries.put(surt, new Entry(rules, now + ttlMillis));
+		}
+		return rules;
+	}
+
+	/**
+	 * drop all cached rule trees
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+}
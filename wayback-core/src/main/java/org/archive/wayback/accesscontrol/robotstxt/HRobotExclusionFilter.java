@@ -63,7 +63,7 @@ public class HRobotExclusionFilter extends ExclusionFilter {
 		List<String> missing = aggregation.getMissingRobotUrls(host);
 		for(String robotUrl : missing) {
 			long start = System.currentTimeMillis();
-			Resource resource;
+			Resource resource = null;
 			try {
 				resource = webCache.getCachedResource(new URL(robotUrl),
 						0,true);
@@ -85,6 +85,11 @@ public class HRobotExclusionFilter extends ExclusionFilter {
 				}
 				// consider it an allow:
 				aggregation.addDirectives(robotUrl, ALLOW_ROBOT_DIRECTIVE);
+			} finally {
+				// large documents hold a live web connection until closed:
+				if(resource != null) {
+					resource.close();
+				}
 			}
 			long elapsed = System.currentTimeMillis() - start;
 			PerformanceLogger.noteElapsed("RobotRequest", elapsed, robotUrl);
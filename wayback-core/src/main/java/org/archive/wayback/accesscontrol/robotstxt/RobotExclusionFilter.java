@@ -39,6 +39,8 @@ import org.archive.wayback.exception.LiveWebTimeoutException;
 import org.archive.wayback.liveweb.LiveWebCache;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.archive.wayback.util.ObjectFilter;
+import org.archive.wayback.util.metrics.Stage;
+import org.archive.wayback.util.metrics.StageMetrics;
 import org.archive.wayback.util.url.UrlOperations;
 import org.archive.wayback.webapp.PerfStats;
 
@@ -297,6 +299,7 @@ public class RobotExclusionFilter extends ExclusionFilter {
 	public int filterObject(CaptureSearchResult r) {
 		int filterResult = ObjectFilter.FILTER_EXCLUDE; 
 		
+		long start = StageMetrics.start();
 		try {
 			PerfStats.timeStart(PerfStat.RobotsTotal);
 			
@@ -351,6 +354,7 @@ public class RobotExclusionFilter extends ExclusionFilter {
 			pathsCache.put(r.getUrlKey(), filterResult);
 		} finally {
 			PerfStats.timeEnd(PerfStat.RobotsTotal, false);
+			StageMetrics.end(Stage.ROBOTS, start);
 		}
 		
 		return filterResult;
@@ -0,0 +1,188 @@
+package org.archive.wayback.accesscontrol.robotstxt.redis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.wayback.accesscontrol.robotstxt.redis.RedisRobotsLogic.KeyRedisValue;
+import org.archive.wayback.exception.LiveWebCacheUnavailableException;
+
+/**
+ * SimpleRedisRobotsCache which keeps robots.txt in a local
+ * {@link DiskRobotsStore} file instead of Redis, for deployments which
+ * cannot run Redis.
+ * <p>Lookups, expiry and refresh work as with Redis: values expire after
+ * {@code totalTTL}, and after {@code refreshTTL} a lookup queues the URL for
+ * refresh. Unlike with Redis, where a separate {@link RedisRefresher}
+ * process refreshes queued URLs, {@code refreshThreads} threads of this
+ * cache do it. Another thread compacts the store file every
+ * {@code compactIntervalMS}, if enough of it is replaced or expired
+ * values.</p>
+ * <p>{@link #init()} must be called before use. The store file may be used
+ * by one process only.</p>
+ */
+public class DiskRobotsCache extends SimpleRedisRobotsCache {
+	private final static Logger LOGGER =
+		Logger.getLogger(DiskRobotsCache.class.getName());
+
+	private String storeFile = null;
+	private int refreshThreads = 2;
+	private long compactIntervalMS = 60 * 60 * 1000;
+	private long minCompactBytes = 1024 * 1024;
+
+	private DiskRobotsStore store = null;
+	private List<Thread> threads = new ArrayList<Thread>();
+	private volatile boolean running = false;
+
+	/**
+	 * Open the store file, and start the refresh and compaction threads.
+	 * @throws IOException if the store file cannot be opened
+	 */
+	public synchronized void init() throws IOException {
+		if (storeFile == null) {
+			throw new IOException("storeFile is not set");
+		}
+		store = new DiskRobotsStore(new File(storeFile));
+		store.setMinCompactBytes(minCompactBytes);
+		store.open();
+		redisCmds = new DiskRobotsLogic(store);
+		running = true;
+		for (int i = 0; i < refreshThreads; i++) {
+			startThread("DiskRobotsRefresher-" + (i + 1), new Refresher());
+		}
+		if (compactIntervalMS > 0) {
+			startThread("DiskRobotsCompactor", new Compactor());
+		}
+	}
+
+	private void startThread(String name, Runnable r) {
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		t.start();
+		threads.add(t);
+	}
+
+	/**
+	 * Refreshes URLs queued by lookups, as RedisRefresher does for Redis.
+	 */
+	private class Refresher implements Runnable {
+		public void run() {
+			while (running) {
+				KeyRedisValue value = null;
+				try {
+					value = redisCmds.popKeyAndGet(UPDATE_QUEUE_KEY);
+				} catch (LiveWebCacheUnavailableException e) {
+					continue;
+				} catch (Exception e) {
+					LOGGER.log(Level.SEVERE, "Robots refresh failed", e);
+					continue;
+				}
+				if ((value == null) || !isExpired(value, value.key, 0)) {
+					continue;
+				}
+				try {
+					RobotsResult result = forceUpdate(value.key, 0, true);
+					if (LOGGER.isLoggable(Level.FINE)) {
+						LOGGER.fine((!result.isSameRobots() ? "UPDATE " :
+							"NOCHANGE ") + value.key);
+					}
+				} catch (Exception e) {
+					LOGGER.log(Level.WARNING, "Robots refresh failed for " +
+							value.key, e);
+				}
+			}
+		}
+	}
+
+	private class Compactor implements Runnable {
+		public void run() {
+			while (running) {
+				try {
+					Thread.sleep(compactIntervalMS);
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					store.compactIfNeeded();
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Robots store compaction failed",
+							e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		running = false;
+		for (Thread t : threads) {
+			t.interrupt();
+		}
+		for (Thread t : threads) {
+			try {
+				t.join(10000);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		threads.clear();
+		super.shutdown();
+	}
+
+	/**
+	 * @return the store robots.txt are kept in, or null before init()
+	 */
+	public DiskRobotsStore getStore() {
+		return store;
+	}
+
+	public String getStoreFile() {
+		return storeFile;
+	}
+
+	/**
+	 * @param storeFile path of the store file, created if it does not exist
+	 */
+	public void setStoreFile(String storeFile) {
+		this.storeFile = storeFile;
+	}
+
+	public int getRefreshThreads() {
+		return refreshThreads;
+	}
+
+	/**
+	 * @param refreshThreads number of threads refreshing queued URLs, 0 for
+	 * no refresh: values are fetched again only after they expire
+	 */
+	public void setRefreshThreads(int refreshThreads) {
+		this.refreshThreads = refreshThreads;
+	}
+
+	public long getCompactIntervalMS() {
+		return compactIntervalMS;
+	}
+
+	/**
+	 * @param compactIntervalMS milliseconds between checks whether the store
+	 * file needs compaction, 0 to never compact
+	 */
+	public void setCompactIntervalMS(long compactIntervalMS) {
+		this.compactIntervalMS = compactIntervalMS;
+	}
+
+	public long getMinCompactBytes() {
+		return minCompactBytes;
+	}
+
+	/**
+	 * @param minCompactBytes bytes of replaced and expired values below which
+	 * the store file is not compacted
+	 */
+	public void setMinCompactBytes(long minCompactBytes) {
+		this.minCompactBytes = minCompactBytes;
+	}
+}
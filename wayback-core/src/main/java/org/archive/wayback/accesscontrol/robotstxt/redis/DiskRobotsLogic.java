@@ -0,0 +1,126 @@
+package org.archive.wayback.accesscontrol.robotstxt.redis;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.wayback.exception.LiveWebCacheUnavailableException;
+
+/**
+ * RedisRobotsLogic backed by a {@link DiskRobotsStore} instead of Redis, so
+ * {@link SimpleRedisRobotsCache} can run without a Redis server.
+ * <p>Values and TTLs are kept as Redis would keep them, so expiry and
+ * refresh work as with Redis. The update queue is held in memory, skipping
+ * keys which are already queued.</p>
+ */
+public class DiskRobotsLogic extends RedisRobotsLogic {
+	private final static Logger LOGGER =
+		Logger.getLogger(DiskRobotsLogic.class.getName());
+
+	private final DiskRobotsStore store;
+
+	private final LinkedBlockingQueue<String> updateQueue =
+		new LinkedBlockingQueue<String>();
+	private final ConcurrentHashMap<String, Boolean> queued =
+		new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * @param store opened DiskRobotsStore
+	 */
+	public DiskRobotsLogic(DiskRobotsStore store) {
+		super(null);
+		this.store = store;
+	}
+
+	@Override
+	public RedisValue getValue(String key)
+			throws LiveWebCacheUnavailableException {
+		try {
+			return store.get(key);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Robots store read failed", e);
+			throw new LiveWebCacheUnavailableException(key);
+		}
+	}
+
+	@Override
+	public List<RedisValue> getValue(String[] keys)
+			throws LiveWebCacheUnavailableException {
+		List<RedisValue> values = new LinkedList<RedisValue>();
+		for (String key : keys) {
+			values.add(getValue(key));
+		}
+		return values;
+	}
+
+	@Override
+	public void updateValue(String url, RedisValue value, boolean gzip) {
+		try {
+			if (value.value == null) {
+				store.expire(url, (int) value.ttl);
+			} else {
+				store.put(url, value.value, (int) value.ttl);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Robots store write failed", e);
+		}
+	}
+
+	@Override
+	public void pushKey(String list, String key) {
+		pushKey(list, key, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void pushKey(String list, String key, int maxSize) {
+		if ((updateQueue.size() < maxSize) &&
+				(queued.putIfAbsent(key, Boolean.TRUE) == null)) {
+			updateQueue.add(key);
+		}
+	}
+
+	@Override
+	public KeyRedisValue popKeyAndGet(String list)
+			throws LiveWebCacheUnavailableException {
+		String key;
+		try {
+			key = updateQueue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LiveWebCacheUnavailableException(list);
+		}
+		queued.remove(key);
+		RedisValue value = getValue(key);
+		if (value == null) {
+			return null;
+		}
+		return new KeyRedisValue(key, value.value, value.ttl);
+	}
+
+	@Override
+	public void close() {
+		try {
+			store.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Robots store close failed", e);
+		}
+	}
+
+	@Override
+	public void appendLogInfo(PrintWriter info) {
+		store.appendLogInfo(info);
+		info.println("Robots update queue: " + updateQueue.size());
+	}
+
+	/**
+	 * @return the store values are kept in
+	 */
+	public DiskRobotsStore getStore() {
+		return store;
+	}
+}
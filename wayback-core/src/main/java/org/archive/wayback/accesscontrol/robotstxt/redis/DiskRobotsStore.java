@@ -0,0 +1,548 @@
+package org.archive.wayback.accesscontrol.robotstxt.redis;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.wayback.accesscontrol.robotstxt.redis.RedisRobotsLogic.RedisValue;
+
+/**
+ * Log-structured file of robots.txt values, with an in-memory hash index of
+ * the latest record of each key, for use in place of Redis by
+ * {@link DiskRobotsLogic}.
+ * <p>Each value is appended to the file as a record holding the key, the
+ * expiry time and the value, gzip compressed unless it is very short. TTL-only
+ * updates append a short record without the value. A torn record at the end
+ * of the file, such as one written during a crash, is cut off when the file
+ * is opened.</p>
+ * <p>Lookups read records with positional reads, and run concurrently with
+ * each other and with appends. {@link #compact()} rewrites the file with the
+ * live records only; lookups keep using the old file until the new one is
+ * swapped in.</p>
+ */
+public class DiskRobotsStore {
+	private final static Logger LOGGER =
+		Logger.getLogger(DiskRobotsStore.class.getName());
+
+	private final static int MAGIC = 0x52424f54;
+	private final static int TOUCH_LENGTH = -1;
+	private final static byte FLAG_GZIP = 1;
+	// magic, key length, value length, flags, expiry
+	private final static int HEADER_SIZE = 4 + 4 + 4 + 1 + 8;
+	private final static int CRC_SIZE = 4;
+	private final static int MAX_KEY_LENGTH = 64 * 1024;
+	private final static int MAX_VALUE_LENGTH = 16 * 1024 * 1024;
+	private final static int MIN_GZIP_SIZE = 20;
+
+	/**
+	 * Location and expiry of the latest record of a key.
+	 */
+	private static class Slot {
+		final long offset;
+		final int length;
+		final long expiresAt;
+
+		Slot(long offset, int length, long expiresAt) {
+			this.offset = offset;
+			this.length = length;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final File file;
+
+	private long minCompactBytes = 1024 * 1024;
+
+	private volatile ConcurrentHashMap<String, Slot> index = null;
+	private RandomAccessFile raf = null;
+	private FileChannel channel = null;
+	private volatile long writePosition = 0;
+
+	// held for reading by lookups, for writing while the file is swapped:
+	private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+	// serializes appends and compaction:
+	private final Object writeMutex = new Object();
+
+	/**
+	 * @param file the log file, created if it does not exist
+	 */
+	public DiskRobotsStore(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Open the log file, and build the index from its records.
+	 * @throws IOException if the file cannot be opened or read
+	 */
+	public void open() throws IOException {
+		synchronized (writeMutex) {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if ((dir != null) && !dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Unable to create " + dir);
+			}
+			ConcurrentHashMap<String, Slot> loaded =
+				new ConcurrentHashMap<String, Slot>();
+			long validLength = file.exists() ? load(loaded) : 0;
+			RandomAccessFile newRaf = new RandomAccessFile(file, "rw");
+			if (newRaf.length() > validLength) {
+				LOGGER.warning("Truncating " + file + " from " +
+						newRaf.length() + " to " + validLength +
+						" bytes: incomplete record");
+				newRaf.setLength(validLength);
+			}
+			swapLock.writeLock().lock();
+			try {
+				index = loaded;
+				raf = newRaf;
+				channel = newRaf.getChannel();
+				writePosition = validLength;
+			} finally {
+				swapLock.writeLock().unlock();
+			}
+			LOGGER.info("Opened " + file + ": " + loaded.size() +
+					" robots, " + validLength + " bytes");
+		}
+	}
+
+	/**
+	 * Read all records of the file into {@code into}
+	 * @return length of the file up to the first incomplete record
+	 */
+	private long load(Map<String, Slot> into) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 64 * 1024));
+		long position = 0;
+		try {
+			while (true) {
+				int length = readRecord(in, position, into);
+				if (length < 0) {
+					break;
+				}
+				position += length;
+			}
+		} finally {
+			in.close();
+		}
+		return position;
+	}
+
+	/**
+	 * @return length of the record, or -1 at the end of the file or at an
+	 * incomplete or damaged record
+	 */
+	private static int readRecord(DataInputStream in, long position,
+			Map<String, Slot> into) throws IOException {
+		try {
+			if (in.readInt() != MAGIC) {
+				return -1;
+			}
+			int keyLength = in.readInt();
+			int valueLength = in.readInt();
+			byte flags = in.readByte();
+			long expiresAt = in.readLong();
+			if ((keyLength < 0) || (keyLength > MAX_KEY_LENGTH) ||
+					(valueLength < TOUCH_LENGTH) ||
+					(valueLength > MAX_VALUE_LENGTH)) {
+				return -1;
+			}
+			byte[] body = new byte[keyLength + Math.max(0, valueLength)];
+			in.readFully(body);
+			int crc = in.readInt();
+			if (crc != checksum(keyLength, valueLength, flags, expiresAt,
+					body)) {
+				return -1;
+			}
+			String key = new String(body, 0, keyLength,
+					RedisRobotsLogic.UTF8);
+			int length = HEADER_SIZE + body.length + CRC_SIZE;
+			if (valueLength == TOUCH_LENGTH) {
+				Slot slot = into.get(key);
+				if (slot != null) {
+					into.put(key, new Slot(slot.offset, slot.length,
+							expiresAt));
+				}
+			} else {
+				into.put(key, new Slot(position, length, expiresAt));
+			}
+			return length;
+		} catch (EOFException e) {
+			return -1;
+		}
+	}
+
+	private static int checksum(int keyLength, int valueLength, byte flags,
+			long expiresAt, byte[] body) {
+		CRC32 crc = new CRC32();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE - 4);
+		header.putInt(keyLength).putInt(valueLength).put(flags);
+		header.putLong(expiresAt);
+		crc.update(header.array());
+		crc.update(body);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] makeRecord(String key, byte[] value, byte flags,
+			long expiresAt) throws IOException {
+		byte[] keyBytes = key.getBytes(RedisRobotsLogic.UTF8);
+		int valueLength = (value == null) ? TOUCH_LENGTH : value.length;
+		byte[] body = new byte[keyBytes.length + Math.max(0, valueLength)];
+		System.arraycopy(keyBytes, 0, body, 0, keyBytes.length);
+		if (value != null) {
+			System.arraycopy(value, 0, body, keyBytes.length, value.length);
+		}
+		ByteArrayOutputStream buff = new ByteArrayOutputStream(HEADER_SIZE +
+				body.length + CRC_SIZE);
+		DataOutputStream out = new DataOutputStream(buff);
+		out.writeInt(MAGIC);
+		out.writeInt(keyBytes.length);
+		out.writeInt(valueLength);
+		out.writeByte(flags);
+		out.writeLong(expiresAt);
+		out.write(body);
+		out.writeInt(checksum(keyBytes.length, valueLength, flags, expiresAt,
+				body));
+		out.flush();
+		return buff.toByteArray();
+	}
+
+	/**
+	 * @param key the robots.txt URL
+	 * @return value and remaining TTL in seconds, or null if there is no
+	 * value, or it has expired
+	 * @throws IOException if the file cannot be read
+	 */
+	public RedisValue get(String key) throws IOException {
+		byte[] record;
+		long expiresAt;
+		swapLock.readLock().lock();
+		try {
+			if (channel == null) {
+				throw new IOException("Store " + file + " is not open");
+			}
+			Slot slot = index.get(key);
+			if (slot == null) {
+				return null;
+			}
+			expiresAt = slot.expiresAt;
+			if (expiresAt <= System.currentTimeMillis()) {
+				return null;
+			}
+			record = new byte[slot.length];
+			readFully(channel, ByteBuffer.wrap(record), slot.offset);
+		} finally {
+			swapLock.readLock().unlock();
+		}
+		String value = decodeValue(key, record);
+		if (value == null) {
+			return null;
+		}
+		long ttl = (expiresAt - System.currentTimeMillis()) / 1000;
+		return new RedisValue(value, Math.max(0, ttl));
+	}
+
+	private String decodeValue(String key, byte[] record) throws IOException {
+		ByteBuffer buff = ByteBuffer.wrap(record);
+		int keyLength = buff.getInt(4);
+		int valueLength = buff.getInt(8);
+		byte flags = buff.get(12);
+		long expiresAt = buff.getLong(13);
+		if ((buff.getInt(0) != MAGIC) || (keyLength < 0) ||
+				(valueLength < 0) ||
+				(HEADER_SIZE + keyLength + valueLength + CRC_SIZE !=
+					record.length)) {
+			LOGGER.warning("Damaged robots record for " + key + " in " + file);
+			return null;
+		}
+		byte[] body = new byte[keyLength + valueLength];
+		System.arraycopy(record, HEADER_SIZE, body, 0, body.length);
+		if (buff.getInt(HEADER_SIZE + body.length) !=
+				checksum(keyLength, valueLength, flags, expiresAt, body)) {
+			LOGGER.warning("Bad checksum for robots record of " + key +
+					" in " + file);
+			return null;
+		}
+		if ((flags & FLAG_GZIP) == 0) {
+			return new String(body, keyLength, valueLength,
+					RedisRobotsLogic.UTF8);
+		}
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(body,
+				keyLength, valueLength));
+		ByteArrayOutputStream out = new ByteArrayOutputStream(
+				valueLength * 4);
+		byte[] buf = new byte[4096];
+		int read;
+		while ((read = in.read(buf)) != -1) {
+			out.write(buf, 0, read);
+		}
+		return out.toString(RedisRobotsLogic.UTF8);
+	}
+
+	private static byte[] gzip(byte[] array) throws IOException {
+		ByteArrayOutputStream buff = new ByteArrayOutputStream(array.length + 8);
+		GZIPOutputStream stream = new GZIPOutputStream(buff) {
+			{
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		};
+		stream.write(array);
+		stream.finish();
+		return buff.toByteArray();
+	}
+
+	/**
+	 * Store {@code value} for {@code key}, expiring in {@code ttl} seconds
+	 * @param key the robots.txt URL
+	 * @param value robots.txt contents, or one of the SimpleRedisRobotsCache
+	 * tokens
+	 * @param ttl seconds until the value expires
+	 * @throws IOException if the value cannot be written
+	 */
+	public void put(String key, String value, int ttl) throws IOException {
+		byte[] bytes = value.getBytes(RedisRobotsLogic.UTF8);
+		byte flags = 0;
+		if (bytes.length >= MIN_GZIP_SIZE) {
+			bytes = gzip(bytes);
+			flags = FLAG_GZIP;
+		}
+		long expiresAt = System.currentTimeMillis() + (ttl * 1000L);
+		byte[] record = makeRecord(key, bytes, flags, expiresAt);
+		synchronized (writeMutex) {
+			long offset = append(record);
+			index.put(key, new Slot(offset, record.length, expiresAt));
+		}
+	}
+
+	/**
+	 * Set the expiry of the value of {@code key}, if it has one, to
+	 * {@code ttl} seconds from now
+	 * @param key the robots.txt URL
+	 * @param ttl seconds until the value expires
+	 * @return false if there is no value for {@code key}
+	 * @throws IOException if the update cannot be written
+	 */
+	public boolean expire(String key, int ttl) throws IOException {
+		long expiresAt = System.currentTimeMillis() + (ttl * 1000L);
+		byte[] record = makeRecord(key, null, (byte) 0, expiresAt);
+		synchronized (writeMutex) {
+			Slot slot = index.get(key);
+			if ((slot == null) ||
+					(slot.expiresAt <= System.currentTimeMillis())) {
+				return false;
+			}
+			append(record);
+			index.put(key, new Slot(slot.offset, slot.length, expiresAt));
+		}
+		return true;
+	}
+
+	// call with writeMutex held
+	private long append(byte[] record) throws IOException {
+		if (channel == null) {
+			throw new IOException("Store " + file + " is not open");
+		}
+		long offset = writePosition;
+		ByteBuffer buff = ByteBuffer.wrap(record);
+		while (buff.hasRemaining()) {
+			channel.write(buff, offset + buff.position());
+		}
+		writePosition += record.length;
+		return offset;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buff,
+			long offset) throws IOException {
+		while (buff.hasRemaining()) {
+			if (channel.read(buff, offset + buff.position()) < 0) {
+				throw new EOFException("Unexpected end of robots store");
+			}
+		}
+	}
+
+	/**
+	 * @return bytes of the file which do not hold a live value
+	 */
+	public long getGarbageBytes() {
+		long now = System.currentTimeMillis();
+		long live = 0;
+		swapLock.readLock().lock();
+		try {
+			if (index == null) {
+				return 0;
+			}
+			for (Slot slot : index.values()) {
+				if (slot.expiresAt > now) {
+					live += slot.length;
+				}
+			}
+			return writePosition - live;
+		} finally {
+			swapLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Compact the file if at least half of it, and at least
+	 * {@code minCompactBytes}, is garbage
+	 * @return true if the file was compacted
+	 * @throws IOException if compaction failed
+	 */
+	public boolean compactIfNeeded() throws IOException {
+		long garbage = getGarbageBytes();
+		if ((garbage < minCompactBytes) || (garbage * 2 < writePosition)) {
+			return false;
+		}
+		compact();
+		return true;
+	}
+
+	/**
+	 * Rewrite the file with the live values only, dropping replaced and
+	 * expired ones. Lookups continue during compaction, updates wait.
+	 * @throws IOException if compaction failed, in which case the current
+	 * file remains in use
+	 */
+	public void compact() throws IOException {
+		synchronized (writeMutex) {
+			if (channel == null) {
+				throw new IOException("Store " + file + " is not open");
+			}
+			long startTime = System.currentTimeMillis();
+			long oldLength = writePosition;
+			File tmp = new File(file.getPath() + ".compact");
+			ConcurrentHashMap<String, Slot> compacted =
+				new ConcurrentHashMap<String, Slot>();
+			RandomAccessFile newRaf = new RandomAccessFile(tmp, "rw");
+			boolean swapped = false;
+			try {
+				newRaf.setLength(0);
+				FileChannel newChannel = newRaf.getChannel();
+				long position = 0;
+				long now = System.currentTimeMillis();
+				for (Map.Entry<String, Slot> e : index.entrySet()) {
+					Slot slot = e.getValue();
+					if (slot.expiresAt <= now) {
+						continue;
+					}
+					byte[] record = new byte[slot.length];
+					readFully(channel, ByteBuffer.wrap(record), slot.offset);
+					ByteBuffer buff = ByteBuffer.wrap(record);
+					// fold TTL-only updates into the record:
+					buff.putLong(13, slot.expiresAt);
+					int keyLength = buff.getInt(4);
+					int valueLength = buff.getInt(8);
+					byte[] body = new byte[keyLength + valueLength];
+					System.arraycopy(record, HEADER_SIZE, body, 0, body.length);
+					buff.putInt(HEADER_SIZE + body.length, checksum(keyLength,
+							valueLength, buff.get(12), slot.expiresAt, body));
+					buff.rewind();
+					while (buff.hasRemaining()) {
+						newChannel.write(buff, position + buff.position());
+					}
+					compacted.put(e.getKey(), new Slot(position, record.length,
+							slot.expiresAt));
+					position += record.length;
+				}
+				newChannel.force(true);
+				if (!tmp.renameTo(file)) {
+					throw new IOException("Unable to rename " + tmp + " to " +
+							file);
+				}
+				RandomAccessFile oldRaf;
+				swapLock.writeLock().lock();
+				try {
+					oldRaf = raf;
+					index = compacted;
+					raf = newRaf;
+					channel = newChannel;
+					writePosition = position;
+					swapped = true;
+				} finally {
+					swapLock.writeLock().unlock();
+				}
+				oldRaf.close();
+				if (LOGGER.isLoggable(Level.INFO)) {
+					LOGGER.info("Compacted " + file + " from " + oldLength +
+							" to " + position + " bytes, " + compacted.size() +
+							" robots, in " +
+							(System.currentTimeMillis() - startTime) + "ms");
+				}
+			} finally {
+				if (!swapped) {
+					newRaf.close();
+					tmp.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flush and close the file.
+	 * @throws IOException if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		synchronized (writeMutex) {
+			swapLock.writeLock().lock();
+			try {
+				if (raf != null) {
+					channel.force(true);
+					raf.close();
+				}
+				raf = null;
+				channel = null;
+			} finally {
+				swapLock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return number of keys with a value, expired ones included until the
+	 * next compaction
+	 */
+	public int size() {
+		ConcurrentHashMap<String, Slot> current = index;
+		return (current == null) ? 0 : current.size();
+	}
+
+	public void appendLogInfo(PrintWriter info) {
+		info.println("Robots store " + file + ": " + size() + " robots, " +
+				writePosition + " bytes, " + getGarbageBytes() + " garbage");
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getMinCompactBytes() {
+		return minCompactBytes;
+	}
+
+	/**
+	 * @param minCompactBytes garbage bytes below which
+	 * {@link #compactIfNeeded()} does not compact
+	 */
+	public void setMinCompactBytes(long minCompactBytes) {
+		this.minCompactBytes = minCompactBytes;
+	}
+}
@@ -35,15 +35,18 @@ import org.archive.wayback.ResultURIConverter;
 import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.accesscontrol.CompositeExclusionFilterFactory;
 import org.archive.wayback.accesscontrol.ExclusionFilterFactory;
-import org.archive.wayback.accesscontrol.oracleclient.CustomPolicyOracleFilter;
+import org.archive.wayback.accesscontrol.oracleclient.CustomPolicyOracleFilterFactory;
 import org.archive.wayback.accesspoint.proxy.ProxyAccessPoint;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.cache.ReplayCache;
 import org.archive.wayback.replay.html.ContextResultURIConverterFactory;
-import org.archive.wayback.resourceindex.filters.ExclusionFilter;
+import org.archive.wayback.replay.template.InsertTemplateRegistry;
+import org.archive.wayback.resourceindex.RevisitPayloadCache;
 import org.archive.wayback.util.operator.BooleanOperator;
 import org.archive.wayback.webapp.AccessPoint;
 import org.archive.wayback.webapp.CustomResultFilterFactory;
 import org.archive.wayback.webapp.LiveWebRedirector;
+import org.archive.wayback.webapp.StageExecutor;
 import org.archive.wayback.webapp.WaybackCollection;
 
 /**
@@ -58,22 +61,13 @@ public class AccessPointAdapter extends AccessPoint {
 	
 	private CompositeAccessPoint composite;
 	private AccessPointConfig config;
-	private ExclusionFilterFactory exclusionFactory;
-	private ResultURIConverter cacheUriConverter;
+	private volatile ExclusionFilterFactory exclusionFactory;
+	private volatile ResultURIConverter cacheUriConverter;
+	private volatile RevisitPayloadCache revisitPayloadCache;
 	private Properties props = null;
 	
 	private boolean switchable = false;
 	
-	private class DynamicExclusionFactory implements ExclusionFilterFactory {
-		public ExclusionFilter get() {
-			return new CustomPolicyOracleFilter(composite.getOracleUrl(),
-					config.getBeanName(), null);
-		}
-
-		public void shutdown() {
-		}
-	}
-	
 	public AccessPointAdapter(CompositeAccessPoint baseAccessPoint,
 			AccessPointConfig config) {
 		this.composite = baseAccessPoint;
@@ -160,11 +154,30 @@ public class AccessPointAdapter extends AccessPoint {
 			return null;
 		}
 
-		if (exclusionFactory == null) {
-			exclusionFactory = buildExclusionFactory();
+		ExclusionFilterFactory factory = exclusionFactory;
+		if (factory == null) {
+			synchronized (this) {
+				factory = exclusionFactory;
+				if (factory == null) {
+					factory = buildExclusionFactory();
+					exclusionFactory = factory;
+				}
+			}
 		}
 
-		return exclusionFactory;
+		return factory;
+	}
+
+	/**
+	 * @return factory of Oracle filters for this collection, sharing the
+	 * composite's cache of Oracle rules
+	 */
+	protected ExclusionFilterFactory buildOracleExclusionFactory() {
+		CustomPolicyOracleFilterFactory factory = new CustomPolicyOracleFilterFactory();
+		factory.setOracleUrl(composite.getOracleUrl());
+		factory.setAccessGroup(config.getBeanName());
+		factory.setRuleSetCache(composite.getOracleRuleSetCache());
+		return factory;
 	}
 
 	protected ExclusionFilterFactory buildExclusionFactory() {
@@ -172,13 +185,13 @@ public class AccessPointAdapter extends AccessPoint {
 				.getStaticExclusions();
 
 		if (staticExclusions == null) {
-			return new DynamicExclusionFactory();
+			return buildOracleExclusionFactory();
 		} else {
 			CompositeExclusionFilterFactory factory = new CompositeExclusionFilterFactory();
 			ArrayList<ExclusionFilterFactory> allExclusions = new ArrayList<ExclusionFilterFactory>();
 			allExclusions.addAll(staticExclusions);
 			if (composite.getOracleUrl() != null) {
-				allExclusions.add(new DynamicExclusionFactory());
+				allExclusions.add(buildOracleExclusionFactory());
 			}
 			factory.setFactories(allExclusions);
 			return factory;
@@ -380,4 +393,49 @@ public class AccessPointAdapter extends AccessPoint {
 	public int getQueryCollapseTime() {
 		return composite.getQueryCollapseTime();
 	}
+
+	@Override
+	public StageExecutor getIndexStage() {
+		return composite.getIndexStage();
+	}
+
+	@Override
+	public StageExecutor getFetchStage() {
+		return composite.getFetchStage();
+	}
+
+	@Override
+	public ReplayCache getReplayCache() {
+		return composite.getReplayCache();
+	}
+
+	@Override
+	public InsertTemplateRegistry getInsertTemplates() {
+		return composite.getInsertTemplates();
+	}
+
+	/**
+	 * Each collection gets a cache of its own, sized like the composite's,
+	 * if the composite has one: payload locations seen by one collection
+	 * must not resolve revisits in another.
+	 */
+	@Override
+	public RevisitPayloadCache getRevisitPayloadCache() {
+		RevisitPayloadCache cache = revisitPayloadCache;
+		if (cache == null) {
+			RevisitPayloadCache template = composite.getRevisitPayloadCache();
+			if (template == null) {
+				return null;
+			}
+			synchronized (this) {
+				cache = revisitPayloadCache;
+				if (cache == null) {
+					cache = new RevisitPayloadCache();
+					cache.setMaxEntries(template.getMaxEntries());
+					revisitPayloadCache = cache;
+				}
+			}
+		}
+		return cache;
+	}
 }
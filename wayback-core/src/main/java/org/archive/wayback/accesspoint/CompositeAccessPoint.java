@@ -22,8 +22,9 @@ package org.archive.wayback.accesspoint;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -31,6 +32,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.archive.wayback.ResultURIConverter;
 import org.archive.wayback.accesscontrol.ExclusionFilterFactory;
+import org.archive.wayback.accesscontrol.oracleclient.RuleSetCache;
 import org.archive.wayback.replay.html.ContextResultURIConverterFactory;
 import org.archive.wayback.webapp.AccessPoint;
 
@@ -46,11 +48,11 @@ public class CompositeAccessPoint extends AccessPoint {
 		ConfigNotHandled,
 	}
 	
-	private HashMap<String, AccessPointAdapter> accessPointCache;
+	private final ConcurrentMap<String, AccessPointAdapter> accessPointCache;
 	
 	public CompositeAccessPoint()
 	{
-		accessPointCache = new HashMap<String, AccessPointAdapter>();
+		accessPointCache = new ConcurrentHashMap<String, AccessPointAdapter>();
 	}
 	
 	@Override
@@ -84,17 +86,7 @@ public class CompositeAccessPoint extends AccessPoint {
 			HttpServletResponse response) throws ServletException,
 			IOException {
 		
-		// First, check cached accessPoint
-		AccessPointAdapter adapter = accessPointCache.get(realAccessPoint);
-		
-		if ((adapter == null) && (accessPointConfigs != null)) {		
-			AccessPointConfig config = accessPointConfigs.getAccessPointConfigs().get(realAccessPoint);
-		
-			if (config != null) {
-				adapter = new AccessPointAdapter(this, config);
-				accessPointCache.put(realAccessPoint, adapter);
-			}
-		}
+		AccessPointAdapter adapter = getAdapter(realAccessPoint);
 		
 		if (adapter == null) {
 			return Status.ConfigNotFound;			
@@ -104,7 +96,45 @@ public class CompositeAccessPoint extends AccessPoint {
 		return (handled ? Status.ConfigHandled : Status.ConfigNotHandled);
 	}
 	
+	/**
+	 * Get the adapter for a config, from the cache if its config is
+	 * unchanged. A new adapter, with its filter plan and exclusion factory
+	 * built afresh, replaces the cached one when the config has been
+	 * replaced, and is dropped when the config has been removed.
+	 * @param name name of the config
+	 * @return AccessPointAdapter, or null if there is no such config
+	 */
+	protected AccessPointAdapter getAdapter(String name) {
+		AccessPointAdapter adapter = accessPointCache.get(name);
+		AccessPointConfigs configs = accessPointConfigs;
+		if (configs == null) {
+			return adapter;
+		}
+		AccessPointConfig config = configs.getAccessPointConfigs().get(name);
+		if ((adapter != null) && (adapter.getAccessPointConfig() == config)) {
+			return adapter;
+		}
+		if (config == null) {
+			accessPointCache.remove(name, adapter);
+			return null;
+		}
+		AccessPointAdapter fresh = new AccessPointAdapter(this, config);
+		if (adapter == null) {
+			adapter = accessPointCache.putIfAbsent(name, fresh);
+			if (adapter == null) {
+				return fresh;
+			}
+			if (adapter.getAccessPointConfig() == config) {
+				// built by another request
+				return adapter;
+			}
+		}
+		accessPointCache.replace(name, adapter, fresh);
+		return fresh;
+	}
+	
 	private String oracleUrl;
+	private RuleSetCache oracleRuleSetCache;
 	private ArrayList<ExclusionFilterFactory> staticExclusions;
 	
 	// Refactoring: move uriConverterFactory and getUriConverterFactory() to
@@ -137,7 +167,7 @@ public class CompositeAccessPoint extends AccessPoint {
 		this.staticExclusions = staticExclusions;
 	}
 	
-	private AccessPointConfigs accessPointConfigs;
+	private volatile AccessPointConfigs accessPointConfigs;
 	
 	public String getOracleUrl() {
 		return oracleUrl;
@@ -145,6 +175,17 @@ public class CompositeAccessPoint extends AccessPoint {
 	public void setOracleUrl(String oracleUrl) {
 		this.oracleUrl = oracleUrl;
 	}
+
+	/**
+	 * @return cache of Oracle rules shared by the exclusion factories of
+	 * all adapters
+	 */
+	public synchronized RuleSetCache getOracleRuleSetCache() {
+		if (oracleRuleSetCache == null) {
+			oracleRuleSetCache = new RuleSetCache(oracleUrl);
+		}
+		return oracleRuleSetCache;
+	}
 	
 	public AccessPointConfigs getAccessPointConfigs() {
 		return accessPointConfigs;
@@ -152,6 +193,7 @@ public class CompositeAccessPoint extends AccessPoint {
 
 	public void setAccessPointConfigs(AccessPointConfigs accessPointConfigs) {
 		this.accessPointConfigs = accessPointConfigs;
+		accessPointCache.clear();
 	}
 	
 	public AccessPointConfig findConfigForFile(String file)
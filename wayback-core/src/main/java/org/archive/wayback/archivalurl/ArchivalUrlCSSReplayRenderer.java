@@ -20,6 +20,7 @@
 package org.archive.wayback.archivalurl;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 
@@ -33,6 +34,8 @@ import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.RegexRewritingWriter;
+import org.archive.wayback.replay.TagMagix;
 import org.archive.wayback.replay.TextDocument;
 import org.archive.wayback.replay.TextReplayRenderer;
 import org.archive.wayback.replay.HttpHeaderProcessor;
@@ -91,4 +94,13 @@ public class ArchivalUrlCSSReplayRenderer extends TextReplayRenderer {
 
 		page.insertAtStartOfDocument(toInsert.toString());
 	}
+
+	@Override
+	protected RegexRewritingWriter createRewritingWriter(Writer out,
+			CaptureSearchResult result, ResultURIConverter uriConverter,
+			ResultURIConverter pageConverter) {
+		// same as TextDocument#resolveCSSUrls(), streaming
+		return TagMagix.cssImportsRewritingWriter(out, uriConverter,
+			result.getCaptureTimestamp(), result.getOriginalUrl());
+	}
 }
@@ -20,6 +20,7 @@
 package org.archive.wayback.archivalurl;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -35,6 +36,7 @@ import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.replay.HttpHeaderProcessor;
+import org.archive.wayback.replay.RegexRewritingWriter;
 import org.archive.wayback.replay.TextDocument;
 import org.archive.wayback.replay.TextReplayRenderer;
 import org.archive.wayback.util.Timestamp;
@@ -88,6 +90,37 @@ public class ArchivalUrlJSReplayRenderer extends TextReplayRenderer {
 		return pattern.pattern();
 	}
 
+	/**
+	 * @return replacement text for the whole match {@code m}
+	 */
+	private static String replaceMatch(Matcher m,
+			ResultURIConverter uriConverter, String captureTS) {
+		// If at least 2 groups, prepend before 2nd group and include 1st group. Allows for more sophisticated matching.
+		// Otherwise, insert before 1st group
+		if (m.groupCount() > 1) {
+			String beforeHost = m.group(1);
+			String host = m.group(2);
+			return beforeHost + uriConverter.makeReplayURI(captureTS, host);
+		} else {
+			String host = m.group(1);
+			return uriConverter.makeReplayURI(captureTS, host);
+		}
+	}
+
+	@Override
+	protected RegexRewritingWriter createRewritingWriter(Writer out,
+			CaptureSearchResult result, ResultURIConverter uriConverter,
+			final ResultURIConverter pageConverter) {
+		String resourceTS = result.getCaptureTimestamp();
+		final String captureTS = Timestamp.parseBefore(resourceTS).getDateStr();
+		return new RegexRewritingWriter(out, pattern,
+			new RegexRewritingWriter.Replacer() {
+				public String replace(Matcher matcher) {
+					return replaceMatch(matcher, pageConverter, captureTS);
+				}
+			});
+	}
+
 	protected void updatePage(TextDocument page,
 			HttpServletRequest httpRequest, HttpServletResponse httpResponse,
 			WaybackRequest wbRequest, CaptureSearchResult result,
@@ -100,21 +133,8 @@ public class ArchivalUrlJSReplayRenderer extends TextReplayRenderer {
 		StringBuffer replaced = new StringBuffer(sb.length());
 		Matcher m = pattern.matcher(sb);
 		
-		// If at least 2 groups, prepend before 2nd group and include 1st group. Allows for more sophisticated matching.
-		// Otherwise, insert before 1st group
-		if (m.groupCount() > 1) {
-			while (m.find()) {
-				String beforeHost = m.group(1);
-				String host = m.group(2);
-				String replacement = uriConverter.makeReplayURI(captureTS, host);
-				m.appendReplacement(replaced, beforeHost + replacement);
-			}	
-		} else {
-			while (m.find()) {
-				String host = m.group(1);
-				String replacement = uriConverter.makeReplayURI(captureTS, host);
-				m.appendReplacement(replaced, replacement);
-			}			
+		while (m.find()) {
+			m.appendReplacement(replaced, replaceMatch(m, uriConverter, captureTS));
 		}
 		
 		m.appendTail(replaced);
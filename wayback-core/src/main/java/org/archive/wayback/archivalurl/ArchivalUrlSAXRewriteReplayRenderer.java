@@ -21,6 +21,7 @@ package org.archive.wayback.archivalurl;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Map;
@@ -48,6 +49,9 @@ import org.archive.wayback.replay.html.IdentityResultURIConverterFactory;
 import org.archive.wayback.replay.html.ReplayParseContext;
 import org.archive.wayback.util.htmllex.ContextAwareLexer;
 import org.archive.wayback.util.htmllex.ParseEventHandler;
+import org.archive.wayback.util.htmllex.StreamingLexer;
+import org.archive.wayback.util.metrics.Stage;
+import org.archive.wayback.util.metrics.StageMetrics;
 import org.htmlparser.Node;
 import org.htmlparser.lexer.Lexer;
 import org.htmlparser.lexer.Page;
@@ -66,6 +70,7 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 	private CharsetDetector charsetDetector = new StandardCharsetDetector();
 	private ContextResultURIConverterFactory converterFactory = null;
 	private boolean rewriteHttpsOnly;
+	private boolean streamingLexer = false;
 	
 	private final static String OUTPUT_CHARSET = "utf-8";
 	private static int FRAMESET_SCAN_BUFFER_SIZE = 16 * 1024;
@@ -115,7 +120,9 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 			throw new IOException(e1.getMessage());
 		}
 		// determine the character set used to encode the document bytes:
-		String charSet = charsetDetector.getCharset(httpHeadersResource, decodedResource, wbRequest);
+		long charsetStart = StageMetrics.start();
+		String charSet = charsetDetector.getCharset(httpHeadersResource, decodedResource, result, wbRequest);
+		StageMetrics.end(Stage.CHARSET_DETECTION, charsetStart);
 
 		ContextResultURIConverterFactory fact = createConverterFactory(uriConverter, httpRequest, wbRequest);
 		
@@ -175,21 +182,33 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 
 		// and finally, parse, using the special lexer that knows how to
 		// handle javascript blocks containing unescaped HTML entities:
-		Page lexPage = new Page(decodedResource,charSet);
-		Lexer lexer = new Lexer(lexPage);
-		Lexer.STRICT_REMARKS = false;
-		ContextAwareLexer lex = new ContextAwareLexer(lexer, context);
 		Node node;
-		try {
+		long rewriteStart = StageMetrics.start();
+		if (streamingLexer) {
+			StreamingLexer lex = new StreamingLexer(
+					new InputStreamReader(decodedResource, charSet), context);
 			delegator.handleParseStart(context);
 			while((node = lex.nextNode()) != null) {
 				delegator.handleNode(context, node);
 			}
 			delegator.handleParseComplete(context);
-		} catch (ParserException e) {
-			e.printStackTrace();
-			throw new IOException(e.getMessage());
+		} else {
+			Page lexPage = new Page(decodedResource,charSet);
+			Lexer lexer = new Lexer(lexPage);
+			Lexer.STRICT_REMARKS = false;
+			ContextAwareLexer lex = new ContextAwareLexer(lexer, context);
+			try {
+				delegator.handleParseStart(context);
+				while((node = lex.nextNode()) != null) {
+					delegator.handleNode(context, node);
+				}
+				delegator.handleParseComplete(context);
+			} catch (ParserException e) {
+				e.printStackTrace();
+				throw new IOException(e.getMessage());
+			}
 		}
+		StageMetrics.end(Stage.REWRITE, rewriteStart);
 
 		// At this point, baos contains the utf-8 encoded bytes of our result:
 		byte[] utf8Bytes = baos.toByteArray();
@@ -270,4 +289,17 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 	public void setRewriteHttpsOnly(boolean rewriteHttpsOnly) {
 		this.rewriteHttpsOnly = rewriteHttpsOnly;
 	}
+
+	public boolean isStreamingLexer() {
+		return streamingLexer;
+	}
+
+	/**
+	 * @param streamingLexer if true, tokenize documents with 
+	 * {@link StreamingLexer}, which reads through a fixed-size window, 
+	 * instead of the htmlparser Lexer, which holds the whole document
+	 */
+	public void setStreamingLexer(boolean streamingLexer) {
+		this.streamingLexer = streamingLexer;
+	}
 }
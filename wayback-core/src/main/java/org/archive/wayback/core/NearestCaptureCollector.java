@@ -0,0 +1,173 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the captures of a replay query which are worth keeping, without
+ * holding on to the whole timeline of the URL.
+ * <p>Captures may be added in any order. Kept are the {@code perSide}
+ * captures nearest to the requested date at or before it, the
+ * {@code perSide} nearest after it, each side in a small heap ordered by
+ * distance from the requested date, and the first and last capture
+ * overall. So the closest capture, its neighbours, and the first and last
+ * captures, as used for Memento headers, are all kept, and
+ * {@link org.archive.wayback.webapp.AccessPoint} can fall back to
+ * {@code perSide - 1} further captures on each side if the closest ones
+ * cannot be replayed.</p>
+ * <p>Of captures at the same distance, the later one is kept, as
+ * {@link org.archive.wayback.resourceindex.filters.ClosestResultTrackingFilter}
+ * prefers.</p>
+ */
+public class NearestCaptureCollector {
+	private final long wantMS;
+	private final int perSide;
+	private final PriorityQueue<CaptureSearchResult> before;
+	private final PriorityQueue<CaptureSearchResult> after;
+	private CaptureSearchResult first = null;
+	private CaptureSearchResult last = null;
+	private CaptureSearchResult pinned = null;
+	private int seen = 0;
+
+	/**
+	 * Orders captures farthest from the requested date first, so the head
+	 * of a heap is the next one to drop.
+	 */
+	private static class FarthestFirst
+			implements Comparator<CaptureSearchResult> {
+		private final long wantMS;
+
+		FarthestFirst(long wantMS) {
+			this.wantMS = wantMS;
+		}
+
+		public int compare(CaptureSearchResult a, CaptureSearchResult b) {
+			long diffA = Math.abs(a.getCaptureDate().getTime() - wantMS);
+			long diffB = Math.abs(b.getCaptureDate().getTime() - wantMS);
+			if (diffA != diffB) {
+				return (diffA > diffB) ? -1 : 1;
+			}
+			// same distance: drop the earlier one first
+			return a.getCaptureTimestamp().compareTo(b.getCaptureTimestamp());
+		}
+	}
+
+	private static final Comparator<CaptureSearchResult> BY_TIMESTAMP =
+		new Comparator<CaptureSearchResult>() {
+		public int compare(CaptureSearchResult a, CaptureSearchResult b) {
+			return a.getCaptureTimestamp().compareTo(b.getCaptureTimestamp());
+		}
+	};
+
+	/**
+	 * @param wantMS requested date, in milliseconds since the epoch
+	 * @param perSide number of captures to keep on each side of
+	 * {@code wantMS}, at least 2
+	 */
+	public NearestCaptureCollector(long wantMS, int perSide) {
+		this.wantMS = wantMS;
+		this.perSide = Math.max(2, perSide);
+		Comparator<CaptureSearchResult> cmp = new FarthestFirst(wantMS);
+		before = new PriorityQueue<CaptureSearchResult>(this.perSide + 1, cmp);
+		after = new PriorityQueue<CaptureSearchResult>(this.perSide + 1, cmp);
+	}
+
+	/**
+	 * @param result capture which passed all filters of the query
+	 */
+	public void add(CaptureSearchResult result) {
+		seen++;
+		String timestamp = result.getCaptureTimestamp();
+		if ((first == null) ||
+				(first.getCaptureTimestamp().compareTo(timestamp) > 0)) {
+			first = result;
+		}
+		if ((last == null) ||
+				(last.getCaptureTimestamp().compareTo(timestamp) <= 0)) {
+			last = result;
+		}
+		PriorityQueue<CaptureSearchResult> side =
+			(result.getCaptureDate().getTime() <= wantMS) ? before : after;
+		side.add(result);
+		if (side.size() > perSide) {
+			side.poll();
+		}
+	}
+
+	/**
+	 * Keep {@code result}, already added, whatever its distance. For callers
+	 * which pick the closest capture themselves.
+	 * @param result capture to keep
+	 */
+	public void keep(CaptureSearchResult result) {
+		pinned = result;
+	}
+
+	/**
+	 * @return number of captures added
+	 */
+	public int getSeenCount() {
+		return seen;
+	}
+
+	/**
+	 * @return number of captures kept
+	 */
+	public int getKeptCount() {
+		return getKept().size();
+	}
+
+	private List<CaptureSearchResult> getKept() {
+		IdentityHashMap<CaptureSearchResult, Boolean> kept =
+			new IdentityHashMap<CaptureSearchResult, Boolean>();
+		for (CaptureSearchResult r : before) {
+			kept.put(r, Boolean.TRUE);
+		}
+		for (CaptureSearchResult r : after) {
+			kept.put(r, Boolean.TRUE);
+		}
+		if (first != null) {
+			kept.put(first, Boolean.TRUE);
+			kept.put(last, Boolean.TRUE);
+		}
+		if (pinned != null) {
+			kept.put(pinned, Boolean.TRUE);
+		}
+		return new ArrayList<CaptureSearchResult>(kept.keySet());
+	}
+
+	/**
+	 * Add the kept captures to {@code results}, in timestamp order.
+	 * @param results CaptureSearchResults to fill
+	 */
+	public void fill(CaptureSearchResults results) {
+		List<CaptureSearchResult> kept = getKept();
+		Collections.sort(kept, BY_TIMESTAMP);
+		for (CaptureSearchResult r : kept) {
+			results.addSearchResult(r, true);
+		}
+	}
+}
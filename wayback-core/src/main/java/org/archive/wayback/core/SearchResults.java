@@ -49,6 +49,12 @@ public abstract class SearchResults {
 	 * Results: int number of results requested
 	 */
 	public static final String RESULTS_REQUESTED = "resultsrequested";
+
+	/**
+	 * Results: String position to resume the query at for the next page,
+	 * if there is one
+	 */
+	public static final String RESULTS_RESUME_KEY = "resumekey";
 	/**
 	 * Expandable data bag for tuples associated with the search results, 
 	 * likely examples might be "total matching documents", "index of first 
@@ -174,6 +180,21 @@ public abstract class SearchResults {
 		putFilter(RESULTS_REQUESTED, String.valueOf(numRequested));
 	}
 	
+	/**
+	 * @return resume key for the next page of results, or null if this
+	 * is the last page, or the index does not support resuming
+	 */
+	public String getResumeKey() {
+		return getFilter(RESULTS_RESUME_KEY);
+	}
+
+	/**
+	 * @param resumeKey resume key for the next page of results
+	 */
+	public void setResumeKey(String resumeKey) {
+		putFilter(RESULTS_RESUME_KEY, resumeKey);
+	}
+
 	public int getNumPages() {
 		double resultsMatching = getMatchingCount();
 		double resultsPerPage = getNumRequested();
@@ -321,6 +321,12 @@ public class WaybackRequest {
 	 * Request: Use timestamp as part of the search key
 	 */
 	public static final String REQUEST_TIMESTAMP_SEARCH_KEY = "timestampsearchkey";
+
+	/**
+	 * Request: position to resume a capture or URL query at, as returned
+	 * with the previous page of results
+	 */
+	public static final String REQUEST_RESUME_KEY = "resumekey";
 	
 	/*
 	 * *******************************
@@ -452,6 +458,7 @@ public class WaybackRequest {
 			REQUEST_REMOTE_USER,
 			REQUEST_LOCALE_LANG,
 			REQUEST_AJAX_REQUEST,
+			REQUEST_RESUME_KEY,
 			STD_LOGGED_IN_USER,
 			STD_LOGGED_IN_VER,
 			STD_LOGGED_IN_NAME,
@@ -1058,6 +1065,22 @@ public class WaybackRequest {
 	public boolean isTimestampSearchKey() {
 		return getBoolean(REQUEST_TIMESTAMP_SEARCH_KEY);
 	}
+
+	/**
+	 * @return position to resume the query at, or null to use the page
+	 * number
+	 */
+	public String getResumeKey() {
+		return get(REQUEST_RESUME_KEY);
+	}
+
+	/**
+	 * @param resumeKey position to resume the query at, as returned by
+	 * {@link SearchResults#getResumeKey()} for the previous page
+	 */
+	public void setResumeKey(String resumeKey) {
+		put(REQUEST_RESUME_KEY, resumeKey);
+	}
 	
 	/**
 	 * Set the Locale for the request, which impacts UI Strings
@@ -1150,6 +1173,19 @@ public class WaybackRequest {
 	 *         same request, but for page 'pageNum' of the results
 	 */
 	public String getQueryArguments(int pageNum) {
+		return getQueryArguments(pageNum, null);
+	}
+
+	/**
+	 * @param resumeKey resume key returned with the current page of results
+	 * @return String hex-encoded GET CGI arguments which will request the
+	 *         page following the current one, resuming at resumeKey
+	 */
+	public String getResumeQueryArguments(String resumeKey) {
+		return getQueryArguments(pageNum + 1, resumeKey);
+	}
+
+	private String getQueryArguments(int pageNum, String resumeKey) {
 		int numPerPage = resultsPerPage;
 
 		try {
@@ -1174,6 +1210,13 @@ public class WaybackRequest {
                                 val = URLEncoder.encode(val,"UTF-8");
 				queryString.append(key + ":" + val);
 			}
+			if (resumeKey != null) {
+				if (queryString.length() > 0) {
+					queryString.append(" ");
+				}
+				queryString.append(REQUEST_RESUME_KEY + ":" +
+					URLEncoder.encode(resumeKey, "UTF-8"));
+			}
 			String escapedQuery = queryString.toString();
 
 			escapedQuery = URLEncoder.encode(escapedQuery, "UTF-8");
@@ -20,6 +20,10 @@
 package org.archive.wayback.liveweb;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
@@ -31,6 +35,15 @@ import org.archive.wayback.util.webapp.AbstractRequestHandler;
 import org.archive.wayback.util.webapp.ShutdownListener;
 
 /**
+ * Records each requested URL into an {@link ARCCacheDirectory} with a
+ * {@link URLtoARCCacher}, and returns the compressed ARC record.
+ * <p>
+ * A URL recorded less than {@code expiresMS} ago ({@code fakeExpiresMS} for
+ * forged error records) is answered from the existing record, located via a
+ * {@link RecordedURLIndex} of up to {@code recentIndexSize} URLs, rather than
+ * fetched again. Concurrent requests for a URL that is being recorded wait
+ * for, and share, that single fetch.
+ *
  * @author brad
  *
  */
@@ -48,6 +61,11 @@ implements ShutdownListener {
 
 	private ARCCacheDirectory arcCacheDir = null;
 	private URLtoARCCacher cacher = null;
+	private int recentIndexSize = 10000;
+	private int memoryRecordLimit = 64 * 1024;
+	private RecordedURLIndex recentIndex = null;
+	private final ConcurrentHashMap<String, FutureTask<FileRegion>> inFlight =
+		new ConcurrentHashMap<String, FutureTask<FileRegion>>();
 
 	public boolean handleRequest(HttpServletRequest httpRequest,
 			HttpServletResponse httpResponse) throws ServletException,
@@ -62,15 +80,16 @@ implements ShutdownListener {
 		try {
 
 			String url = sb.toString();
-			LOGGER.info("Caching URL(" + url + ")");
-			r = cacher.cacheURL(url, arcCacheDir);
+			r = getRegion(url);
 
 			httpResponse.setStatus(HttpServletResponse.SC_OK);
 			httpResponse.setContentLength((int)r.getLength());
 			httpResponse.setContentType(ARC_RECORD_CONTENT_TYPE);
-			long exp = System.currentTimeMillis();
-			exp += (r.isFake ? fakeExpiresMS : expiresMS);
-			
+			long exp = r.getExpires();
+			if (exp < 0) {
+				exp = System.currentTimeMillis() +
+					(r.isFake ? fakeExpiresMS : expiresMS);
+			}
 			httpResponse.setDateHeader(EXPIRES_HEADER, exp);
 
 			r.copyToOutputStream(httpResponse.getOutputStream());
@@ -83,6 +102,91 @@ implements ShutdownListener {
 		return true;
 	}
 	
+	/**
+	 * Find the record for {@code url}: an unexpired recent recording, the
+	 * result of a recording already in progress, or a new recording.
+	 * @param url to record
+	 * @return FileRegion of compressed ARC record for {@code url}
+	 * @throws IOException for the usual reasons
+	 */
+	protected FileRegion getRegion(final String url) throws IOException {
+		RecordedURLIndex index = getRecentIndex();
+		if (index != null) {
+			FileRegion recent = index.get(url, System.currentTimeMillis());
+			if (recent != null) {
+				LOGGER.info("Recently cached URL(" + url + ")");
+				return recent;
+			}
+		}
+		FutureTask<FileRegion> task = new FutureTask<FileRegion>(
+				new Callable<FileRegion>() {
+					public FileRegion call() throws Exception {
+						return record(url);
+					}
+				});
+		FutureTask<FileRegion> running = inFlight.putIfAbsent(url, task);
+		if (running == null) {
+			running = task;
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(url, task);
+			}
+		} else {
+			LOGGER.info("Waiting on concurrent caching of URL(" + url + ")");
+		}
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted caching " + url);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			IOException ioe = new IOException("Failed caching " + url);
+			ioe.initCause(cause);
+			throw ioe;
+		}
+	}
+
+	private FileRegion record(String url) throws IOException {
+		// re-check: another request may have finished recording url between
+		// our index lookup and registering this fetch.
+		long now = System.currentTimeMillis();
+		RecordedURLIndex index = getRecentIndex();
+		if (index != null) {
+			FileRegion recent = index.get(url, now);
+			if (recent != null) {
+				return recent;
+			}
+		}
+		LOGGER.info("Caching URL(" + url + ")");
+		FileRegion r = cacher.cacheURL(url, arcCacheDir);
+		long expires = now + (r.isFake ? fakeExpiresMS : expiresMS);
+		if (index != null) {
+			index.put(url, r, expires);
+		} else {
+			r.expires = expires;
+		}
+		return r;
+	}
+
+	private synchronized RecordedURLIndex getRecentIndex() {
+		if ((recentIndex == null) && (recentIndexSize > 0)) {
+			recentIndex = new RecordedURLIndex(recentIndexSize,
+					memoryRecordLimit);
+		}
+		return recentIndex;
+	}
+
 	/**
 	 * @return the arcCacheDir
 	 */
@@ -139,6 +243,40 @@ implements ShutdownListener {
 		this.fakeExpiresMS = fakeExpiresMS;
 	}
 
+	/**
+	 * @return maximum number of recently recorded URLs indexed
+	 */
+	public int getRecentIndexSize() {
+		return recentIndexSize;
+	}
+
+	/**
+	 * @param recentIndexSize maximum number of recently recorded URLs
+	 * indexed for reuse until they expire. 0 disables reuse, so every
+	 * request is fetched (concurrent requests are still coalesced).
+	 * Default 10000.
+	 */
+	public synchronized void setRecentIndexSize(int recentIndexSize) {
+		this.recentIndexSize = recentIndexSize;
+		recentIndex = null;
+	}
+
+	/**
+	 * @return the memoryRecordLimit
+	 */
+	public int getMemoryRecordLimit() {
+		return memoryRecordLimit;
+	}
+
+	/**
+	 * @param memoryRecordLimit largest compressed record, in bytes, kept in
+	 * memory by the recent URL index. Default 64KB.
+	 */
+	public synchronized void setMemoryRecordLimit(int memoryRecordLimit) {
+		this.memoryRecordLimit = memoryRecordLimit;
+		recentIndex = null;
+	}
+
 	public void shutdown() {
 		arcCacheDir.shutdown();
 		
@@ -33,6 +33,8 @@ public class FileRegion {
 	long start = -1;
 	long end = -1;
 	boolean isFake = false;
+	byte[] data = null;
+	long expires = -1;
 	/**
 	 * @return the number of bytes in this record, including headers. If the
 	 * containing file is compressed, then this represents the number of 
@@ -41,12 +43,23 @@ public class FileRegion {
 	public long getLength() {
 		return end - start;
 	}
+	/**
+	 * @return time in milliseconds after which this record should no longer
+	 * be served for its URL, or -1 if not set
+	 */
+	public long getExpires() {
+		return expires;
+	}
 	/**
 	 * Copy this record to the provided OutputStream
 	 * @param o the OutputStream where the bytes should be sent.
 	 * @throws IOException for usual reasons
 	 */
 	public void copyToOutputStream(OutputStream o) throws IOException {
+		if (data != null) {
+			o.write(data);
+			return;
+		}
 		long left = end - start;
 		int BUFF_SIZE = 4096;
 		byte buf[] = new byte[BUFF_SIZE];
@@ -66,4 +79,39 @@ public class FileRegion {
 			raf.close();
 		}
 	}
+
+	/**
+	 * @return a copy of this region, pointing at {@code newFile}, sharing
+	 * any bytes held in memory.
+	 */
+	FileRegion withFile(File newFile) {
+		FileRegion copy = new FileRegion();
+		copy.file = newFile;
+		copy.start = start;
+		copy.end = end;
+		copy.isFake = isFake;
+		copy.data = data;
+		copy.expires = expires;
+		return copy;
+	}
+
+	/**
+	 * Read the bytes of this region into memory, so later copies do not
+	 * touch the file.
+	 * @throws IOException for usual reasons
+	 */
+	void load() throws IOException {
+		if (data != null) {
+			return;
+		}
+		byte[] buf = new byte[(int) getLength()];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(start);
+			raf.readFully(buf);
+		} finally {
+			raf.close();
+		}
+		data = buf;
+	}
 }
@@ -0,0 +1,152 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.liveweb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.format.ArchiveFileConstants;
+
+/**
+ * In-process index of URLs recently recorded into an
+ * {@link ARCCacheDirectory}, mapping each URL to the ARC region holding its
+ * record until that record expires.
+ * <p>
+ * Regions of at most {@code memoryRecordLimit} bytes are also held in
+ * memory, so repeated requests for small documents are answered without
+ * reading the ARC file again. Larger regions are read back from the ARC
+ * file, following the rename which drops the
+ * {@link ArchiveFileConstants#OCCUPIED_SUFFIX} when the writer closes it.
+ * <p>
+ * The index is bounded to {@code maxEntries}, least recently used entries
+ * being dropped first.
+ */
+public class RecordedURLIndex {
+	private static final Logger LOGGER = Logger.getLogger(
+			RecordedURLIndex.class.getName());
+
+	private final int maxEntries;
+	private final int memoryRecordLimit;
+	private final LinkedHashMap<String, FileRegion> entries;
+
+	/**
+	 * @param maxEntries maximum number of URLs indexed
+	 * @param memoryRecordLimit maximum size of a region held in memory,
+	 * 0 to always read from the ARC file
+	 */
+	public RecordedURLIndex(final int maxEntries, int memoryRecordLimit) {
+		this.maxEntries = maxEntries;
+		this.memoryRecordLimit = memoryRecordLimit;
+		entries = new LinkedHashMap<String, FileRegion>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FileRegion> e) {
+				return size() > RecordedURLIndex.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Record that {@code url} is stored in {@code region} until
+	 * {@code expires}.
+	 * @param url recorded URL
+	 * @param region where the ARC record for {@code url} was written
+	 * @param expires time in milliseconds after which the record should no
+	 * longer be served for {@code url}
+	 */
+	public void put(String url, FileRegion region, long expires) {
+		if (memoryRecordLimit > 0 && region.getLength() <= memoryRecordLimit) {
+			try {
+				region.load();
+			} catch (IOException e) {
+				// not fatal: served from the file instead
+				LOGGER.log(Level.WARNING, "Failed to load " + url, e);
+			}
+		}
+		region.expires = expires;
+		synchronized (entries) {
+			entries.put(url, region);
+		}
+	}
+
+	/**
+	 * @param url requested URL
+	 * @param now current time in milliseconds
+	 * @return region recorded for {@code url} that has not expired at
+	 * {@code now}, or {@code null}. {@link FileRegion#getExpires()} gives
+	 * its expiry time.
+	 */
+	public FileRegion get(String url, long now) {
+		FileRegion region;
+		synchronized (entries) {
+			region = entries.get(url);
+			if (region == null) {
+				return null;
+			}
+			if (region.expires <= now) {
+				entries.remove(url);
+				return null;
+			}
+		}
+		if (region.data != null || region.file.exists()) {
+			return region;
+		}
+		File closed = closedFile(region.file);
+		if (closed == null || !closed.exists()) {
+			synchronized (entries) {
+				if (entries.get(url) == region) {
+					entries.remove(url);
+				}
+			}
+			return null;
+		}
+		FileRegion moved = region.withFile(closed);
+		synchronized (entries) {
+			if (entries.get(url) == region) {
+				entries.put(url, moved);
+			}
+		}
+		return moved;
+	}
+
+	/**
+	 * @return number of URLs currently indexed, including expired ones not
+	 * yet dropped
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	private static File closedFile(File file) {
+		String name = file.getName();
+		if (!name.endsWith(ArchiveFileConstants.OCCUPIED_SUFFIX)) {
+			return null;
+		}
+		return new File(file.getParentFile(), name.substring(0,
+				name.length() - ArchiveFileConstants.OCCUPIED_SUFFIX.length()));
+	}
+}
@@ -20,11 +20,17 @@
 package org.archive.wayback.liveweb;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.ConnectException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 
@@ -46,6 +52,19 @@ import org.archive.wayback.resourcestore.resourcefile.ArcResource;
 import org.archive.wayback.resourcestore.resourcefile.ResourceFactory;
 
 /**
+ * LiveWebCache which fetches ARC records of live documents from a remote
+ * {@link ARCRecordingProxy}.
+ * <p>
+ * Records whose Content-Length is at most {@code maxBufferedSize} are read
+ * into memory and the connection is returned at once. Larger records, or
+ * records of unknown length, are parsed straight off the HTTP connection,
+ * which is released when the returned Resource is closed or fully read.
+ * Records larger than {@code maxRecordSize} are refused.
+ * <p>
+ * {@code maxConcurrentPerHost} limits how many fetches of the same live
+ * host may be outstanding at once. Simple request, failure, latency and
+ * byte counters are kept; see {@link #getStatsReport()}.
+ *
  * @author brad
  *
  */
@@ -58,6 +77,24 @@ public class RemoteLiveWebCache implements LiveWebCache {
     protected HttpClient http = null; 
     protected String requestPrefix = null;
 
+    private long maxRecordSize = 0;
+    private int maxBufferedSize = 64 * 1024;
+    private int maxConcurrentPerHost = 0;
+    private long hostWaitMS = 0;
+    // only hosts with fetches outstanding, so it does not grow with every
+    // host ever fetched:
+    private final HashMap<String, HostPermit> hostPermits =
+    	new HashMap<String, HostPermit>();
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong failures = new AtomicLong(0);
+    private final AtomicLong streamed = new AtomicLong(0);
+    private final AtomicLong tooLarge = new AtomicLong(0);
+    private final AtomicLong hostLimited = new AtomicLong(0);
+    private final AtomicLong bytesRead = new AtomicLong(0);
+    private final AtomicLong totalLatencyNanos = new AtomicLong(0);
+    private final AtomicLong maxLatencyNanos = new AtomicLong(0);
+
     /**
      * 
      */
@@ -82,7 +119,7 @@ public class RemoteLiveWebCache implements LiveWebCache {
 			urlString = requestPrefix + urlString;
 		}
 		
-		HttpMethod method = null;
+		GetMethod method = null;
 		try {
 			method = new GetMethod(urlString);
 		} catch(IllegalArgumentException e) {
@@ -90,17 +127,54 @@ public class RemoteLiveWebCache implements LiveWebCache {
 			throw new LiveDocumentNotAvailableException("Url:" + urlString +
 					"does not look like an URL?");
 		}
+		String host = url.getHost();
+		HostPermit permit = acquireHost(host, urlString);
 		boolean success = false;
+		boolean streaming = false;
+		requests.incrementAndGet();
 	    try {
-	    	int status = http.executeMethod(method);
+	    	long start = System.nanoTime();
+	    	int status;
+	    	try {
+	    		status = http.executeMethod(method);
+	    	} finally {
+	    		// the live fetch itself is complete once the proxy answers;
+	    		// the body is only the transfer of the recorded ARC record.
+	    		if (permit != null) {
+	    			releaseHost(host, permit);
+	    		}
+	    		noteLatency(System.nanoTime() - start);
+	    	}
 	    	if(status == 200) {
-
-	    		ByteArrayInputStream bais = new ByteArrayInputStream(method.getResponseBody());
-	    		ARCRecord r = new ARCRecord(
-	    				new GZIPInputStream(bais),
-	    				"id",0L,false,false,true);
-	    		ArcResource ar = (ArcResource) 
-	    			ResourceFactory.ARCArchiveRecordToResource(r, null);
+	    		long length = method.getResponseContentLength();
+	    		if ((maxRecordSize > 0) && (length > maxRecordSize)) {
+	    			tooLarge.incrementAndGet();
+	    			throw new LiveDocumentNotAvailableException("Record of " +
+	    					length + " bytes too large:" + urlString);
+	    		}
+	    		ArcResource ar;
+	    		if ((length >= 0) && (length <= maxBufferedSize)) {
+	    			byte[] body = method.getResponseBody();
+	    			bytesRead.addAndGet(body.length);
+	    			ARCRecord r = new ARCRecord(
+	    					new GZIPInputStream(new ByteArrayInputStream(body)),
+	    					"id",0L,false,false,true);
+	    			ar = (ArcResource) 
+	    				ResourceFactory.ARCArchiveRecordToResource(r, null);
+	    		} else {
+	    			InputStream body = method.getResponseBodyAsStream();
+	    			if (body == null) {
+	    				throw new LiveWebCacheUnavailableException(
+	    						"Empty response for " + urlString);
+	    			}
+	    			BoundedInputStream bounded = new BoundedInputStream(body);
+	    			streaming = true;
+	    			ARCRecord r = new ARCRecord(new GZIPInputStream(bounded),
+	    					"id",0L,false,false,true);
+	    			ar = new StreamingArcResource(r, method, bounded);
+	    			ar.parseHeaders();
+	    			streamed.incrementAndGet();
+	    		}
 	    		if(ar.getStatusCode() == 502) {
 	    			throw new LiveDocumentNotAvailableException(urlString);
 	    		} else if(ar.getStatusCode() == 504) {
@@ -135,12 +209,222 @@ public class RemoteLiveWebCache implements LiveWebCache {
     				+ " : " + urlString);	    	
 		} finally {
 			if (!success) {
+				failures.incrementAndGet();
 				method.abort();
 			}
-	    	method.releaseConnection();
+			if (!(success && streaming)) {
+				method.releaseConnection();
+			}
 	    }
 	}
 
+	/**
+	 * Semaphore limiting the fetches of one host, with the number of fetches
+	 * holding or waiting for it, so it can be dropped when there are none.
+	 */
+	private static class HostPermit {
+		final Semaphore semaphore;
+		int users = 0;
+
+		HostPermit(int permits) {
+			semaphore = new Semaphore(permits);
+		}
+	}
+
+	private HostPermit acquireHost(String host, String urlString)
+			throws LiveWebTimeoutException {
+		if (maxConcurrentPerHost <= 0) {
+			return null;
+		}
+		HostPermit permit;
+		synchronized (hostPermits) {
+			permit = hostPermits.get(host);
+			if (permit == null) {
+				permit = new HostPermit(maxConcurrentPerHost);
+				hostPermits.put(host, permit);
+			}
+			permit.users++;
+		}
+		boolean acquired = false;
+		try {
+			acquired = permit.semaphore.tryAcquire(hostWaitMS,
+					TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!acquired) {
+			leaveHost(host, permit);
+			hostLimited.incrementAndGet();
+			throw new LiveWebTimeoutException("Too many concurrent fetches for "
+					+ host + " : " + urlString);
+		}
+		return permit;
+	}
+
+	private void releaseHost(String host, HostPermit permit) {
+		permit.semaphore.release();
+		leaveHost(host, permit);
+	}
+
+	private void leaveHost(String host, HostPermit permit) {
+		synchronized (hostPermits) {
+			if ((--permit.users == 0) && (hostPermits.get(host) == permit)) {
+				hostPermits.remove(host);
+			}
+		}
+	}
+
+	private void noteLatency(long nanos) {
+		totalLatencyNanos.addAndGet(nanos);
+		long max = maxLatencyNanos.get();
+		while ((nanos > max) && !maxLatencyNanos.compareAndSet(max, nanos)) {
+			max = maxLatencyNanos.get();
+		}
+	}
+
+	/**
+	 * Counts bytes read from the connection, enforcing maxRecordSize, and
+	 * remembers whether the end of the response was reached.
+	 */
+	private class BoundedInputStream extends FilterInputStream {
+		private long count = 0;
+		private boolean eof = false;
+
+		BoundedInputStream(InputStream in) {
+			super(in);
+		}
+
+		private void note(long n) throws IOException {
+			if (n < 0) {
+				eof = true;
+				return;
+			}
+			count += n;
+			bytesRead.addAndGet(n);
+			if ((maxRecordSize > 0) && (count > maxRecordSize)) {
+				tooLarge.incrementAndGet();
+				throw new IOException("Record exceeds " + maxRecordSize +
+						" bytes");
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			note(b < 0 ? -1 : 1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			note(n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			note(skipped);
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * ArcResource read directly from an HTTP response, which releases the
+	 * connection when closed: abandoning it if the record was not read to
+	 * the end, rather than draining the rest over the network.
+	 */
+	private static class StreamingArcResource extends ArcResource {
+		private final HttpMethod method;
+		private final BoundedInputStream body;
+		private boolean closed = false;
+
+		StreamingArcResource(ARCRecord rec, HttpMethod method,
+				BoundedInputStream body) {
+			super(rec, null);
+			this.method = method;
+			this.body = body;
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				if (!body.eof) {
+					method.abort();
+				}
+			} finally {
+				method.releaseConnection();
+			}
+		}
+	}
+
+	/**
+	 * @return one-line summary of fetch counters and connection pool use
+	 */
+	public String getStatsReport() {
+		long n = requests.get();
+		long avgMS = (n == 0) ? 0 :
+			TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get() / n);
+		return "requests=" + n +
+			" failures=" + failures.get() +
+			" streamed=" + streamed.get() +
+			" tooLarge=" + tooLarge.get() +
+			" hostLimited=" + hostLimited.get() +
+			" bytes=" + bytesRead.get() +
+			" avgLatencyMS=" + avgMS +
+			" maxLatencyMS=" +
+			TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get()) +
+			" pooledConnections=" + connectionManager.getConnectionsInPool();
+	}
+
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	public long getStreamedCount() {
+		return streamed.get();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * @return total time spent waiting for the remote cache to respond, in
+	 * nanoseconds
+	 */
+	public long getTotalLatencyNanos() {
+		return totalLatencyNanos.get();
+	}
+
+	public long getMaxLatencyNanos() {
+		return maxLatencyNanos.get();
+	}
+
+	/**
+	 * @return number of hosts with fetches outstanding or waiting, when
+	 * {@code maxConcurrentPerHost} is set
+	 */
+	public int getActiveHostCount() {
+		synchronized (hostPermits) {
+			return hostPermits.size();
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.liveweb.LiveWebCache#shutdown()
 	 */
@@ -220,6 +504,87 @@ public class RemoteLiveWebCache implements LiveWebCache {
     	connectionManager.getParams().setSoTimeout(socketTimeoutMS);
 	}
 
+	/**
+	 * @return the maxRecordSize
+	 */
+	public long getMaxRecordSize() {
+		return maxRecordSize;
+	}
+
+	/**
+	 * @param maxRecordSize largest compressed ARC record accepted, in bytes.
+	 * Larger documents are reported as not available. 0 (default) means no
+	 * limit.
+	 */
+	public void setMaxRecordSize(long maxRecordSize) {
+		this.maxRecordSize = maxRecordSize;
+	}
+
+	/**
+	 * @return the maxBufferedSize
+	 */
+	public int getMaxBufferedSize() {
+		return maxBufferedSize;
+	}
+
+	/**
+	 * @param maxBufferedSize records with a Content-Length up to this many
+	 * bytes are read into memory, releasing the connection immediately;
+	 * others are streamed. Default 64KB.
+	 */
+	public void setMaxBufferedSize(int maxBufferedSize) {
+		this.maxBufferedSize = maxBufferedSize;
+	}
+
+	/**
+	 * @return the maxConcurrentPerHost
+	 */
+	public int getMaxConcurrentPerHost() {
+		return maxConcurrentPerHost;
+	}
+
+	/**
+	 * @param maxConcurrentPerHost maximum number of outstanding fetches for
+	 * any single live-web host. 0 (default) means no limit.
+	 */
+	public void setMaxConcurrentPerHost(int maxConcurrentPerHost) {
+		this.maxConcurrentPerHost = maxConcurrentPerHost;
+		synchronized (hostPermits) {
+			hostPermits.clear();
+		}
+	}
+
+	/**
+	 * @return the hostWaitMS
+	 */
+	public long getHostWaitMS() {
+		return hostWaitMS;
+	}
+
+	/**
+	 * @param hostWaitMS how long a fetch waits for a host at its
+	 * maxConcurrentPerHost limit before failing as a timeout. Default 0.
+	 */
+	public void setHostWaitMS(long hostWaitMS) {
+		this.hostWaitMS = hostWaitMS;
+	}
+
+	/**
+	 * @return the connectionWaitTimeoutMS
+	 */
+	public long getConnectionWaitTimeoutMS() {
+		return http.getParams().getConnectionManagerTimeout();
+	}
+
+	/**
+	 * @param connectionWaitTimeoutMS how long a fetch waits for a free
+	 * pooled connection when maxTotalConnections/maxHostConnections are in
+	 * use, before failing as a timeout. 0 waits indefinitely.
+	 */
+	public void setConnectionWaitTimeoutMS(long connectionWaitTimeoutMS) {
+		http.getParams().setConnectionManagerTimeout(connectionWaitTimeoutMS);
+	}
+
 	public String getRequestPrefix() {
 		return requestPrefix;
 	}
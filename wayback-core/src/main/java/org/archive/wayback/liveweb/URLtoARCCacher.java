@@ -462,5 +462,36 @@ public class URLtoARCCacher {
 	public void setSocketTimeoutMS(int socketTimeoutMS) {
 		this.socketTimeoutMS = socketTimeoutMS;
 	}
+
+	/**
+	 * @return the inBufferSize
+	 */
+	public int getInBufferSize() {
+		return inBufferSize;
+	}
+
+	/**
+	 * @param inBufferSize size of the in-memory buffer recording each
+	 * response. Responses no larger than this are recorded entirely in
+	 * memory; only larger ones spool to a file under recorderCacheDir.
+	 */
+	public void setInBufferSize(int inBufferSize) {
+		this.inBufferSize = inBufferSize;
+	}
+
+	/**
+	 * @return the outBufferSize
+	 */
+	public int getOutBufferSize() {
+		return outBufferSize;
+	}
+
+	/**
+	 * @param outBufferSize size of the in-memory buffer recording each
+	 * request.
+	 */
+	public void setOutBufferSize(int outBufferSize) {
+		this.outBufferSize = outBufferSize;
+	}
 		
 }
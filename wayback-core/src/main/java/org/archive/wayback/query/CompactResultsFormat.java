@@ -0,0 +1,256 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.query;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.archive.wayback.core.SearchResult;
+import org.archive.wayback.core.SearchResults;
+
+/**
+ * Compact, line-oriented alternative to the XMLQuery result format, used 
+ * between a RemoteResourceIndex and the Renderer on a remote node when both
+ * support it. The client asks for it by including CONTENT_TYPE in its
+ * Accept header; the server answers with that Content-Type, or with the 
+ * usual XML if it does not know the format.
+ * <p>
+ * The body is UTF-8 text. The first line is MAGIC, and each following 
+ * line is a single tab-separated record, whose first field is the 
+ * record type:
+ * <ul>
+ * <li>F key value - a request filter, as in the XML &lt;request&gt; element,
+ * 		including the SearchResults.RESULTS_TYPE entry</li>
+ * <li>K key key ... - field names for the following R records</li>
+ * <li>R value value ... - one result, in the order of the last K record</li>
+ * </ul>
+ * Backslash, tab, CR and LF inside values are escaped as \\, \t, \r and \n.
+ */
+public class CompactResultsFormat {
+	/**
+	 * Content-Type of the compact format
+	 */
+	public static final String CONTENT_TYPE = "text/x-wayback-results";
+	/**
+	 * first line of every compact response
+	 */
+	public static final String MAGIC = "#wayback-results 1";
+
+	private static final char TYPE_FILTER = 'F';
+	private static final char TYPE_KEYS = 'K';
+	private static final char TYPE_RESULT = 'R';
+	private static final char DELIM = '\t';
+
+	/**
+	 * Receives records as they are read, see 
+	 * {@link CompactResultsFormat#read(InputStream, Handler)}
+	 */
+	public interface Handler {
+		/**
+		 * @param key filter name
+		 * @param value filter value
+		 */
+		public void filter(String key, String value);
+		/**
+		 * @param keys field names, shared between calls
+		 * @param values field values, same length as keys
+		 * @return false to stop reading
+		 */
+		public boolean result(String[] keys, String[] values);
+	}
+
+	/**
+	 * @param accept value of an Accept request header, may be null
+	 * @return true if the header asks for the compact format
+	 */
+	public static boolean isAccepted(String accept) {
+		return (accept != null) && (accept.indexOf(CONTENT_TYPE) != -1);
+	}
+
+	/**
+	 * @param contentType Content-Type of a response, may be null
+	 * @return true if the response is in the compact format
+	 */
+	public static boolean isCompact(String contentType) {
+		return (contentType != null) && contentType.startsWith(CONTENT_TYPE);
+	}
+
+	/**
+	 * Write the header and filter records
+	 * @param filters request filters
+	 * @param resultsType SearchResults.RESULTS_TYPE value
+	 * @param out the Writer to write to
+	 * @throws IOException if writing fails
+	 */
+	public static void writeHeader(Map<String, String> filters,
+			String resultsType, Writer out) throws IOException {
+		out.write(MAGIC);
+		out.write('\n');
+		for (Map.Entry<String, String> e : filters.entrySet()) {
+			writeFilter(e.getKey(), e.getValue(), out);
+		}
+		writeFilter(SearchResults.RESULTS_TYPE,
+				resultsType, out);
+	}
+
+	private static void writeFilter(String key, String value, Writer out)
+			throws IOException {
+		out.write(TYPE_FILTER);
+		out.write(DELIM);
+		escape(key, out);
+		out.write(DELIM);
+		escape(value, out);
+		out.write('\n');
+	}
+
+	/**
+	 * Write one record per result, with K records whenever the set of
+	 * fields changes.
+	 * @param itr results to write
+	 * @param out the Writer to write to
+	 * @throws IOException if writing fails
+	 */
+	public static void writeResults(Iterator<? extends SearchResult> itr,
+			Writer out) throws IOException {
+		List<String> keys = null;
+		while (itr.hasNext()) {
+			Map<String, String> fields = itr.next().toCanonicalStringMap();
+			if ((keys == null) || (keys.size() != fields.size())
+					|| !fields.keySet().containsAll(keys)) {
+				keys = new ArrayList<String>(fields.keySet());
+				out.write(TYPE_KEYS);
+				for (String key : keys) {
+					out.write(DELIM);
+					escape(key, out);
+				}
+				out.write('\n');
+			}
+			out.write(TYPE_RESULT);
+			for (String key : keys) {
+				out.write(DELIM);
+				escape(fields.get(key), out);
+			}
+			out.write('\n');
+		}
+	}
+
+	/**
+	 * Read a compact response, passing each record to handler
+	 * @param in the response body
+	 * @param handler receiver of records
+	 * @throws IOException if reading fails, or the body is not in the
+	 * 		compact format
+	 */
+	public static void read(InputStream in, Handler handler)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(in, "UTF-8"));
+		String line = reader.readLine();
+		if ((line == null) || !line.equals(MAGIC)) {
+			throw new IOException("Bad compact results header: " + line);
+		}
+		String[] keys = new String[0];
+		List<String> fields = new ArrayList<String>();
+		while ((line = reader.readLine()) != null) {
+			if (line.length() == 0) {
+				continue;
+			}
+			split(line, fields);
+			char type = line.charAt(0);
+			if (type == TYPE_FILTER) {
+				if (fields.size() != 2) {
+					throw new IOException("Bad filter record: " + line);
+				}
+				handler.filter(fields.get(0), fields.get(1));
+			} else if (type == TYPE_KEYS) {
+				keys = fields.toArray(new String[fields.size()]);
+			} else if (type == TYPE_RESULT) {
+				if (fields.size() != keys.length) {
+					throw new IOException("Result does not match keys: "
+							+ line);
+				}
+				String[] values = fields.toArray(new String[fields.size()]);
+				if (!handler.result(keys, values)) {
+					return;
+				}
+			}
+			// unknown record types are skipped, for forward compatibility
+		}
+	}
+
+	// split everything after the type field, unescaping as we go
+	private static void split(String line, List<String> fields) {
+		fields.clear();
+		int len = line.length();
+		if ((len < 2) || (line.charAt(1) != DELIM)) {
+			return;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 2; i < len; i++) {
+			char c = line.charAt(i);
+			if (c == DELIM) {
+				fields.add(sb.toString());
+				sb.setLength(0);
+			} else if ((c == '\\') && (i + 1 < len)) {
+				char n = line.charAt(++i);
+				if (n == 't') {
+					sb.append('\t');
+				} else if (n == 'n') {
+					sb.append('\n');
+				} else if (n == 'r') {
+					sb.append('\r');
+				} else {
+					sb.append(n);
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+		fields.add(sb.toString());
+	}
+
+	private static void escape(String value, Writer out) throws IOException {
+		if (value == null) {
+			return;
+		}
+		int len = value.length();
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			if (c == '\\') {
+				out.write("\\\\");
+			} else if (c == '\t') {
+				out.write("\\t");
+			} else if (c == '\n') {
+				out.write("\\n");
+			} else if (c == '\r') {
+				out.write("\\r");
+			} else {
+				out.write(c);
+			}
+		}
+	}
+}
@@ -19,7 +19,12 @@
  */
 package org.archive.wayback.query;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -28,6 +33,8 @@ import javax.servlet.http.HttpServletResponse;
 import org.archive.wayback.QueryRenderer;
 import org.archive.wayback.ResultURIConverter;
 import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.SearchResult;
+import org.archive.wayback.core.SearchResults;
 import org.archive.wayback.core.UIResults;
 import org.archive.wayback.core.UrlSearchResults;
 import org.archive.wayback.core.WaybackRequest;
@@ -35,7 +42,9 @@ import org.archive.wayback.core.WaybackRequest;
 /**
  * Brain-dead simple QueryRenderer implementation, which shunts all the work off
  * to a .jsp file as defined by administrators. Also has basic logic to switch
- * to a different .jsp to format request asking for XML data. 
+ * to a different .jsp to format request asking for XML data. XML requests
+ * which accept {@link CompactResultsFormat} (sent by RemoteResourceIndex)
+ * are answered in that format directly.
  *
  * @author brad
  * @version $Date$, $Revision$
@@ -46,6 +55,7 @@ public class Renderer implements QueryRenderer {
 	private String urlJsp = "/WEB-INF/query/HTMLUrlResults.jsp";
 	private String xmlCaptureJsp = "/WEB-INF/query/XMLCaptureResults.jsp";
 	private String xmlUrlJsp = "/WEB-INF/query/XMLUrlResults.jsp";
+	private boolean enableCompactFormat = true;
 	
 	protected ResultURIConverter queryUriConverter = null;
 	
@@ -54,6 +64,11 @@ public class Renderer implements QueryRenderer {
 			CaptureSearchResults results, ResultURIConverter uriConverter)
 			throws ServletException, IOException {
 
+		if(wbRequest.isXMLMode() && isCompactRequested(httpRequest)) {
+			writeCompact(httpResponse, results.getFilters(),
+					SearchResults.RESULTS_TYPE_CAPTURE, results.iterator());
+			return;
+		}
 		UIResults uiResults = new UIResults(wbRequest,(queryUriConverter != null ? queryUriConverter : uriConverter),results);
 		if(wbRequest.isXMLMode()) {
 			uiResults.forward(httpRequest, httpResponse, xmlCaptureJsp);
@@ -70,6 +85,11 @@ public class Renderer implements QueryRenderer {
 			UrlSearchResults results, ResultURIConverter uriConverter)
 			throws ServletException, IOException {
 
+		if(wbRequest.isXMLMode() && isCompactRequested(httpRequest)) {
+			writeCompact(httpResponse, results.getFilters(),
+					SearchResults.RESULTS_TYPE_URL, results.iterator());
+			return;
+		}
 		UIResults uiResults = new UIResults(wbRequest,(queryUriConverter != null ? queryUriConverter : uriConverter),results);
 		if(wbRequest.isXMLMode()) {
 			uiResults.forward(httpRequest, httpResponse, xmlUrlJsp);
@@ -78,6 +98,23 @@ public class Renderer implements QueryRenderer {
 		}
 	}
 
+	private boolean isCompactRequested(HttpServletRequest httpRequest) {
+		return enableCompactFormat && 
+			CompactResultsFormat.isAccepted(httpRequest.getHeader("Accept"));
+	}
+
+	private void writeCompact(HttpServletResponse httpResponse,
+			Map<String, String> filters, String resultsType,
+			Iterator<? extends SearchResult> itr) throws IOException {
+		httpResponse.setContentType(CompactResultsFormat.CONTENT_TYPE
+				+ ";charset=utf-8");
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				httpResponse.getOutputStream(), "UTF-8"));
+		CompactResultsFormat.writeHeader(filters, resultsType, out);
+		CompactResultsFormat.writeResults(itr, out);
+		out.flush();
+	}
+
 	/**
 	 * @return the captureJsp
 	 */
@@ -140,4 +177,19 @@ public class Renderer implements QueryRenderer {
 	public void setQueryUriConverter(ResultURIConverter queryUriConverter) {
 		this.queryUriConverter = queryUriConverter;
 	}
+
+	/**
+	 * @return true if XML requests may be answered in CompactResultsFormat
+	 */
+	public boolean isEnableCompactFormat() {
+		return enableCompactFormat;
+	}
+
+	/**
+	 * @param enableCompactFormat if false, XML requests are always answered
+	 * with the XML .jsp files
+	 */
+	public void setEnableCompactFormat(boolean enableCompactFormat) {
+		this.enableCompactFormat = enableCompactFormat;
+	}
 }
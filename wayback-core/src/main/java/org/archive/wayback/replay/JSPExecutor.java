@@ -31,6 +31,7 @@ import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.UIResults;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.template.InsertTemplateRegistry;
 import org.archive.wayback.webapp.PerfWritingHttpServletResponse;
 
 /**
@@ -72,7 +73,16 @@ public class JSPExecutor {
 		if (isAjax) {
 			return "";
 		}
-		
+
+		InsertTemplateRegistry templates =
+			InsertTemplateRegistry.forRequest(uiResults.getWbRequest());
+		if (templates != null) {
+			String insert = templates.render(jspPath, uiResults);
+			if (insert != null) {
+				return insert;
+			}
+		}
+
 		if (httpResponse instanceof PerfWritingHttpServletResponse) {
 			uiResults.setPerfResponse((PerfWritingHttpServletResponse)httpResponse);
 		}
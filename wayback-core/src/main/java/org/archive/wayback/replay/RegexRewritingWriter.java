@@ -0,0 +1,246 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writer that replaces matches of a regular expression in the text written
+ * to it, and passes the result on to another Writer, holding only a bounded
+ * window of text in memory.
+ * <p>Text is rewritten once {@code windowSize} characters are buffered.
+ * A match is only replaced once at least {@code maxMatchLength} characters
+ * follow its start, or the text has ended, so that matches spanning window
+ * boundaries are seen whole. Matches longer than {@code maxMatchLength}
+ * may be missed. A few characters before the current window are kept, and
+ * visible to look-behind constructs.</p>
+ * <p>Writers may be chained to apply several patterns in turn, as
+ * {@link TagMagix#markupCSSImports} does on a StringBuilder.
+ * {@link #finish()} must be called after the last write.</p>
+ */
+public class RegexRewritingWriter extends Writer {
+	/** default number of characters rewritten at a time */
+	public final static int DEFAULT_WINDOW_SIZE = 65536;
+	/** default maximum length of a match */
+	public final static int DEFAULT_MAX_MATCH_LENGTH = 4096;
+
+	// characters kept before the window, for look-behind
+	private final static int CONTEXT_LENGTH = 256;
+
+	/**
+	 * Computes replacement text for a match.
+	 */
+	public interface Replacer {
+		/**
+		 * @param matcher Matcher positioned on the current match
+		 * @return text replacing the whole match, or {@code null} to
+		 * leave it unchanged
+		 */
+		public String replace(Matcher matcher);
+	}
+
+	private final Writer out;
+	private final Pattern pattern;
+	private final Replacer replacer;
+	private final int windowSize;
+	private final int maxMatchLength;
+
+	private final StringBuilder window = new StringBuilder();
+	// window text before this index has been passed on already
+	private int start = 0;
+	// rewrite when this many characters are pending
+	private int threshold;
+	private char[] scratch = null;
+	private boolean finished = false;
+
+	/**
+	 * @param out Writer receiving rewritten text
+	 * @param pattern regular expression to look for
+	 * @param replacer replacement for each match
+	 */
+	public RegexRewritingWriter(Writer out, Pattern pattern, Replacer replacer) {
+		this(out, pattern, replacer, DEFAULT_WINDOW_SIZE,
+			DEFAULT_MAX_MATCH_LENGTH);
+	}
+
+	/**
+	 * @param out Writer receiving rewritten text
+	 * @param pattern regular expression to look for
+	 * @param replacer replacement for each match
+	 * @param windowSize number of characters to rewrite at a time
+	 * @param maxMatchLength maximum length of a match, less than
+	 *   {@code windowSize}
+	 */
+	public RegexRewritingWriter(Writer out, Pattern pattern, Replacer replacer,
+			int windowSize, int maxMatchLength) {
+		if (maxMatchLength >= windowSize) {
+			throw new IllegalArgumentException(
+				"maxMatchLength must be less than windowSize");
+		}
+		this.out = out;
+		this.pattern = pattern;
+		this.replacer = replacer;
+		this.windowSize = windowSize;
+		this.maxMatchLength = maxMatchLength;
+		this.threshold = windowSize;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		window.append(cbuf, off, len);
+		rewriteIfFull();
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		window.append(str, off, off + len);
+		rewriteIfFull();
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		window.append((char) c);
+		rewriteIfFull();
+	}
+
+	private void rewriteIfFull() throws IOException {
+		if (finished) {
+			throw new IOException("write after finish()");
+		}
+		if (window.length() - start >= threshold) {
+			int pending = window.length() - start;
+			rewrite(false);
+			if (window.length() - start >= pending) {
+				// a long match is still open: wait for more text
+				threshold = pending + windowSize;
+			} else {
+				threshold = windowSize;
+			}
+		}
+	}
+
+	/**
+	 * Rewrite and pass on text in the window. Unless {@code atEnd}, text
+	 * within {@code maxMatchLength} of the end of the window, and any match
+	 * that may continue past it, is held back.
+	 */
+	private void rewrite(boolean atEnd) throws IOException {
+		int length = window.length();
+		int safeEnd = atEnd ? length : length - maxMatchLength;
+		int commit = safeEnd;
+		int written = start;
+		int idx = start;
+		Matcher matcher = pattern.matcher(window);
+		matcher.useTransparentBounds(true);
+		matcher.useAnchoringBounds(false);
+		while (idx <= length) {
+			matcher.region(idx, length);
+			if (!matcher.find()) {
+				break;
+			}
+			int matchStart = matcher.start();
+			int matchEnd = matcher.end();
+			if (!atEnd) {
+				if (matchStart >= safeEnd) {
+					break;
+				}
+				if (matcher.hitEnd()) {
+					// may match differently with more text
+					commit = matchStart;
+					break;
+				}
+			}
+			String replacement = replacer.replace(matcher);
+			if (replacement != null) {
+				writeWindow(written, matchStart);
+				out.write(replacement);
+				written = matchEnd;
+			}
+			idx = (matchEnd > matchStart) ? matchEnd : matchEnd + 1;
+			if (matchEnd > commit) {
+				commit = matchEnd;
+			}
+		}
+		if (commit < written) {
+			commit = written;
+		}
+		writeWindow(written, commit);
+
+		int drop = commit - CONTEXT_LENGTH;
+		if (drop > 0) {
+			window.delete(0, drop);
+			commit -= drop;
+		}
+		start = commit;
+	}
+
+	private void writeWindow(int from, int to) throws IOException {
+		if (scratch == null) {
+			scratch = new char[4096];
+		}
+		while (from < to) {
+			int n = Math.min(to - from, scratch.length);
+			window.getChars(from, from + n, scratch, 0);
+			out.write(scratch, 0, n);
+			from += n;
+		}
+	}
+
+	/**
+	 * Rewrite all remaining text and pass it on, finishing {@code out} too
+	 * if it is a RegexRewritingWriter. {@code out} is flushed, not closed.
+	 * @throws IOException when thrown by {@code out}
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		rewrite(true);
+		window.setLength(0);
+		start = 0;
+		if (out instanceof RegexRewritingWriter) {
+			((RegexRewritingWriter) out).finish();
+		} else {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Flushes {@code out}. Text held back for possible matches is not
+	 * passed on until more is written, or {@link #finish()} is called.
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * {@link #finish()}, then close {@code out}.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+}
@@ -19,6 +19,7 @@
  */
 package org.archive.wayback.replay;
 
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -249,34 +250,12 @@ public class TagMagix {
 			int origUrlLength = url.length();
 			int attrStart = matcher.start(1);
 			int attrEnd = matcher.end(1);
-			if(origUrlLength < MIN_ATTR_LENGTH) {
+			String replayUrl = rewriteUrlValue(url, uriConverter, captureDate,
+				baseUrl);
+			if (replayUrl == null) {
 				idx = attrEnd;
 				continue;
 			}
-			String quote = "";
-			if (url.charAt(0) == '"') {
-				quote = "\"";
-				url = url.substring(1, origUrlLength - 1);
-			} else if (url.charAt(0) == '\'') {
-				quote = "'";
-				url = url.substring(1, origUrlLength - 1);
-			} else if (url.charAt(0) == '\\') {
-				quote = "\\\"";
-				url = url.substring(2, origUrlLength - 2);
-			}
-			// Additional border case, probably embedded string not actual url
-			if ((url.charAt(0) == '\'' || url.charAt(0) == '"') && url.length() <= MIN_ATTR_LENGTH) {
-				idx = attrEnd;
-				continue;
-			}
-			if (url.startsWith(ReplayParseContext.DATA_PREFIX)) {
-				idx = attrEnd;
-				continue;
-			}
-			
-			String finalUrl = UrlOperations.resolveUrl(baseUrl,url);
-			String replayUrl = quote
-					+ uriConverter.makeReplayURI(captureDate, finalUrl) + quote;
 
 			int delta = replayUrl.length() - origUrlLength;
 			page.replace(attrStart, attrEnd, replayUrl);
@@ -284,6 +263,93 @@ public class TagMagix {
 		}
 	}
 
+	/**
+	 * rewrite a URL value matched by one of the patterns used with
+	 * {@link #markupTagREURIC(StringBuilder, ResultURIConverter, String, String, Pattern)}.
+	 * @param url URL value, possibly quoted
+	 * @param uriConverter ResultURIConverter for building replay URL
+	 * @param captureDate capture timestamp
+	 * @param baseUrl URL for resolving relative {@code url}
+	 * @return replay URL, quoted as {@code url} was, or {@code null} if
+	 *   {@code url} should be left as it is.
+	 */
+	private static String rewriteUrlValue(String url,
+			ResultURIConverter uriConverter, String captureDate,
+			String baseUrl) {
+		int origUrlLength = url.length();
+		if(origUrlLength < MIN_ATTR_LENGTH) {
+			return null;
+		}
+		String quote = "";
+		if (url.charAt(0) == '"') {
+			quote = "\"";
+			url = url.substring(1, origUrlLength - 1);
+		} else if (url.charAt(0) == '\'') {
+			quote = "'";
+			url = url.substring(1, origUrlLength - 1);
+		} else if (url.charAt(0) == '\\') {
+			quote = "\\\"";
+			url = url.substring(2, origUrlLength - 2);
+		}
+		// Additional border case, probably embedded string not actual url
+		if ((url.charAt(0) == '\'' || url.charAt(0) == '"') && url.length() <= MIN_ATTR_LENGTH) {
+			return null;
+		}
+		if (url.startsWith(ReplayParseContext.DATA_PREFIX)) {
+			return null;
+		}
+
+		String finalUrl = UrlOperations.resolveUrl(baseUrl,url);
+		return quote + uriConverter.makeReplayURI(captureDate, finalUrl) + quote;
+	}
+
+	/**
+	 * Replacer applying {@link #rewriteUrlValue} to capture group 1.
+	 */
+	private static class UrlValueReplacer implements RegexRewritingWriter.Replacer {
+		private final ResultURIConverter uriConverter;
+		private final String captureDate;
+		private final String baseUrl;
+
+		UrlValueReplacer(ResultURIConverter uriConverter, String captureDate,
+				String baseUrl) {
+			this.uriConverter = uriConverter;
+			this.captureDate = captureDate;
+			this.baseUrl = baseUrl;
+		}
+
+		public String replace(Matcher matcher) {
+			String replayUrl = rewriteUrlValue(matcher.group(1), uriConverter,
+				captureDate, baseUrl);
+			if (replayUrl == null) {
+				return null;
+			}
+			String whole = matcher.group();
+			int offset = matcher.start();
+			return whole.substring(0, matcher.start(1) - offset) + replayUrl +
+				whole.substring(matcher.end(1) - offset);
+		}
+	}
+
+	/**
+	 * streaming equivalent of
+	 * {@link #markupCSSImports(StringBuilder, ResultURIConverter, String, String)}.
+	 * @param out Writer receiving rewritten CSS
+	 * @param uriConverter ResultURIConverter for building replay URLs
+	 * @param captureDate capture timestamp
+	 * @param baseUrl URL for resolving relative URLs
+	 * @return Writer rewriting CSS written to it into {@code out}
+	 */
+	public static RegexRewritingWriter cssImportsRewritingWriter(Writer out,
+			ResultURIConverter uriConverter, String captureDate,
+			String baseUrl) {
+		UrlValueReplacer replacer = new UrlValueReplacer(uriConverter,
+			captureDate, baseUrl);
+		return new RegexRewritingWriter(
+			new RegexRewritingWriter(out, cssUrlPattern, replacer),
+			cssImportNoUrlPattern, replacer);
+	}
+
 	private static String trimAttrValue(String value) {
 		if (value.charAt(0) == '"') {
 			value = value.substring(1, value.length() - 1);
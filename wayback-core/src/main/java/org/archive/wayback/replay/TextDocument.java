@@ -35,6 +35,7 @@ import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.UIResults;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.template.InsertTemplateRegistry;
 
 /**
  * Class which wraps functionality for converting a Resource(InputStream + 
@@ -330,6 +331,15 @@ public class TextDocument {
 		UIResults uiResults = new UIResults(wbRequest,uriConverter,results,
 				result,resource);
 
+		InsertTemplateRegistry templates =
+			InsertTemplateRegistry.forRequest(wbRequest);
+		if (templates != null) {
+			String insert = templates.render(jspPath, uiResults);
+			if (insert != null) {
+				return insert;
+			}
+		}
+
 		StringHttpServletResponseWrapper wrappedResponse = 
 			new StringHttpServletResponseWrapper(httpResponse);
 		uiResults.forward(httpRequest, wrappedResponse, jspPath);
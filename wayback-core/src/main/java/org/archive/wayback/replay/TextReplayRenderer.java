@@ -20,6 +20,11 @@
 package org.archive.wayback.replay;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +43,8 @@ import org.archive.wayback.exception.BadContentException;
 import org.archive.wayback.replay.charset.CharsetDetector;
 import org.archive.wayback.replay.charset.StandardCharsetDetector;
 import org.archive.wayback.replay.html.ContextResultURIConverterFactory;
+import org.archive.wayback.util.metrics.Stage;
+import org.archive.wayback.util.metrics.StageMetrics;
 
 /**
  * {@link ReplayRenderer} for rewriting textual resource with {@link TextDocument}.
@@ -61,6 +68,12 @@ import org.archive.wayback.replay.html.ContextResultURIConverterFactory;
  * just for {@code TextDocument} and {#updatePage} by setting this property 
  * to non-{@code null} {@code ContextResultURIConverterFactory}. It does not
  * affect URI conversion for HTTP headers.</li>
+ * <li>{@code streamingThreshold}: records of this many bytes or more are
+ * rewritten as they are sent, without loading them into a
+ * {@code TextDocument}, if the subclass supports it by implementing
+ * {@link #createRewritingWriter}. Such responses have no
+ * {@code Content-Length} header. Default is 1MB; negative value disables
+ * streaming.</li>
  * </ul>
  * </p>
  * @author brad
@@ -78,6 +91,11 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 
 	private ContextResultURIConverterFactory pageConverterFactory = null;
 
+	private long streamingThreshold = 1024 * 1024;
+
+	// decode this many characters at a time when streaming
+	private final static int C_BUFFER_SIZE = 4096;
+
 	public TextReplayRenderer(HttpHeaderProcessor httpHeaderProcessor) {
 		this.httpHeaderProcessor = httpHeaderProcessor;
 	}
@@ -89,6 +107,27 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 			ResultURIConverter uriConverter, CaptureSearchResults results)
 					throws ServletException, IOException;
 
+	/**
+	 * Return a Writer that rewrites the document text written to it and
+	 * passes it on to {@code out}, for documents rendered without loading
+	 * them into a {@link TextDocument}. {@code jspInserts} are rendered and
+	 * written to {@code out} at the start of the document before it.
+	 * <p>Default implementation returns {@code null}: documents are always
+	 * loaded fully and rewritten by {@link #updatePage}.</p>
+	 * @param out Writer to the response
+	 * @param result capture being replayed
+	 * @param uriConverter ResultURIConverter the {@code TextDocument}
+	 *   would be created with
+	 * @param pageConverter ResultURIConverter that would be passed to
+	 *   {@code updatePage}
+	 * @return RegexRewritingWriter, or {@code null} if not supported
+	 */
+	protected RegexRewritingWriter createRewritingWriter(Writer out,
+			CaptureSearchResult result, ResultURIConverter uriConverter,
+			ResultURIConverter pageConverter) {
+		return null;
+	}
+
 	@Override
 	public void renderResource(HttpServletRequest httpRequest,
 			HttpServletResponse httpResponse, WaybackRequest wbRequest,
@@ -114,8 +153,10 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 		Map<String,String> headers = HttpHeaderOperation.processHeaders(
 				httpHeadersResource, result, uriConverter, httpHeaderProcessor);
 
+		long charsetStart = StageMetrics.start();
 		String charSet = charsetDetector.getCharset(httpHeadersResource,
-				decodedResource, wbRequest);
+				decodedResource, result, wbRequest);
+		StageMetrics.end(Stage.CHARSET_DETECTION, charsetStart);
 
 		ResultURIConverter pageConverter = uriConverter;
 		if (pageConverterFactory != null) {
@@ -127,13 +168,29 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 			if (ruc != null)
 				pageConverter = ruc;
 		}
+		if (streamingThreshold >= 0 &&
+				payloadResource.getRecordLength() >= streamingThreshold) {
+			Writer out = new OutputStreamWriter(httpResponse.getOutputStream(),
+				charSet);
+			RegexRewritingWriter rewriter = createRewritingWriter(out, result,
+				uriConverter, pageConverter);
+			if (rewriter != null) {
+				renderStreaming(rewriter, out, headers, charSet, httpRequest,
+					httpResponse, wbRequest, result, decodedResource,
+					uriConverter, results);
+				return;
+			}
+		}
+
 		// Load content into an HTML page, and resolve load-time URLs:
 		TextDocument page = new TextDocument(decodedResource, result,
 				uriConverter);
 		page.readFully(charSet);
 
+		long rewriteStart = StageMetrics.start();
 		updatePage(page, httpRequest, httpResponse, wbRequest, result,
 				decodedResource, pageConverter, results);
+		StageMetrics.end(Stage.REWRITE, rewriteStart);
 
 		// set the corrected length:
 		int bytes = page.getBytes().length;
@@ -155,6 +212,52 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 		page.writeToOutputStream(httpResponse.getOutputStream());
 	}
 
+	private void renderStreaming(RegexRewritingWriter rewriter, Writer out,
+			Map<String, String> headers, String charSet,
+			HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+			WaybackRequest wbRequest, CaptureSearchResult result,
+			Resource decodedResource, ResultURIConverter uriConverter,
+			CaptureSearchResults results) throws ServletException, IOException {
+
+		// render inserts before anything is sent, as with updatePage:
+		StringBuilder toInsert = new StringBuilder(300);
+		if (jspInserts != null) {
+			TextDocument page = new TextDocument(decodedResource, result,
+				uriConverter);
+			Iterator<String> itr = jspInserts.iterator();
+			while (itr.hasNext()) {
+				toInsert.append(page.includeJspString(itr.next(), httpRequest,
+						httpResponse, wbRequest, results, result,
+						decodedResource));
+			}
+		}
+
+		// length is not known until the whole document is rewritten:
+		HttpHeaderOperation.removeHeader(headers,
+			HttpHeaderOperation.HTTP_LENGTH_HEADER);
+		if (guessedCharsetHeader != null) {
+			headers.put(guessedCharsetHeader, charSet);
+		}
+		HttpHeaderOperation.sendHeaders(headers, httpResponse);
+		httpResponse.setCharacterEncoding(charSet);
+
+		out.write(toInsert.toString());
+
+		long rewriteStart = StageMetrics.start();
+		Reader reader = new InputStreamReader(decodedResource, charSet);
+		char[] cbuffer = new char[C_BUFFER_SIZE];
+		//Skip the UTF-8 BOM 0xFEFF, as TextDocument does
+		int firstChar = reader.read();
+		if ((firstChar != '\uFEFF') && (firstChar != -1)) {
+			rewriter.write(firstChar);
+		}
+		for (int r = -1; (r = reader.read(cbuffer, 0, C_BUFFER_SIZE)) != -1;) {
+			rewriter.write(cbuffer, 0, r);
+		}
+		rewriter.finish();
+		StageMetrics.end(Stage.REWRITE, rewriteStart);
+	}
+
 	/**
 	 * @return the jspInserts
 	 */
@@ -169,6 +272,23 @@ public abstract class TextReplayRenderer implements ReplayRenderer {
 		this.jspInserts = jspInserts;
 	}
 
+	/**
+	 * @return size in bytes of the smallest record that is rewritten while
+	 * it is sent, or negative if streaming is disabled.
+	 */
+	public long getStreamingThreshold() {
+		return streamingThreshold;
+	}
+
+	/**
+	 * @param streamingThreshold size in bytes of the smallest record that
+	 * is rewritten while it is sent, without Content-Length header.
+	 * Negative value disables streaming.
+	 */
+	public void setStreamingThreshold(long streamingThreshold) {
+		this.streamingThreshold = streamingThreshold;
+	}
+
 	/**
 	 * @return the charsetDetector
 	 */
@@ -0,0 +1,211 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A fully rendered replay response: status code, headers and body bytes,
+ * as captured by a {@link RecordingHttpServletResponse}, along with the
+ * hit counters {@link ReplayCache} reports on.
+ */
+public class CachedReplay {
+	private static final int MAGIC = 0x57524331;
+
+	private final String key;
+	private final int status;
+	private final String contentType;
+	private final String characterEncoding;
+	private final List<String[]> headers;
+	private final byte[] body;
+	private final long created;
+	private final AtomicLong hits = new AtomicLong(0);
+	private volatile long lastHit;
+
+	/**
+	 * @param key the ReplayCache key this entry is stored under
+	 * @param status HTTP status code of the rendered response
+	 * @param contentType Content-Type set on the response, or null
+	 * @param characterEncoding character encoding set on the response, 
+	 * 		or null
+	 * @param headers name/value pairs, in the order they were added
+	 * @param body the rendered bytes
+	 */
+	public CachedReplay(String key, int status, String contentType,
+			String characterEncoding, List<String[]> headers, byte[] body) {
+		this(key, status, contentType, characterEncoding, headers, body,
+				System.currentTimeMillis());
+	}
+
+	private CachedReplay(String key, int status, String contentType,
+			String characterEncoding, List<String[]> headers, byte[] body,
+			long created) {
+		this.key = key;
+		this.status = status;
+		this.contentType = contentType;
+		this.characterEncoding = characterEncoding;
+		this.headers = headers;
+		this.body = body;
+		this.created = created;
+		this.lastHit = created;
+	}
+
+	/**
+	 * Replay this response onto httpResponse, which should not have been
+	 * committed yet.
+	 * @param httpResponse the response to write to
+	 * @throws IOException if writing the body fails
+	 */
+	public void writeTo(HttpServletResponse httpResponse) throws IOException {
+		httpResponse.setStatus(status);
+		if (contentType != null) {
+			httpResponse.setContentType(contentType);
+		}
+		if (characterEncoding != null) {
+			httpResponse.setCharacterEncoding(characterEncoding);
+		}
+		for (String[] header : headers) {
+			httpResponse.addHeader(header[0], header[1]);
+		}
+		httpResponse.setContentLength(body.length);
+		httpResponse.getOutputStream().write(body);
+	}
+
+	/**
+	 * Record a cache hit against this entry
+	 */
+	public void hit() {
+		hits.incrementAndGet();
+		lastHit = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return approximate number of heap bytes held by this entry
+	 */
+	public long getSize() {
+		long size = body.length + key.length() * 2 + 64;
+		for (String[] header : headers) {
+			size += (header[0].length() + header[1].length()) * 2 + 32;
+		}
+		return size;
+	}
+
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeUTF(key);
+		out.writeInt(status);
+		writeNullable(out, contentType);
+		writeNullable(out, characterEncoding);
+		out.writeLong(created);
+		out.writeLong(hits.get());
+		out.writeInt(headers.size());
+		for (String[] header : headers) {
+			out.writeUTF(header[0]);
+			out.writeUTF(header[1]);
+		}
+		out.writeInt(body.length);
+		out.write(body);
+	}
+
+	static CachedReplay read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a cached replay");
+		}
+		String key = in.readUTF();
+		int status = in.readInt();
+		String contentType = readNullable(in);
+		String characterEncoding = readNullable(in);
+		long created = in.readLong();
+		long hits = in.readLong();
+		int count = in.readInt();
+		List<String[]> headers = new ArrayList<String[]>(count);
+		for (int i = 0; i < count; i++) {
+			headers.add(new String[] { in.readUTF(), in.readUTF() });
+		}
+		byte[] body = new byte[in.readInt()];
+		in.readFully(body);
+		CachedReplay replay = new CachedReplay(key, status, contentType,
+				characterEncoding, headers, body, created);
+		replay.hits.set(hits);
+		return replay;
+	}
+
+	private static void writeNullable(DataOutputStream out, String s)
+			throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * @return the key this entry is stored under
+	 */
+	public String getKey() {
+		return key;
+	}
+	/**
+	 * @return the HTTP status code
+	 */
+	public int getStatus() {
+		return status;
+	}
+	/**
+	 * @return the rendered body
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+	/**
+	 * @return the headers, as name/value pairs
+	 */
+	public List<String[]> getHeaders() {
+		return headers;
+	}
+	/**
+	 * @return the time this entry was rendered
+	 */
+	public long getCreated() {
+		return created;
+	}
+	/**
+	 * @return the number of times this entry has been served
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	/**
+	 * @return the time this entry was last served
+	 */
+	public long getLastHit() {
+		return lastHit;
+	}
+}
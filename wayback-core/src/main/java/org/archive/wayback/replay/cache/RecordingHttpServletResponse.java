@@ -0,0 +1,280 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * HttpServletResponseWrapper which passes everything through to the wrapped
+ * response while keeping a copy of the status, headers and body, so the
+ * rendered output can be stored in a {@link ReplayCache}.
+ * <p>
+ * Recording is abandoned (but output still passes through) once the body
+ * grows beyond maxBytes, or if the renderer does anything that makes the
+ * response unsafe to share: setting cookies, redirecting, sending an error,
+ * or resetting the response.
+ */
+public class RecordingHttpServletResponse extends HttpServletResponseWrapper {
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private static final String CONTENT_TYPE = "Content-Type";
+
+	private final int maxBytes;
+	private ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+	private List<String[]> headers = new ArrayList<String[]>();
+	private int status = SC_OK;
+	private String contentType = null;
+	private String characterEncoding = null;
+	private boolean cacheable = true;
+
+	private ServletOutputStream outputStream = null;
+	private PrintWriter writer = null;
+
+	/**
+	 * @param response the response to pass output through to
+	 * @param maxBytes largest body that will be recorded
+	 */
+	public RecordingHttpServletResponse(HttpServletResponse response,
+			int maxBytes) {
+		super(response);
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return true if the complete response was recorded and may be reused
+	 */
+	public boolean isCacheable() {
+		return cacheable;
+	}
+
+	/**
+	 * Build a CachedReplay of the recorded response
+	 * @param key the key the entry will be stored under
+	 * @return the CachedReplay, or null if the response was not cacheable
+	 */
+	public CachedReplay toCachedReplay(String key) {
+		if (writer != null) {
+			writer.flush();
+		}
+		if (!cacheable) {
+			return null;
+		}
+		return new CachedReplay(key, status, contentType, characterEncoding,
+				headers, recorded.toByteArray());
+	}
+
+	private void abandon() {
+		cacheable = false;
+		recorded = null;
+		headers = null;
+	}
+
+	private void record(byte[] b, int off, int len) {
+		if (!cacheable) {
+			return;
+		}
+		if (recorded.size() + len > maxBytes) {
+			abandon();
+			return;
+		}
+		recorded.write(b, off, len);
+	}
+
+	private void recordHeader(String name, String value, boolean replace) {
+		if (!cacheable) {
+			return;
+		}
+		if (name.equalsIgnoreCase(CONTENT_LENGTH)) {
+			// recomputed from the body when the entry is served
+			return;
+		}
+		if (name.equalsIgnoreCase(CONTENT_TYPE)) {
+			contentType = value;
+			return;
+		}
+		if (replace) {
+			for (int i = headers.size() - 1; i >= 0; i--) {
+				if (headers.get(i)[0].equalsIgnoreCase(name)) {
+					headers.remove(i);
+				}
+			}
+		}
+		headers.add(new String[] { name, value });
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (outputStream == null) {
+			final ServletOutputStream out = super.getOutputStream();
+			outputStream = new ServletOutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					record(new byte[] { (byte) b }, 0, 1);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len)
+						throws IOException {
+					out.write(b, off, len);
+					record(b, off, len);
+				}
+
+				@Override
+				public void flush() throws IOException {
+					out.flush();
+				}
+			};
+		}
+		return outputStream;
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			// Encode through our own stream so the bytes are recorded too.
+			String encoding = getCharacterEncoding();
+			writer = new PrintWriter(new OutputStreamWriter(
+					getOutputStream(), encoding == null ? "ISO-8859-1"
+							: encoding));
+		}
+		return writer;
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+		super.flushBuffer();
+	}
+
+	@Override
+	public void setStatus(int sc) {
+		status = sc;
+		super.setStatus(sc);
+	}
+
+	@SuppressWarnings("deprecation")
+	@Override
+	public void setStatus(int sc, String sm) {
+		status = sc;
+		super.setStatus(sc, sm);
+	}
+
+	@Override
+	public void sendError(int sc) throws IOException {
+		abandon();
+		super.sendError(sc);
+	}
+
+	@Override
+	public void sendError(int sc, String msg) throws IOException {
+		abandon();
+		super.sendError(sc, msg);
+	}
+
+	@Override
+	public void sendRedirect(String location) throws IOException {
+		abandon();
+		super.sendRedirect(location);
+	}
+
+	@Override
+	public void addCookie(Cookie cookie) {
+		abandon();
+		super.addCookie(cookie);
+	}
+
+	@Override
+	public void reset() {
+		abandon();
+		super.reset();
+	}
+
+	@Override
+	public void resetBuffer() {
+		abandon();
+		super.resetBuffer();
+	}
+
+	@Override
+	public void setContentType(String type) {
+		if (cacheable) {
+			contentType = type;
+		}
+		super.setContentType(type);
+	}
+
+	@Override
+	public void setCharacterEncoding(String charset) {
+		if (cacheable) {
+			characterEncoding = charset;
+		}
+		super.setCharacterEncoding(charset);
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		recordHeader(name, value, true);
+		super.setHeader(name, value);
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		recordHeader(name, value, false);
+		super.addHeader(name, value);
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		recordHeader(name, String.valueOf(value), true);
+		super.setIntHeader(name, value);
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		recordHeader(name, String.valueOf(value), false);
+		super.addIntHeader(name, value);
+	}
+
+	@Override
+	public void setDateHeader(String name, long date) {
+		// Date formatting is left to the container; drop the entry rather
+		// than risk serving a different representation.
+		abandon();
+		super.setDateHeader(name, date);
+	}
+
+	@Override
+	public void addDateHeader(String name, long date) {
+		abandon();
+		super.addDateHeader(name, date);
+	}
+}
@@ -0,0 +1,523 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.archive.wayback.ResultURIConverter;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.WaybackRequest;
+
+/**
+ * Cache of fully rendered replay responses for frequently requested
+ * captures, so a hot capture is not re-fetched from its (W)ARC and 
+ * re-rewritten on every request.
+ * <p>
+ * Entries are keyed on everything that changes the rendered bytes: the
+ * capture's location and digest, the replay URL produced by the 
+ * AccessPoint's ResultURIConverter (which covers the replay prefix and
+ * URL scheme), the requested URL and timestamp, the embed context flags,
+ * the request Locale, and the first, last and number of captures the page
+ * is rendered with, as banners and toolbars may show them.
+ * <p>
+ * Two tiers are kept: a memory tier bounded by maxMemoryBytes, and an
+ * optional disk tier under cacheDir, bounded by maxDiskBytes, to which
+ * entries evicted from memory are spilled. Both are least-recently-used.
+ * The disk tier is emptied at startup, as stored output may not match the
+ * current templates. Entries expire after maxAgeMS, one hour by default.
+ * <p>
+ * Only successful (2xx) responses without cookies or redirects are stored.
+ */
+public class ReplayCache {
+	private static final Logger LOGGER = Logger.getLogger(
+			ReplayCache.class.getName());
+
+	private static final String ENTRY_SUFFIX = ".replay";
+
+	private long maxMemoryBytes = 64 * 1024 * 1024;
+	private long maxDiskBytes = 0;
+	private int maxEntryBytes = 1024 * 1024;
+	private long maxAgeMS = 60 * 60 * 1000;
+	private File cacheDir = null;
+
+	private final LinkedHashMap<String, CachedReplay> memory = 
+		new LinkedHashMap<String, CachedReplay>(1024, 0.75f, true);
+	private long memoryBytes = 0;
+
+	private final LinkedHashMap<String, Long> disk =
+		new LinkedHashMap<String, Long>(1024, 0.75f, true);
+	private long diskBytes = 0;
+
+	private final AtomicLong memoryHits = new AtomicLong(0);
+	private final AtomicLong diskHits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong stores = new AtomicLong(0);
+	private final AtomicLong rejects = new AtomicLong(0);
+	private final AtomicLong evictions = new AtomicLong(0);
+	
+	/**
+	 * Prepare the disk tier, if one is configured
+	 * @throws IOException if cacheDir cannot be created
+	 */
+	public void init() throws IOException {
+		if ((cacheDir == null) || (maxDiskBytes <= 0)) {
+			return;
+		}
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+			throw new IOException("Unable to create " + cacheDir);
+		}
+		File[] old = cacheDir.listFiles();
+		if (old != null) {
+			for (File f : old) {
+				if (f.getName().endsWith(ENTRY_SUFFIX)) {
+					f.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build the cache key for replaying closest in the context of wbRequest.
+	 * @param httpRequest the incoming request
+	 * @param wbRequest the parsed WaybackRequest
+	 * @param closest the capture which will be replayed
+	 * @param uriConverter the converter the renderer will rewrite with
+	 * @param results the captures the renderer is given
+	 * @return String key
+	 */
+	public String makeKey(HttpServletRequest httpRequest,
+			WaybackRequest wbRequest, CaptureSearchResult closest,
+			ResultURIConverter uriConverter, CaptureSearchResults results) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(closest.getFile()).append(' ');
+		sb.append(closest.getOffset()).append(' ');
+		sb.append(closest.getDigest()).append(' ');
+		sb.append(closest.getDuplicatePayloadFile()).append(' ');
+		sb.append(closest.getDuplicatePayloadOffset()).append(' ');
+		sb.append(uriConverter.makeReplayURI(closest.getCaptureTimestamp(),
+				closest.getOriginalUrl())).append(' ');
+		sb.append(wbRequest.getReplayTimestamp()).append(' ');
+		sb.append(wbRequest.getRequestUrl()).append(' ');
+		sb.append(wbRequest.isCSSContext() ? 'c' : '-');
+		sb.append(wbRequest.isJSContext() ? 'j' : '-');
+		sb.append(wbRequest.isIMGContext() ? 'i' : '-');
+		sb.append(wbRequest.isObjectEmbedContext() ? 'o' : '-');
+		sb.append(wbRequest.isIdentityContext() ? 'd' : '-');
+		sb.append(wbRequest.isFrameWrapperContext() ? 'f' : '-');
+		sb.append(wbRequest.isIFrameWrapperContext() ? 'F' : '-');
+		sb.append(wbRequest.isAjaxRequest() ? 'a' : '-');
+		sb.append(' ').append(wbRequest.getForcedContentType());
+		sb.append(' ').append(wbRequest.getCharsetMode());
+		sb.append(' ').append(httpRequest.getLocale());
+		if (results != null) {
+			sb.append(' ').append(results.getFirstResultTimestamp());
+			sb.append(' ').append(results.getLastResultTimestamp());
+			sb.append(' ').append(results.size());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param key the key built by makeKey()
+	 * @return the cached response, or null if there is no usable entry
+	 */
+	public CachedReplay get(String key) {
+		CachedReplay replay;
+		boolean onDisk;
+		synchronized (this) {
+			replay = memory.get(key);
+			onDisk = (replay == null) && disk.containsKey(key);
+		}
+		if (replay != null) {
+			if (isExpired(replay)) {
+				synchronized (this) {
+					removeMemory(key);
+				}
+				replay = null;
+			} else {
+				memoryHits.incrementAndGet();
+			}
+		} else if (onDisk) {
+			replay = readDisk(key);
+			if ((replay != null) && !isExpired(replay)) {
+				diskHits.incrementAndGet();
+				// promote back into memory
+				store(replay);
+			} else {
+				replay = null;
+			}
+		}
+		if (replay == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		replay.hit();
+		return replay;
+	}
+
+	/**
+	 * Wrap httpResponse so that the output rendered to it is recorded
+	 * @param httpResponse the response being rendered to
+	 * @return the recording wrapper, to pass to the ReplayRenderer
+	 */
+	public RecordingHttpServletResponse startRecording(
+			HttpServletResponse httpResponse) {
+		return new RecordingHttpServletResponse(httpResponse, maxEntryBytes);
+	}
+
+	/**
+	 * Store the output captured by recorder under key, if it is cacheable
+	 * @param key the key built by makeKey()
+	 * @param recorder the wrapper returned by startRecording()
+	 * @return true if the output was stored
+	 */
+	public boolean finishRecording(String key,
+			RecordingHttpServletResponse recorder) {
+		CachedReplay replay = recorder.toCachedReplay(key);
+		if ((replay == null) || (replay.getStatus() < 200)
+				|| (replay.getStatus() >= 300)) {
+			rejects.incrementAndGet();
+			return false;
+		}
+		store(replay);
+		stores.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Add replay to the memory tier, spilling least recently used entries
+	 * to disk as needed.
+	 * @param replay the entry to add
+	 */
+	public void store(CachedReplay replay) {
+		List<CachedReplay> spilled = new ArrayList<CachedReplay>();
+		synchronized (this) {
+			removeMemory(replay.getKey());
+			memory.put(replay.getKey(), replay);
+			memoryBytes += replay.getSize();
+			Iterator<CachedReplay> itr = memory.values().iterator();
+			while ((memoryBytes > maxMemoryBytes) && itr.hasNext()) {
+				CachedReplay old = itr.next();
+				itr.remove();
+				memoryBytes -= old.getSize();
+				spilled.add(old);
+			}
+		}
+		for (CachedReplay old : spilled) {
+			if (!writeDisk(old)) {
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private void removeMemory(String key) {
+		CachedReplay old = memory.remove(key);
+		if (old != null) {
+			memoryBytes -= old.getSize();
+		}
+	}
+
+	private boolean isExpired(CachedReplay replay) {
+		return (maxAgeMS > 0)
+				&& (System.currentTimeMillis() - replay.getCreated() > maxAgeMS);
+	}
+
+	private boolean isDiskEnabled() {
+		return (cacheDir != null) && (maxDiskBytes > 0);
+	}
+
+	private File diskFile(String key) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(key.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(digest.length * 2 + 8);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			sb.append(ENTRY_SUFFIX);
+			return new File(cacheDir, sb.toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private boolean writeDisk(CachedReplay replay) {
+		if (!isDiskEnabled()) {
+			return false;
+		}
+		File target = diskFile(replay.getKey());
+		File tmp = new File(target.getPath() + ".tmp"
+				+ Thread.currentThread().getId());
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp)));
+			replay.write(out);
+			out.close();
+			out = null;
+			if (!tmp.renameTo(target)) {
+				target.delete();
+				if (!tmp.renameTo(target)) {
+					throw new IOException("Unable to rename " + tmp);
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to spill replay to disk", e);
+			tmp.delete();
+			return false;
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// already failing
+				}
+				tmp.delete();
+			}
+		}
+		List<String> dropped = new ArrayList<String>();
+		synchronized (this) {
+			Long old = disk.put(replay.getKey(), target.length());
+			if (old != null) {
+				diskBytes -= old;
+			}
+			diskBytes += target.length();
+			Iterator<Map.Entry<String, Long>> itr = disk.entrySet().iterator();
+			while ((diskBytes > maxDiskBytes) && itr.hasNext()) {
+				Map.Entry<String, Long> e = itr.next();
+				itr.remove();
+				diskBytes -= e.getValue();
+				dropped.add(e.getKey());
+			}
+		}
+		for (String key : dropped) {
+			diskFile(key).delete();
+			evictions.incrementAndGet();
+		}
+		return !dropped.contains(replay.getKey());
+	}
+
+	private CachedReplay readDisk(String key) {
+		File f = diskFile(key);
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(f)));
+			CachedReplay replay = CachedReplay.read(in);
+			if (replay.getKey().equals(key)) {
+				return replay;
+			}
+		} catch (IOException e) {
+			LOGGER.fine("Unreadable cached replay " + f + ": " + e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		synchronized (this) {
+			Long old = disk.remove(key);
+			if (old != null) {
+				diskBytes -= old;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Drop all entries from both tiers
+	 */
+	public void clear() {
+		List<String> keys;
+		synchronized (this) {
+			memory.clear();
+			memoryBytes = 0;
+			keys = new ArrayList<String>(disk.keySet());
+			disk.clear();
+			diskBytes = 0;
+		}
+		for (String key : keys) {
+			diskFile(key).delete();
+		}
+	}
+
+	/**
+	 * @param max number of entries to list
+	 * @return the most frequently served entries in the memory tier
+	 */
+	public List<CachedReplay> getTopEntries(int max) {
+		List<CachedReplay> entries;
+		synchronized (this) {
+			entries = new ArrayList<CachedReplay>(memory.values());
+		}
+		Collections.sort(entries, new Comparator<CachedReplay>() {
+			public int compare(CachedReplay o1, CachedReplay o2) {
+				long h1 = o1.getHits();
+				long h2 = o2.getHits();
+				return (h1 > h2) ? -1 : ((h1 == h2) ? 0 : 1);
+			}
+		});
+		return entries.size() > max ? entries.subList(0, max) : entries;
+	}
+
+	/**
+	 * @return one line summary of cache activity, suitable for logging
+	 */
+	public String getStatsReport() {
+		StringBuilder sb = new StringBuilder();
+		synchronized (this) {
+			sb.append("memory=").append(memory.size());
+			sb.append('/').append(memoryBytes);
+			sb.append(" disk=").append(disk.size());
+			sb.append('/').append(diskBytes);
+		}
+		sb.append(" memoryHits=").append(memoryHits.get());
+		sb.append(" diskHits=").append(diskHits.get());
+		sb.append(" misses=").append(misses.get());
+		sb.append(" stores=").append(stores.get());
+		sb.append(" rejects=").append(rejects.get());
+		sb.append(" evictions=").append(evictions.get());
+		return sb.toString();
+	}
+
+	/**
+	 * @return number of hits served from the memory tier
+	 */
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+	/**
+	 * @return number of hits served from the disk tier
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+	/**
+	 * @return number of lookups which found no usable entry
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	/**
+	 * @return number of entries held in memory
+	 */
+	public synchronized int getMemoryCount() {
+		return memory.size();
+	}
+	/**
+	 * @return number of entries held on disk
+	 */
+	public synchronized int getDiskCount() {
+		return disk.size();
+	}
+
+	/**
+	 * @return the maximum bytes held in the memory tier
+	 */
+	public long getMaxMemoryBytes() {
+		return maxMemoryBytes;
+	}
+	/**
+	 * @param maxMemoryBytes the maximum bytes held in the memory tier
+	 */
+	public void setMaxMemoryBytes(long maxMemoryBytes) {
+		this.maxMemoryBytes = maxMemoryBytes;
+	}
+	/**
+	 * @return the maximum bytes held in the disk tier, 0 to disable it
+	 */
+	public long getMaxDiskBytes() {
+		return maxDiskBytes;
+	}
+	/**
+	 * @param maxDiskBytes the maximum bytes held in the disk tier,
+	 * 		0 to disable it
+	 */
+	public void setMaxDiskBytes(long maxDiskBytes) {
+		this.maxDiskBytes = maxDiskBytes;
+	}
+	/**
+	 * @return the largest rendered body which will be cached
+	 */
+	public int getMaxEntryBytes() {
+		return maxEntryBytes;
+	}
+	/**
+	 * @param maxEntryBytes the largest rendered body which will be cached
+	 */
+	public void setMaxEntryBytes(int maxEntryBytes) {
+		this.maxEntryBytes = maxEntryBytes;
+	}
+	/**
+	 * @return maximum age of an entry in milliseconds, 0 for no limit.
+	 * Default one hour.
+	 */
+	public long getMaxAgeMS() {
+		return maxAgeMS;
+	}
+	/**
+	 * @param maxAgeMS maximum age of an entry in milliseconds, 0 for 
+	 * 		no limit. Default one hour.
+	 */
+	public void setMaxAgeMS(long maxAgeMS) {
+		this.maxAgeMS = maxAgeMS;
+	}
+	/**
+	 * @return the directory holding the disk tier
+	 */
+	public File getCacheDir() {
+		return cacheDir;
+	}
+	/**
+	 * @param cacheDir the directory holding the disk tier
+	 */
+	public void setCacheDir(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+}
@@ -15,18 +15,33 @@ public class ByteOrderMarkSniffer extends BaseEncodingSniffer {
 	@Override
 	public String sniff(Resource resource) {
 		byte[] bbuffer = new byte[MAX_BOM_LEN];
+		int len;
 		resource.mark(MAX_BOM_LEN);
 		try {
-			resource.read(bbuffer, 0, MAX_BOM_LEN);
+			len = resource.read(bbuffer, 0, MAX_BOM_LEN);
 			resource.reset();
 		} catch (IOException ex) {
 			return null;
 		}
-		if (bbuffer[0] == 0xFE && bbuffer[1] == 0xFF)
+		return sniff(bbuffer, len);
+	}
+
+	/**
+	 * @param bytes the first bytes of the content
+	 * @param length number of valid bytes in {@code bytes}
+	 * @return character encoding indicated by the Byte Order Mark, or
+	 *   {@code null} if there is none
+	 */
+	public String sniff(byte[] bytes, int length) {
+		if (length < 2)
+			return null;
+		int b0 = bytes[0] & 0xFF;
+		int b1 = bytes[1] & 0xFF;
+		if (b0 == 0xFE && b1 == 0xFF)
 			return "UTF-16BE";
-		if (bbuffer[0] == 0xFF && bbuffer[1] == 0xFE)
+		if (b0 == 0xFF && b1 == 0xFE)
 			return "UTF-16LE";
-		if (bbuffer[0] == 0xEF && bbuffer[1] == 0xBB && bbuffer[1] == 0xBF)
+		if (length >= 3 && b0 == 0xEF && b1 == 0xBB && (bytes[2] & 0xFF) == 0xBF)
 			return "UTF-8";
 		return null;
 	}
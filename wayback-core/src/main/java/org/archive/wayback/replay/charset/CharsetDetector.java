@@ -21,6 +21,7 @@ package org.archive.wayback.replay.charset;
 
 import java.io.IOException;
 
+import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
 
@@ -60,4 +61,23 @@ public abstract class CharsetDetector {
 	public abstract String getCharset(Resource httpHeadersResource,
 			Resource payloadResource, WaybackRequest wbRequest)
 					throws IOException;
+
+	/**
+	 * Variant of {@link #getCharset(Resource, Resource, WaybackRequest)}
+	 * that also receives the capture being replayed, so that
+	 * implementations may reuse results for identical payloads.
+	 * Default implementation ignores {@code result}.
+	 * @param httpHeadersResource resource with http headers to consider
+	 * @param payloadResource resource with payload to consider
+	 * @param result capture being replayed, may be {@code null}
+	 * @param wbRequest WaybackRequest which may contain additional hints to
+	 *        processing
+	 * @return String charset name for the Resource, must not be {@code null}
+	 * @throws IOException if there are problems reading the Resource
+	 */
+	public String getCharset(Resource httpHeadersResource,
+			Resource payloadResource, CaptureSearchResult result,
+			WaybackRequest wbRequest) throws IOException {
+		return getCharset(httpHeadersResource, payloadResource, wbRequest);
+	}
 }
@@ -0,0 +1,317 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.charset;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.CompositeResource;
+
+/**
+ * {@link CharsetDetector} following the same steps as
+ * {@link StandardCharsetDetector}, with less work per replay:
+ * <ul>
+ * <li>content is read ahead once, into a per-thread buffer, and all
+ * content sniffers work on that buffer.</li>
+ * <li>if no {@code META} tag declares the encoding and the content is
+ * ASCII or valid {@code UTF-8}, {@code UTF-8} is used without running
+ * {@link UniversalChardetSniffer}, unless it has the escape sequences of
+ * 7-bit encodings like {@code ISO-2022-JP} or {@code HZ}.</li>
+ * <li>the result of content sniffing is cached by payload digest, so
+ * revisits and other captures of identical content are not sniffed again.
+ * {@code Content-Type} HTTP header is still checked for every capture,
+ * as it may differ between them.</li>
+ * </ul>
+ */
+public class FastCharsetDetector extends CharsetDetector {
+	// hand off this many bytes to the content sniffers
+	protected final static int MAX_CHARSET_READAHEAD = 65536;
+
+	private final static ByteOrderMarkSniffer BOM_SNIFFER =
+		new ByteOrderMarkSniffer();
+	private final static ContentTypeHeaderSniffer HEADER_SNIFFER =
+		new ContentTypeHeaderSniffer();
+	private final static PrescanMetadataSniffer PRESCAN_SNIFFER =
+		new PrescanMetadataSniffer();
+	private final static UniversalChardetSniffer CHARDET_SNIFFER =
+		new UniversalChardetSniffer();
+
+	private final static ThreadLocal<byte[]> buffers =
+		new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[MAX_CHARSET_READAHEAD];
+		}
+	};
+
+	private int maxCacheSize = 10000;
+	private final Map<String, ContentCharset> cache;
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+
+	/**
+	 * Result of sniffing content alone. {@code declared} is only
+	 * valid if {@code sniffed} is true.
+	 */
+	private static class ContentCharset {
+		final String bom;
+		final boolean sniffed;
+		final String declared;
+
+		ContentCharset(String bom, boolean sniffed, String declared) {
+			this.bom = bom;
+			this.sniffed = sniffed;
+			this.declared = declared;
+		}
+	}
+
+	public FastCharsetDetector() {
+		cache = new LinkedHashMap<String, ContentCharset>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, ContentCharset> e) {
+				return size() > maxCacheSize;
+			}
+		};
+	}
+
+	@Override
+	public String getCharset(Resource httpHeadersResource,
+			Resource payloadResource, WaybackRequest wbRequest)
+			throws IOException {
+		return getCharset(httpHeadersResource, payloadResource, null,
+			wbRequest);
+	}
+
+	@Override
+	public String getCharset(Resource httpHeadersResource,
+			Resource payloadResource, CaptureSearchResult result,
+			WaybackRequest wbRequest) throws IOException {
+		Resource resource = new CompositeResource(httpHeadersResource,
+			payloadResource);
+		String digest = cacheKey(result);
+		ContentCharset content = null;
+		if (digest != null) {
+			synchronized (cache) {
+				content = cache.get(digest);
+			}
+			if (content != null) {
+				cacheHits.incrementAndGet();
+			} else {
+				cacheMisses.incrementAndGet();
+			}
+		}
+		byte[] buffer = null;
+		int length = 0;
+		if (content == null) {
+			buffer = buffers.get();
+			length = readAhead(resource, buffer, ByteOrderMarkSniffer.MAX_BOM_LEN);
+			content = new ContentCharset(BOM_SNIFFER.sniff(buffer, length),
+				false, null);
+			cache(digest, content);
+		}
+		if (content.bom != null) {
+			return content.bom;
+		}
+		String charset = HEADER_SNIFFER.sniff(resource);
+		if (charset != null) {
+			return charset;
+		}
+		if (!content.sniffed) {
+			if (buffer == null) {
+				buffer = buffers.get();
+			}
+			length = readAhead(resource, buffer, MAX_CHARSET_READAHEAD);
+			content = new ContentCharset(content.bom, true,
+				sniffContent(buffer, length, length == MAX_CHARSET_READAHEAD));
+			cache(digest, content);
+		}
+		return content.declared != null ? content.declared : DEFAULT_CHARSET;
+	}
+
+	private String sniffContent(byte[] buffer, int length, boolean truncated) {
+		String charset = PRESCAN_SNIFFER.sniff(buffer, length);
+		if (charset != null) {
+			return charset;
+		}
+		if (!hasSevenBitEscapes(buffer, length) &&
+				isUtf8(buffer, length, truncated)) {
+			return "UTF-8";
+		}
+		return CHARDET_SNIFFER.sniff(buffer, length);
+	}
+
+	/**
+	 * test for the escape sequences of 7-bit encodings, ESC for ISO-2022-JP,
+	 * -KR and -CN and {@code "~{"} for HZ, which are well-formed
+	 * {@code UTF-8} but must be left to the content sniffer.
+	 * @param bytes content
+	 * @param length number of bytes to check
+	 * @return {@code true} if such a sequence is found
+	 */
+	static boolean hasSevenBitEscapes(byte[] bytes, int length) {
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] == 0x1B) {
+				return true;
+			}
+			if (bytes[i] == '~' && i + 1 < length && bytes[i + 1] == '{') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void cache(String digest, ContentCharset content) {
+		if (digest != null) {
+			synchronized (cache) {
+				cache.put(digest, content);
+			}
+		}
+	}
+
+	private static String cacheKey(CaptureSearchResult result) {
+		if (result == null) {
+			return null;
+		}
+		String digest = result.getDigest();
+		if (digest == null || digest.length() < 8) {
+			// missing ("-") or too short to be trusted
+			return null;
+		}
+		return digest;
+	}
+
+	/**
+	 * read up to {@code limit} bytes of {@code resource} into
+	 * {@code buffer}, leaving {@code resource} at its current position.
+	 * Read errors end the read-ahead early, as with other sniffers.
+	 * @return number of bytes read
+	 */
+	static int readAhead(Resource resource, byte[] buffer, int limit)
+			throws IOException {
+		int total = 0;
+		resource.mark(limit);
+		try {
+			while (total < limit) {
+				int n = resource.read(buffer, total, limit - total);
+				if (n < 0) {
+					break;
+				}
+				total += n;
+			}
+		} catch (IOException ex) {
+			// use what was read so far
+		}
+		resource.reset();
+		return total;
+	}
+
+	/**
+	 * test if the first {@code length} bytes of {@code bytes} are well-formed
+	 * {@code UTF-8} (which includes plain ASCII).
+	 * @param bytes content
+	 * @param length number of bytes to check
+	 * @param truncated if {@code true}, an incomplete sequence at the end
+	 *   is accepted, as the content continues past {@code length}
+	 * @return {@code true} if well-formed
+	 */
+	static boolean isUtf8(byte[] bytes, int length, boolean truncated) {
+		int i = 0;
+		while (i < length) {
+			int b = bytes[i];
+			if (b >= 0) {
+				i++;
+				continue;
+			}
+			b &= 0xFF;
+			int trailing;
+			if (b >= 0xC2 && b <= 0xDF) {
+				trailing = 1;
+			} else if (b >= 0xE0 && b <= 0xEF) {
+				trailing = 2;
+			} else if (b >= 0xF0 && b <= 0xF4) {
+				trailing = 3;
+			} else {
+				return false;
+			}
+			// reject overlong forms, surrogates and values over U+10FFFF
+			int lower = 0x80;
+			int upper = 0xBF;
+			if (b == 0xE0) {
+				lower = 0xA0;
+			} else if (b == 0xED) {
+				upper = 0x9F;
+			} else if (b == 0xF0) {
+				lower = 0x90;
+			} else if (b == 0xF4) {
+				upper = 0x8F;
+			}
+			for (int k = 1; k <= trailing; k++) {
+				if (i + k >= length) {
+					return truncated;
+				}
+				int c = bytes[i + k] & 0xFF;
+				if (c < lower || c > upper) {
+					return false;
+				}
+				lower = 0x80;
+				upper = 0xBF;
+			}
+			i += trailing + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * @return maximum number of payload digests to remember
+	 */
+	public int getMaxCacheSize() {
+		return maxCacheSize;
+	}
+
+	/**
+	 * @param maxCacheSize maximum number of payload digests to remember,
+	 *   default 10000. 0 disables caching.
+	 */
+	public void setMaxCacheSize(int maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	/**
+	 * @return number of detections that found their payload digest cached
+	 */
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * @return number of detections whose payload digest was not cached
+	 */
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+}
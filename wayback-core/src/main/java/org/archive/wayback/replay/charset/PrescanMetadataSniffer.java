@@ -1,6 +1,7 @@
 package org.archive.wayback.replay.charset;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.replay.TagMagix;
@@ -21,33 +22,49 @@ public class PrescanMetadataSniffer extends BaseEncodingSniffer {
 
 	@Override
 	public String sniff(Resource resource) {
-		String charsetName = null;
 		try {
 			byte[] bbuffer = new byte[MAX_CHARSET_READAHEAD];
 			resource.mark(MAX_CHARSET_READAHEAD);
-			resource.read(bbuffer, 0, MAX_CHARSET_READAHEAD);
+			int len = resource.read(bbuffer, 0, MAX_CHARSET_READAHEAD);
 			resource.reset();
-			// convert to UTF-8 String -- which hopefully will not mess up the
-			// characters we're interested in...
-			StringBuilder sb = new StringBuilder(new String(bbuffer,
-					"UTF-8"));
-			String metaContentType = TagMagix.getTagAttrWhere(sb, "META",
-				"content", "http-equiv", "Content-Type");
-			if (metaContentType != null) {
-				charsetName = contentTypeToCharset(metaContentType);
-				// override
-				if (charsetName != null) {
-					String upped = charsetName.toUpperCase();
-					if (upped.startsWith("UTF-16"))
-						charsetName = "UTF-8";
-					else if (upped.startsWith("X-"))
-						charsetName = "Windows-1252";
-				}
-			}
-			return charsetName;
+			return sniff(bbuffer, len);
 		} catch (IOException ex) {
 			// TODO: log at FINE.
 			return null;
 		}
 	}
+
+	/**
+	 * @param bytes the first bytes of the content
+	 * @param length number of valid bytes in {@code bytes}
+	 * @return character encoding declared in {@code META} tag, or
+	 *   {@code null}
+	 */
+	public String sniff(byte[] bytes, int length) {
+		if (length <= 0)
+			return null;
+		String charsetName = null;
+		// convert to UTF-8 String -- which hopefully will not mess up the
+		// characters we're interested in...
+		StringBuilder sb;
+		try {
+			sb = new StringBuilder(new String(bytes, 0, length, "UTF-8"));
+		} catch (UnsupportedEncodingException ex) {
+			return null;
+		}
+		String metaContentType = TagMagix.getTagAttrWhere(sb, "META",
+			"content", "http-equiv", "Content-Type");
+		if (metaContentType != null) {
+			charsetName = contentTypeToCharset(metaContentType);
+			// override
+			if (charsetName != null) {
+				String upped = charsetName.toUpperCase();
+				if (upped.startsWith("UTF-16"))
+					charsetName = "UTF-8";
+				else if (upped.startsWith("X-"))
+					charsetName = "Windows-1252";
+			}
+		}
+		return charsetName;
+	}
 }
\ No newline at end of file
@@ -17,21 +17,34 @@ public class UniversalChardetSniffer extends BaseEncodingSniffer {
 
 	@Override
 	public String sniff(Resource resource) {
-		String charsetName = null;
-
 		byte[] bbuffer = new byte[MAX_CHARSET_READAHEAD];
-		// (1)
-		UniversalDetector detector = new UniversalDetector(null);
-
-		// (2)
+		int len = 0;
 		resource.mark(MAX_CHARSET_READAHEAD);
 		try {
-			int len = resource.read(bbuffer, 0, MAX_CHARSET_READAHEAD);
+			len = resource.read(bbuffer, 0, MAX_CHARSET_READAHEAD);
 			resource.reset();
-			detector.handleData(bbuffer, 0, len);
 		} catch (IOException ex) {
 			//
 		}
+		return sniff(bbuffer, len);
+	}
+
+	/**
+	 * @param bytes the first bytes of the content
+	 * @param length number of valid bytes in {@code bytes}
+	 * @return character encoding guessed by {@link UniversalDetector}, or
+	 *   {@code null}
+	 */
+	public String sniff(byte[] bytes, int length) {
+		String charsetName = null;
+
+		// (1)
+		UniversalDetector detector = new UniversalDetector(null);
+
+		// (2)
+		if (length > 0) {
+			detector.handleData(bytes, 0, length);
+		}
 		// (3)
 		detector.dataEnd();
 		// (4)
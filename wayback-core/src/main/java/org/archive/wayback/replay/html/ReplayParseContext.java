@@ -35,6 +35,12 @@ public class ReplayParseContext extends ParseContext {
 	public static final String JAVASCRIPT_PREFIX = "javascript:";
 	public static final String DATA_PREFIX = "data:";
 
+	/**
+	 * default maximum number of distinct URLs memoized by
+	 * {@link #contextualizeUrl(String, String)} per document.
+	 */
+	public static final int DEFAULT_URL_CACHE_SIZE = 2000;
+
 
 	private ContextResultURIConverterFactory uriConverterFactory = null;
 	private String datespec = null;
@@ -46,6 +52,8 @@ public class ReplayParseContext extends ParseContext {
 	private int jsBlockCount = -1;
 	private CaptureSearchResult result;
 	private boolean rewriteHttpsOnly;
+	private int urlCacheSize = DEFAULT_URL_CACHE_SIZE;
+	private Map<String, String> urlCache = null;
 
 	public ReplayParseContext(ContextResultURIConverterFactory uriConverterFactory,
 			URL baseUrl, String datespec) {
@@ -65,6 +73,34 @@ public class ReplayParseContext extends ParseContext {
 	
 	public void setRewriteHttpsOnly(boolean rewriteHttpsOnly) {
 		this.rewriteHttpsOnly = rewriteHttpsOnly;
+		clearUrlCache();
+	}
+
+	@Override
+	public void setBaseUrl(URL url) {
+		super.setBaseUrl(url);
+		clearUrlCache();
+	}
+
+	/**
+	 * Set maximum number of distinct URL/flags combinations whose rewritten
+	 * form is remembered for the rest of the document. Once the limit is
+	 * reached, further URLs are rewritten without being remembered.
+	 * Memoized results are discarded whenever the base URL, converters,
+	 * datespec or https-only setting change.
+	 * @param urlCacheSize maximum entries, {@code 0} disables memoization.
+	 */
+	public void setUrlCacheSize(int urlCacheSize) {
+		this.urlCacheSize = urlCacheSize;
+		clearUrlCache();
+	}
+
+	public int getUrlCacheSize() {
+		return urlCacheSize;
+	}
+
+	private void clearUrlCache() {
+		urlCache = null;
 	}
 		
 	/**
@@ -100,9 +136,11 @@ public class ReplayParseContext extends ParseContext {
 	 */
 	public void setConverters(Map<String, ResultURIConverter> converters) {
 		this.converters = converters;
+		clearUrlCache();
 	}
 	public void addConverter(String flag, ResultURIConverter converter) {
 		converters.put(flag, converter);
+		clearUrlCache();
 	}
 	
 
@@ -151,16 +189,40 @@ public class ReplayParseContext extends ParseContext {
 		if (url.startsWith(DATA_PREFIX) || url.startsWith(MAILTO_PREFIX)) {
 	    	return url;
 	    }
+		// XXX do this in getConverter
+		if (flags == null) {
+			flags = "";
+		}
+		if (urlCacheSize <= 0) {
+			return rewriteUrl(url, flags);
+		}
+		// pages repeat the same URLs (sprites, navigation, CDN prefixes)
+		// many times; resolution and conversion only depend on state that
+		// clears this cache when it changes.
+		final String key = flags + ' ' + url;
+		if (urlCache == null) {
+			urlCache = new HashMap<String, String>();
+		}
+		String rewritten = urlCache.get(key);
+		if (rewritten == null) {
+			rewritten = rewriteUrl(url, flags);
+			if (urlCache.size() < urlCacheSize) {
+				urlCache.put(key, rewritten);
+			}
+		} else if (rewritten.equals(url)) {
+			// keep the identity contract for unmodified URLs
+			return url;
+		}
+		return rewritten;
+	}
+
+	private String rewriteUrl(final String url, String flags) {
 	    // first make url into absolute, taking BASE into account.
 		// (this also removes escaping: ex. "https:\/\/" -> "https://")
 	    String absurl = super.contextualizeUrl(url);
 	    if (!isRewriteSupported(absurl)) {
 	    	return url;
 	    }
-	    // XXX do this in getConverter
-		if (flags == null) {
-	    	flags = "";
-	    }
 	    ResultURIConverter converter = getConverter(flags);
 		return converter.makeReplayURI(datespec, absurl);
 	}
@@ -221,6 +283,7 @@ public class ReplayParseContext extends ParseContext {
 	 */
 	public void setDatespec(String datespec) {
 		this.datespec = datespec;
+		clearUrlCache();
 	}
 	
 	public void incJSBlockCount() {
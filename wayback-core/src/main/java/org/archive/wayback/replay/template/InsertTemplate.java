@@ -0,0 +1,305 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.template;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.UIResults;
+import org.archive.wayback.core.WaybackRequest;
+
+/**
+ * Banner/toolbar insert compiled once from template text, and rendered for
+ * each replay from {@link UIResults} without a servlet dispatch.
+ * <p>
+ * Template text is copied verbatim except for placeholders of the form
+ * {@code ${name}} or {@code ${filter:name}}. The value is HTML-escaped
+ * unless a filter says otherwise:
+ * <ul>
+ * <li>{@code html} &mdash; HTML-escaped (default)</li>
+ * <li>{@code js} &mdash; escaped for a JavaScript string literal</li>
+ * <li>{@code url} &mdash; URL-encoded as UTF-8</li>
+ * <li>{@code raw} &mdash; inserted as-is</li>
+ * </ul>
+ * Names:
+ * <ul>
+ * <li>{@code url}, {@code captureTimestamp}, {@code captureDate},
+ * {@code replayUrl} &mdash; the capture being replayed</li>
+ * <li>{@code requestTimestamp}, {@code now}</li>
+ * <li>{@code queryUrl} &mdash; capture query for {@code url}</li>
+ * <li>{@code staticPrefix}, {@code queryPrefix}, {@code replayPrefix}
+ * &mdash; AccessPoint prefixes</li>
+ * <li>{@code contextPrefix}, {@code serverPrefix} &mdash; same as
+ * {@code queryPrefix}, as in the JSP templates</li>
+ * <li>{@code config.NAME} &mdash; AccessPoint {@code configs} property</li>
+ * <li>{@code message.KEY} &mdash; localized message, formatted with
+ * the capture URL and capture date as arguments {0} and {1}</li>
+ * </ul>
+ * {@code $${} produces a literal {@code ${}. Unknown names and filters are
+ * rejected when the template is compiled.
+ */
+public class InsertTemplate {
+	/** format of {@code captureDate} and {@code now} */
+	public static final String DATE_FORMAT = "{0,date,H:mm:ss MMM d, yyyy}";
+
+	private static final int FILTER_HTML = 0;
+	private static final int FILTER_JS = 1;
+	private static final int FILTER_URL = 2;
+	private static final int FILTER_RAW = 3;
+
+	private final Part[] parts;
+	private final int literalLength;
+
+	private InsertTemplate(List<Part> parts, int literalLength) {
+		this.parts = parts.toArray(new Part[parts.size()]);
+		this.literalLength = literalLength;
+	}
+
+	/**
+	 * Compile template text.
+	 * @param text template text
+	 * @return compiled template
+	 * @throws IllegalArgumentException if {@code text} contains an
+	 * unterminated placeholder, or an unknown name or filter
+	 */
+	public static InsertTemplate compile(String text) {
+		List<Part> parts = new ArrayList<Part>();
+		StringBuilder literal = new StringBuilder();
+		int literalLength = 0;
+		int pos = 0;
+		while (pos < text.length()) {
+			int idx = text.indexOf("${", pos);
+			if (idx == -1) {
+				literal.append(text, pos, text.length());
+				break;
+			}
+			if (idx > 0 && text.charAt(idx - 1) == '$') {
+				// "$${" escape
+				literal.append(text, pos, idx - 1).append("${");
+				pos = idx + 2;
+				continue;
+			}
+			int end = text.indexOf('}', idx + 2);
+			if (end == -1) {
+				throw new IllegalArgumentException(
+						"Unterminated placeholder at " + idx);
+			}
+			literal.append(text, pos, idx);
+			if (literal.length() > 0) {
+				parts.add(new Literal(literal.toString()));
+				literalLength += literal.length();
+				literal.setLength(0);
+			}
+			parts.add(placeholder(text.substring(idx + 2, end).trim()));
+			pos = end + 1;
+		}
+		if (literal.length() > 0) {
+			parts.add(new Literal(literal.toString()));
+			literalLength += literal.length();
+		}
+		return new InsertTemplate(parts, literalLength);
+	}
+
+	/**
+	 * @param uiResults replay being rendered
+	 * @return rendered insert
+	 */
+	public String render(UIResults uiResults) {
+		StringBuilder sb = new StringBuilder(literalLength + 256);
+		try {
+			render(uiResults, sb);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param uiResults replay being rendered
+	 * @param out destination for rendered insert
+	 * @throws IOException if {@code out} throws
+	 */
+	public void render(UIResults uiResults, Appendable out)
+			throws IOException {
+		for (Part part : parts) {
+			part.append(uiResults, out);
+		}
+	}
+
+	private static Part placeholder(String spec) {
+		int filter = FILTER_HTML;
+		String name = spec;
+		int colon = spec.indexOf(':');
+		if (colon != -1) {
+			String f = spec.substring(0, colon);
+			name = spec.substring(colon + 1);
+			if (f.equals("html")) {
+				filter = FILTER_HTML;
+			} else if (f.equals("js")) {
+				filter = FILTER_JS;
+			} else if (f.equals("url")) {
+				filter = FILTER_URL;
+			} else if (f.equals("raw")) {
+				filter = FILTER_RAW;
+			} else {
+				throw new IllegalArgumentException("Unknown filter " + f);
+			}
+		}
+		if (name.startsWith("config.")) {
+			return new Variable(VAR_CONFIG, name.substring(7), filter);
+		}
+		if (name.startsWith("message.")) {
+			return new Variable(VAR_MESSAGE, name.substring(8), filter);
+		}
+		for (int i = 0; i < NAMES.length; i++) {
+			if (NAMES[i].equals(name)) {
+				return new Variable(i, null, filter);
+			}
+		}
+		throw new IllegalArgumentException("Unknown placeholder " + name);
+	}
+
+	private static final String[] NAMES = {
+		"url", "captureTimestamp", "captureDate", "replayUrl",
+		"requestTimestamp", "now", "queryUrl", "staticPrefix",
+		"queryPrefix", "replayPrefix", "contextPrefix", "serverPrefix"
+	};
+	private static final int VAR_URL = 0;
+	private static final int VAR_CAPTURE_TIMESTAMP = 1;
+	private static final int VAR_CAPTURE_DATE = 2;
+	private static final int VAR_REPLAY_URL = 3;
+	private static final int VAR_REQUEST_TIMESTAMP = 4;
+	private static final int VAR_NOW = 5;
+	private static final int VAR_QUERY_URL = 6;
+	private static final int VAR_STATIC_PREFIX = 7;
+	private static final int VAR_QUERY_PREFIX = 8;
+	private static final int VAR_REPLAY_PREFIX = 9;
+	private static final int VAR_CONTEXT_PREFIX = 10;
+	private static final int VAR_SERVER_PREFIX = 11;
+	private static final int VAR_CONFIG = 100;
+	private static final int VAR_MESSAGE = 101;
+
+	private static abstract class Part {
+		abstract void append(UIResults uiResults, Appendable out)
+				throws IOException;
+	}
+
+	private static class Literal extends Part {
+		private final String text;
+		Literal(String text) {
+			this.text = text;
+		}
+		@Override
+		void append(UIResults uiResults, Appendable out) throws IOException {
+			out.append(text);
+		}
+	}
+
+	private static class Variable extends Part {
+		private final int var;
+		private final String arg;
+		private final int filter;
+
+		Variable(int var, String arg, int filter) {
+			this.var = var;
+			this.arg = arg;
+			this.filter = filter;
+		}
+
+		@Override
+		void append(UIResults uiResults, Appendable out) throws IOException {
+			String value = value(uiResults);
+			if (value == null || value.length() == 0) {
+				return;
+			}
+			switch (filter) {
+			case FILTER_JS:
+				out.append(StringEscapeUtils.escapeJavaScript(value));
+				break;
+			case FILTER_URL:
+				out.append(urlEncode(value));
+				break;
+			case FILTER_RAW:
+				out.append(value);
+				break;
+			default:
+				out.append(StringEscapeUtils.escapeHtml(value));
+			}
+		}
+
+		private String value(UIResults uiResults) {
+			WaybackRequest wbRequest = uiResults.getWbRequest();
+			CaptureSearchResult result = uiResults.getResult();
+			switch (var) {
+			case VAR_URL:
+				return result == null ? null : result.getOriginalUrl();
+			case VAR_CAPTURE_TIMESTAMP:
+				return result == null ? null : result.getCaptureTimestamp();
+			case VAR_CAPTURE_DATE:
+				return result == null ? null :
+					wbRequest.getFormatter().format(DATE_FORMAT,
+							result.getCaptureDate());
+			case VAR_REPLAY_URL:
+				return result == null ? null :
+					uiResults.resultToReplayUrl(result);
+			case VAR_REQUEST_TIMESTAMP:
+				return wbRequest.getReplayTimestamp();
+			case VAR_NOW:
+				return wbRequest.getFormatter().format(DATE_FORMAT, new Date());
+			case VAR_QUERY_URL:
+				return result == null ? null :
+					uiResults.makePlainCaptureQueryUrl(result.getOriginalUrl());
+			case VAR_STATIC_PREFIX:
+				return uiResults.getStaticPrefix();
+			case VAR_QUERY_PREFIX:
+			case VAR_CONTEXT_PREFIX:
+			case VAR_SERVER_PREFIX:
+				return uiResults.getQueryPrefix();
+			case VAR_REPLAY_PREFIX:
+				return uiResults.getReplayPrefix();
+			case VAR_CONFIG:
+				return uiResults.getContextConfig(arg);
+			case VAR_MESSAGE:
+				if (result == null) {
+					return wbRequest.getFormatter().format(arg);
+				}
+				return wbRequest.getFormatter().format(arg,
+						result.getOriginalUrl(), result.getCaptureDate());
+			}
+			return null;
+		}
+	}
+
+	private static String urlEncode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+}
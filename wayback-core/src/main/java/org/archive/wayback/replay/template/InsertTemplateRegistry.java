@@ -0,0 +1,178 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.template;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.archive.wayback.core.UIResults;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.webapp.AccessPoint;
+
+/**
+ * Precompiled replacements for the JSP inserts (banner, toolbar, head and
+ * comment inserts) executed through
+ * {@link org.archive.wayback.replay.JSPExecutor} during replay.
+ * <p>
+ * Templates are registered under the JSP path they replace, either as
+ * text or as files, and compiled when configured. When a replay asks for a
+ * registered path the template is rendered directly from the
+ * {@link UIResults}, skipping the request dispatch and response buffering.
+ * Paths without a template are still executed as JSPs, unless
+ * {@code jspFallback} is {@code false}, in which case they produce no
+ * insert.
+ * <p>
+ * Install as the {@code insertTemplates} property of an AccessPoint.
+ * @see InsertTemplate for template syntax
+ */
+public class InsertTemplateRegistry {
+	private static final Logger LOGGER = Logger.getLogger(
+			InsertTemplateRegistry.class.getName());
+
+	private Map<String, InsertTemplate> compiled =
+		new HashMap<String, InsertTemplate>();
+	private boolean jspFallback = true;
+	private String charset = "UTF-8";
+
+	/**
+	 * @param wbRequest request being replayed
+	 * @return registry configured on the request's AccessPoint, or
+	 * {@code null}
+	 */
+	public static InsertTemplateRegistry forRequest(WaybackRequest wbRequest) {
+		AccessPoint accessPoint = wbRequest.getAccessPoint();
+		if (accessPoint == null) {
+			return null;
+		}
+		return accessPoint.getInsertTemplates();
+	}
+
+	/**
+	 * Render the insert for {@code jspPath}.
+	 * @param jspPath context-relative JSP path the caller would execute
+	 * @param uiResults replay being rendered
+	 * @return rendered insert, empty if there is no template and JSP
+	 * fallback is disabled, or {@code null} if the JSP should be executed.
+	 */
+	public String render(String jspPath, UIResults uiResults) {
+		InsertTemplate template = compiled.get(jspPath);
+		if (template != null) {
+			return template.render(uiResults);
+		}
+		return jspFallback ? null : "";
+	}
+
+	/**
+	 * @param jspPath context-relative JSP path
+	 * @return compiled template for {@code jspPath}, or {@code null}
+	 */
+	public InsertTemplate getTemplate(String jspPath) {
+		return compiled.get(jspPath);
+	}
+
+	/**
+	 * Register template texts.
+	 * @param templates map of JSP path to template text
+	 * @throws IllegalArgumentException if a template does not compile
+	 */
+	public void setTemplates(Map<String, String> templates) {
+		Map<String, InsertTemplate> newCompiled =
+			new HashMap<String, InsertTemplate>(compiled);
+		for (Map.Entry<String, String> e : templates.entrySet()) {
+			newCompiled.put(e.getKey(), compile(e.getKey(), e.getValue()));
+		}
+		compiled = newCompiled;
+	}
+
+	/**
+	 * Register template files, read with {@code charset}.
+	 * @param templateFiles map of JSP path to template file path
+	 * @throws IOException if a file cannot be read
+	 * @throws IllegalArgumentException if a template does not compile
+	 */
+	public void setTemplateFiles(Map<String, String> templateFiles)
+			throws IOException {
+		Map<String, InsertTemplate> newCompiled =
+			new HashMap<String, InsertTemplate>(compiled);
+		for (Map.Entry<String, String> e : templateFiles.entrySet()) {
+			String text = readFile(new File(e.getValue()));
+			newCompiled.put(e.getKey(), compile(e.getKey(), text));
+			LOGGER.info("Compiled insert template " + e.getValue() +
+					" for " + e.getKey());
+		}
+		compiled = newCompiled;
+	}
+
+	private static InsertTemplate compile(String jspPath, String text) {
+		try {
+			return InsertTemplate.compile(text);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Bad template for " +
+					jspPath + ": " + e.getMessage());
+		}
+	}
+
+	private String readFile(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file),
+				charset);
+		try {
+			StringBuilder sb = new StringBuilder((int) file.length());
+			char[] buf = new char[4096];
+			int n;
+			while ((n = reader.read(buf)) != -1) {
+				sb.append(buf, 0, n);
+			}
+			return sb.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	public boolean isJspFallback() {
+		return jspFallback;
+	}
+
+	/**
+	 * @param jspFallback if {@code false}, insert paths without a
+	 * template produce no output instead of running the JSP. Default
+	 * {@code true}.
+	 */
+	public void setJspFallback(boolean jspFallback) {
+		this.jspFallback = jspFallback;
+	}
+
+	public String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * @param charset encoding of template files, set before
+	 * {@code templateFiles}. Default {@code UTF-8}.
+	 */
+	public void setCharset(String charset) {
+		this.charset = charset;
+	}
+}
@@ -31,6 +31,7 @@ import org.archive.wayback.ResourceIndex;
 import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.NearestCaptureCollector;
 import org.archive.wayback.core.SearchResult;
 import org.archive.wayback.core.SearchResults;
 import org.archive.wayback.core.UrlSearchResult;
@@ -41,6 +42,7 @@ import org.archive.wayback.exception.BadQueryException;
 import org.archive.wayback.exception.ResourceIndexNotAvailableException;
 import org.archive.wayback.exception.ResourceNotInArchiveException;
 import org.archive.wayback.resourceindex.adapters.CaptureToUrlSearchResultIterator;
+import org.archive.wayback.resourceindex.adapters.UrlSummarySearchResultIterator;
 import org.archive.wayback.resourceindex.filterfactory.AccessPointCaptureFilterGroupFactory;
 import org.archive.wayback.resourceindex.filterfactory.AnnotatingCaptureFilterGroupFactory;
 import org.archive.wayback.resourceindex.filterfactory.CaptureFilterGroup;
@@ -49,11 +51,14 @@ import org.archive.wayback.resourceindex.filterfactory.CoreCaptureFilterGroupFac
 import org.archive.wayback.resourceindex.filterfactory.ExclusionCaptureFilterGroupFactory;
 import org.archive.wayback.resourceindex.filterfactory.FilterGroupFactory;
 import org.archive.wayback.resourceindex.filterfactory.QueryCaptureFilterGroupFactory;
+import org.archive.wayback.resourceindex.filterfactory.ResumeFilterGroup;
 import org.archive.wayback.resourceindex.filterfactory.WindowFilterGroup;
 import org.archive.wayback.util.ObjectFilter;
 import org.archive.wayback.util.ObjectFilterChain;
 import org.archive.wayback.util.ObjectFilterIterator;
-import org.archive.wayback.util.url.AggressiveUrlCanonicalizer;
+import org.archive.wayback.util.Timestamp;
+import org.archive.wayback.util.url.FastUrlCanonicalizer;
+import org.archive.wayback.webapp.AccessPoint;
 import org.archive.wayback.webapp.PerfStats;
 
 /**
@@ -74,12 +79,19 @@ import org.archive.wayback.webapp.PerfStats;
  * 4) filtering based on AccessControl configurations
  *        Ex. block any urls with prefixes in file X
  * 5) windowing filters, which provide pagination of the results, allowing
- *        requests to specify "show results between 10 and 20"
+ *        requests to specify "show results between 10 and 20", or "show
+ *        10 results after the last page", given the resume key returned
+ *        with that page. Resumed queries start reading the index at the
+ *        end of the last page, and stop at the end of the new page.
  * 6) post filter adapters, which may annotate final results with other 
  *        information
  *        Ex. for each result, consult DB to see if user-contributed messages
  *            apply to the results 
  * 
+ * URL queries may instead read from an optional UrlSummaryIndex, holding one
+ * line per URL, and only read the captures of URLs which have captures both
+ * inside and outside the requested date range.
+ * 
  * After all results have been processed, we annotate the final SearchResultS
  * object with summary information about the results included. As we set up the 
  * chain of filters, we instrument the chain with counters that observe the 
@@ -122,11 +134,16 @@ public class LocalResourceIndex implements ResourceIndex {
 	
 	private ObjectFilter<CaptureSearchResult> filter = null;
 
+	private UrlSummaryIndex urlSummary = null;
+
+	private int replayCapturesPerSide = 0;
+
+	private RevisitPayloadCache revisitPayloadCache = null;
 	
 	protected List<FilterGroupFactory> fgFactories = null;
 	
 	public LocalResourceIndex() {
-		canonicalizer = new AggressiveUrlCanonicalizer();
+		canonicalizer = new FastUrlCanonicalizer();
 		fgFactories = new ArrayList<FilterGroupFactory>();
 		fgFactories.add(new AccessPointCaptureFilterGroupFactory());		
 		fgFactories.add(new CoreCaptureFilterGroupFactory());		
@@ -171,6 +188,7 @@ public class LocalResourceIndex implements ResourceIndex {
 			throw new BadQueryException("Bad URL(" + 
 					wbRequest.getRequestUrl() + ")");
 		}
+		String canonicalKey = urlKey;
 		
 		// Special handling for index where the key is url<space>timestamp
 		// for faster binary search lookup
@@ -189,10 +207,15 @@ public class LocalResourceIndex implements ResourceIndex {
 			new ObjectFilterChain<CaptureSearchResult>();
 
 		// Groupings of filters for... sanity and summary annotation of results:
+		// Resume:
+		ResumeFilterGroup resume = new ResumeFilterGroup(wbRequest,
+				canonicalKey);
 		// Windows:
 		WindowFilterGroup<CaptureSearchResult> window = 
-			new WindowFilterGroup<CaptureSearchResult>(wbRequest,this);
+			new WindowFilterGroup<CaptureSearchResult>(wbRequest,this,
+					resume.getCursor());
 		List<CaptureFilterGroup> groups = getRequestFilterGroups(wbRequest); 
+		filters.addFilter(resume.getResumeFilter());
 		if(filter != null) {
 			filters.addFilter(filter);
 		}
@@ -201,16 +224,26 @@ public class LocalResourceIndex implements ResourceIndex {
 			filters.addFilters(cfg.getFilters());
 		}
 		filters.addFilters(window.getFilters());
+		filters.addFilter(resume.getCaptureMarkFilter());
 		
 		CloseableIterator<CaptureSearchResult> itr = null;
+		NearestCaptureCollector nearest = null;
+		if ((type == TYPE_REPLAY) && (replayCapturesPerSide > 0)) {
+			nearest = new NearestCaptureCollector(
+					wbRequest.getReplayDate().getTime(), replayCapturesPerSide);
+		}
 		
 		try {
 			PerfStats.timeStart(PerfStat.IndexLoad);
 			
-			itr = new ObjectFilterIterator<CaptureSearchResult>(source.getPrefixIterator(urlKey),filters);
+			itr = new ObjectFilterIterator<CaptureSearchResult>(source.getPrefixIterator(seekKey(resume, urlKey)),filters);
 			
 			while(itr.hasNext()) {
-				results.addSearchResult(itr.next());
+				if (nearest != null) {
+					nearest.add(itr.next());
+				} else {
+					results.addSearchResult(itr.next());
+				}
 			}
 		} catch(RuntimeIOException e) {
 			throw new ResourceIndexNotAvailableException(e.getLocalizedMessage());
@@ -221,12 +254,16 @@ public class LocalResourceIndex implements ResourceIndex {
 			
 			PerfStats.timeEnd(PerfStat.IndexLoad);
 		}
+		if (nearest != null) {
+			nearest.fill(results);
+		}
 		
 		for(CaptureFilterGroup cfg : groups) {
 			cfg.annotateResults(results);
 		}
 		
 		window.annotateResults(results);
+		resume.annotateResults(results, window);
 
 		return results;
 	}
@@ -244,6 +281,7 @@ public class LocalResourceIndex implements ResourceIndex {
 					wbRequest.getRequestUrl() + ")");
 		}
 		
+		String prefixKey = urlKey;
 		if (markPrefixQueries) {
 			urlKey += "*\t";
 		}
@@ -257,6 +295,9 @@ public class LocalResourceIndex implements ResourceIndex {
 		
 		// Groupings of filters for clarity(?) and summary annotation of 
 		// results:
+		ResumeFilterGroup resume = new ResumeFilterGroup(wbRequest,
+				prefixKey);
+		cFilters.addFilter(resume.getResumeFilter());
 		List<CaptureFilterGroup> groups = getRequestFilterGroups(wbRequest); 
 		for(CaptureFilterGroup cfg : groups) {
 			cFilters.addFilters(cfg.getFilters());
@@ -276,8 +317,10 @@ public class LocalResourceIndex implements ResourceIndex {
 		ObjectFilterChain<UrlSearchResult> uFilters = 
 			new ObjectFilterChain<UrlSearchResult>();
 		WindowFilterGroup<UrlSearchResult> window = 
-			new WindowFilterGroup<UrlSearchResult>(wbRequest,this);
+			new WindowFilterGroup<UrlSearchResult>(wbRequest,this,
+					resume.getCursor());
 		uFilters.addFilters(window.getFilters());
+		uFilters.addFilter(resume.getUrlMarkFilter());
 
 		CloseableIterator<CaptureSearchResult> itrC = null;
 		CloseableIterator<UrlSearchResult> itrU = null;
@@ -285,16 +328,35 @@ public class LocalResourceIndex implements ResourceIndex {
 		try {
 			PerfStats.timeStart(PerfStat.IndexLoad);
 			
-			itrC = new ObjectFilterIterator<CaptureSearchResult>(
-					source.getPrefixIterator(urlKey),cFilters);	
-		
-			itrU = new ObjectFilterIterator<UrlSearchResult>(
-						new CaptureToUrlSearchResultIterator(itrC),
+			if (canUseUrlSummary(wbRequest)) {
+				String startDate = wbRequest.getStartTimestamp();
+				if (startDate == null) {
+					startDate = Timestamp.earliestTimestamp().getDateStr();
+				}
+				String endDate = wbRequest.getEndTimestamp();
+				if (endDate == null) {
+					endDate = Timestamp.latestTimestamp().getDateStr();
+				}
+				itrU = new ObjectFilterIterator<UrlSearchResult>(
+						new UrlSummarySearchResultIterator(
+								urlSummary.getPrefixIterator(
+										resume.getSeekKey(prefixKey)),
+								source, cFilters, startDate, endDate),
 						uFilters);
+			} else {
+				itrC = new ObjectFilterIterator<CaptureSearchResult>(
+						source.getPrefixIterator(seekKey(resume, urlKey)),cFilters);	
+			
+				itrU = new ObjectFilterIterator<UrlSearchResult>(
+							new CaptureToUrlSearchResultIterator(itrC),
+							uFilters);
+			}
 		
 			while(itrU.hasNext()) {
 				results.addSearchResult(itrU.next());
 			}
+		} catch(RuntimeIOException e) {
+			throw new ResourceIndexNotAvailableException(e.getLocalizedMessage());
 		} finally {
 			if (itrU != null) {
 				cleanupIterator(itrU);
@@ -306,9 +368,55 @@ public class LocalResourceIndex implements ResourceIndex {
 			cfg.annotateResults(results);
 		}
 		window.annotateResults(results);
+		resume.annotateResults(results, window);
 
 		return results;
 	}
+
+	/**
+	 * Indexes given search keys marked as prefix queries interpret them,
+	 * and are read from the start of the query; records before a resume
+	 * cursor are then skipped by the ResumeFilter.
+	 */
+	private String seekKey(ResumeFilterGroup resume, String urlKey) {
+		if (markPrefixQueries) {
+			return urlKey;
+		}
+		return resume.getSeekKey(urlKey);
+	}
+
+	/**
+	 * Summary lines stand for all captures of a URL, so they can only be
+	 * used if no filter needs to see fields other than the urlKey, original
+	 * URL and date of each capture. Exclusion filters, whose rules may
+	 * depend on the capture date, would see only one capture of each URL.
+	 * @param wbRequest URL query request
+	 * @return true if the URL query can be read from the UrlSummaryIndex
+	 */
+	protected boolean canUseUrlSummary(WaybackRequest wbRequest) {
+		if (urlSummary == null || filter != null ||
+				wbRequest.getExclusionFilter() != null) {
+			return false;
+		}
+		if (wbRequest.isExactHost() || wbRequest.isExactScheme()) {
+			return false;
+		}
+		AccessPoint accessPoint = wbRequest.getAccessPoint();
+		if (accessPoint != null) {
+			if (!isEmpty(accessPoint.getFileIncludePrefixes()) ||
+					!isEmpty(accessPoint.getFileExcludePrefixes()) ||
+					!isEmpty(accessPoint.getFilePatterns()) ||
+					accessPoint.getEmbargoMS() > 0 ||
+					accessPoint.getFilterFactory() != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isEmpty(List<String> list) {
+		return list == null || list.isEmpty();
+	}
 	
 	/*
 	 * (non-Javadoc)
@@ -375,6 +483,40 @@ public class LocalResourceIndex implements ResourceIndex {
 		return maxRecords;
 	}
 
+	/**
+	 * @return number of captures kept on each side of the requested date
+	 * for replay queries, or 0 if all are kept
+	 */
+	public int getReplayCapturesPerSide() {
+		return replayCapturesPerSide;
+	}
+
+	/**
+	 * Keep only the captures nearest the requested date for replay queries,
+	 * see {@link NearestCaptureCollector}, instead of every capture of the
+	 * URL. Do not use with replay UIs, such as a toolbar timeline, which
+	 * show all captures of the URL.
+	 * @param replayCapturesPerSide number of captures to keep on each side
+	 * of the requested date, or 0 to keep all
+	 */
+	public void setReplayCapturesPerSide(int replayCapturesPerSide) {
+		this.replayCapturesPerSide = replayCapturesPerSide;
+	}
+
+
+	public RevisitPayloadCache getRevisitPayloadCache() {
+		return revisitPayloadCache;
+	}
+
+	/**
+	 * Cache of revisit payload locations shared across queries, consulted
+	 * when the original of a revisit is not among the records of the query.
+	 * Used only if dedupeRecords is set.
+	 * @param revisitPayloadCache RevisitPayloadCache, may be null
+	 */
+	public void setRevisitPayloadCache(RevisitPayloadCache revisitPayloadCache) {
+		this.revisitPayloadCache = revisitPayloadCache;
+	}
 
 	/**
 	 * @param source the source to set
@@ -434,4 +576,17 @@ public class LocalResourceIndex implements ResourceIndex {
 	public void setMarkPrefixQueries(boolean markPrefixQueries) {
 		this.markPrefixQueries = markPrefixQueries;
 	}
+
+	public UrlSummaryIndex getUrlSummary() {
+		return urlSummary;
+	}
+
+	/**
+	 * @param urlSummary UrlSummaryIndex built from the same captures as the
+	 * source, used to answer URL queries where possible, or null to always
+	 * read captures from the source
+	 */
+	public void setUrlSummary(UrlSummaryIndex urlSummary) {
+		this.urlSummary = urlSummary;
+	}
 }
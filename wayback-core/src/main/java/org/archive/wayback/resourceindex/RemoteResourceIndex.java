@@ -21,13 +21,20 @@ package org.archive.wayback.resourceindex;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.archive.wayback.ResourceIndex;
 import org.archive.wayback.UrlCanonicalizer;
@@ -43,6 +50,7 @@ import org.archive.wayback.exception.BadQueryException;
 import org.archive.wayback.exception.ConfigurationException;
 import org.archive.wayback.exception.ResourceIndexNotAvailableException;
 import org.archive.wayback.exception.ResourceNotInArchiveException;
+import org.archive.wayback.query.CompactResultsFormat;
 import org.archive.wayback.resourceindex.filters.SelfRedirectFilter;
 import org.archive.wayback.util.ObjectFilter;
 import org.archive.wayback.util.ObjectFilterChain;
@@ -59,6 +67,12 @@ import org.xml.sax.SAXException;
  * remote server, and the query is sent over as-is, formulated as an OpenSearch
  * query. Results are also returned as-is -- this class attempts to be as
  * transparent as possible.
+ * <p>
+ * Responses are parsed as a stream, building results and applying the
+ * ObjectFilter as each &lt;result&gt; element completes, so no DOM of the
+ * whole response is built. If compactFormat is enabled, the remote node is
+ * asked for {@link CompactResultsFormat} instead of XML, falling back to
+ * XML if the node does not support it.
  * 
  * @author brad
  * @version $Date$, $Revision$
@@ -70,13 +84,16 @@ public class RemoteResourceIndex implements ResourceIndex {
 	private String searchUrlBase;
 	private int connectTimeout = 10000;
 	private int readTimeout = 10000;
+	private boolean compactFormat = false;
 	
+	private XMLInputFactory xmlInputFactory = newXMLInputFactory();
 	
 	private DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 
 	private static final String WB_XML_REQUEST_TAGNAME = "request";
 
 
+	private static final String WB_XML_RESULTS_TAGNAME = "results";
 	private static final String WB_XML_RESULT_TAGNAME = "result";
 	private static final String WB_XML_ERROR_TAGNAME = "error";
 	private static final String WB_XML_ERROR_TITLE = "title";
@@ -134,25 +151,216 @@ public class RemoteResourceIndex implements ResourceIndex {
 			ResourceNotInArchiveException, BadQueryException,
 			AccessControlException {
 
-		Document document = null;
+		InputStream is = null;
 		try {
-			// HTTP Request + parse
-			LOGGER.info("Getting index XML from ("+requestUrl+")");
-			document = getHttpDocument(requestUrl);
+			// HTTP Request + streaming parse
+			LOGGER.info("Getting index from ("+requestUrl+")");
+			URLConnection conn = openConnection(requestUrl);
+			is = conn.getInputStream();
+			if (CompactResultsFormat.isCompact(conn.getContentType())) {
+				return compactToSearchResults(is, filter);
+			}
+			return streamToSearchResults(is, requestUrl, filter);
 		} catch (IOException e) {
 			// TODO: better error for user:
-			e.printStackTrace();
+			LOGGER.warning("Failed index request (" + requestUrl + "): " + e);
 			throw new ResourceIndexNotAvailableException(e.getMessage());
-		} catch (SAXException e) {
-			e.printStackTrace();
-			throw new ResourceIndexNotAvailableException("Unexpected SAX: "
+		} catch (XMLStreamException e) {
+			LOGGER.warning("Bad index XML (" + requestUrl + "): " + e);
+			throw new ResourceIndexNotAvailableException("Unexpected XML: "
 					+ e.getMessage());
+		} finally {
+			if (is != null) {
+				try {
+					is.close();
+				} catch (IOException e) {
+					// already have what we need
+				}
+			}
 		}
-
-		checkDocumentForExceptions(document);
-		return documentToSearchResults(document, filter);
 	}
 	
+	/**
+	 * Parse an XMLQuery response as a stream, applying filter to each
+	 * CaptureSearchResult as it is completed. Parsing stops early if the
+	 * filter returns FILTER_ABORT.
+	 * @param is the XML response
+	 * @param systemId URL of the response, for error messages
+	 * @param filter optional filter for CaptureSearchResults
+	 * @return the SearchResults described by the response
+	 * @throws XMLStreamException if the response is not well formed
+	 */
+	protected SearchResults streamToSearchResults(InputStream is,
+			String systemId, ObjectFilter<CaptureSearchResult> filter)
+			throws XMLStreamException, ResourceIndexNotAvailableException,
+			ResourceNotInArchiveException, BadQueryException,
+			AccessControlException {
+
+		ResultsBuilder builder = new ResultsBuilder(filter);
+		XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(
+				systemId, is);
+		try {
+			// depth 1 is <wayback>, 2 is <request>, <results> or <error>
+			int depth = 0;
+			String section = null;
+			SearchResult current = null;
+			String errTitle = null;
+			String errMessage = null;
+			StringBuilder text = new StringBuilder();
+			
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+					text.setLength(0);
+					String name = reader.getLocalName();
+					if (depth == 2) {
+						section = name;
+					} else if ((depth == 3)
+							&& WB_XML_RESULTS_TAGNAME.equals(section)
+							&& WB_XML_RESULT_TAGNAME.equals(name)) {
+						current = builder.newResult();
+					}
+				} else if ((event == XMLStreamConstants.CHARACTERS)
+						|| (event == XMLStreamConstants.CDATA)) {
+					text.append(reader.getText());
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					String name = reader.getLocalName();
+					if ((depth == 4) && (current != null)) {
+						current.putCustom(name, text.toString());
+					} else if (depth == 3) {
+						if (WB_XML_REQUEST_TAGNAME.equals(section)) {
+							builder.filter(name, text.toString());
+						} else if (WB_XML_ERROR_TAGNAME.equals(section)) {
+							if (WB_XML_ERROR_TITLE.equals(name)) {
+								errTitle = emptyToNull(text.toString());
+							} else if (WB_XML_ERROR_MESSAGE.equals(name)) {
+								errMessage = emptyToNull(text.toString());
+							}
+						} else if (current != null) {
+							boolean more = builder.add(current);
+							current = null;
+							if (!more) {
+								break;
+							}
+						}
+					} else if ((depth == 2)
+							&& WB_XML_ERROR_TAGNAME.equals(section)) {
+						throwRemoteException(errTitle, errMessage);
+					}
+					depth--;
+					text.setLength(0);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return builder.getResults();
+	}
+
+	/**
+	 * Read a response in CompactResultsFormat, applying filter to each
+	 * CaptureSearchResult as it is read.
+	 * @param is the compact response
+	 * @param filter optional filter for CaptureSearchResults
+	 * @return the SearchResults described by the response
+	 * @throws IOException if the response cannot be read
+	 */
+	protected SearchResults compactToSearchResults(InputStream is,
+			ObjectFilter<CaptureSearchResult> filter) throws IOException,
+			ResourceNotInArchiveException {
+		ResultsBuilder builder = new ResultsBuilder(filter);
+		CompactResultsFormat.read(is, builder);
+		return builder.getResults();
+	}
+
+	private static String emptyToNull(String s) {
+		return (s.length() == 0) ? null : s;
+	}
+
+	/**
+	 * Accumulates streamed results, applying the filter to captures.
+	 */
+	private static class ResultsBuilder implements CompactResultsFormat.Handler {
+		private ObjectFilter<CaptureSearchResult> filter;
+		private Map<String, String> filters = new LinkedHashMap<String, String>();
+		private boolean isUrlResults = false;
+		private CaptureSearchResults captureResults = null;
+		private UrlSearchResults urlResults = null;
+		private int numAdded = 0;
+
+		public ResultsBuilder(ObjectFilter<CaptureSearchResult> filter) {
+			this.filter = filter;
+		}
+
+		public void filter(String key, String value) {
+			filters.put(key, value);
+			if (key.equals(SearchResults.RESULTS_TYPE)) {
+				isUrlResults = 
+					!value.equals(SearchResults.RESULTS_TYPE_CAPTURE);
+			}
+		}
+
+		public boolean result(String[] keys, String[] values) {
+			SearchResult result = newResult();
+			for (int i = 0; i < keys.length; i++) {
+				result.putCustom(keys[i], values[i]);
+			}
+			return add(result);
+		}
+
+		public SearchResult newResult() {
+			return isUrlResults ? new UrlSearchResult() 
+					: new CaptureSearchResult();
+		}
+
+		/**
+		 * @return false if the filter aborted, and no more results are wanted
+		 */
+		public boolean add(SearchResult result) {
+			if (result instanceof UrlSearchResult) {
+				if (urlResults == null) {
+					urlResults = new UrlSearchResults();
+				}
+				urlResults.addSearchResult((UrlSearchResult) result, true);
+				return true;
+			}
+			CaptureSearchResult capture = (CaptureSearchResult) result;
+			int ruling = ObjectFilter.FILTER_INCLUDE;
+			if (filter != null) {
+				ruling = filter.filterObject(capture);
+			}
+			if (ruling == ObjectFilter.FILTER_ABORT) {
+				return false;
+			} else if (ruling == ObjectFilter.FILTER_INCLUDE) {
+				if (captureResults == null) {
+					captureResults = new CaptureSearchResults();
+				}
+				numAdded++;
+				captureResults.addSearchResult(capture, true);
+			}
+			return true;
+		}
+
+		public SearchResults getResults() throws ResourceNotInArchiveException {
+			SearchResults results;
+			if (isUrlResults) {
+				results = (urlResults == null) ? new UrlSearchResults()
+						: urlResults;
+			} else {
+				if (numAdded == 0) {
+					throw new ResourceNotInArchiveException("No documents " +
+							"matching filter");
+				}
+				results = captureResults;
+			}
+			for (Map.Entry<String, String> e : filters.entrySet()) {
+				results.putFilter(e.getKey(), e.getValue());
+			}
+			return results;
+		}
+	}
+
 	protected void checkDocumentForExceptions(Document document) 
 		throws ResourceIndexNotAvailableException, 
 		ResourceNotInArchiveException, BadQueryException, 
@@ -164,21 +372,28 @@ public class RemoteResourceIndex implements ResourceIndex {
 					WB_XML_ERROR_TITLE);
 			String errMessage =  getNodeContent((Element) errors.item(0),
 					WB_XML_ERROR_MESSAGE);
-			
-			// TODO: Localization Problems.. Think of something clever.
-			if(errTitle == null) {
-				throw new ResourceIndexNotAvailableException("Unknown error!");
-			} else if(errTitle.equals("Resource Not In Archive")) {
-				throw new ResourceNotInArchiveException(errMessage);
-			} else if(errTitle.equals("Bad Query Exception")) {
-				throw new BadQueryException(errMessage);
-			} else if(errTitle.equals("Resource Index Not Available Exception")) {
-				throw new ResourceIndexNotAvailableException(errMessage);
-			} else if(errTitle.equals("Access Control Exception")) {
-				throw new AccessControlException(errMessage);
-			} else {
-				throw new ResourceIndexNotAvailableException("Unknown error!");				
-			}
+			throwRemoteException(errTitle, errMessage);
+		}
+	}
+
+	protected void throwRemoteException(String errTitle, String errMessage)
+		throws ResourceIndexNotAvailableException, 
+		ResourceNotInArchiveException, BadQueryException, 
+		AccessControlException {
+
+		// TODO: Localization Problems.. Think of something clever.
+		if(errTitle == null) {
+			throw new ResourceIndexNotAvailableException("Unknown error!");
+		} else if(errTitle.equals("Resource Not In Archive")) {
+			throw new ResourceNotInArchiveException(errMessage);
+		} else if(errTitle.equals("Bad Query Exception")) {
+			throw new BadQueryException(errMessage);
+		} else if(errTitle.equals("Resource Index Not Available Exception")) {
+			throw new ResourceIndexNotAvailableException(errMessage);
+		} else if(errTitle.equals("Access Control Exception")) {
+			throw new AccessControlException(errMessage);
+		} else {
+			throw new ResourceIndexNotAvailableException("Unknown error!");				
 		}
 	}
 	private String getResultsType(Document document) {
@@ -338,13 +553,31 @@ public class RemoteResourceIndex implements ResourceIndex {
 		return (result == null || result.length() == 0) ? null : result;
 	}
 
-	// do an HTTP request, plus parse the result into an XML DOM
-	protected Document getHttpDocument(String url)
-			throws IOException, SAXException {
+	protected URLConnection openConnection(String url) throws IOException {
 		URL u = new URL(url);
 		URLConnection conn = u.openConnection();
 		conn.setConnectTimeout(connectTimeout);
 		conn.setReadTimeout(readTimeout);
+		if (compactFormat) {
+			conn.setRequestProperty("Accept", CompactResultsFormat.CONTENT_TYPE
+					+ ", text/xml;q=0.5");
+		}
+		return conn;
+	}
+
+	private static XMLInputFactory newXMLInputFactory() {
+		XMLInputFactory f = XMLInputFactory.newInstance();
+		f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				Boolean.FALSE);
+		f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+		return f;
+	}
+
+	// do an HTTP request, plus parse the result into an XML DOM
+	protected Document getHttpDocument(String url)
+			throws IOException, SAXException {
+		URLConnection conn = openConnection(url);
 		return (getDocumentBuilder()).parse(conn.getInputStream(),url);
 	}
 	protected Document getFileDocument(File f)
@@ -392,4 +625,20 @@ public class RemoteResourceIndex implements ResourceIndex {
 	public void setReadTimeout(int readTimeout) {
 		this.readTimeout = readTimeout;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @return true if the remote node is asked for CompactResultsFormat
+	 */
+	public boolean isCompactFormat() {
+		return compactFormat;
+	}
+
+	/**
+	 * @param compactFormat if true, ask the remote node for 
+	 * CompactResultsFormat rather than XML. Nodes which do not support it 
+	 * answer with XML, which is still handled.
+	 */
+	public void setCompactFormat(boolean compactFormat) {
+		this.compactFormat = compactFormat;
+	}
+}
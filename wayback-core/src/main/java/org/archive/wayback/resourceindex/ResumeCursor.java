@@ -0,0 +1,222 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.commons.codec.binary.Base64;
+import org.archive.wayback.exception.BadQueryException;
+
+/**
+ * Position in the results of a capture or URL query, from which the next
+ * page of results can be read without reading the pages before it again.
+ * <p>Encoded as an opaque String, returned to clients in
+ * {@link org.archive.wayback.core.SearchResults#getResumeKey()} and accepted
+ * in {@link org.archive.wayback.core.WaybackRequest#getResumeKey()}.</p>
+ * <p>A capture query cursor holds the urlKey and timestamp of the last
+ * capture returned, and how many index records with that urlKey and
+ * timestamp were read up to and including it. A URL query cursor holds
+ * the last urlKey returned. Both hold the number of results returned
+ * before the next page, and the total number of matching results, as
+ * counted for the first page.</p>
+ */
+public class ResumeCursor {
+	private final static String CAPTURE_TYPE = "c";
+	private final static String URL_TYPE = "u";
+	private final static String DELIMITER = "\t";
+	private final static int NUM_FIELDS = 6;
+
+	private final boolean urlQuery;
+	private final String urlKey;
+	private final String timestamp;
+	private final int skip;
+	private final long offset;
+	private final long total;
+
+	private ResumeCursor(boolean urlQuery, String urlKey, String timestamp,
+			int skip, long offset, long total) {
+		this.urlQuery = urlQuery;
+		this.urlKey = urlKey;
+		this.timestamp = timestamp;
+		this.skip = skip;
+		this.offset = offset;
+		this.total = total;
+	}
+
+	/**
+	 * @param urlKey urlKey of the last capture returned
+	 * @param timestamp timestamp of the last capture returned
+	 * @param skip number of index records with {@code urlKey} and
+	 *   {@code timestamp} read, up to and including the last capture returned
+	 * @param offset number of results returned so far
+	 * @param total number of matching results
+	 * @return ResumeCursor for a capture query
+	 */
+	public static ResumeCursor forCaptureQuery(String urlKey, String timestamp,
+			int skip, long offset, long total) {
+		return new ResumeCursor(false, urlKey, timestamp, skip, offset, total);
+	}
+
+	/**
+	 * @param urlKey urlKey of the last URL returned
+	 * @param offset number of results returned so far
+	 * @param total number of matching results
+	 * @return ResumeCursor for a URL query
+	 */
+	public static ResumeCursor forUrlQuery(String urlKey, long offset,
+			long total) {
+		return new ResumeCursor(true, urlKey, null, 0, offset, total);
+	}
+
+	/**
+	 * @return true if this is a URL query cursor
+	 */
+	public boolean isUrlQuery() {
+		return urlQuery;
+	}
+
+	/**
+	 * @return urlKey of the last result returned
+	 */
+	public String getUrlKey() {
+		return urlKey;
+	}
+
+	/**
+	 * @return timestamp of the last capture returned, or null for a URL
+	 * query cursor
+	 */
+	public String getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return number of index records with the last urlKey and timestamp
+	 * read up to and including the last capture returned
+	 */
+	public int getSkip() {
+		return skip;
+	}
+
+	/**
+	 * @return number of results returned before the next page
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return total number of matching results
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return key to pass to
+	 * {@link SearchResultSource#getPrefixIterator(String)} to start
+	 * reading at, or just before, the next result
+	 */
+	public String getSeekKey() {
+		if (urlQuery) {
+			return urlKey;
+		}
+		return urlKey + " " + timestamp;
+	}
+
+	/**
+	 * @return opaque String form of this cursor, safe to use in URLs
+	 */
+	public String encode() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(urlQuery ? URL_TYPE : CAPTURE_TYPE).append(DELIMITER);
+		sb.append(urlKey).append(DELIMITER);
+		sb.append(timestamp == null ? "" : timestamp).append(DELIMITER);
+		sb.append(skip).append(DELIMITER);
+		sb.append(offset).append(DELIMITER);
+		sb.append(total);
+		try {
+			String encoded = new String(
+				Base64.encodeBase64(sb.toString().getBytes("UTF-8")), "UTF-8");
+			StringBuilder safe = new StringBuilder(encoded.length());
+			for (int i = 0; i < encoded.length(); i++) {
+				char c = encoded.charAt(i);
+				if (c == '+') {
+					safe.append('-');
+				} else if (c == '/') {
+					safe.append('_');
+				} else if (c != '=') {
+					safe.append(c);
+				}
+			}
+			return safe.toString();
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param encoded String returned by {@link #encode()}
+	 * @return ResumeCursor
+	 * @throws BadQueryException if {@code encoded} is not a valid cursor
+	 */
+	public static ResumeCursor decode(String encoded) throws BadQueryException {
+		StringBuilder sb = new StringBuilder(encoded.length() + 3);
+		for (int i = 0; i < encoded.length(); i++) {
+			char c = encoded.charAt(i);
+			if (c == '-') {
+				sb.append('+');
+			} else if (c == '_') {
+				sb.append('/');
+			} else {
+				sb.append(c);
+			}
+		}
+		while (sb.length() % 4 != 0) {
+			sb.append('=');
+		}
+		String[] fields;
+		try {
+			String decoded = new String(
+				Base64.decodeBase64(sb.toString().getBytes("UTF-8")), "UTF-8");
+			fields = decoded.split(DELIMITER, -1);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		if (fields.length != NUM_FIELDS || fields[1].length() == 0) {
+			throw new BadQueryException("Bad resumeKey(" + encoded + ")");
+		}
+		boolean urlQuery;
+		if (fields[0].equals(URL_TYPE)) {
+			urlQuery = true;
+		} else if (fields[0].equals(CAPTURE_TYPE) && fields[2].length() > 0) {
+			urlQuery = false;
+		} else {
+			throw new BadQueryException("Bad resumeKey(" + encoded + ")");
+		}
+		try {
+			return new ResumeCursor(urlQuery, fields[1],
+				urlQuery ? null : fields[2], Integer.parseInt(fields[3]),
+				Long.parseLong(fields[4]), Long.parseLong(fields[5]));
+		} catch (NumberFormatException e) {
+			throw new BadQueryException("Bad resumeKey(" + encoded + ")");
+		}
+	}
+}
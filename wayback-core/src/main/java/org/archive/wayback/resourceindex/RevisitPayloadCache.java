@@ -0,0 +1,229 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.util.ObjectFilter;
+
+/**
+ * Cache of payload locations for identical content revisits, shared by all
+ * queries and replays, so a revisit whose original is outside of the
+ * captures loaded for the current request can still be resolved without
+ * loading the whole timeline of the URL again.
+ * <p>Keys are the urlkey and payload digest of the original capture. Values
+ * are its file, offset and compressed length, and its timestamp and
+ * original URL. Entries are least-recently-used, at most
+ * {@code maxEntries} of them.</p>
+ * <p>Originals are remembered as they are read from the index, before
+ * exclusion and AccessPoint filters are applied, as revisits of a single
+ * query are resolved. Share one instance only between ResourceIndexes and
+ * AccessPoints which see the same (W)ARC files, and use
+ * {@link #resolve(CaptureSearchResult, List)} where the payload file must
+ * also pass an AccessPoint's file filters.</p>
+ */
+public class RevisitPayloadCache {
+	private final static String EMPTY_VALUE = "-";
+	private final static String REVISIT_VALUE = "warc/revisit";
+
+	private int maxEntries = 100000;
+
+	private final LinkedHashMap<String, CaptureSearchResult> entries =
+		new LinkedHashMap<String, CaptureSearchResult>(1024, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, CaptureSearchResult> eldest) {
+			return size() > maxEntries;
+		}
+	};
+
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+
+	private static String makeKey(String urlKey, String digest) {
+		if ((urlKey == null) || (digest == null) ||
+				EMPTY_VALUE.equals(digest)) {
+			return null;
+		}
+		return urlKey + " " + digest;
+	}
+
+	/**
+	 * Remember the location of {@code original}, if it is a capture with a
+	 * payload.
+	 * @param original capture read from the index, or replayed
+	 */
+	public void remember(CaptureSearchResult original) {
+		String file = original.getFile();
+		if ((file == null) || EMPTY_VALUE.equals(file) ||
+				REVISIT_VALUE.equals(original.getMimeType())) {
+			return;
+		}
+		remember(original.getUrlKey(), original.getDigest(), original);
+	}
+
+	/**
+	 * Remember {@code payload} as the payload location of captures of
+	 * {@code urlKey} with payload digest {@code digest}, such as one found
+	 * for a URL-agnostic revisit.
+	 * @param urlKey urlkey of the revisit
+	 * @param digest payload digest of the revisit
+	 * @param payload capture holding the payload
+	 */
+	public void remember(String urlKey, String digest,
+			CaptureSearchResult payload) {
+		String key = makeKey(urlKey, digest);
+		if ((key == null) || (payload.getFile() == null) ||
+				(payload.getOffset() < 0)) {
+			return;
+		}
+		CaptureSearchResult location = copyLocation(payload);
+		synchronized (entries) {
+			entries.put(key, location);
+		}
+	}
+
+	/**
+	 * @param urlKey urlkey of the revisit
+	 * @param digest payload digest of the revisit
+	 * @return new CaptureSearchResult with the payload location, or
+	 * {@code null} if unknown
+	 */
+	public CaptureSearchResult get(String urlKey, String digest) {
+		String key = makeKey(urlKey, digest);
+		if (key == null) {
+			return null;
+		}
+		CaptureSearchResult location;
+		synchronized (entries) {
+			location = entries.get(key);
+		}
+		if (location == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return copyLocation(location);
+	}
+
+	/**
+	 * Flag {@code revisit} as a duplicate of its cached payload location,
+	 * if there is one.
+	 * @param revisit identical content revisit capture
+	 * @return true if the payload location was found
+	 */
+	public boolean resolve(CaptureSearchResult revisit) {
+		CaptureSearchResult payload = get(revisit.getUrlKey(),
+				revisit.getDigest());
+		if (payload == null) {
+			return false;
+		}
+		revisit.flagDuplicateDigest(payload);
+		return true;
+	}
+
+	/**
+	 * Flag {@code revisit} as a duplicate of its cached payload location,
+	 * if there is one and all {@code filters} include it.
+	 * @param revisit identical content revisit capture
+	 * @param filters filters the payload location must pass, such as an
+	 * AccessPoint's file prefix and pattern filters
+	 * @return true if the payload location was found and passed the filters
+	 */
+	public boolean resolve(CaptureSearchResult revisit,
+			List<ObjectFilter<CaptureSearchResult>> filters) {
+		CaptureSearchResult payload = get(revisit.getUrlKey(),
+				revisit.getDigest());
+		if (payload == null) {
+			return false;
+		}
+		for (ObjectFilter<CaptureSearchResult> filter : filters) {
+			if (filter.filterObject(payload) != ObjectFilter.FILTER_INCLUDE) {
+				return false;
+			}
+		}
+		revisit.flagDuplicateDigest(payload);
+		return true;
+	}
+
+	private static CaptureSearchResult copyLocation(CaptureSearchResult from) {
+		CaptureSearchResult location = new CaptureSearchResult();
+		location.setUrlKey(from.getUrlKey());
+		location.setOriginalUrl(from.getOriginalUrl());
+		location.setCaptureTimestamp(from.getCaptureTimestamp());
+		location.setDigest(from.getDigest());
+		location.setFile(from.getFile());
+		location.setOffset(from.getOffset());
+		location.setCompressedLength(from.getCompressedLength());
+		return location;
+	}
+
+	/**
+	 * forget all payload locations.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return number of payload locations held
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return number of lookups which found a payload location
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups which found none
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return maximum number of payload locations held
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @param maxEntries maximum number of payload locations held
+	 */
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.UrlSearchResult;
+import org.archive.wayback.exception.ResourceIndexNotAvailableException;
+import org.archive.wayback.resourceindex.adapters.CaptureToUrlSearchResultIterator;
+import org.archive.wayback.resourceindex.cdx.CDXIndex;
+import org.archive.wayback.resourceindex.filters.DuplicateRecordFilter;
+import org.archive.wayback.resourceindex.filters.MimeTypeFilter;
+import org.archive.wayback.resourceindex.filters.UserInfoInAuthorityFilter;
+import org.archive.wayback.util.AdaptedIterator;
+import org.archive.wayback.util.Adapter;
+import org.archive.wayback.util.ObjectFilter;
+import org.archive.wayback.util.ObjectFilterChain;
+import org.archive.wayback.util.ObjectFilterIterator;
+import org.archive.wayback.util.flatfile.FlatFile;
+
+/**
+ * Sidecar to a capture index, holding one line per distinct urlKey:
+ * <pre>
+ * urlKey firstTimestamp lastTimestamp numCaptures numVersions originalUrl
+ * </pre>
+ * sorted by urlKey, where {@code originalUrl} is that of the first capture.
+ * <p>Captures are counted after the filtering every query applies
+ * ({@link org.archive.wayback.resourceindex.filterfactory.CoreCaptureFilterGroup}),
+ * so URL queries can be answered from this file without reading every
+ * capture, see {@link LocalResourceIndex#setUrlSummary(UrlSummaryIndex)}.</p>
+ * <p>Build with {@link #write(Iterator, PrintWriter)}, or from the command
+ * line from a sorted CDX file, whenever the capture index is built.</p>
+ */
+public class UrlSummaryIndex extends FlatFile {
+	private final static String DELIMITER = " ";
+	private final static String ALEXA_DAT_MIME = "alexa/dat";
+
+	private final static Logger LOGGER =
+		Logger.getLogger(UrlSummaryIndex.class.getName());
+
+	private final static Adapter<String, UrlSearchResult> LINE_ADAPTER =
+		new Adapter<String, UrlSearchResult>() {
+		public UrlSearchResult adapt(String line) {
+			UrlSearchResult result = parseLine(line);
+			if (result == null) {
+				LOGGER.warning("Skipping malformed summary line: " + line);
+			}
+			return result;
+		}
+	};
+
+	private final static ObjectFilter<UrlSearchResult> SKIP_MALFORMED =
+		new ObjectFilter<UrlSearchResult>() {
+		public int filterObject(UrlSearchResult result) {
+			return (result == null) ? FILTER_EXCLUDE : FILTER_INCLUDE;
+		}
+	};
+
+	public UrlSummaryIndex() {
+	}
+
+	/**
+	 * @param path summary file
+	 */
+	public UrlSummaryIndex(String path) {
+		super(path);
+	}
+
+	/**
+	 * @param prefix urlKey prefix
+	 * @return iterator of UrlSearchResult starting at the first urlKey not
+	 * before {@code prefix}, continuing to the end of the file. Malformed
+	 * lines are logged and skipped.
+	 * @throws ResourceIndexNotAvailableException if the file cannot be read
+	 */
+	public CloseableIterator<UrlSearchResult> getPrefixIterator(String prefix)
+			throws ResourceIndexNotAvailableException {
+		try {
+			return new ObjectFilterIterator<UrlSearchResult>(
+				new AdaptedIterator<String, UrlSearchResult>(
+					getRecordIterator(prefix), LINE_ADAPTER),
+				SKIP_MALFORMED);
+		} catch (IOException e) {
+			throw new ResourceIndexNotAvailableException(e.getMessage());
+		}
+	}
+
+	/**
+	 * @param line summary line
+	 * @return UrlSearchResult, or null if {@code line} is malformed
+	 */
+	public static UrlSearchResult parseLine(String line) {
+		String[] fields = line.split(DELIMITER, 6);
+		if (fields.length != 6) {
+			return null;
+		}
+		UrlSearchResult result = new UrlSearchResult();
+		result.setUrlKey(fields[0]);
+		result.setFirstCapture(fields[1]);
+		result.setLastCapture(fields[2]);
+		try {
+			result.setNumCaptures(Long.parseLong(fields[3]));
+			result.setNumVersions(Long.parseLong(fields[4]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		result.setOriginalUrl(fields[5]);
+		return result;
+	}
+
+	/**
+	 * @param result UrlSearchResult
+	 * @return summary line for {@code result}
+	 */
+	public static String formatLine(UrlSearchResult result) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(result.getUrlKey()).append(DELIMITER);
+		sb.append(result.getFirstCaptureTimestamp()).append(DELIMITER);
+		sb.append(result.getLastCaptureTimestamp()).append(DELIMITER);
+		sb.append(result.getNumCaptures()).append(DELIMITER);
+		sb.append(result.getNumVersions()).append(DELIMITER);
+		sb.append(result.getOriginalUrl());
+		return sb.toString();
+	}
+
+	/**
+	 * Write summary lines for {@code captures}.
+	 * @param captures all captures of an index, sorted by urlKey
+	 * @param pw where to write lines
+	 * @return number of lines written
+	 */
+	public static long write(Iterator<CaptureSearchResult> captures,
+			PrintWriter pw) {
+		// same as CoreCaptureFilterGroup, minus GuardRailFilter:
+		ObjectFilterChain<CaptureSearchResult> filters =
+			new ObjectFilterChain<CaptureSearchResult>();
+		filters.addFilter(new DuplicateRecordFilter());
+		MimeTypeFilter mimeExcludeFilter = new MimeTypeFilter();
+		mimeExcludeFilter.addMime(ALEXA_DAT_MIME);
+		mimeExcludeFilter.setIncludeIfContains(false);
+		filters.addFilter(new UserInfoInAuthorityFilter());
+		filters.addFilter(mimeExcludeFilter);
+
+		CaptureToUrlSearchResultIterator itr =
+			new CaptureToUrlSearchResultIterator(
+				new ObjectFilterIterator<CaptureSearchResult>(captures, filters));
+		long lines = 0;
+		while (itr.hasNext()) {
+			pw.println(formatLine(itr.next()));
+			lines++;
+		}
+		return lines;
+	}
+
+	private static void USAGE() {
+		System.err.println("Usage: CDX_PATH [SUMMARY_PATH]");
+		System.err.println();
+		System.err.println("Write URL summary of sorted CDX file at CDX_PATH");
+		System.err.println("to SUMMARY_PATH, or STDOUT.");
+		System.exit(1);
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			USAGE();
+		}
+		CDXIndex cdx = new CDXIndex();
+		cdx.setPath(args[0]);
+		PrintWriter pw = new PrintWriter(System.out);
+		if (args.length == 2) {
+			try {
+				pw = new PrintWriter(args[1]);
+			} catch (FileNotFoundException e) {
+				e.printStackTrace();
+				System.exit(1);
+			}
+		}
+		try {
+			CloseableIterator<CaptureSearchResult> captures =
+				cdx.getPrefixIterator("");
+			write(captures, pw);
+			captures.close();
+			pw.close();
+		} catch (ResourceIndexNotAvailableException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
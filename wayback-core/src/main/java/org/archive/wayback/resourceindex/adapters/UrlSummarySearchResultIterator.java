@@ -0,0 +1,179 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.adapters;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.archive.util.io.RuntimeIOException;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.UrlSearchResult;
+import org.archive.wayback.exception.ResourceIndexNotAvailableException;
+import org.archive.wayback.resourceindex.SearchResultSource;
+import org.archive.wayback.util.ObjectFilter;
+import org.archive.wayback.util.ObjectFilterIterator;
+
+/**
+ * Iterator of UrlSearchResult for a URL query, read from the lines of a
+ * {@link org.archive.wayback.resourceindex.UrlSummaryIndex} where possible.
+ * <p>Each summary whose captures all fall within the query date range is
+ * returned as is, if a capture standing for it, with its urlKey, original
+ * URL and last capture timestamp, passes the capture filters. Those filters
+ * must therefore only look at these fields, and must not rule differently
+ * on different dates within the range, as exclusion filters may.</p>
+ * <p>For other URLs, captures in the date range may exist, so the
+ * captures of that URL are read from the capture index, filtered, and
+ * combined as {@link CaptureToUrlSearchResultIterator} does.</p>
+ */
+public class UrlSummarySearchResultIterator
+		implements CloseableIterator<UrlSearchResult> {
+
+	private final CloseableIterator<UrlSearchResult> summaries;
+	private final SearchResultSource source;
+	private final ObjectFilter<CaptureSearchResult> filter;
+	private final String startDate;
+	private final String endDate;
+
+	private UrlSearchResult cachedNext = null;
+	private boolean aborted = false;
+	private long capturesRead = 0;
+
+	/**
+	 * @param summaries summaries starting at the query urlKey
+	 * @param source capture index the summaries were built from
+	 * @param filter capture filters of the query
+	 * @param startDate start of query date range
+	 * @param endDate end of query date range
+	 */
+	public UrlSummarySearchResultIterator(
+			CloseableIterator<UrlSearchResult> summaries,
+			SearchResultSource source, ObjectFilter<CaptureSearchResult> filter,
+			String startDate, String endDate) {
+		this.summaries = summaries;
+		this.source = source;
+		this.filter = filter;
+		this.startDate = startDate;
+		this.endDate = endDate;
+	}
+
+	/**
+	 * @return number of captures read from the capture index, for URLs with
+	 * captures outside the query date range
+	 */
+	public long getCapturesRead() {
+		return capturesRead;
+	}
+
+	public boolean hasNext() {
+		if (cachedNext != null) {
+			return true;
+		}
+		while (!aborted && summaries.hasNext()) {
+			UrlSearchResult summary = summaries.next();
+			String first = summary.getFirstCaptureTimestamp();
+			String last = summary.getLastCaptureTimestamp();
+			if (first.compareTo(startDate) >= 0 &&
+					last.compareTo(endDate) <= 0) {
+				int ruling = filter.filterObject(toCapture(summary, last));
+				if (ruling == ObjectFilter.FILTER_ABORT) {
+					aborted = true;
+				} else if (ruling == ObjectFilter.FILTER_INCLUDE) {
+					cachedNext = summary;
+				}
+			} else if (last.compareTo(startDate) < 0 ||
+					first.compareTo(endDate) > 0) {
+				// no captures in range, but the filters decide when to stop:
+				int ruling = filter.filterObject(toCapture(summary, first));
+				if (ruling == ObjectFilter.FILTER_ABORT) {
+					aborted = true;
+				}
+			} else {
+				cachedNext = readCaptures(summary.getUrlKey());
+			}
+			if (cachedNext != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static CaptureSearchResult toCapture(UrlSearchResult summary,
+			String timestamp) {
+		CaptureSearchResult capture = new CaptureSearchResult();
+		capture.setUrlKey(summary.getUrlKey());
+		capture.setOriginalUrl(summary.getOriginalUrl());
+		capture.setCaptureTimestamp(timestamp);
+		capture.setMimeType("-");
+		return capture;
+	}
+
+	private UrlSearchResult readCaptures(final String urlKey) {
+		CloseableIterator<CaptureSearchResult> captures;
+		try {
+			captures = source.getPrefixIterator(urlKey);
+		} catch (ResourceIndexNotAvailableException e) {
+			// mapped back by LocalResourceIndex
+			throw new RuntimeIOException(e.getMessage());
+		}
+		ObjectFilter<CaptureSearchResult> urlFilter =
+			new ObjectFilter<CaptureSearchResult>() {
+			public int filterObject(CaptureSearchResult o) {
+				if (!urlKey.equals(o.getUrlKey())) {
+					return FILTER_ABORT;
+				}
+				capturesRead++;
+				int ruling = filter.filterObject(o);
+				if (ruling == FILTER_ABORT) {
+					aborted = true;
+				}
+				return ruling;
+			}
+		};
+		CaptureToUrlSearchResultIterator itr =
+			new CaptureToUrlSearchResultIterator(
+				new ObjectFilterIterator<CaptureSearchResult>(captures,
+					urlFilter));
+		UrlSearchResult result = itr.hasNext() ? itr.next() : null;
+		try {
+			itr.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return result;
+	}
+
+	public UrlSearchResult next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("use hasNext!");
+		}
+		UrlSearchResult tmp = cachedNext;
+		cachedNext = null;
+		return tmp;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() throws IOException {
+		summaries.close();
+	}
+}
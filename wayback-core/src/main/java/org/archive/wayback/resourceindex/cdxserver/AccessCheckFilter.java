@@ -10,6 +10,8 @@ import org.archive.wayback.core.FastCaptureSearchResult;
 import org.archive.wayback.exception.AdministrativeAccessControlException;
 import org.archive.wayback.exception.RobotAccessControlException;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
+import org.archive.wayback.util.metrics.Stage;
+import org.archive.wayback.util.metrics.StageMetrics;
 import org.archive.wayback.util.url.UrlOperations;
 
 public class AccessCheckFilter implements CDXAccessFilter {
@@ -68,7 +70,12 @@ public class AccessCheckFilter implements CDXAccessFilter {
 			
 		// Admin Excludes
 		if (adminFilter != null) {
-			status = adminFilter.filterObject(resultTester);
+			long start = StageMetrics.start();
+			try {
+				status = adminFilter.filterObject(resultTester);
+			} finally {
+				StageMetrics.end(Stage.EXCLUSION, start);
+			}
 		}
 		
 		if (status != ExclusionFilter.FILTER_INCLUDE) {
@@ -2,6 +2,7 @@ package org.archive.wayback.resourceindex.cdxserver;
 
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.apache.commons.lang.math.NumberUtils;
 import org.archive.cdxserver.CDXQuery;
@@ -9,6 +10,8 @@ import org.archive.format.cdx.CDXLine;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.FastCaptureSearchResult;
+import org.archive.wayback.core.NearestCaptureCollector;
+import org.archive.wayback.resourceindex.RevisitPayloadCache;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.archive.wayback.resourceindex.filters.SelfRedirectFilter;
 import org.archive.wayback.util.ObjectFilter;
@@ -29,12 +32,17 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 	protected ExclusionFilter exclusionFilter = null;
 	
 	protected CaptureSearchResult prevResult = null;
+	protected CaptureSearchResult firstAdded = null;
+	protected CaptureSearchResult lastAdded = null;
+	protected int addedCount = 0;
+	protected NearestCaptureCollector nearest = null;
 	protected CDXLine prevLine = null;
 	
 	protected HashMap<String, CaptureSearchResult> digestToOriginal;
 	protected HashMap<String, LinkedList<CaptureSearchResult>> digestToRevisits;
 	
 	protected boolean resolveRevisits = false;
+	protected RevisitPayloadCache payloadCache = null;
 	protected boolean seekSingleCapture = false;
 	protected boolean isReverse = false;
 
@@ -144,7 +152,7 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 					CaptureSearchResult payload = digestToOriginal.get(digest);
 					if (payload != null) {
 						result.flagDuplicateDigest(payload);
-					} else {
+					} else if ((payloadCache == null) || !payloadCache.resolve(result)) {
 						result.flagDuplicateDigest();
 					}
 				} else {
@@ -156,6 +164,9 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 					revisits.add(result);
 				}
 			} else {
+				if (payloadCache != null) {
+					payloadCache.remember(result);
+				}
 				if (!isReverse) {
 					digestToOriginal.put(digest, result);
 				} else {
@@ -183,7 +194,16 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 			closest = determineClosest(result);
 		}
 		
-		results.addSearchResult(result, !isReverse);
+		if (nearest != null) {
+			nearest.add(result);
+		} else {
+			results.addSearchResult(result, !isReverse);
+		}
+		if (firstAdded == null) {
+			firstAdded = result;
+		}
+		lastAdded = result;
+		addedCount++;
 		prevResult = result;
 		prevLine = line;
 		
@@ -221,7 +241,7 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 		}
 		
 		// First result that is greater/less than target
-		if (results.isEmpty()) {
+		if (lastAdded == null) {
 			return nextResult;
 		}
 		
@@ -242,9 +262,24 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
 	}
 
     public void end() {
-		results.setClosest(this.getClosest());
+		if ((payloadCache != null) && (digestToRevisits != null)) {
+			// originals of these were not seen: look them up
+			for (List<CaptureSearchResult> revisits : digestToRevisits.values()) {
+				for (CaptureSearchResult revisit : revisits) {
+					payloadCache.resolve(revisit);
+				}
+			}
+		}
+		CaptureSearchResult closest = this.getClosest();
+		if (nearest != null) {
+			if (closest != null) {
+				nearest.keep(closest);
+			}
+			nearest.fill(results);
+		}
+		results.setClosest(closest);
 		results.setReturnedCount(results.getResults().size());
-		results.setMatchingCount(results.getResults().size());
+		results.setMatchingCount(addedCount);
     }
     
     public CaptureSearchResult getClosest()
@@ -253,12 +288,12 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
     		return closest;
     	}
     	
-    	if (!results.isEmpty()) {
+    	if (lastAdded != null) {
     		// If no target timestamp, always return the latest capture, otherwise first or last based on reverse state
-    		if (targetTimestamp != null) {
-    			return getLastAdded();
+    		if ((targetTimestamp != null) || !isReverse) {
+    			return lastAdded;
     		} else {
-    			return results.getResults().getLast();
+    			return firstAdded;
     		}
     	}
     	
@@ -267,11 +302,7 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
     
     protected CaptureSearchResult getLastAdded()
     {
-		if (!isReverse) {
-			return results.getResults().getLast();
-		} else {
-			return results.getResults().getFirst();
-		}
+		return lastAdded;
     }
     
     @Override
@@ -280,6 +311,26 @@ public class CDXToCaptureSearchResultsWriter extends CDXToSearchResultWriter {
     	return results;
     }
 
+	/**
+	 * Resolve revisits whose original is not among the lines of this query
+	 * from {@code payloadCache}, and remember the originals seen in it.
+	 * @param payloadCache RevisitPayloadCache shared across queries, or
+	 * {@code null}
+	 */
+	public void setRevisitPayloadCache(RevisitPayloadCache payloadCache) {
+		this.payloadCache = payloadCache;
+	}
+
+	/**
+	 * Keep only the captures {@code nearest} selects, instead of all.
+	 * Closest capture is computed over all captures, and always kept.
+	 * @param nearest NearestCaptureCollector for the target timestamp,
+	 * or {@code null} to keep all captures
+	 */
+	public void setNearestCaptureCollector(NearestCaptureCollector nearest) {
+		this.nearest = nearest;
+	}
+
 	public SelfRedirectFilter getSelfRedirFilter() {
 		return selfRedirFilter;
 	}
@@ -14,6 +14,7 @@ import org.apache.commons.httpclient.URIException;
 import org.archive.cdxserver.CDXQuery;
 import org.archive.cdxserver.CDXServer;
 import org.archive.cdxserver.auth.AuthToken;
+import org.archive.cdxserver.filter.FieldExpressionFilter;
 import org.archive.cdxserver.writer.CDXWriter;
 import org.archive.cdxserver.writer.HttpCDXWriter;
 import org.archive.format.cdx.CDXInputSource;
@@ -33,6 +34,7 @@ import org.archive.wayback.ResourceIndex;
 import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.NearestCaptureCollector;
 import org.archive.wayback.core.SearchResults;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.AccessControlException;
@@ -43,7 +45,9 @@ import org.archive.wayback.exception.WaybackException;
 import org.archive.wayback.memento.MementoConstants;
 import org.archive.wayback.memento.MementoHandler;
 import org.archive.wayback.memento.MementoUtils;
+import org.archive.wayback.resourceindex.RevisitPayloadCache;
 import org.archive.wayback.resourceindex.filters.SelfRedirectFilter;
+import org.archive.wayback.util.Timestamp;
 import org.archive.wayback.util.webapp.AbstractRequestHandler;
 import org.archive.wayback.util.webapp.RequestHandler;
 import org.archive.wayback.webapp.PerfStats;
@@ -86,6 +90,12 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 
 	protected String baseStatusRegexp;
 	protected String baseStatusFilter;
+
+	protected FieldExpressionFilter filterExpr;
+
+	protected int replayCapturesPerSide = 0;
+
+	protected RevisitPayloadCache revisitPayloadCache;
 	{
 		setBaseStatusRegexp("!(500|502|504)");
 	}
@@ -324,6 +334,9 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 		if (statusFilter != null && !statusFilter.isEmpty())
 			query.setFilter(new String[] { statusFilter });
 
+		if (filterExpr != null)
+			query.setCompiledFilterExpr(filterExpr);
+
 		return query;
 	}
 	
@@ -352,6 +365,11 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 			sb.append("&filter=");
 			sb.append(URLEncoder.encode(query.getFilter()[0], "UTF-8"));
 
+			if (!query.getFilterExpr().isEmpty()) {
+				sb.append("&filterExpr=");
+				sb.append(URLEncoder.encode(query.getFilterExpr(), "UTF-8"));
+			}
+
 //			if (!query.getClosest().isEmpty()) {
 //				sb.append("&closest=");
 //				sb.append(query.getClosest().substring(0, 4));
@@ -473,6 +491,18 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 
 		captureWriter.setSelfRedirFilter(selfRedirFilter);
 
+		if (resolveRevisits) {
+			captureWriter.setRevisitPayloadCache(revisitPayloadCache);
+		}
+
+		if (wbRequest.isReplayRequest() && replayCapturesPerSide > 0) {
+			String target = wbRequest.getReplayTimestamp();
+			long wantMS = (target != null ? Timestamp.parseAfter(target)
+					: Timestamp.latestTimestamp()).getDate().getTime();
+			captureWriter.setNearestCaptureCollector(
+				new NearestCaptureCollector(wantMS, replayCapturesPerSide));
+		}
+
 		return captureWriter;
 	}
 	
@@ -740,6 +770,58 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 		this.baseStatusFilter = buildStatusFilter(baseStatusRegexp);
 	}
 
+	public String getFilterExpr() {
+		return (filterExpr == null) ? null : filterExpr.getExpression();
+	}
+
+	/**
+	 * filter applied to <em>interactive</em> CDX lookups, in addition to
+	 * {@code baseStatusRegexp}.
+	 * <p>Value is a {@link org.archive.cdxserver.filter.FilterExpression}
+	 * over CDX field names, such as
+	 * "{@code mimetype != warc/revisit && length > 0}". It is compiled
+	 * here, once, and shared by all queries.</p>
+	 * @param filterExpr filter expression, or {@code null} for none
+	 * @throws IllegalArgumentException if {@code filterExpr} is not valid
+	 */
+	public void setFilterExpr(String filterExpr) {
+		if (filterExpr == null || filterExpr.isEmpty()) {
+			this.filterExpr = null;
+		} else {
+			this.filterExpr = new FieldExpressionFilter(filterExpr);
+		}
+	}
+
+	public int getReplayCapturesPerSide() {
+		return replayCapturesPerSide;
+	}
+
+	/**
+	 * number of captures kept on each side of the requested date for
+	 * replay lookups, see {@link NearestCaptureCollector}.
+	 * <p>Default is 0, which keeps all captures. Do not set for replay UIs
+	 * which show all captures of the URL, such as a toolbar timeline.</p>
+	 * @param replayCapturesPerSide number of captures, or 0 for all
+	 */
+	public void setReplayCapturesPerSide(int replayCapturesPerSide) {
+		this.replayCapturesPerSide = replayCapturesPerSide;
+	}
+
+	public RevisitPayloadCache getRevisitPayloadCache() {
+		return revisitPayloadCache;
+	}
+
+	/**
+	 * cache of revisit payload locations shared across lookups.
+	 * <p>Replay lookups remember the originals they see in it, and resolve
+	 * revisits whose original is not among the CDX lines of the lookup from
+	 * it.</p>
+	 * @param revisitPayloadCache RevisitPayloadCache, or {@code null}
+	 */
+	public void setRevisitPayloadCache(RevisitPayloadCache revisitPayloadCache) {
+		this.revisitPayloadCache = revisitPayloadCache;
+	}
+
 	protected static String buildStatusFilter(String regexp) {
 		if (regexp == null)
 			return "";
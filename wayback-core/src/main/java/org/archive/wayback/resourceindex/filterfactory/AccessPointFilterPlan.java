@@ -0,0 +1,110 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.filterfactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.resourceindex.filters.DateEmbargoFilter;
+import org.archive.wayback.resourceindex.filters.FilePrefixFilter;
+import org.archive.wayback.resourceindex.filters.FileRegexFilter;
+import org.archive.wayback.util.ObjectFilter;
+import org.archive.wayback.util.ObjectFilterChain;
+import org.archive.wayback.webapp.AccessPoint;
+import org.archive.wayback.webapp.CustomResultFilterFactory;
+
+/**
+ * The capture filters of an AccessPoint, as {@link AccessPointCaptureFilterGroup}
+ * applies them, compiled once from the AccessPoint configuration.
+ * <p>File prefix and file pattern filters hold no per-request state, so
+ * they are built once and shared by all requests. The embargo filter, which
+ * depends on the time of the request, and the filter from the
+ * AccessPoint's CustomResultFilterFactory are built for each request.</p>
+ * <p>Immutable, and safe to share between threads.</p>
+ */
+public class AccessPointFilterPlan {
+	private final static String[] sA = new String[0];
+
+	private final List<ObjectFilter<CaptureSearchResult>> sharedFilters;
+	private final long embargoMS;
+	private final CustomResultFilterFactory filterFactory;
+
+	/**
+	 * @param accessPoint AccessPoint whose configuration to compile
+	 */
+	public AccessPointFilterPlan(AccessPoint accessPoint) {
+		List<ObjectFilter<CaptureSearchResult>> filters =
+			new ArrayList<ObjectFilter<CaptureSearchResult>>();
+		List<String> prefixes = accessPoint.getFileIncludePrefixes();
+		if(prefixes != null && prefixes.size() > 0) {
+			FilePrefixFilter f = new FilePrefixFilter();
+			f.setPrefixes(prefixes.toArray(sA));
+			filters.add(f);
+		}
+		prefixes = accessPoint.getFileExcludePrefixes();
+		if(prefixes != null && prefixes.size() > 0) {
+			FilePrefixFilter f = new FilePrefixFilter();
+			f.setIncludeMatches(false);
+			f.setPrefixes(prefixes.toArray(sA));
+			filters.add(f);
+		}
+		List<String> patterns = accessPoint.getFilePatterns();
+		if(patterns != null && patterns.size() > 0) {
+			FileRegexFilter f = new FileRegexFilter();
+			f.setPatterns(patterns);
+			filters.add(f);
+		}
+		sharedFilters = Collections.unmodifiableList(filters);
+		embargoMS = accessPoint.getEmbargoMS();
+		filterFactory = accessPoint.getFilterFactory();
+	}
+
+	/**
+	 * @return filters shared by all requests
+	 */
+	public List<ObjectFilter<CaptureSearchResult>> getSharedFilters() {
+		return sharedFilters;
+	}
+
+	/**
+	 * Add the filters for one request to {@code chain}.
+	 * @param chain chain of the request's filters
+	 * @param accessPoint AccessPoint handling the request, passed to the
+	 * CustomResultFilterFactory
+	 */
+	public void addFilters(ObjectFilterChain<CaptureSearchResult> chain,
+			AccessPoint accessPoint) {
+		for(ObjectFilter<CaptureSearchResult> f : sharedFilters) {
+			chain.addFilter(f);
+		}
+		if(embargoMS > 0) {
+			chain.addFilter(new DateEmbargoFilter(embargoMS));
+		}
+		if(filterFactory != null) {
+			ObjectFilter<CaptureSearchResult> filter =
+				filterFactory.get(accessPoint);
+			if(filter != null) {
+				chain.addFilter(filter);
+			}
+		}
+	}
+}
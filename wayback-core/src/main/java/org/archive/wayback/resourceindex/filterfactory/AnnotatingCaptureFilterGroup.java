@@ -40,7 +40,8 @@ public class AnnotatingCaptureFilterGroup implements CaptureFilterGroup {
 	public AnnotatingCaptureFilterGroup(LocalResourceIndex index) {
 		chain = new ObjectFilterChain<CaptureSearchResult>();
 		if(index.isDedupeRecords()) {
-			chain.addFilter(new WARCRevisitAnnotationFilter());
+			chain.addFilter(new WARCRevisitAnnotationFilter(
+					index.getRevisitPayloadCache()));
 			chain.addFilter(new ConditionalGetAnnotationFilter());
 			//chain.addFilter(new DuplicateHashFilter());
 		}
@@ -35,6 +35,8 @@ import org.archive.wayback.resourceindex.filters.CounterFilter;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.archive.wayback.util.ObjectFilter;
 import org.archive.wayback.util.ObjectFilterChain;
+import org.archive.wayback.util.metrics.Stage;
+import org.archive.wayback.util.metrics.StageMetrics;
 
 public class ExclusionCaptureFilterGroup implements CaptureFilterGroup {
 
@@ -62,7 +64,11 @@ public class ExclusionCaptureFilterGroup implements CaptureFilterGroup {
 //			preCounter = new CounterFilter();
 //			// count how many results got to the ExclusionFilter:
 //			chain.addFilter(preCounter);
-			chain.addFilter(exclusion);
+			if (StageMetrics.isEnabled()) {
+				chain.addFilter(new TimedExclusionFilter(exclusion));
+			} else {
+				chain.addFilter(exclusion);
+			}
 			// count how many results got past the ExclusionFilter:
 			requestUrl = request.getRequestUrl();
 		}
@@ -70,6 +76,28 @@ public class ExclusionCaptureFilterGroup implements CaptureFilterGroup {
 //		chain.addFilter(postCounter);
 	}
 	
+	/**
+	 * Attributes time spent in the wrapped filter to
+	 * {@link Stage#EXCLUSION}.
+	 */
+	private static class TimedExclusionFilter
+			implements ObjectFilter<CaptureSearchResult> {
+		private final ObjectFilter<CaptureSearchResult> inner;
+
+		TimedExclusionFilter(ObjectFilter<CaptureSearchResult> inner) {
+			this.inner = inner;
+		}
+
+		public int filterObject(CaptureSearchResult o) {
+			long start = StageMetrics.start();
+			try {
+				return inner.filterObject(o);
+			} finally {
+				StageMetrics.end(Stage.EXCLUSION, start);
+			}
+		}
+	}
+
 	public UrlCanonicalizer getCaptureFilterGroupCanonicalizer()
 	{
 		return canonicalizer;
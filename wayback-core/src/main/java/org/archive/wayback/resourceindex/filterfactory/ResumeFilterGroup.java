@@ -0,0 +1,150 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.filterfactory;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.SearchResults;
+import org.archive.wayback.core.UrlSearchResult;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.exception.BadQueryException;
+import org.archive.wayback.resourceindex.ResumeCursor;
+import org.archive.wayback.resourceindex.filters.ResumeFilter;
+import org.archive.wayback.util.ObjectFilter;
+
+/**
+ * Filters resuming a capture or URL query from the {@link ResumeCursor}
+ * in the request, if any, and creating the cursor for the next page.
+ * <p>{@link #getResumeFilter()} must be applied to records first, and the
+ * mark filter last, after the {@link WindowFilterGroup} filters.</p>
+ */
+public class ResumeFilterGroup {
+	private boolean replay;
+	private boolean urlQuery;
+	private ResumeCursor cursor = null;
+	private ResumeFilter resumeFilter;
+
+	// position of the last result returned:
+	private String markKey = null;
+	private String markTimestamp = null;
+	private int markSkip = 0;
+
+	/**
+	 * @param request the query request
+	 * @param urlKey canonical key of the requested URL; the cursor must be
+	 * positioned at it for capture queries, and at a key starting with it
+	 * for URL queries
+	 * @throws BadQueryException if the request's resume key cannot be
+	 * decoded, or is not for this query
+	 */
+	public ResumeFilterGroup(WaybackRequest request, String urlKey)
+			throws BadQueryException {
+		// replay requests are not paginated
+		replay = request.isReplayRequest();
+		urlQuery = request.isUrlQueryRequest();
+		String resumeKey = request.getResumeKey();
+		if (!replay && resumeKey != null && resumeKey.length() > 0) {
+			cursor = ResumeCursor.decode(resumeKey);
+			if (cursor.isUrlQuery() != urlQuery) {
+				throw new BadQueryException("resumeKey(" + resumeKey +
+						") is for another type of query");
+			}
+			// a cursor outside of the query would have the ResumeFilter
+			// omit every record, so the query would never stop reading:
+			String cursorKey = cursor.getUrlKey();
+			if (urlQuery ? !cursorKey.startsWith(urlKey)
+					: !cursorKey.equals(urlKey)) {
+				throw new BadQueryException("resumeKey(" + resumeKey +
+						") is for another URL");
+			}
+		}
+		resumeFilter = new ResumeFilter(cursor);
+	}
+
+	/**
+	 * @return cursor from the request, or null
+	 */
+	public ResumeCursor getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * @param urlKey key the query would start at
+	 * @return key to start reading the index at
+	 */
+	public String getSeekKey(String urlKey) {
+		return cursor == null ? urlKey : cursor.getSeekKey();
+	}
+
+	/**
+	 * @return filter omitting records up to the cursor position
+	 */
+	public ObjectFilter<CaptureSearchResult> getResumeFilter() {
+		return resumeFilter;
+	}
+
+	/**
+	 * @return filter recording position of each capture returned
+	 */
+	public ObjectFilter<CaptureSearchResult> getCaptureMarkFilter() {
+		return new ObjectFilter<CaptureSearchResult>() {
+			public int filterObject(CaptureSearchResult o) {
+				markKey = o.getUrlKey();
+				markTimestamp = o.getCaptureTimestamp();
+				markSkip = resumeFilter.getRunLength();
+				return FILTER_INCLUDE;
+			}
+		};
+	}
+
+	/**
+	 * @return filter recording position of each URL returned
+	 */
+	public ObjectFilter<UrlSearchResult> getUrlMarkFilter() {
+		return new ObjectFilter<UrlSearchResult>() {
+			public int filterObject(UrlSearchResult o) {
+				markKey = o.getUrlKey();
+				return FILTER_INCLUDE;
+			}
+		};
+	}
+
+	/**
+	 * Set resume key for the next page on {@code results}, if there is
+	 * a next page.
+	 * @param results results annotated by {@code window}
+	 * @param window WindowFilterGroup used for the query
+	 */
+	public void annotateResults(SearchResults results,
+			WindowFilterGroup<?> window) {
+		if (replay || markKey == null || !window.hasMore()) {
+			return;
+		}
+		long offset = results.getFirstReturned() + results.getReturnedCount();
+		long total = results.getMatchingCount();
+		ResumeCursor next;
+		if (urlQuery) {
+			next = ResumeCursor.forUrlQuery(markKey, offset, total);
+		} else {
+			next = ResumeCursor.forCaptureQuery(markKey, markTimestamp,
+					markSkip, offset, total);
+		}
+		results.setResumeKey(next.encode());
+	}
+}
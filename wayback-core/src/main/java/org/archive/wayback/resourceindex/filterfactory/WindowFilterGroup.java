@@ -26,6 +26,7 @@ import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.BadQueryException;
 import org.archive.wayback.exception.ResourceNotInArchiveException;
 import org.archive.wayback.resourceindex.LocalResourceIndex;
+import org.archive.wayback.resourceindex.ResumeCursor;
 import org.archive.wayback.resourceindex.filters.WindowEndFilter;
 import org.archive.wayback.resourceindex.filters.WindowStartFilter;
 import org.archive.wayback.util.ObjectFilter;
@@ -39,8 +40,22 @@ public class WindowFilterGroup<T> {
 	WindowStartFilter<T> startFilter;
 	WindowEndFilter<T> endFilter;
 	private String requestUrl = null;
+	private ResumeCursor cursor = null;
 	public WindowFilterGroup(WaybackRequest request, LocalResourceIndex index) 
 		throws BadQueryException {
+		this(request, index, null);
+	}
+	/**
+	 * @param request WaybackRequest giving page size, and page number
+	 * if {@code cursor} is null
+	 * @param index LocalResourceIndex limiting page size
+	 * @param cursor if not null, the window starts at the first record
+	 * seen, which follows {@code cursor}, and processing stops after it
+	 * @throws BadQueryException if page size or number is out of range
+	 */
+	public WindowFilterGroup(WaybackRequest request, LocalResourceIndex index,
+			ResumeCursor cursor) throws BadQueryException {
+		this.cursor = cursor;
 		requestUrl = request.getRequestUrl();
 		windowFilters = new ObjectFilterChain<T>();
 		// first grab all the info from the WaybackRequest, and validate it:
@@ -57,9 +72,15 @@ public class WindowFilterGroup<T> {
 		if (pageNum < 1) {
 			throw new BadQueryException("pageNum must be > 0");
 		}
-		startResult = (pageNum - 1) * resultsPerPage;
-		startFilter = new WindowStartFilter<T>(startResult);
-		endFilter = new WindowEndFilter<T>(resultsPerPage);
+		if (cursor != null) {
+			startResult = (int) cursor.getOffset();
+			startFilter = new WindowStartFilter<T>(0);
+			endFilter = new WindowEndFilter<T>(resultsPerPage, true);
+		} else {
+			startResult = (pageNum - 1) * resultsPerPage;
+			startFilter = new WindowStartFilter<T>(startResult);
+			endFilter = new WindowEndFilter<T>(resultsPerPage);
+		}
 		windowFilters.addFilter(startFilter);
 		windowFilters.addFilter(endFilter);
 	}
@@ -67,12 +88,19 @@ public class WindowFilterGroup<T> {
 		return windowFilters.getFilters();
 	}
 
+	/**
+	 * @return true if there are results after the window
+	 */
+	public boolean hasMore() {
+		return endFilter.getNumSeen() > resultsPerPage;
+	}
+
 	public void annotateResults(SearchResults results) 
 	throws BadQueryException, ResourceNotInArchiveException {
 		results.setFirstReturned(startResult);
 		results.setNumRequested(resultsPerPage);
 		int startSeen = startFilter.getNumSeen();
-		if(startSeen == 0) {
+		if(startSeen == 0 && cursor == null) {
 				ResourceNotInArchiveException e = 
 					new ResourceNotInArchiveException("the URL " + requestUrl
 						+ " is not in the archive.");
@@ -87,7 +115,13 @@ public class WindowFilterGroup<T> {
 		
 		
 		// how many went by the filters:
-		results.setMatchingCount(startFilter.getNumSeen());
+		if (cursor != null) {
+			// counted for the first page, only the window was read now:
+			results.setMatchingCount(Math.max(cursor.getTotal(),
+					startResult + startFilter.getNumSeen()));
+		} else {
+			results.setMatchingCount(startFilter.getNumSeen());
+		}
 
 		// how many were actually returned:
 		results.setReturnedCount(endFilter.getNumReturned());
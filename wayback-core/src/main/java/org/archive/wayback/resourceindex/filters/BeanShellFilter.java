@@ -25,6 +25,13 @@ import org.archive.wayback.util.ObjectFilter;
 import bsh.EvalError;
 import bsh.Interpreter;
 
+/**
+ * ObjectFilter which evaluates a BeanShell expression or script for each
+ * CaptureSearchResult, available as {@code result}.
+ * @deprecated the script is interpreted again for every capture, use
+ * {@link ExpressionFilter}, which is compiled once.
+ */
+@Deprecated
 public class BeanShellFilter implements ObjectFilter<CaptureSearchResult> {
 	
     private String expression = null;
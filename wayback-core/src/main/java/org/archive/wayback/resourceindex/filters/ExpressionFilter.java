@@ -0,0 +1,146 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.filters;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.archive.cdxserver.filter.FilterExpression;
+import org.archive.cdxserver.filter.FilterExpression.FieldAccessor;
+import org.archive.cdxserver.filter.FilterExpression.FieldResolver;
+import org.archive.cdxserver.filter.FilterExpression.TimestampAccessor;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.util.ObjectFilter;
+
+/**
+ * ObjectFilter which includes CaptureSearchResults matching a
+ * {@link FilterExpression}, such as:
+ * <pre>
+ * statuscode in [200,299] &amp;&amp; !(filename ^= TEST-)
+ * </pre>
+ * Fields are named as in CDX server output: urlkey, timestamp, original,
+ * mimetype, statuscode, digest, redirect, robotflags, length, offset and
+ * filename, so the same expression can be used as a CDX server filter.
+ * timestamp is compared as a timestamp: {@code timestamp < 2006} matches
+ * captures before 2006.
+ * <p>The expression is compiled when set, so this filter is much cheaper
+ * per capture than {@link BeanShellFilter}, and can be shared between
+ * threads.</p>
+ */
+public class ExpressionFilter implements ObjectFilter<CaptureSearchResult> {
+
+	private final static Map<String, FieldAccessor<CaptureSearchResult>> FIELDS =
+		new HashMap<String, FieldAccessor<CaptureSearchResult>>();
+	static {
+		FIELDS.put("urlkey", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return r.getUrlKey();
+			}
+		});
+		FIELDS.put("timestamp", new TimestampAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return r.getCaptureTimestamp();
+			}
+		});
+		FIELDS.put("original", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return r.getOriginalUrl();
+			}
+		});
+		FIELDS.put("mimetype", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return r.getMimeType();
+			}
+		});
+		FIELDS.put("statuscode", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return r.getHttpCode();
+			}
+		});
+		FIELDS.put("digest", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return r.getDigest();
+			}
+		});
+		FIELDS.put("redirect", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return r.getRedirectUrl();
+			}
+		});
+		FIELDS.put("robotflags", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return r.getRobotFlags();
+			}
+		});
+		FIELDS.put("length", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return String.valueOf(r.getCompressedLength());
+			}
+		});
+		FIELDS.put("offset", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return String.valueOf(r.getOffset());
+			}
+		});
+		FIELDS.put("filename", new FieldAccessor<CaptureSearchResult>() {
+			public String get(CaptureSearchResult r) {
+				return r.getFile();
+			}
+		});
+	}
+
+	private final static FieldResolver<CaptureSearchResult> RESOLVER =
+		new FieldResolver<CaptureSearchResult>() {
+		public FieldAccessor<CaptureSearchResult> resolve(String name) {
+			return FIELDS.get(name);
+		}
+	};
+
+	private String expression = null;
+	private FilterExpression<CaptureSearchResult> compiled = null;
+
+	public ExpressionFilter() {
+	}
+
+	/**
+	 * @param expression filter expression
+	 * @throws IllegalArgumentException if {@code expression} is not valid
+	 */
+	public ExpressionFilter(String expression) {
+		setExpression(expression);
+	}
+
+	public int filterObject(CaptureSearchResult o) {
+		return compiled.matches(o) ? FILTER_INCLUDE : FILTER_EXCLUDE;
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * @param expression filter expression
+	 * @throws IllegalArgumentException if {@code expression} is not valid
+	 */
+	public void setExpression(String expression) {
+		this.compiled = FilterExpression.compile(expression, RESOLVER);
+		this.expression = expression;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.filters;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.resourceindex.ResumeCursor;
+import org.archive.wayback.util.ObjectFilter;
+
+/**
+ * ObjectFilter which omits index records up to the position held in a
+ * {@link ResumeCursor}, and keeps track of the position of each record it
+ * sees, so a new cursor can be created for the last result returned.
+ * <p>This filter must see every record read from the index, so it must be
+ * the first filter applied.</p>
+ */
+public class ResumeFilter implements ObjectFilter<CaptureSearchResult> {
+	// null once past the cursor position
+	private ResumeCursor cursor;
+
+	// run of records with the same urlKey and timestamp:
+	private String runKey = null;
+	private String runTimestamp = null;
+	private int runLength = 0;
+	private String lastUrl = null;
+
+	/**
+	 * @param cursor position to resume from, or null to include all records
+	 */
+	public ResumeFilter(ResumeCursor cursor) {
+		this.cursor = cursor;
+	}
+
+	/**
+	 * @return number of records with the urlKey and timestamp of the
+	 * current record seen, including the current record
+	 */
+	public int getRunLength() {
+		return runLength;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.archive.wayback.util.ObjectFilter#filterObject(java.lang.Object)
+	 */
+	public int filterObject(CaptureSearchResult o) {
+		String urlKey = o.getUrlKey();
+		String timestamp = o.getCaptureTimestamp();
+		String url = o.getOriginalUrl();
+		if (urlKey.equals(runKey) && timestamp.equals(runTimestamp)) {
+			runLength++;
+		} else {
+			runKey = urlKey;
+			runTimestamp = timestamp;
+			runLength = 1;
+		}
+		String prevUrl = lastUrl;
+		lastUrl = url;
+
+		if (cursor == null) {
+			return FILTER_INCLUDE;
+		}
+		int cmp = urlKey.compareTo(cursor.getUrlKey());
+		if (cursor.isUrlQuery()) {
+			if (cmp <= 0) {
+				return FILTER_EXCLUDE;
+			}
+		} else {
+			if (cmp == 0) {
+				cmp = timestamp.compareTo(cursor.getTimestamp());
+			}
+			if (cmp < 0) {
+				return FILTER_EXCLUDE;
+			}
+			if (cmp == 0) {
+				if (runLength <= cursor.getSkip()) {
+					return FILTER_EXCLUDE;
+				}
+				// DuplicateRecordFilter would omit these, having seen
+				// the records skipped here:
+				if (url.equals(prevUrl)) {
+					return FILTER_EXCLUDE;
+				}
+			}
+		}
+		cursor = null;
+		return FILTER_INCLUDE;
+	}
+}
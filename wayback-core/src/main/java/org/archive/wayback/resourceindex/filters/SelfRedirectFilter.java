@@ -25,7 +25,7 @@ import org.apache.commons.httpclient.URIException;
 import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.util.ObjectFilter;
-import org.archive.wayback.util.url.AggressiveUrlCanonicalizer;
+import org.archive.wayback.util.url.FastUrlCanonicalizer;
 import org.archive.wayback.util.url.UrlOperations;
 
 /**
@@ -41,7 +41,7 @@ public class SelfRedirectFilter implements ObjectFilter<CaptureSearchResult> {
 
 	private UrlCanonicalizer canonicalizer = null;
 	public SelfRedirectFilter() {
-		canonicalizer = new AggressiveUrlCanonicalizer();
+		canonicalizer = new FastUrlCanonicalizer();
 	}
 	public SelfRedirectFilter(UrlCanonicalizer canonicalizer) {
 		this.canonicalizer = canonicalizer;
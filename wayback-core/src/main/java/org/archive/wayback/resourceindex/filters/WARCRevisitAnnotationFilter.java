@@ -24,6 +24,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.resourceindex.RevisitPayloadCache;
 import org.archive.wayback.util.ObjectFilter;
 
 /**
@@ -40,6 +41,10 @@ import org.archive.wayback.util.ObjectFilter;
  * the values from the previously seen record with the same digest, and an 
  * additional annotation field is added.
  * 
+ * If a RevisitPayloadCache is given, records are also remembered in it, and
+ * it is consulted for records whose Digest is not in the map. Like the map,
+ * it sees records before exclusion filters are applied.
+ * 
  * @author brad
  * @version $Date: 2011-11-28 22:03:59 -0800 (Mon, 28 Nov 2011) $, $Revision: 3574 $
  */
@@ -53,17 +58,30 @@ implements ObjectFilter<CaptureSearchResult> {
 			WARCRevisitAnnotationFilter.class.getName());	
 
 	private HashMap<String,CaptureSearchResult> memory = null;
+	private RevisitPayloadCache payloadCache = null;
 
 	public WARCRevisitAnnotationFilter() {
 		memory = new HashMap<String,CaptureSearchResult>();
 	}
 
+	/**
+	 * @param payloadCache RevisitPayloadCache shared across queries, may be
+	 * null
+	 */
+	public WARCRevisitAnnotationFilter(RevisitPayloadCache payloadCache) {
+		this();
+		this.payloadCache = payloadCache;
+	}
+
 	private int annotate(CaptureSearchResult o) {
 		o.flagDuplicateDigest();
 		
 		String thisDigest = o.getDigest();
 		CaptureSearchResult last = memory.get(thisDigest);
 		if (last == null) {
+			if ((payloadCache != null) && payloadCache.resolve(o)) {
+				return FILTER_INCLUDE;
+			}
 			if (LOGGER.isLoggable(Level.FINER)) {
 				LOGGER.finer("did not find matching digest in previous fetch of url, hopefully it's a new-style revisit - "
 						+ o.getCaptureTimestamp() + " " + o.getOriginalUrl());
@@ -78,6 +96,9 @@ implements ObjectFilter<CaptureSearchResult> {
 
 	private int remember(CaptureSearchResult o) {
 		memory.put(o.getDigest(),o);
+		if (payloadCache != null) {
+			payloadCache.remember(o);
+		}
 		return FILTER_INCLUDE;
 	}
 
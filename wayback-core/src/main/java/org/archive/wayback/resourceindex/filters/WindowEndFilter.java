@@ -32,6 +32,7 @@ public class WindowEndFilter<T> implements ObjectFilter<T> {
 	private int windowSize = 0;
 	private int numSeen = 0;
 	private int numReturned = 0;
+	private boolean abortWhenFull = false;
 	
 	/**
 	 * @param windowSize int number of records to include
@@ -40,6 +41,15 @@ public class WindowEndFilter<T> implements ObjectFilter<T> {
 		this.windowSize = windowSize;
 		this.numSeen = 0;
 	}
+	/**
+	 * @param windowSize int number of records to include
+	 * @param abortWhenFull if true, stop processing at the first record
+	 * after the window, instead of counting all records
+	 */
+	public WindowEndFilter(int windowSize, boolean abortWhenFull) {
+		this(windowSize);
+		this.abortWhenFull = abortWhenFull;
+	}
 	public int getNumReturned() {
 		return numReturned;
 	}
@@ -55,7 +65,7 @@ public class WindowEndFilter<T> implements ObjectFilter<T> {
 			numReturned++;
 			return FILTER_INCLUDE;
 		}
-		return FILTER_EXCLUDE;
+		return abortWhenFull ? FILTER_ABORT : FILTER_EXCLUDE;
 	}
 
 }
@@ -22,7 +22,9 @@ import org.archive.wayback.ResourceStore;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.exception.ResourceNotAvailableException;
+import org.archive.wayback.resourcestore.HedgedReplicaFetcher.ReplicaLoader;
 import org.archive.wayback.resourcestore.resourcefile.ArcResource;
+import org.archive.wayback.resourcestore.resourcefile.RecordRangeLoader;
 import org.archive.wayback.resourcestore.resourcefile.WarcResource;
 
 public class FlexResourceStore implements ResourceStore {
@@ -39,6 +41,10 @@ public class FlexResourceStore implements ResourceStore {
 	
 	protected boolean failOnFirstUnavailable = false;
 	
+	protected HedgedReplicaFetcher replicaFetcher;
+	
+	protected RecordRangeLoader rangeLoader;
+	
 	public ZipNumBlockLoader getBlockLoader() {
 		return blockLoader;
 	}
@@ -71,6 +77,34 @@ public class FlexResourceStore implements ResourceStore {
 		this.failOnFirstUnavailable = failOnFirstUnavailable;
 	}
 
+	public HedgedReplicaFetcher getReplicaFetcher() {
+		return replicaFetcher;
+	}
+
+	/**
+	 * If set, all paths returned by a SourceResolver are treated as replicas
+	 * of the same file, and fetched through the HedgedReplicaFetcher instead
+	 * of one after another.
+	 * @param replicaFetcher the HedgedReplicaFetcher to use
+	 */
+	public void setReplicaFetcher(HedgedReplicaFetcher replicaFetcher) {
+		this.replicaFetcher = replicaFetcher;
+	}
+
+	public RecordRangeLoader getRangeLoader() {
+		return rangeLoader;
+	}
+
+	/**
+	 * If set, records with a known compressed length are read with exactly
+	 * that many bytes into a pooled buffer and parsed from there, instead of
+	 * through the blockLoader and an ArchiveReader.
+	 * @param rangeLoader the RecordRangeLoader to use
+	 */
+	public void setRangeLoader(RecordRangeLoader rangeLoader) {
+		this.rangeLoader = rangeLoader;
+	}
+
 	public interface SourceResolver
 	{
 		String[] lookupPath(String filename) throws IOException;
@@ -231,6 +265,29 @@ public class FlexResourceStore implements ResourceStore {
 				continue;
 			}
 			
+			if (replicaFetcher != null) {
+				try {
+					resource = replicaFetcher.fetch(paths, 
+							new ResultReplicaLoader(result));
+					
+					if (resource != null) {
+						return resource;
+					}
+					
+				} catch (IOException io) {
+					if (excMsg.length() > 0) {
+						excMsg.append(" ");
+					}
+					excMsg.append(io.getMessage());
+					lastExc = io;
+					
+					if (failOnFirstUnavailable) {
+						break;
+					}
+				}
+				continue;
+			}
+			
 			for (String path : paths) {
 				try {
 					resource = getResource(path, result);
@@ -278,6 +335,10 @@ public class FlexResourceStore implements ResourceStore {
 			LOGGER.info("Loading " + path + " - " + offset + ":" + length);
 		}
 		
+		if ((rangeLoader != null) && rangeLoader.canLoad(path, length)) {
+			return rangeLoader.getResource(path, offset, length);
+		}
+		
 		boolean success = false;
 		
 		SeekableLineReader slr = blockLoader.attemptLoadBlock(path, offset, length, false, false);
@@ -294,6 +355,7 @@ public class FlexResourceStore implements ResourceStore {
 			r.parseHeaders();
 			
 			success = true;
+			PooledBlockReaders.track(slr);
 			
 		} finally {
 			if (!success) {
@@ -306,6 +368,21 @@ public class FlexResourceStore implements ResourceStore {
 		return r;
 	}
 	
+	private class ResultReplicaLoader implements ReplicaLoader
+	{
+		private CaptureSearchResult result;
+		
+		ResultReplicaLoader(CaptureSearchResult result) {
+			this.result = result;
+		}
+		
+		@Override
+		public Resource load(String path) throws IOException,
+				ResourceNotAvailableException {
+			return getResource(path, result);
+		}
+	}
+	
 	protected Resource loadResource(String path, InputStream is) throws IOException, ResourceNotAvailableException
 	{
 		ArchiveReader archiveReader = ArchiveReaderFactory.get(path, is, false);
@@ -322,5 +399,9 @@ public class FlexResourceStore implements ResourceStore {
 	@Override
 	public void shutdown() throws IOException {
 		blockLoader.close();
+		
+		if (replicaFetcher != null) {
+			replicaFetcher.shutdown();
+		}
 	}
 }
@@ -0,0 +1,725 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.exception.ResourceNotAvailableException;
+
+/**
+ * Fetches a Resource from one of several replica locations of the same
+ * ARC/WARC file, preferring healthy storage hosts and hedging against slow
+ * ones.
+ * <p>
+ * Latency and error rates are tracked per host (the host:port of http://
+ * locations, or "file" for local paths). Replicas are tried in order of
+ * expected cost, and a host which has failed failureThreshold times in a row
+ * is moved to the end of the list until retryIntervalMS has passed.
+ * </p>
+ * <p>
+ * If hedging is enabled, and the first replica has not answered within the
+ * hedgePercentile latency of recent successful fetches (bounded by
+ * minHedgeDelayMS and maxHedgeDelayMS), the next replica is requested in
+ * parallel. The first Resource returned wins, and any other Resource which
+ * arrives later is closed, as is the winner if the caller gives up before
+ * taking it. A failed replica starts the next one immediately.
+ * If the fetch thread pool is exhausted, replicas are tried sequentially in
+ * the calling thread. Fetch threads release their ZipNumBlockLoader readers
+ * through {@link PooledBlockReaders}.
+ * </p>
+ */
+public class HedgedReplicaFetcher {
+	private final static Logger LOGGER =
+		Logger.getLogger(HedgedReplicaFetcher.class.getName());
+
+	private final static String LOCAL_HOST = "file";
+	private final static int WINDOW_SIZE = 512;
+	private final static int MIN_WINDOW_SAMPLES = 20;
+	private final static int PERCENTILE_REFRESH = 32;
+	private final static double EWMA_ALPHA = 0.2;
+
+	/**
+	 * Callback which loads a Resource from a single replica location.
+	 */
+	public interface ReplicaLoader {
+		/**
+		 * @param path location of one replica of the file
+		 * @return the Resource, or null if it is not present at path
+		 * @throws IOException if the replica could not be reached
+		 * @throws ResourceNotAvailableException if the record could not be
+		 * read from the replica
+		 */
+		public Resource load(String path) throws IOException,
+			ResourceNotAvailableException;
+	}
+
+	private boolean hedging = true;
+	private int hedgePercentile = 95;
+	private int minHedgeDelayMS = 20;
+	private int maxHedgeDelayMS = 2000;
+	private int failureThreshold = 3;
+	private int retryIntervalMS = 30000;
+	private int maxThreads = 64;
+
+	private ConcurrentHashMap<String, HostHealth> hosts =
+		new ConcurrentHashMap<String, HostHealth>();
+	private LatencyWindow recent = new LatencyWindow(WINDOW_SIZE);
+	private ExecutorService executor = null;
+
+	/**
+	 * Fetch a Resource from the first available replica.
+	 * @param paths locations of replicas of the same file
+	 * @param loader which loads a Resource from a single location
+	 * @return the Resource, or null if no replica held it and none failed
+	 * @throws IOException if all replicas failed, and the last failure was an
+	 * IOException
+	 * @throws ResourceNotAvailableException if all replicas failed, and the
+	 * last failure was a ResourceNotAvailableException
+	 */
+	public Resource fetch(String[] paths, ReplicaLoader loader)
+	throws IOException, ResourceNotAvailableException {
+		if ((paths == null) || (paths.length == 0)) {
+			return null;
+		}
+		List<String> ordered = orderByHealth(paths);
+		if (!hedging || (ordered.size() == 1)) {
+			return fetchSequential(ordered, loader);
+		}
+		return fetchHedged(ordered, loader);
+	}
+
+	/**
+	 * @param paths replica locations
+	 * @return the locations, sorted by expected cost of fetching from their
+	 * host, preserving the original order for equally healthy hosts.
+	 */
+	public List<String> orderByHealth(String[] paths) {
+		List<String> ordered = new ArrayList<String>(Arrays.asList(paths));
+		if (ordered.size() > 1) {
+			final long now = System.currentTimeMillis();
+			Collections.sort(ordered, new Comparator<String>() {
+				public int compare(String a, String b) {
+					return Double.compare(score(a, now), score(b, now));
+				}
+			});
+		}
+		return ordered;
+	}
+
+	private double score(String path, long now) {
+		HostHealth health = hosts.get(hostOf(path));
+		return (health == null) ? 0 : health.score(now, failureThreshold,
+				retryIntervalMS);
+	}
+
+	private Resource fetchSequential(List<String> ordered, 
+			ReplicaLoader loader) throws IOException,
+			ResourceNotAvailableException {
+		Exception lastExc = null;
+		for (int i = 0; i < ordered.size(); i++) {
+			Attempt attempt = attempt(ordered, i, loader, null);
+			if (attempt.resource != null) {
+				return attempt.resource;
+			}
+			if (attempt.exception != null) {
+				lastExc = attempt.exception;
+			}
+		}
+		return fail(lastExc);
+	}
+
+	private Resource fetchHedged(List<String> ordered, ReplicaLoader loader)
+	throws IOException, ResourceNotAvailableException {
+		ExecutorCompletionService<Attempt> ecs = 
+			new ExecutorCompletionService<Attempt>(getExecutor());
+		List<Future<Attempt>> futures = new ArrayList<Future<Attempt>>();
+		Race finished = new Race();
+		Exception lastExc = null;
+		long[] started = new long[ordered.size()];
+		boolean[] completed = new boolean[ordered.size()];
+		int next = 0;
+		int outstanding = 0;
+		boolean hedge = true;
+		try {
+			started[next] = System.currentTimeMillis();
+			if (!submit(ecs, futures, ordered, next, loader, finished)) {
+				LOGGER.warning("Replica fetch pool exhausted, fetching "
+						+ "sequentially");
+				return fetchSequential(ordered, loader);
+			}
+			next++;
+			outstanding++;
+			long hedgeDelay = getHedgeDelayMS();
+			while (outstanding > 0) {
+				Future<Attempt> done;
+				if (hedge && (next < ordered.size())) {
+					done = ecs.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+				} else {
+					done = ecs.take();
+				}
+				if (done == null) {
+					if (LOGGER.isLoggable(Level.FINE)) {
+						LOGGER.fine("Hedging " + ordered.get(0) + " with " 
+								+ ordered.get(next) + " after " 
+								+ hedgeDelay + "ms");
+					}
+					started[next] = System.currentTimeMillis();
+					if (submit(ecs, futures, ordered, next, loader, finished)) {
+						next++;
+						outstanding++;
+					} else {
+						hedge = false;
+					}
+					continue;
+				}
+				outstanding--;
+				Attempt attempt = getAttempt(done);
+				completed[attempt.index] = true;
+				if (attempt.resource != null) {
+					finished.claim();
+					noteLosers(ordered, started, completed, next);
+					return attempt.resource;
+				}
+				if (attempt.exception != null) {
+					lastExc = attempt.exception;
+				}
+				if (finished.isOver()) {
+					// another replica won, and is waiting to be taken
+					continue;
+				}
+				// a failed replica is replaced right away:
+				if (next < ordered.size()) {
+					started[next] = System.currentTimeMillis();
+					if (submit(ecs, futures, ordered, next, loader, finished)) {
+						next++;
+						outstanding++;
+					} else if (outstanding == 0) {
+						// no room in the pool, and nothing in flight:
+						for (; next < ordered.size(); next++) {
+							attempt = attempt(ordered, next, loader, finished);
+							if (attempt.resource != null) {
+								finished.claim();
+								noteLosers(ordered, started, completed, next);
+								return attempt.resource;
+							}
+							if (attempt.exception != null) {
+								lastExc = attempt.exception;
+							}
+						}
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted fetching " + ordered.get(0));
+		} finally {
+			// any replica completing after this point closes its own Resource,
+			// and a winner not taken, if we are giving up, is closed here:
+			close(finished.abandon(), ordered.get(0));
+			for (Future<Attempt> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return fail(lastExc);
+	}
+
+	private boolean submit(ExecutorCompletionService<Attempt> ecs,
+			List<Future<Attempt>> futures, List<String> ordered, int index,
+			ReplicaLoader loader, Race finished) {
+		try {
+			futures.add(ecs.submit(new AttemptTask(ordered, index, loader,
+					finished)));
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Record the time spent so far by replicas which lost to a hedged 
+	 * request: they will be cancelled, but were at least this slow.
+	 */
+	private void noteLosers(List<String> ordered, long[] started,
+			boolean[] completed, int next) {
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < next; i++) {
+			if (!completed[i]) {
+				getHealth(ordered.get(i)).noteLatency(now - started[i]);
+			}
+		}
+	}
+
+	private Attempt getAttempt(Future<Attempt> future) 
+	throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			// AttemptTask catches everything it expects, so this is a bug or
+			// a RuntimeException from the loader:
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private Resource fail(Exception lastExc) throws IOException,
+			ResourceNotAvailableException {
+		if (lastExc instanceof ResourceNotAvailableException) {
+			throw (ResourceNotAvailableException) lastExc;
+		} else if (lastExc instanceof IOException) {
+			throw (IOException) lastExc;
+		}
+		return null;
+	}
+
+	/**
+	 * Load from one replica, recording the outcome against its host.
+	 * @param finished if not null, over once another replica has won or the
+	 * caller gave up: a Resource loaded after that is closed, and failures
+	 * are not held against the host.
+	 */
+	private Attempt attempt(List<String> ordered, int index, 
+			ReplicaLoader loader, Race finished) {
+		String path = ordered.get(index);
+		HostHealth health = getHealth(path);
+		long start = System.currentTimeMillis();
+		try {
+			Resource resource = loader.load(path);
+			long elapsed = System.currentTimeMillis() - start;
+			health.noteSuccess(elapsed);
+			recent.add(elapsed);
+			if ((finished != null) && !finished.win(resource)) {
+				close(resource, path);
+				return new Attempt(index, null, null);
+			}
+			return new Attempt(index, resource, null);
+
+		} catch (IOException e) {
+			if ((finished == null) || !finished.isOver()) {
+				health.noteFailure(System.currentTimeMillis());
+				LOGGER.info("Unable to retrieve " + path + " - " + e);
+			}
+			return new Attempt(index, null, e);
+
+		} catch (ResourceNotAvailableException e) {
+			// the host answered, the record itself was bad:
+			health.noteSuccess(System.currentTimeMillis() - start);
+			LOGGER.info("Unable to retrieve " + path + " - " + e);
+			return new Attempt(index, null, e);
+		}
+	}
+
+	private void close(Resource resource, String path) {
+		if (resource == null) {
+			return;
+		}
+		try {
+			resource.close();
+		} catch (IOException e) {
+			LOGGER.warning("Failed to close hedged fetch of " + path + " " 
+					+ e.getLocalizedMessage());
+		}
+	}
+
+	private HostHealth getHealth(String path) {
+		String host = hostOf(path);
+		HostHealth health = hosts.get(host);
+		if (health == null) {
+			health = new HostHealth();
+			HostHealth existing = hosts.putIfAbsent(host, health);
+			if (existing != null) {
+				health = existing;
+			}
+		}
+		return health;
+	}
+
+	/**
+	 * @param path replica location
+	 * @return the host:port of an URL location, or "file" for local paths
+	 */
+	protected static String hostOf(String path) {
+		int schemeIdx = path.indexOf("://");
+		if (schemeIdx == -1) {
+			return LOCAL_HOST;
+		}
+		int start = schemeIdx + 3;
+		int end = path.indexOf('/', start);
+		return (end == -1) ? path.substring(start) : path.substring(start, end);
+	}
+
+	/**
+	 * @return the current delay before the next replica is requested
+	 */
+	public long getHedgeDelayMS() {
+		long delay = recent.percentile(hedgePercentile);
+		if (delay < 0) {
+			return maxHedgeDelayMS;
+		}
+		return Math.max(minHedgeDelayMS, Math.min(maxHedgeDelayMS, delay));
+	}
+
+	/**
+	 * @return a one line per host summary of current health statistics
+	 */
+	public String getHealthReport() {
+		StringBuilder sb = new StringBuilder();
+		long now = System.currentTimeMillis();
+		for (String host : new ArrayList<String>(hosts.keySet())) {
+			HostHealth health = hosts.get(host);
+			sb.append(host).append(" ").append(health.toString(now, 
+					failureThreshold, retryIntervalMS)).append("\n");
+		}
+		return sb.toString();
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(0, maxThreads, 60, 
+					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+					new DaemonThreadFactory());
+		}
+		return executor;
+	}
+
+	/**
+	 * stop the fetch thread pool.
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private static class Attempt {
+		final int index;
+		final Resource resource;
+		final Exception exception;
+		Attempt(int index, Resource resource, Exception exception) {
+			this.index = index;
+			this.resource = resource;
+			this.exception = exception;
+		}
+	}
+
+	/**
+	 * Outcome of the replicas of one hedged fetch: at most one wins, and
+	 * its Resource is either claimed by the caller, or closed.
+	 */
+	private static class Race {
+		private boolean won = false;
+		private boolean abandoned = false;
+		private Resource unclaimed = null;
+
+		/**
+		 * @param resource Resource loaded by a replica
+		 * @return true if it won, false if it must be closed
+		 */
+		synchronized boolean win(Resource resource) {
+			if (won || abandoned) {
+				return false;
+			}
+			won = true;
+			unclaimed = resource;
+			return true;
+		}
+
+		/**
+		 * the caller took the winning Resource.
+		 */
+		synchronized void claim() {
+			unclaimed = null;
+		}
+
+		/**
+		 * the caller is done: no replica can win anymore.
+		 * @return winning Resource the caller did not take, to be closed
+		 */
+		synchronized Resource abandon() {
+			abandoned = true;
+			Resource resource = unclaimed;
+			unclaimed = null;
+			return resource;
+		}
+
+		synchronized boolean isOver() {
+			return won || abandoned;
+		}
+	}
+
+	private class AttemptTask implements Callable<Attempt> {
+		private List<String> ordered;
+		private int index;
+		private ReplicaLoader loader;
+		private Race finished;
+		AttemptTask(List<String> ordered, int index, ReplicaLoader loader,
+				Race finished) {
+			this.ordered = ordered;
+			this.index = index;
+			this.loader = loader;
+			this.finished = finished;
+		}
+		public Attempt call() {
+			try {
+				return attempt(ordered, index, loader, finished);
+			} finally {
+				// the winner streams from a block reader of this thread,
+				// released once it and earlier ones are closed:
+				PooledBlockReaders.release();
+			}
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private AtomicInteger count = new AtomicInteger(0);
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "ReplicaFetcher-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * Running latency and error statistics for one storage host.
+	 */
+	private static class HostHealth {
+		private double latencyMS = 0;
+		private double errorRate = 0;
+		private int consecutiveFailures = 0;
+		private long lastFailure = 0;
+		private long samples = 0;
+		private long successes = 0;
+		private long failures = 0;
+
+		synchronized void noteSuccess(long elapsedMS) {
+			noteLatency(elapsedMS);
+			errorRate = (1 - EWMA_ALPHA) * errorRate;
+			consecutiveFailures = 0;
+			successes++;
+		}
+
+		synchronized void noteLatency(long elapsedMS) {
+			latencyMS = (samples == 0) ? elapsedMS 
+					: (EWMA_ALPHA * elapsedMS) + ((1 - EWMA_ALPHA) * latencyMS);
+			samples++;
+		}
+
+		synchronized void noteFailure(long now) {
+			errorRate = EWMA_ALPHA + ((1 - EWMA_ALPHA) * errorRate);
+			consecutiveFailures++;
+			lastFailure = now;
+			failures++;
+		}
+
+		synchronized boolean isDown(long now, int threshold, int retryMS) {
+			return (consecutiveFailures >= threshold) 
+				&& (now - lastFailure < retryMS);
+		}
+
+		/**
+		 * @return expected cost of a fetch: latency inflated by the chance
+		 * of having to go on to another replica, or MAX_VALUE if down.
+		 */
+		synchronized double score(long now, int threshold, int retryMS) {
+			if (isDown(now, threshold, retryMS)) {
+				return Double.MAX_VALUE;
+			}
+			return latencyMS / (1.0 - Math.min(errorRate, 0.99));
+		}
+
+		synchronized String toString(long now, int threshold, int retryMS) {
+			return "latencyMS=" + Math.round(latencyMS) 
+				+ " errorRate=" + Math.round(errorRate * 100) + "%" 
+				+ " successes=" + successes + " failures=" + failures 
+				+ (isDown(now, threshold, retryMS) ? " DOWN" : "");
+		}
+	}
+
+	/**
+	 * Fixed size ring of recent successful fetch latencies, used to pick the
+	 * hedge delay. The percentile is recomputed every PERCENTILE_REFRESH
+	 * samples.
+	 */
+	private static class LatencyWindow {
+		private long[] samples;
+		private int count = 0;
+		private int sinceRefresh = 0;
+		private int cachedPercentile = -1;
+		private long cachedValue = -1;
+
+		LatencyWindow(int size) {
+			samples = new long[size];
+		}
+
+		synchronized void add(long elapsedMS) {
+			samples[count % samples.length] = elapsedMS;
+			count++;
+			sinceRefresh++;
+		}
+
+		synchronized long percentile(int percentile) {
+			int n = Math.min(count, samples.length);
+			if (n < MIN_WINDOW_SAMPLES) {
+				return -1;
+			}
+			if ((percentile != cachedPercentile) 
+					|| (sinceRefresh >= PERCENTILE_REFRESH)) {
+				long[] sorted = new long[n];
+				System.arraycopy(samples, 0, sorted, 0, n);
+				Arrays.sort(sorted);
+				int idx = (int) Math.ceil((percentile / 100.0) * n) - 1;
+				cachedValue = sorted[Math.max(0, Math.min(n - 1, idx))];
+				cachedPercentile = percentile;
+				sinceRefresh = 0;
+			}
+			return cachedValue;
+		}
+	}
+
+	/**
+	 * @return true if slow replicas are hedged with parallel requests
+	 */
+	public boolean isHedging() {
+		return hedging;
+	}
+
+	/**
+	 * @param hedging if false, replicas are only tried sequentially, in
+	 * order of health.
+	 */
+	public void setHedging(boolean hedging) {
+		this.hedging = hedging;
+	}
+
+	/**
+	 * @return the latency percentile of recent fetches after which the next
+	 * replica is requested
+	 */
+	public int getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	/**
+	 * @param hedgePercentile the latency percentile (1-100) of recent
+	 * fetches after which the next replica is requested
+	 */
+	public void setHedgePercentile(int hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	/**
+	 * @return the smallest delay before hedging
+	 */
+	public int getMinHedgeDelayMS() {
+		return minHedgeDelayMS;
+	}
+
+	/**
+	 * @param minHedgeDelayMS the smallest delay before hedging
+	 */
+	public void setMinHedgeDelayMS(int minHedgeDelayMS) {
+		this.minHedgeDelayMS = minHedgeDelayMS;
+	}
+
+	/**
+	 * @return the largest delay before hedging, also used until enough
+	 * fetches have been observed
+	 */
+	public int getMaxHedgeDelayMS() {
+		return maxHedgeDelayMS;
+	}
+
+	/**
+	 * @param maxHedgeDelayMS the largest delay before hedging, also used 
+	 * until enough fetches have been observed
+	 */
+	public void setMaxHedgeDelayMS(int maxHedgeDelayMS) {
+		this.maxHedgeDelayMS = maxHedgeDelayMS;
+	}
+
+	/**
+	 * @return number of consecutive failures after which a host is tried
+	 * last
+	 */
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/**
+	 * @param failureThreshold number of consecutive failures after which a
+	 * host is tried last
+	 */
+	public void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	/**
+	 * @return milliseconds after its last failure that a failing host is 
+	 * treated as healthy again
+	 */
+	public int getRetryIntervalMS() {
+		return retryIntervalMS;
+	}
+
+	/**
+	 * @param retryIntervalMS milliseconds after its last failure that a 
+	 * failing host is treated as healthy again
+	 */
+	public void setRetryIntervalMS(int retryIntervalMS) {
+		this.retryIntervalMS = retryIntervalMS;
+	}
+
+	/**
+	 * @return maximum number of concurrent replica fetch threads
+	 */
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * @param maxThreads maximum number of concurrent replica fetch threads
+	 */
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+}
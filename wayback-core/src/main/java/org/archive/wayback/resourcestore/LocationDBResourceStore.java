@@ -26,6 +26,7 @@ import org.archive.wayback.ResourceStore;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.exception.ResourceNotAvailableException;
+import org.archive.wayback.resourcestore.HedgedReplicaFetcher.ReplicaLoader;
 import org.archive.wayback.resourcestore.locationdb.ResourceFileLocationDB;
 import org.archive.wayback.resourcestore.resourcefile.ResourceFactory;
 
@@ -41,6 +42,7 @@ public class LocationDBResourceStore implements ResourceStore {
         Logger.getLogger(LocationDBResourceStore.class.getName());
 
 	private ResourceFileLocationDB db = null;
+	private HedgedReplicaFetcher replicaFetcher = null;
 
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.ResourceStore#retrieveResource(org.archive.wayback.core.SearchResult)
@@ -72,7 +74,24 @@ public class LocationDBResourceStore implements ResourceStore {
 		Exception origException = null;
 		
 		Resource r = null;
-		// TODO: attempt multiple threads?
+		if(replicaFetcher != null) {
+			try {
+				r = replicaFetcher.fetch(urls, new ReplicaLoader() {
+					public Resource load(String url) throws IOException,
+							ResourceNotAvailableException {
+						return ResourceFactory.getResource(url, offset);
+					}
+				});
+			} catch (IOException e) {
+				errMsg = fileName + " - " + e;
+				origException = e;
+			}
+			if(r == null) {
+				throw new ResourceNotAvailableException(errMsg, fileName,
+						origException);
+			}
+			return r;
+		}
 		for(String url : urls) {
 				
 			try {
@@ -103,6 +122,9 @@ public class LocationDBResourceStore implements ResourceStore {
 	 */
 	public void shutdown() throws IOException {
 		db.shutdown();
+		if(replicaFetcher != null) {
+			replicaFetcher.shutdown();
+		}
 	}
 
 	/**
@@ -118,4 +140,21 @@ public class LocationDBResourceStore implements ResourceStore {
 	public void setDb(ResourceFileLocationDB db) {
 		this.db = db;
 	}
+
+	/**
+	 * @return the HedgedReplicaFetcher used to choose between replica
+	 * locations, or null if they are tried in order.
+	 */
+	public HedgedReplicaFetcher getReplicaFetcher() {
+		return replicaFetcher;
+	}
+
+	/**
+	 * @param replicaFetcher the HedgedReplicaFetcher used to choose between
+	 * replica locations. If null, locations are tried in the order returned
+	 * by the ResourceFileLocationDB.
+	 */
+	public void setReplicaFetcher(HedgedReplicaFetcher replicaFetcher) {
+		this.replicaFetcher = replicaFetcher;
+	}
 }
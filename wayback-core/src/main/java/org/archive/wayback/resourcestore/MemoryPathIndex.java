@@ -0,0 +1,468 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.archive.wayback.resourcestore.FlexResourceStore.SourceResolver;
+
+/**
+ * SourceResolver which holds an entire sorted path index in memory, for use
+ * in place of {@link FlexResourceStore.PathIndex} when lookups must not touch
+ * the disk.
+ * <p>
+ * The path index has the same format as the one used by PathIndex: one
+ * "FILENAME&lt;TAB&gt;PATH" line per location, sorted by FILENAME in byte
+ * order (LC_ALL=C sort). Filenames and paths are stored UTF-8 encoded in
+ * direct ByteBuffers, with only primitive offset arrays on the heap, and
+ * located by binary search.
+ * </p>
+ * <p>
+ * If checkInterval is greater than zero, a background thread reloads the
+ * file whenever its modification time changes, and swaps the new index in
+ * atomically. Lookups in progress continue against the previous index. If a
+ * reload fails, the previous index remains in use. Filenames which are not
+ * found are remembered in a bounded negative cache, which is flushed on every
+ * reload.
+ * </p>
+ */
+public class MemoryPathIndex implements SourceResolver {
+	private final static Logger LOGGER =
+		Logger.getLogger(MemoryPathIndex.class.getName());
+
+	private final static String DELIMITER = "\t";
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final static int SEGMENT_BITS = 30;
+	private final static int SEGMENT_MAX = 1 << SEGMENT_BITS;
+	private final static long SEGMENT_MASK = SEGMENT_MAX - 1;
+	private final static int MIN_SEGMENT_SIZE = 64 * 1024;
+	private final static int MAX_ENTRY_SIZE = 0xffff;
+
+	protected String path;
+	protected String prefixPath;
+	protected int checkInterval = 0;
+	protected int negativeCacheSize = 100000;
+
+	private volatile Index index = null;
+	private Thread updateThread = null;
+
+	/**
+	 * load the path index, and start the polling thread to check for updates
+	 * if checkInterval is greater than zero.
+	 * @throws IOException if the path index could not be read.
+	 */
+	public void init() throws IOException {
+		reloadFile();
+		if (checkInterval > 0) {
+			startUpdateThread();
+		}
+	}
+
+	/**
+	 * stop the update thread, if running, and release the loaded index.
+	 */
+	public synchronized void shutdown() {
+		if (updateThread != null) {
+			updateThread.interrupt();
+			updateThread = null;
+		}
+		index = null;
+	}
+
+	/**
+	 * Load the path index file if it has changed since the last load.
+	 * @throws IOException if the file could not be read, in which case any
+	 * previously loaded index remains in use.
+	 */
+	protected synchronized void reloadFile() throws IOException {
+		File file = new File(path);
+		long currentMod = file.lastModified();
+		Index current = index;
+		if ((current != null) && (current.lastModified == currentMod)) {
+			return;
+		}
+		if (currentMod == 0) {
+			throw new IOException("No path index at " + file.getAbsolutePath());
+		}
+		LOGGER.info("Loading path index " + file.getAbsolutePath());
+		long start = System.currentTimeMillis();
+		Index loaded = loadFile(file, currentMod);
+		index = loaded;
+		LOGGER.info("Loaded path index " + file.getAbsolutePath() + " with "
+				+ loaded.size + " names in " 
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+
+	private Index loadFile(File file, long lastModified) throws IOException {
+		IndexBuilder builder = new IndexBuilder(file.length());
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), UTF8));
+		try {
+			int lineNumber = 0;
+			String line;
+			while ((line = br.readLine()) != null) {
+				lineNumber++;
+				int idx = line.indexOf(DELIMITER);
+				if (idx <= 0) {
+					continue;
+				}
+				byte[] name = line.substring(0, idx).getBytes(UTF8);
+				byte[] loc = line.substring(idx + 1).getBytes(UTF8);
+				if (!builder.add(name, loc)) {
+					throw new IOException("Path index " + file.getAbsolutePath()
+							+ " is not sorted at line " + lineNumber);
+				}
+			}
+		} finally {
+			br.close();
+		}
+		return builder.build(lastModified);
+	}
+
+	private synchronized Index getIndex() throws IOException {
+		if (index == null) {
+			reloadFile();
+		}
+		return index;
+	}
+
+	@Override
+	public String[] lookupPath(String filename) throws IOException {
+		Index current = index;
+		if (current == null) {
+			current = getIndex();
+		}
+		ConcurrentHashMap<String,Boolean> misses = current.misses;
+		if (misses.containsKey(filename)) {
+			return FlexResourceStore.EMPTY_STRINGS;
+		}
+		String[] paths = current.lookup(filename.getBytes(UTF8));
+		if (paths == null) {
+			if (negativeCacheSize > 0) {
+				if (misses.size() >= negativeCacheSize) {
+					misses.clear();
+				}
+				misses.put(filename, Boolean.TRUE);
+			}
+			return FlexResourceStore.EMPTY_STRINGS;
+		}
+		if (prefixPath != null) {
+			for (int i = 0; i < paths.length; i++) {
+				paths[i] = prefixPath + paths[i];
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * @return the number of distinct filenames currently loaded
+	 */
+	public int getSize() {
+		Index current = index;
+		return (current == null) ? 0 : current.size;
+	}
+
+	private synchronized void startUpdateThread() {
+		if (updateThread != null) {
+			return;
+		}
+		updateThread = new IndexUpdaterThread(this, checkInterval);
+		updateThread.start();
+	}
+
+	/**
+	 * Immutable, loaded path index. Each filename and path is stored in one
+	 * of the segments as a 2 byte length followed by its UTF-8 bytes, and
+	 * addressed by a long whose upper bits select the segment. Filenames
+	 * found to be missing are remembered in misses, which is discarded along
+	 * with the Index on reload.
+	 */
+	private static class Index {
+		final ByteBuffer[] segments;
+		final long[] nameOffsets;
+		final int[] firstPaths;
+		final long[] pathOffsets;
+		final int size;
+		final long lastModified;
+		final ConcurrentHashMap<String,Boolean> misses =
+			new ConcurrentHashMap<String, Boolean>();
+
+		Index(ByteBuffer[] segments, long[] nameOffsets, int[] firstPaths,
+				long[] pathOffsets, int size, long lastModified) {
+			this.segments = segments;
+			this.nameOffsets = nameOffsets;
+			this.firstPaths = firstPaths;
+			this.pathOffsets = pathOffsets;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		String[] lookup(byte[] key) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(nameOffsets[mid], key);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					int first = firstPaths[mid];
+					int count = firstPaths[mid + 1] - first;
+					String[] paths = new String[count];
+					for (int i = 0; i < count; i++) {
+						paths[i] = read(pathOffsets[first + i]);
+					}
+					return paths;
+				}
+			}
+			return null;
+		}
+
+		private int compare(long offset, byte[] key) {
+			ByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+			int pos = (int) (offset & SEGMENT_MASK);
+			int len = readLength(segment, pos);
+			pos += 2;
+			int max = Math.min(len, key.length);
+			for (int i = 0; i < max; i++) {
+				int a = segment.get(pos + i) & 0xff;
+				int b = key[i] & 0xff;
+				if (a != b) {
+					return a - b;
+				}
+			}
+			return len - key.length;
+		}
+
+		private String read(long offset) {
+			ByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+			int pos = (int) (offset & SEGMENT_MASK);
+			int len = readLength(segment, pos);
+			pos += 2;
+			byte[] bytes = new byte[len];
+			for (int i = 0; i < len; i++) {
+				bytes[i] = segment.get(pos + i);
+			}
+			return new String(bytes, UTF8);
+		}
+
+		private static int readLength(ByteBuffer segment, int pos) {
+			return ((segment.get(pos) & 0xff) << 8) 
+				| (segment.get(pos + 1) & 0xff);
+		}
+	}
+
+	private static class IndexBuilder {
+		private long remaining;
+		private List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+		private ByteBuffer current = null;
+		private long[] nameOffsets = new long[1024];
+		private int[] firstPaths = new int[1025];
+		private long[] pathOffsets = new long[1024];
+		private int names = 0;
+		private int paths = 0;
+		private byte[] lastName = null;
+
+		IndexBuilder(long estimatedSize) {
+			this.remaining = estimatedSize;
+		}
+
+		/**
+		 * @return false if name sorts before the previously added name
+		 */
+		boolean add(byte[] name, byte[] loc) throws IOException {
+			int cmp = (lastName == null) ? 1 : compareBytes(name, lastName);
+			if (cmp < 0) {
+				return false;
+			}
+			if (cmp > 0) {
+				if (names + 1 >= nameOffsets.length) {
+					nameOffsets = grow(nameOffsets);
+					int[] tmp = new int[nameOffsets.length + 1];
+					System.arraycopy(firstPaths, 0, tmp, 0, names + 1);
+					firstPaths = tmp;
+				}
+				nameOffsets[names] = append(name);
+				firstPaths[names] = paths;
+				names++;
+				lastName = name;
+			}
+			if (paths >= pathOffsets.length) {
+				pathOffsets = grow(pathOffsets);
+			}
+			pathOffsets[paths++] = append(loc);
+			firstPaths[names] = paths;
+			return true;
+		}
+
+		Index build(long lastModified) {
+			ByteBuffer[] segs = segments.toArray(new ByteBuffer[segments.size()]);
+			long[] no = new long[names];
+			System.arraycopy(nameOffsets, 0, no, 0, names);
+			int[] fp = new int[names + 1];
+			System.arraycopy(firstPaths, 0, fp, 0, names + 1);
+			long[] po = new long[paths];
+			System.arraycopy(pathOffsets, 0, po, 0, paths);
+			return new Index(segs, no, fp, po, names, lastModified);
+		}
+
+		private long append(byte[] bytes) throws IOException {
+			if (bytes.length > MAX_ENTRY_SIZE) {
+				throw new IOException("Path index entry too long");
+			}
+			int needed = bytes.length + 2;
+			if ((current == null) || (current.remaining() < needed)) {
+				long size = Math.max(remaining, MIN_SEGMENT_SIZE);
+				current = ByteBuffer.allocateDirect(
+						(int) Math.min(size, SEGMENT_MAX));
+				segments.add(current);
+			}
+			long offset = ((long) (segments.size() - 1) << SEGMENT_BITS) 
+				| current.position();
+			current.put((byte) (bytes.length >> 8));
+			current.put((byte) bytes.length);
+			current.put(bytes);
+			remaining -= needed;
+			return offset;
+		}
+
+		private static long[] grow(long[] a) {
+			long[] tmp = new long[a.length * 2];
+			System.arraycopy(a, 0, tmp, 0, a.length);
+			return tmp;
+		}
+
+		private static int compareBytes(byte[] a, byte[] b) {
+			int max = Math.min(a.length, b.length);
+			for (int i = 0; i < max; i++) {
+				int x = a[i] & 0xff;
+				int y = b[i] & 0xff;
+				if (x != y) {
+					return x - y;
+				}
+			}
+			return a.length - b.length;
+		}
+	}
+
+	private static class IndexUpdaterThread extends Thread {
+		private MemoryPathIndex service = null;
+		private int runInterval;
+
+		/**
+		 * @param service MemoryPathIndex which will be reloaded
+		 * @param runInterval int number of seconds between checks
+		 */
+		public IndexUpdaterThread(MemoryPathIndex service, int runInterval) {
+			super("MemoryPathIndexUpdaterThread");
+			super.setDaemon(true);
+			this.service = service;
+			this.runInterval = runInterval;
+		}
+
+		public void run() {
+			while (true) {
+				try {
+					Thread.sleep(runInterval * 1000L);
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					service.reloadFile();
+				} catch (IOException e) {
+					LOGGER.severe("Reload of " + service.getPathIndex() + 
+							" FAILED:" + e.getLocalizedMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param path the sorted path index file to load
+	 */
+	public void setPathIndex(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * @return the sorted path index file
+	 */
+	public String getPathIndex() {
+		return path;
+	}
+
+	/**
+	 * @return String prepended to every path returned
+	 */
+	public String getPrefixPath() {
+		return prefixPath;
+	}
+
+	/**
+	 * @param prefixPath String prepended to every path returned
+	 */
+	public void setPrefixPath(String prefixPath) {
+		this.prefixPath = prefixPath;
+	}
+
+	/**
+	 * @return the number of seconds between checks for an updated path
+	 * index, or 0 if updates are not checked.
+	 */
+	public int getCheckInterval() {
+		return checkInterval;
+	}
+
+	/**
+	 * @param checkInterval the number of seconds between checks for an 
+	 * updated path index, or 0 to disable reloading.
+	 */
+	public void setCheckInterval(int checkInterval) {
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * @return the maximum number of unknown filenames remembered
+	 */
+	public int getNegativeCacheSize() {
+		return negativeCacheSize;
+	}
+
+	/**
+	 * @param negativeCacheSize the maximum number of unknown filenames 
+	 * remembered, or 0 to disable the negative cache.
+	 */
+	public void setNegativeCacheSize(int negativeCacheSize) {
+		this.negativeCacheSize = negativeCacheSize;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.archive.format.gzip.zipnum.ZipNumBlockLoader;
+import org.archive.util.binsearch.SeekableLineReader;
+
+/**
+ * Releases the readers {@link ZipNumBlockLoader} keeps for each thread, on
+ * threads of a pool.
+ * <p>ZipNumBlockLoader remembers every reader it creates in a map of the
+ * creating thread, which {@link ZipNumBlockLoader#closeAllReaders()} closes
+ * and clears. A request thread calls it when the request ends. A pool
+ * thread which loaded a Resource for another thread cannot, as the Resource
+ * still streams from its reader. So {@link FlexResourceStore} notes here
+ * the readers it hands out in Resources, and pool threads call
+ * {@link #release()} after each task: once every reader the thread handed
+ * out is closed, the map holds no reader in use, and is cleared.</p>
+ */
+public class PooledBlockReaders {
+
+	private static final ThreadLocal<List<SeekableLineReader>> handedOut =
+		new ThreadLocal<List<SeekableLineReader>>() {
+		@Override
+		protected List<SeekableLineReader> initialValue() {
+			return new ArrayList<SeekableLineReader>();
+		}
+	};
+
+	/**
+	 * Note that {@code reader}, created on the current thread, is now read
+	 * by a Resource.
+	 * @param reader SeekableLineReader of a Resource
+	 */
+	public static void track(SeekableLineReader reader) {
+		List<SeekableLineReader> readers = handedOut.get();
+		removeClosed(readers);
+		readers.add(reader);
+	}
+
+	/**
+	 * Clear the ZipNumBlockLoader readers of the current thread, if none of
+	 * those it handed out is still open.
+	 * @return true if the readers were cleared
+	 */
+	public static boolean release() {
+		List<SeekableLineReader> readers = handedOut.get();
+		removeClosed(readers);
+		if (!readers.isEmpty()) {
+			return false;
+		}
+		// only readers no Resource uses are left, closed or leaked:
+		ZipNumBlockLoader.closeAllReaders();
+		return true;
+	}
+
+	/**
+	 * @return number of readers handed out by the current thread and still
+	 * open
+	 */
+	public static int getOpenCount() {
+		List<SeekableLineReader> readers = handedOut.get();
+		removeClosed(readers);
+		return readers.size();
+	}
+
+	private static void removeClosed(List<SeekableLineReader> readers) {
+		Iterator<SeekableLineReader> i = readers.iterator();
+		while (i.hasNext()) {
+			if (i.next().isClosed()) {
+				i.remove();
+			}
+		}
+	}
+}
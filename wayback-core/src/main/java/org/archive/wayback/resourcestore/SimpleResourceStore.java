@@ -27,6 +27,7 @@ import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.exception.ResourceNotAvailableException;
 import org.archive.wayback.resourcestore.resourcefile.ArcWarcFilenameFilter;
+import org.archive.wayback.resourcestore.resourcefile.RecordRangeLoader;
 import org.archive.wayback.resourcestore.resourcefile.ResourceFactory;
 
 
@@ -51,6 +52,7 @@ public class SimpleResourceStore implements ResourceStore {
 	private String includeFilter;
   
 	private int retries = 2;
+	private RecordRangeLoader rangeLoader = null;
 
 	public Resource retrieveResource(CaptureSearchResult result)
 		throws ResourceNotAvailableException {
@@ -69,6 +71,7 @@ public class SimpleResourceStore implements ResourceStore {
         }		
 
 		final long offset = result.getOffset();
+		final long length = result.getCompressedLength();
 		if(!fileName.endsWith(ArcWarcFilenameFilter.ARC_SUFFIX)
 				&& !fileName.endsWith(ArcWarcFilenameFilter.ARC_GZ_SUFFIX)
 				&& !fileName.endsWith(ArcWarcFilenameFilter.WARC_SUFFIX)
@@ -91,7 +94,13 @@ public class SimpleResourceStore implements ResourceStore {
 			int attempts = retries;
 	        while(attempts-- > 0) {
 	        	try {
-	        		r = ResourceFactory.getResource(fileUrl, offset);
+	        		if(rangeLoader != null 
+	        				&& rangeLoader.canLoad(fileUrl, length)) {
+	        			r = rangeLoader.getResource(fileUrl, offset,
+	        					(int) length);
+	        		} else {
+	        			r = ResourceFactory.getResource(fileUrl, offset);
+	        		}
 	        		break;
 	        	} catch (IOException e) {
 	        		String message = e.getMessage();
@@ -168,6 +177,22 @@ public class SimpleResourceStore implements ResourceStore {
 	}
 
 	
+	/**
+	 * @return the RecordRangeLoader used for records of known length, or
+	 * null if all records are read through ResourceFactory.
+	 */
+	public RecordRangeLoader getRangeLoader() {
+		return rangeLoader;
+	}
+
+	/**
+	 * @param rangeLoader the RecordRangeLoader used to read exactly the 
+	 * compressed length of each record, when it is known.
+	 */
+	public void setRangeLoader(RecordRangeLoader rangeLoader) {
+		this.rangeLoader = rangeLoader;
+	}
+
 	public String getIncludeFilter() {
 		return includeFilter;
 	}
@@ -19,15 +19,15 @@
  */
 package org.archive.wayback.resourcestore.locationdb;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,46 +36,100 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.httpclient.ChunkedInputStream;
-import org.archive.util.anvl.ANVLRecord;
-import org.archive.wayback.util.http.HttpRequestMessage;
-import org.archive.wayback.util.http.HttpResponse;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.archive.wayback.util.webapp.AbstractRequestHandler;
+import org.archive.wayback.util.webapp.ShutdownListener;
 
 /**
  * ServletRequestContext interface which uses a ResourceFileLocationDB to 
  * reverse proxy an incoming HTTP request for a file by name to it's actual 
  * back-end location. This will also forward HTTP byte range requests to the
  * final location.
+ * <p>
+ * Both open ended ("bytes=N-") and bounded ("bytes=N-M") ranges are
+ * supported, and are answered with 206 Partial Content. Local files are
+ * copied with {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+ * and HTTP locations are fetched over keep-alive connections held in a
+ * shared {@link MultiThreadedHttpConnectionManager}. Ranges starting at or
+ * past the end of the file are answered with 416 Requested Range Not
+ * Satisfiable.
+ * </p>
  *
  * @author brad
  * @version $Date$, $Revision$
  */
-public class FileProxyServlet extends AbstractRequestHandler {
+public class FileProxyServlet extends AbstractRequestHandler
+implements ShutdownListener {
 	private static final Logger LOGGER = Logger.getLogger(FileProxyServlet.class
 			.getName());
 
 	private static final int BUF_SIZE = 4096;
 	private static final String RANGE_HTTP_HEADER = "Range";
+	private static final String CONTENT_RANGE_HTTP_HEADER = "Content-Range";
+	private static final String CONTENT_LENGTH_HTTP_HEADER = "Content-Length";
+	private static final String CONTENT_TYPE_HTTP_HEADER = "Content-Type";
 	private static final String DEFAULT_CONTENT_TYPE = "application/x-gzip";
+	private static final String UNKNOWN_CONTENT_TYPE = "application/unknown";
 	private static final String HEADER_BYTES_PREFIX = "bytes=";
 	private static final String HEADER_BYTES_SUFFIX= "-";
 
 	private static final String FILE_REGEX = "/([^/]*)$";
 	private static final String FILE_OFFSET_REGEX = "/([^/]*)/(\\d*)$";
+	private static final String RANGE_REGEX = "^bytes=(\\d+)-(\\d*)$";
+	private static final String CONTENT_RANGE_REGEX =
+		"^bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)$";
+	private static final String UNSATISFIED_RANGE_REGEX =
+		"^bytes\\s+\\*/(\\d+)$";
 	
 	private static final Pattern FILE_PATTERN = 
 		Pattern.compile(FILE_REGEX);
 	private static final Pattern FILE_OFFSET_PATTERN = 
 		Pattern.compile(FILE_OFFSET_REGEX);
+	private static final Pattern RANGE_PATTERN = 
+		Pattern.compile(RANGE_REGEX);
+	private static final Pattern CONTENT_RANGE_PATTERN = 
+		Pattern.compile(CONTENT_RANGE_REGEX);
+	private static final Pattern UNSATISFIED_RANGE_PATTERN = 
+		Pattern.compile(UNSATISFIED_RANGE_REGEX);
+
+	private static final int DEFAULT_MAX_HOST_CONNECTIONS = 20;
+	private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 200;
 
 	private static final long serialVersionUID = 1L;
 
 	private ResourceFileLocationDB locationDB = null;
 
-	private int socketTimeoutMs = 5000;
+	private MultiThreadedHttpConnectionManager connectionManager = null;
+	private HttpClient http = null;
+
+	/**
+	 * Create a FileProxyServlet with a pooled HTTP client for remote
+	 * locations.
+	 */
+	public FileProxyServlet() {
+		connectionManager = new MultiThreadedHttpConnectionManager();
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setSoTimeout(5000);
+		params.setConnectionTimeout(1000);
+		params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_HOST_CONNECTIONS);
+		params.setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
+		http = new HttpClient(connectionManager);
+	}
+
+	/**
+	 * Close all pooled connections to remote locations.
+	 */
+	public void destroy() {
+		connectionManager.shutdown();
+	}
 
-	private int connectTimeoutMs = 1000;
+	public void shutdown() {
+		destroy();
+	}
 	
 	public boolean handleRequest(HttpServletRequest httpRequest,
 			HttpServletResponse httpResponse) throws IOException,
@@ -84,7 +138,7 @@ public class FileProxyServlet extends AbstractRequestHandler {
 		ResourceLocation location = parseRequest(httpRequest);
 		if(location == null) {
 			httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST,
-			"no/invalid name");
+			"no/invalid name or range");
 		} else {
 
 			String urls[] = locationDB.nameToUrls(location.getName());
@@ -99,8 +153,7 @@ public class FileProxyServlet extends AbstractRequestHandler {
 				DataSource ds = null;
 				for(String urlString : urls) {
 					try {
-						ds = locationToDataSource(urlString, 
-								location.getOffset());
+						ds = locationToDataSource(urlString, location);
 						if(ds != null) {
 							break;
 						}
@@ -116,88 +169,147 @@ public class FileProxyServlet extends AbstractRequestHandler {
 							"failed proxy of ("+ location.getName() +")");
 					
 				} else {
-					httpResponse.setStatus(HttpServletResponse.SC_OK);
-					// BUGBUG: this will be broken for non compressed data...
-					httpResponse.setContentType(ds.getContentType());
-					httpResponse.setBufferSize(BUF_SIZE);
-					ds.copyTo(httpResponse.getOutputStream());
+					try {
+						long length = ds.getLength();
+						if(location.isRange() && length == 0) {
+							// the range starts at or past the end of the file:
+							String contentRange = ds.getContentRange();
+							if(contentRange != null) {
+								httpResponse.setHeader(CONTENT_RANGE_HTTP_HEADER,
+										contentRange);
+							}
+							httpResponse.sendError(HttpServletResponse.
+									SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+							return true;
+						}
+						if(location.isRange() && length > 0) {
+							httpResponse.setStatus(
+									HttpServletResponse.SC_PARTIAL_CONTENT);
+							httpResponse.setHeader(CONTENT_RANGE_HTTP_HEADER,
+									ds.getContentRange());
+						} else {
+							httpResponse.setStatus(HttpServletResponse.SC_OK);
+						}
+						if(length >= 0) {
+							httpResponse.setHeader(CONTENT_LENGTH_HTTP_HEADER,
+									String.valueOf(length));
+						}
+						// BUGBUG: this will be broken for non compressed data...
+						httpResponse.setContentType(ds.getContentType());
+						httpResponse.setBufferSize(BUF_SIZE);
+						ds.copyTo(httpResponse.getOutputStream());
+					} finally {
+						ds.close();
+					}
 				}
 			}
 		}
 		return true;
 	}
 
-	private DataSource locationToDataSource(String location, long offset)
-		throws IOException {
-		DataSource ds = null;
+	private DataSource locationToDataSource(String location,
+			ResourceLocation resourceLocation) throws IOException {
+
 		if(location.startsWith("http://")) {
-			URL url = new URL(location);
-			String hostname = url.getHost();
-			int port = url.getPort();
-			if(port == -1) {
-				port = 80;
-			}
-			byte GET[] = "GET".getBytes();
-			byte HTTP11[] = "HTTP/1.1".getBytes();
-			InetAddress addr = InetAddress.getByName(hostname);
-			HttpRequestMessage requestMessage = new HttpRequestMessage(
-					GET,url.getFile().getBytes(),HTTP11);
-			ANVLRecord headers = new ANVLRecord();
-			headers.addLabelValue("Host", hostname);
-			
-			
-			if(offset != 0) {
-				headers.addLabelValue(RANGE_HTTP_HEADER, 
-						HEADER_BYTES_PREFIX + String.valueOf(offset) + 
-							HEADER_BYTES_SUFFIX);
-			}
-			InetSocketAddress sockAddr = new InetSocketAddress(addr,port);
-			Socket socket = new Socket();
-			socket.setSoTimeout(socketTimeoutMs);
-			socket.setReceiveBufferSize(BUF_SIZE);
-
-			socket.connect(sockAddr, connectTimeoutMs);
-			OutputStream socketOut = socket.getOutputStream();
-			InputStream socketIn = socket.getInputStream();
-			socketOut.write(requestMessage.getBytes(true));
-			socketOut.write(headers.getUTF8Bytes());
-			socketOut.flush();
-			HttpResponse response = HttpResponse.load(socketIn);
-			String contentType = response.getHeaders().asMap().get("Content-Type");
-			if(contentType == null) {
-				contentType = "application/unknown";
-			}
-			String xferEncoding = response.getHeaders().asMap().get("Transfer-Encoding");
-			
-			if(xferEncoding != null) {
-				if(xferEncoding.equals("chunked")) {
-					socketIn = new ChunkedInputStream(socketIn);
-				}
-			}
+			return httpToDataSource(location, resourceLocation);
+		}
+		// assume a local file path:
+		File f = new File(location);
+		if(!f.isFile() || !f.canRead()) {
+			throw new IOException("No readable file at " + location);
+		}
+		long size = f.length();
+		long offset = resourceLocation.getOffset();
+		if(size < offset && !resourceLocation.isRange()) {
+			throw new IOException("short file " + location + " cannot" +
+					" seek to offset " + offset);
+		}
+		long end = size - 1;
+		if(resourceLocation.hasEnd() && resourceLocation.getEnd() < end) {
+			end = resourceLocation.getEnd();
+		}
+		// an empty range is not satisfiable:
+		long length = Math.max(0, end - offset + 1);
+		RandomAccessFile raf = new RandomAccessFile(f,"r");
+		// BUGBUG: is it compressed?
+		return new FileDataSource(raf, offset, length, size,
+				DEFAULT_CONTENT_TYPE);
+	}
 
-			ds = new URLDataSource(socketIn,contentType);
+	private DataSource httpToDataSource(String location,
+			ResourceLocation resourceLocation) throws IOException {
 
-		} else {
-			// assume a local file path:
-			File f = new File(location);
-			if(f.isFile() && f.canRead()) {
-				long size = f.length();
-				if(size < offset) {
-					throw new IOException("short file " + location + " cannot" +
-							" seek to offset " + offset);
+		GetMethod method = null;
+		try {
+			method = new GetMethod(location);
+		} catch(IllegalArgumentException e) {
+			throw new IOException("Bad URL " + location);
+		}
+		long offset = resourceLocation.getOffset();
+		if(offset != 0 || resourceLocation.hasEnd()) {
+			method.setRequestHeader(RANGE_HTTP_HEADER,
+					resourceLocation.toRangeHeader());
+		}
+		boolean success = false;
+		try {
+			int status = http.executeMethod(method);
+			long skip = 0;
+			long length = -1;
+			long instanceLength = -1;
+			if(status == HttpServletResponse.SC_PARTIAL_CONTENT) {
+				Header h = method.getResponseHeader(CONTENT_RANGE_HTTP_HEADER);
+				long range[] = (h == null) ? null 
+						: parseContentRange(h.getValue());
+				if(range == null || range[0] != offset) {
+					throw new IOException("Bad Content-Range from " + location);
 				}
-				RandomAccessFile raf = new RandomAccessFile(f,"r");
-				raf.seek(offset);
-				// BUGBUG: is it compressed?
-				ds = new FileDataSource(raf,DEFAULT_CONTENT_TYPE);
-				
+				length = range[1] - range[0] + 1;
+				instanceLength = range[2];
+
+			} else if(status == HttpServletResponse.SC_OK) {
+				// upstream ignored our Range header, trim it here:
+				skip = offset;
+				instanceLength = method.getResponseContentLength();
+				long end = resourceLocation.getEnd();
+				if(instanceLength >= 0) {
+					if(instanceLength < offset && !resourceLocation.isRange()) {
+						throw new IOException("short file " + location + 
+								" cannot seek to offset " + offset);
+					}
+					if(!resourceLocation.hasEnd() || end >= instanceLength) {
+						end = instanceLength - 1;
+					}
+					length = Math.max(0, end - offset + 1);
+				} else if(end >= 0) {
+					length = end - offset + 1;
+				}
+			} else if(status == 
+				HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE
+					&& resourceLocation.isRange()) {
+				Header h = method.getResponseHeader(CONTENT_RANGE_HTTP_HEADER);
+				instanceLength = (h == null) ? -1 
+						: parseUnsatisfiedRange(h.getValue());
+				length = 0;
 			} else {
-				throw new IOException("No readable file at " + location);
+				throw new IOException("Unexpected status " + status + 
+						" from " + location);
 			}
-			
-		}
+			Header typeHeader = method.getResponseHeader(
+					CONTENT_TYPE_HTTP_HEADER);
+			String contentType = (typeHeader == null) ? UNKNOWN_CONTENT_TYPE
+					: typeHeader.getValue();
+
+			DataSource ds = new URLDataSource(method, skip, offset, length,
+					instanceLength, contentType);
+			success = true;
+			return ds;
 
-		return ds;
+		} finally {
+			if(!success) {
+				method.abort();
+				method.releaseConnection();
+			}
+		}
 	}
 	
 	private ResourceLocation parseRequest(HttpServletRequest request) {
@@ -213,17 +325,11 @@ public class FileProxyServlet extends AbstractRequestHandler {
 			if(fo.find()) {
 				String rangeHeader = request.getHeader(RANGE_HTTP_HEADER);
 				if(rangeHeader != null) {
-					if(rangeHeader.startsWith(HEADER_BYTES_PREFIX)) {
-						rangeHeader = rangeHeader.substring(
-								HEADER_BYTES_PREFIX.length());
-						if(rangeHeader.endsWith(HEADER_BYTES_SUFFIX)) {
-							rangeHeader = rangeHeader.substring(0,
-									rangeHeader.length() - 
-									HEADER_BYTES_SUFFIX.length());
-						}
+					long range[] = parseRange(rangeHeader);
+					if(range != null) {
+						location = new ResourceLocation(fo.group(1),
+								range[0], range[1]);
 					}
-					location = new ResourceLocation(fo.group(1),
-							Long.parseLong(rangeHeader));
 				} else {
 					location = new ResourceLocation(fo.group(1));
 				}
@@ -231,7 +337,79 @@ public class FileProxyServlet extends AbstractRequestHandler {
 		}
 		return location;
 	}
+
+	/**
+	 * Parse a single byte range HTTP Range header value.
+	 * @param rangeHeader value of the Range header, ex. "bytes=100-" or
+	 * "bytes=100-199"
+	 * @return two element array holding the first and last (inclusive) byte
+	 * of the range, where the last is -1 for open ended ranges, or null if
+	 * the header is not a supported single byte range.
+	 */
+	static long[] parseRange(String rangeHeader) {
+		Matcher m = RANGE_PATTERN.matcher(rangeHeader.trim());
+		if(!m.matches()) {
+			return null;
+		}
+		try {
+			long start = Long.parseLong(m.group(1));
+			long end = -1;
+			if(m.group(2).length() > 0) {
+				end = Long.parseLong(m.group(2));
+				if(end < start) {
+					return null;
+				}
+			}
+			return new long[] {start, end};
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parse an HTTP Content-Range header value.
+	 * @param contentRange value of the Content-Range header, ex.
+	 * "bytes 100-199/1000"
+	 * @return three element array holding first byte, last byte, and total
+	 * length (-1 if "*"), or null if the value could not be parsed
+	 */
+	static long[] parseContentRange(String contentRange) {
+		Matcher m = CONTENT_RANGE_PATTERN.matcher(contentRange.trim());
+		if(!m.matches()) {
+			return null;
+		}
+		try {
+			long start = Long.parseLong(m.group(1));
+			long end = Long.parseLong(m.group(2));
+			long total = m.group(3).equals("*") ? -1 
+					: Long.parseLong(m.group(3));
+			if(end < start) {
+				return null;
+			}
+			return new long[] {start, end, total};
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
 	
+	/**
+	 * Parse the Content-Range header value of a 416 response.
+	 * @param contentRange value of the Content-Range header, ex.
+	 * "bytes *&#47;1000"
+	 * @return the total length, or -1 if the value could not be parsed
+	 */
+	static long parseUnsatisfiedRange(String contentRange) {
+		Matcher m = UNSATISFIED_RANGE_PATTERN.matcher(contentRange.trim());
+		if(!m.matches()) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(m.group(1));
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+
 	/**
 	 * @return the locationDB
 	 */
@@ -250,33 +428,73 @@ public class FileProxyServlet extends AbstractRequestHandler {
 	 * @return the socketTimeoutMs
 	 */
 	public int getSocketTimeoutMs() {
-		return socketTimeoutMs;
+		return connectionManager.getParams().getSoTimeout();
 	}
 
 	/**
 	 * @param socketTimeoutMs the socketTimeoutMs to set
 	 */
 	public void setSocketTimeoutMs(int socketTimeoutMs) {
-		this.socketTimeoutMs = socketTimeoutMs;
+		connectionManager.getParams().setSoTimeout(socketTimeoutMs);
 	}
 
 	/**
 	 * @return the connectTimeoutMs
 	 */
 	public int getConnectTimeoutMs() {
-		return connectTimeoutMs;
+		return connectionManager.getParams().getConnectionTimeout();
 	}
 
 	/**
 	 * @param connectTimeoutMs the connectTimeoutMs to set
 	 */
 	public void setConnectTimeoutMs(int connectTimeoutMs) {
-		this.connectTimeoutMs = connectTimeoutMs;
+		connectionManager.getParams().setConnectionTimeout(connectTimeoutMs);
+	}
+
+	/**
+	 * @return the maximum number of pooled connections to all hosts
+	 */
+	public int getMaxTotalConnections() {
+		return connectionManager.getParams().getMaxTotalConnections();
+	}
+
+	/**
+	 * @param maxTotalConnections the maximum number of pooled connections
+	 * to all hosts
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		connectionManager.getParams().setMaxTotalConnections(
+				maxTotalConnections);
+	}
+
+	/**
+	 * @return the maximum number of pooled connections to a single host
+	 */
+	public int getMaxHostConnections() {
+		return connectionManager.getParams().getDefaultMaxConnectionsPerHost();
+	}
+
+	/**
+	 * @param maxHostConnections the maximum number of pooled connections to
+	 * a single host
+	 */
+	public void setMaxHostConnections(int maxHostConnections) {
+		connectionManager.getParams().setDefaultMaxConnectionsPerHost(
+				maxHostConnections);
 	}
 
 	private class ResourceLocation {
 		private String name = null;
 		private long offset = 0;
+		private long end = -1;
+		private boolean range = false;
+		public ResourceLocation(String name, long offset, long end) {
+			this.name = name;
+			this.offset = offset;
+			this.end = end;
+			this.range = true;
+		}
 		public ResourceLocation(String name, long offset) {
 			this.name = name;
 			this.offset = offset;
@@ -290,54 +508,172 @@ public class FileProxyServlet extends AbstractRequestHandler {
 		public long getOffset() {
 			return offset;
 		}
+		public long getEnd() {
+			return end;
+		}
+		public boolean hasEnd() {
+			return end >= 0;
+		}
+		public boolean isRange() {
+			return range;
+		}
+		public String toRangeHeader() {
+			StringBuilder sb = new StringBuilder(HEADER_BYTES_PREFIX);
+			sb.append(offset).append(HEADER_BYTES_SUFFIX);
+			if(hasEnd()) {
+				sb.append(end);
+			}
+			return sb.toString();
+		}
 	}
 	
 	private interface DataSource {
 		public void copyTo(OutputStream os) throws IOException;
 		public String getContentType();
+		/**
+		 * @return number of bytes copyTo() will write, or -1 if unknown
+		 */
+		public long getLength();
+		/**
+		 * @return Content-Range header value, or null if there is none
+		 */
+		public String getContentRange();
+		public void close() throws IOException;
 	}
+
+	/**
+	 * @param start first byte of the range
+	 * @param length number of bytes in the range, 0 for an unsatisfiable
+	 * range
+	 * @param instanceLength total length, or -1 if unknown
+	 * @return Content-Range header value, "bytes *&#47;instanceLength" for an
+	 * unsatisfiable range, or null if that total length is unknown
+	 */
+	static String makeContentRange(long start, long length,
+			long instanceLength) {
+		if(length == 0) {
+			return (instanceLength < 0) ? null : "bytes */" + instanceLength;
+		}
+		StringBuilder sb = new StringBuilder("bytes ");
+		sb.append(start).append(HEADER_BYTES_SUFFIX);
+		sb.append(start + length - 1).append("/");
+		if(instanceLength >= 0) {
+			sb.append(instanceLength);
+		} else {
+			sb.append("*");
+		}
+		return sb.toString();
+	}
+
 	private class FileDataSource implements DataSource {
 		private RandomAccessFile raf = null;
+		private long start = 0;
+		private long length = 0;
+		private long instanceLength = 0;
 		private String contentType = null;
-		public FileDataSource(RandomAccessFile raf, String contentType) {
+		public FileDataSource(RandomAccessFile raf, long start, long length,
+				long instanceLength, String contentType) {
 			this.raf = raf;
+			this.start = start;
+			this.length = length;
+			this.instanceLength = instanceLength;
 			this.contentType = contentType;
 		}
 		public String getContentType() {
 			return contentType;
 		}
+		public long getLength() {
+			return length;
+		}
+		public String getContentRange() {
+			return makeContentRange(start, length, instanceLength);
+		}
 		public void copyTo(OutputStream os) throws IOException {
-			byte[] buffer = new byte[BUF_SIZE];
-			try {
-				int r = -1;
-				while((r = raf.read(buffer, 0, BUF_SIZE)) != -1) {
-					os.write(buffer, 0, r);
+			FileChannel channel = raf.getChannel();
+			WritableByteChannel target = Channels.newChannel(os);
+			long position = start;
+			long remaining = length;
+			while(remaining > 0) {
+				long sent = channel.transferTo(position, remaining, target);
+				if(sent <= 0) {
+					throw new EOFException("short file at " + position);
 				}
-			} finally {
-				raf.close();
+				position += sent;
+				remaining -= sent;
 			}
 		}
+		public void close() throws IOException {
+			raf.close();
+		}
 	}
+
 	private class URLDataSource implements DataSource {
-		private InputStream is = null;
+		private GetMethod method = null;
+		private long skip = 0;
+		private long start = 0;
+		private long length = -1;
+		private long instanceLength = -1;
 		private String contentType = null;
-		public URLDataSource(InputStream is,String contentType) {
-			this.is = is;
+		private boolean consumed = false;
+		public URLDataSource(GetMethod method, long skip, long start,
+				long length, long instanceLength, String contentType) {
+			this.method = method;
+			this.skip = skip;
+			this.start = start;
+			this.length = length;
+			this.instanceLength = instanceLength;
 			this.contentType = contentType;
 		}
 		public String getContentType() {
 			return contentType;
 		}
+		public long getLength() {
+			return length;
+		}
+		public String getContentRange() {
+			return makeContentRange(start, length, instanceLength);
+		}
 		public void copyTo(OutputStream os) throws IOException {
+			InputStream is = method.getResponseBodyAsStream();
+			if(is == null) {
+				throw new IOException("No response body");
+			}
+			while(skip > 0) {
+				long skipped = is.skip(skip);
+				if(skipped <= 0) {
+					throw new EOFException("short response skipping " + skip);
+				}
+				skip -= skipped;
+			}
 			byte[] buffer = new byte[BUF_SIZE];
-			try {
-				int r = -1;
-				while((r = is.read(buffer, 0, BUF_SIZE)) != -1) {
-					os.write(buffer, 0, r);
+			long remaining = length;
+			while(remaining != 0) {
+				int amt = BUF_SIZE;
+				if(remaining > 0 && remaining < amt) {
+					amt = (int) remaining;
+				}
+				int r = is.read(buffer, 0, amt);
+				if(r == -1) {
+					if(remaining > 0) {
+						throw new EOFException("short response, missing " +
+								remaining + " bytes");
+					}
+					break;
 				}
-			} finally {
-				is.close();
+				os.write(buffer, 0, r);
+				if(remaining > 0) {
+					remaining -= r;
+				}
+			}
+			// only hand the connection back for reuse if the upstream has
+			// nothing left to send:
+			consumed = (remaining < 0) || (is.read() == -1);
+		}
+		public void close() throws IOException {
+			if(!consumed) {
+				method.abort();
 			}
+			method.releaseConnection();
 		}
 	}
 }
@@ -0,0 +1,456 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore.resourcefile;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.archive.io.arc.ARCRecord;
+import org.archive.io.warc.WARCRecord;
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.exception.ResourceNotAvailableException;
+import org.archive.wayback.util.ByteArrayPool;
+
+/**
+ * Loads a single ARC/WARC record by reading exactly its stored bytes, 
+ * [offset, offset+length), from a local file or with a bounded HTTP 1.1 
+ * range request into a pooled buffer. The record headers are then parsed,
+ * and a gzip member inflated, directly from that buffer, without an 
+ * ArchiveReader or any further stream layers.
+ * <p>
+ * The buffer is returned to the pool when the Resource is closed. Records
+ * longer than maxRecordLength, or without a known length, should be loaded 
+ * through {@link ResourceFactory} instead: see {@link #canLoad(String, long)}.
+ * </p>
+ */
+public class RecordRangeLoader {
+	private static final Logger LOGGER = 
+		Logger.getLogger(RecordRangeLoader.class.getName());
+
+	private final static String HTTP_PREFIX = "http://";
+	private final static String RANGE_HTTP_HEADER = "Range";
+
+	private int maxRecordLength = 16 * 1024 * 1024;
+	private int connectTimeout = 10000;
+	private int readTimeout = 10000;
+	private int maxPooledSize = 1024 * 1024;
+	private int maxPooledPerSize = 64;
+	private ByteArrayPool pool = null;
+
+	/**
+	 * @param urlOrPath location of the ARC/WARC file
+	 * @param length compressed length of the record
+	 * @return true if this loader can fetch the record
+	 */
+	public boolean canLoad(String urlOrPath, long length) {
+		if ((length <= 0) || (length > maxRecordLength)) {
+			return false;
+		}
+		return urlOrPath.startsWith(HTTP_PREFIX) 
+			|| (urlOrPath.indexOf("://") == -1);
+	}
+
+	/**
+	 * @param urlOrPath http:// URL or local path to an ARC/WARC file
+	 * @param offset start of the record within the file
+	 * @param length compressed length of the record
+	 * @return Resource for the record, with headers parsed. The Resource must
+	 * be closed to return its buffer to the pool.
+	 * @throws IOException if the bytes could not be read or parsed
+	 * @throws ResourceNotAvailableException if the file is not an ARC or WARC
+	 */
+	public Resource getResource(String urlOrPath, long offset, int length)
+	throws IOException, ResourceNotAvailableException {
+
+		String name = urlOrPath.substring(urlOrPath.lastIndexOf('/') + 1);
+		if (name.endsWith(ArcWarcFilenameFilter.OPEN_SUFFIX)) {
+			name = name.substring(0, name.length()
+					- ArcWarcFilenameFilter.OPEN_SUFFIX.length());
+		}
+		boolean isArc = ResourceFactory.isArc(name);
+		if (!isArc && !ResourceFactory.isWarc(name)) {
+			throw new ResourceNotAvailableException("Unknown extension");
+		}
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.fine("Loading " + urlOrPath + " - " + offset + ":" + length);
+		}
+		byte[] buffer = getPool().acquire(length);
+		Resource r = null;
+		try {
+			if (urlOrPath.startsWith(HTTP_PREFIX)) {
+				readHttp(urlOrPath, offset, length, buffer);
+			} else {
+				readFile(urlOrPath, offset, length, buffer);
+			}
+			InputStream in;
+			if (isGzip(buffer, length)) {
+				in = new GZIPMemberInputStream(buffer, 0, length);
+			} else {
+				in = new ByteArrayInputStream(buffer, 0, length);
+			}
+			if (isArc) {
+				ARCRecord rec = new ARCRecord(in, urlOrPath, offset, false,
+						false, true);
+				r = new PooledArcResource(rec, in, buffer);
+			} else {
+				WARCRecord rec = new WARCRecord(in, urlOrPath, offset, false,
+						false);
+				r = new PooledWarcResource(rec, in, buffer);
+			}
+			r.parseHeaders();
+			return r;
+
+		} catch (IOException e) {
+			LOGGER.warning("Failed loading " + urlOrPath + " - " + offset + 
+					":" + length + " " + e.getMessage());
+			throw e;
+
+		} finally {
+			if (r == null) {
+				pool.release(buffer);
+			}
+		}
+	}
+
+	private void readFile(String path, long offset, int length, byte[] buffer)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(path, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer bb = ByteBuffer.wrap(buffer, 0, length);
+			long position = offset;
+			while (bb.hasRemaining()) {
+				int r = channel.read(bb, position);
+				if (r == -1) {
+					throw new EOFException("short file " + path + " at " 
+							+ position);
+				}
+				position += r;
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void readHttp(String url, long offset, int length, byte[] buffer)
+	throws IOException {
+		HttpURLConnection conn = 
+			(HttpURLConnection) new URL(url).openConnection();
+		conn.setConnectTimeout(connectTimeout);
+		conn.setReadTimeout(readTimeout);
+		conn.setRequestProperty(RANGE_HTTP_HEADER, "bytes=" + offset + "-" 
+				+ (offset + length - 1));
+		int status = conn.getResponseCode();
+		if ((status != HttpURLConnection.HTTP_PARTIAL) 
+				&& !((status == HttpURLConnection.HTTP_OK) && (offset == 0))) {
+			InputStream es = conn.getErrorStream();
+			if (es != null) {
+				es.close();
+			}
+			throw new IOException("HTTP " + status + " fetching " + url);
+		}
+		InputStream is = conn.getInputStream();
+		try {
+			int pos = 0;
+			while (pos < length) {
+				int r = is.read(buffer, pos, length - pos);
+				if (r == -1) {
+					throw new EOFException("short response from " + url 
+							+ " at " + (offset + pos));
+				}
+				pos += r;
+			}
+		} finally {
+			is.close();
+		}
+	}
+
+	private static boolean isGzip(byte[] buffer, int length) {
+		return (length > 2) && ((buffer[0] & 0xff) == 0x1f) 
+			&& ((buffer[1] & 0xff) == 0x8b);
+	}
+
+	private synchronized ByteArrayPool getPool() {
+		if (pool == null) {
+			pool = new ByteArrayPool(maxPooledSize, maxPooledPerSize);
+		}
+		return pool;
+	}
+
+	private class PooledArcResource extends ArcResource {
+		private InputStream in;
+		private byte[] buffer;
+		PooledArcResource(ARCRecord rec, InputStream in, byte[] buffer) {
+			super(rec, null);
+			this.in = in;
+			this.buffer = buffer;
+		}
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				release();
+			}
+		}
+		private synchronized void release() throws IOException {
+			if (buffer != null) {
+				in.close();
+				pool.release(buffer);
+				buffer = null;
+			}
+		}
+	}
+
+	private class PooledWarcResource extends WarcResource {
+		private InputStream in;
+		private byte[] buffer;
+		PooledWarcResource(WARCRecord rec, InputStream in, byte[] buffer) {
+			super(rec, null);
+			this.in = in;
+			this.buffer = buffer;
+		}
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				release();
+			}
+		}
+		private synchronized void release() throws IOException {
+			if (buffer != null) {
+				in.close();
+				pool.release(buffer);
+				buffer = null;
+			}
+		}
+	}
+
+	/**
+	 * InputStream inflating a single gzip member held entirely in a byte
+	 * array. The Inflater is handed the whole member at once, and the CRC32
+	 * and size in the trailer are verified at the end of the stream.
+	 */
+	static class GZIPMemberInputStream extends InputStream {
+		private final static int FHCRC = 2;
+		private final static int FEXTRA = 4;
+		private final static int FNAME = 8;
+		private final static int FCOMMENT = 16;
+		private final static int TRAILER_LENGTH = 8;
+
+		private byte[] buffer;
+		private int end;
+		private Inflater inflater = new Inflater(true);
+		private CRC32 crc = new CRC32();
+		private boolean eof = false;
+		private byte[] single = new byte[1];
+
+		GZIPMemberInputStream(byte[] buffer, int offset, int length) 
+		throws IOException {
+			this.buffer = buffer;
+			this.end = offset + length;
+			int pos = offset;
+			if ((length < 18) || ((buffer[pos] & 0xff) != 0x1f) 
+					|| ((buffer[pos + 1] & 0xff) != 0x8b)) {
+				throw new ZipException("Not in GZIP format");
+			}
+			if (buffer[pos + 2] != 8) {
+				throw new ZipException("Unsupported compression method");
+			}
+			int flags = buffer[pos + 3] & 0xff;
+			pos += 10;
+			if ((flags & FEXTRA) != 0) {
+				int xlen = (buffer[pos] & 0xff) | ((buffer[pos + 1] & 0xff) << 8);
+				pos += 2 + xlen;
+			}
+			if ((flags & FNAME) != 0) {
+				pos = skipZeroTerminated(pos);
+			}
+			if ((flags & FCOMMENT) != 0) {
+				pos = skipZeroTerminated(pos);
+			}
+			if ((flags & FHCRC) != 0) {
+				pos += 2;
+			}
+			if (pos >= end) {
+				throw new EOFException("Truncated GZIP header");
+			}
+			inflater.setInput(buffer, pos, end - pos);
+		}
+
+		private int skipZeroTerminated(int pos) throws IOException {
+			while ((pos < end) && (buffer[pos] != 0)) {
+				pos++;
+			}
+			if (pos >= end) {
+				throw new EOFException("Truncated GZIP header");
+			}
+			return pos + 1;
+		}
+
+		public int read() throws IOException {
+			return (read(single, 0, 1) == -1) ? -1 : (single[0] & 0xff);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (eof) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			try {
+				while (true) {
+					int n = inflater.inflate(b, off, len);
+					if (n > 0) {
+						crc.update(b, off, n);
+						return n;
+					}
+					if (inflater.finished()) {
+						eof = true;
+						checkTrailer();
+						return -1;
+					}
+					if (inflater.needsInput() || inflater.needsDictionary()) {
+						throw new EOFException("Unexpected end of GZIP member");
+					}
+				}
+			} catch (DataFormatException e) {
+				String msg = e.getMessage();
+				throw new ZipException((msg == null) ? "Invalid GZIP data" 
+						: msg);
+			}
+		}
+
+		private void checkTrailer() throws IOException {
+			int pos = end - inflater.getRemaining();
+			if (end - pos < TRAILER_LENGTH) {
+				throw new EOFException("Truncated GZIP trailer");
+			}
+			long expectedCrc = readInt(pos);
+			long expectedSize = readInt(pos + 4);
+			if ((expectedCrc != crc.getValue()) || (expectedSize != 
+					(inflater.getTotalOut() & 0xffffffffL))) {
+				throw new ZipException("Corrupt GZIP trailer");
+			}
+		}
+
+		private long readInt(int pos) {
+			return ((buffer[pos] & 0xffL)) 
+				| ((buffer[pos + 1] & 0xffL) << 8)
+				| ((buffer[pos + 2] & 0xffL) << 16) 
+				| ((buffer[pos + 3] & 0xffL) << 24);
+		}
+
+		public int available() {
+			return eof ? 0 : 1;
+		}
+
+		public void close() {
+			eof = true;
+			inflater.end();
+		}
+	}
+
+	/**
+	 * @return the largest compressed record length loaded through this 
+	 * loader
+	 */
+	public int getMaxRecordLength() {
+		return maxRecordLength;
+	}
+
+	/**
+	 * @param maxRecordLength the largest compressed record length loaded
+	 * through this loader
+	 */
+	public void setMaxRecordLength(int maxRecordLength) {
+		this.maxRecordLength = maxRecordLength;
+	}
+
+	/**
+	 * @return the HTTP connect timeout in milliseconds
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout the HTTP connect timeout in milliseconds
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @return the HTTP read timeout in milliseconds
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * @param readTimeout the HTTP read timeout in milliseconds
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * @return the largest buffer size retained in the pool
+	 */
+	public int getMaxPooledSize() {
+		return maxPooledSize;
+	}
+
+	/**
+	 * @param maxPooledSize the largest buffer size retained in the pool
+	 */
+	public void setMaxPooledSize(int maxPooledSize) {
+		this.maxPooledSize = maxPooledSize;
+	}
+
+	/**
+	 * @return the number of buffers of each size retained in the pool
+	 */
+	public int getMaxPooledPerSize() {
+		return maxPooledPerSize;
+	}
+
+	/**
+	 * @param maxPooledPerSize the number of buffers of each size retained
+	 * in the pool
+	 */
+	public void setMaxPooledPerSize(int maxPooledPerSize) {
+		this.maxPooledPerSize = maxPooledPerSize;
+	}
+}
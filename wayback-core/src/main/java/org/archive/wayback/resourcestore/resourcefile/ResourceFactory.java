@@ -208,13 +208,13 @@ public class ResourceFactory {
 	}
 	
 	
-	private static boolean isArc(final String name) {
+	static boolean isArc(final String name) {
 
 		return (name.endsWith(ArcWarcFilenameFilter.ARC_SUFFIX)
 				|| name.endsWith(ArcWarcFilenameFilter.ARC_GZ_SUFFIX));
 	}
 
-	private static boolean isWarc(final String name) {
+	static boolean isWarc(final String name) {
 
 		return (name.endsWith(ArcWarcFilenameFilter.WARC_SUFFIX)
 			|| name.endsWith(ArcWarcFilenameFilter.WARC_GZ_SUFFIX));	
@@ -169,6 +169,8 @@ public class WarcResource extends Resource {
 	@Override
 	public void close() throws IOException {
 		rec.close();
-		reader.close();
+		if(reader != null) {
+			reader.close();
+		}
 	}
 }
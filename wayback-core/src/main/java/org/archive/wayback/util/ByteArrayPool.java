@@ -0,0 +1,116 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe pool of byte arrays, in power of two size classes from 4KB up
+ * to maxPooledSize. Requests larger than maxPooledSize are satisfied with a
+ * new array, which is dropped on release. At most maxPerClass arrays are
+ * retained in each size class.
+ */
+public class ByteArrayPool {
+	private final static int MIN_SHIFT = 12;
+
+	private int maxShift;
+	private int maxPerClass;
+	private List<ConcurrentLinkedQueue<byte[]>> classes;
+	private AtomicInteger[] counts;
+
+	/**
+	 * @param maxPooledSize largest array size retained, rounded up to a 
+	 * power of two
+	 * @param maxPerClass maximum number of arrays retained per size class
+	 */
+	public ByteArrayPool(int maxPooledSize, int maxPerClass) {
+		this.maxShift = Math.max(MIN_SHIFT, shiftFor(maxPooledSize));
+		this.maxPerClass = maxPerClass;
+		int numClasses = maxShift - MIN_SHIFT + 1;
+		classes = new ArrayList<ConcurrentLinkedQueue<byte[]>>(numClasses);
+		counts = new AtomicInteger[numClasses];
+		for (int i = 0; i < numClasses; i++) {
+			classes.add(new ConcurrentLinkedQueue<byte[]>());
+			counts[i] = new AtomicInteger(0);
+		}
+	}
+
+	/**
+	 * @param size minimum number of bytes needed
+	 * @return an array at least size bytes long, whose contents are 
+	 * undefined
+	 */
+	public byte[] acquire(int size) {
+		int shift = Math.max(MIN_SHIFT, shiftFor(size));
+		if (shift > maxShift) {
+			return new byte[size];
+		}
+		int idx = shift - MIN_SHIFT;
+		byte[] buffer = classes.get(idx).poll();
+		if (buffer == null) {
+			return new byte[1 << shift];
+		}
+		counts[idx].decrementAndGet();
+		return buffer;
+	}
+
+	/**
+	 * Return an array obtained from acquire() to the pool. The caller must
+	 * not use the array after this call.
+	 * @param buffer array to return
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null) {
+			return;
+		}
+		int len = buffer.length;
+		if ((len & (len - 1)) != 0) {
+			// not one of ours
+			return;
+		}
+		int shift = shiftFor(len);
+		if ((shift < MIN_SHIFT) || (shift > maxShift)) {
+			return;
+		}
+		int idx = shift - MIN_SHIFT;
+		if (counts[idx].incrementAndGet() > maxPerClass) {
+			counts[idx].decrementAndGet();
+			return;
+		}
+		classes.get(idx).offer(buffer);
+	}
+
+	/**
+	 * @return largest array size retained by this pool
+	 */
+	public int getMaxPooledSize() {
+		return 1 << maxShift;
+	}
+
+	private static int shiftFor(int size) {
+		if (size <= 1) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(size - 1);
+	}
+}
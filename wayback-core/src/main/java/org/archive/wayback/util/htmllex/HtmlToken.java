@@ -0,0 +1,318 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.htmllex;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Reusable view of the current token produced by {@link HtmlTokenizer}.
+ * <p>
+ * A tag is described as a sequence of segments, the first of which is the
+ * tag name (including a leading '/' for end tags, or '!'/'?' for 
+ * declarations). The remaining segments are either whitespace or 
+ * attributes, in document order, so that writing every segment back out 
+ * reproduces the original markup exactly.
+ * <p>
+ * All offsets index into the tokenizer's window, and are only valid until
+ * the next call to {@link HtmlTokenizer#next()}.
+ */
+public class HtmlToken {
+	/** character data outside of any markup */
+	public static final int TEXT = 0;
+	/** start tag, including empty tags such as &lt;br/&gt; */
+	public static final int START_TAG = 1;
+	/** end tag */
+	public static final int END_TAG = 2;
+	/** &lt;!-- comment --&gt; */
+	public static final int COMMENT = 3;
+	/** &lt;![CDATA[ ... ]]&gt; section */
+	public static final int CDATA = 4;
+	/** &lt;!DOCTYPE ...&gt;, &lt;?xml ...?&gt; and similar */
+	public static final int DECLARATION = 5;
+	/** content of a SCRIPT or STYLE element */
+	public static final int RAW_TEXT = 6;
+
+	/** segment type for whitespace between attributes */
+	public static final int SEGMENT_WHITESPACE = 0;
+	/** segment type for an attribute, or the tag name */
+	public static final int SEGMENT_ATTRIBUTE = 1;
+
+	int type;
+	char[] buf;
+	int start;
+	int end;
+
+	// segments of tags: 
+	int segmentCount;
+	int[] segType = new int[16];
+	int[] nameStart = new int[16];
+	int[] nameEnd = new int[16];
+	int[] assignStart = new int[16];
+	int[] assignEnd = new int[16];
+	int[] valueStart = new int[16];
+	int[] valueEnd = new int[16];
+	char[] quote = new char[16];
+
+	private String upperName = null;
+
+	void reset(int type, char[] buf, int start) {
+		this.type = type;
+		this.buf = buf;
+		this.start = start;
+		this.end = start;
+		segmentCount = 0;
+		upperName = null;
+	}
+
+	int addSegment(int type) {
+		if (segmentCount == segType.length) {
+			int size = segmentCount * 2;
+			segType = grow(segType, size);
+			nameStart = grow(nameStart, size);
+			nameEnd = grow(nameEnd, size);
+			assignStart = grow(assignStart, size);
+			assignEnd = grow(assignEnd, size);
+			valueStart = grow(valueStart, size);
+			valueEnd = grow(valueEnd, size);
+			char[] q = new char[size];
+			System.arraycopy(quote, 0, q, 0, segmentCount);
+			quote = q;
+		}
+		int i = segmentCount++;
+		segType[i] = type;
+		nameStart[i] = nameEnd[i] = -1;
+		assignStart[i] = assignEnd[i] = -1;
+		valueStart[i] = valueEnd[i] = -1;
+		quote[i] = 0;
+		return i;
+	}
+
+	private static int[] grow(int[] a, int size) {
+		int[] n = new int[size];
+		System.arraycopy(a, 0, n, 0, a.length);
+		return n;
+	}
+
+	/**
+	 * @return one of the token type constants
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * @return true if this is a tag-like token described by segments:
+	 * START_TAG, END_TAG or DECLARATION
+	 */
+	public boolean isTag() {
+		return (type == START_TAG) || (type == END_TAG)
+				|| (type == DECLARATION);
+	}
+
+	/**
+	 * @return the window holding this token's characters
+	 */
+	public char[] getBuffer() {
+		return buf;
+	}
+
+	/**
+	 * @return offset of the first character of this token in the window
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return offset just past the last character of this token
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the complete original text of this token
+	 */
+	public String getRaw() {
+		return new String(buf, start, end - start);
+	}
+
+	/**
+	 * Write the original text of this token, unchanged
+	 * @param out Writer to write to
+	 * @throws IOException if the write fails
+	 */
+	public void writeRaw(Writer out) throws IOException {
+		out.write(buf, start, end - start);
+	}
+
+	/**
+	 * @return for COMMENT, the text between &lt;!-- and --&gt;, for CDATA
+	 * the text between &lt;![CDATA[ and ]]&gt;, otherwise the raw text
+	 */
+	public String getText() {
+		if (type == COMMENT) {
+			return new String(buf, start + 4, end - start - 7);
+		} else if (type == CDATA) {
+			return new String(buf, start + 9, end - start - 12);
+		}
+		return getRaw();
+	}
+
+	/**
+	 * @return the tag name as written, including any leading '/', '!'
+	 * or '?', or null if this is not a tag
+	 */
+	public String getRawName() {
+		if (!isTag() || (segmentCount == 0)) {
+			return null;
+		}
+		return new String(buf, nameStart[0], nameEnd[0] - nameStart[0]);
+	}
+
+	/**
+	 * @return the upper-case tag name, without any leading '/', as 
+	 * returned by TagNode.getTagName(), or null if this is not a tag
+	 */
+	public String getName() {
+		if (upperName == null) {
+			if (!isTag() || (segmentCount == 0)) {
+				return null;
+			}
+			int s = nameStart[0];
+			int e = nameEnd[0];
+			if ((type == END_TAG) && (s < e) && (buf[s] == '/')) {
+				s++;
+			}
+			if ((s < e) && (buf[e - 1] == '/')) {
+				e--;
+			}
+			upperName = HtmlTokenizer.upperCaseName(buf, s, e - s);
+		}
+		return upperName;
+	}
+
+	/**
+	 * @param name upper case tag name
+	 * @return true if this token is a tag with the given name
+	 */
+	public boolean isNamed(String name) {
+		return isTag() && name.equals(getName());
+	}
+
+	/**
+	 * @return true if this is a start tag closed with "/&gt;"
+	 */
+	public boolean isEmptyElement() {
+		if ((type != START_TAG) || (segmentCount == 0)) {
+			return false;
+		}
+		int i = segmentCount - 1;
+		return (segType[i] == SEGMENT_ATTRIBUTE)
+				&& (nameEnd[i] > nameStart[i]) && (buf[nameEnd[i] - 1] == '/');
+	}
+
+	/**
+	 * @return number of segments, including the tag name
+	 */
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+
+	/**
+	 * @param i segment index
+	 * @return SEGMENT_WHITESPACE or SEGMENT_ATTRIBUTE
+	 */
+	public int getSegmentType(int i) {
+		return segType[i];
+	}
+
+	/**
+	 * @param i segment index
+	 * @return the whitespace, for whitespace segments, or the attribute name
+	 */
+	public String getSegmentName(int i) {
+		return new String(buf, nameStart[i], nameEnd[i] - nameStart[i]);
+	}
+
+	/**
+	 * @param i segment index
+	 * @return the text between name and value, including '=' and any
+	 * whitespace around it, or null if the attribute has no value
+	 */
+	public String getSegmentAssignment(int i) {
+		if (assignStart[i] < 0) {
+			return null;
+		}
+		return new String(buf, assignStart[i], assignEnd[i] - assignStart[i]);
+	}
+
+	/**
+	 * @param i segment index
+	 * @return the attribute value without quotes, not unescaped, or null if
+	 * the attribute has no value
+	 */
+	public String getSegmentValue(int i) {
+		if (valueStart[i] < 0) {
+			return null;
+		}
+		return new String(buf, valueStart[i], valueEnd[i] - valueStart[i]);
+	}
+
+	/**
+	 * @param i segment index
+	 * @return the quote character around the value, or 0 if unquoted
+	 */
+	public char getSegmentQuote(int i) {
+		return quote[i];
+	}
+
+	/**
+	 * @param name attribute name, case insensitive
+	 * @return the raw value of the first attribute with this name, "" if it
+	 * has no value, or null if there is no such attribute
+	 */
+	public String getAttribute(String name) {
+		for (int i = 1; i < segmentCount; i++) {
+			if ((segType[i] == SEGMENT_ATTRIBUTE)
+					&& regionEqualsIgnoreCase(nameStart[i], nameEnd[i], name)) {
+				String value = getSegmentValue(i);
+				return (value == null) ? "" : value;
+			}
+		}
+		return null;
+	}
+
+	private boolean regionEqualsIgnoreCase(int s, int e, String name) {
+		int len = name.length();
+		if (e - s != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			char a = buf[s + i];
+			char b = name.charAt(i);
+			if ((a != b) && (Character.toUpperCase(a) != Character.toUpperCase(b))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
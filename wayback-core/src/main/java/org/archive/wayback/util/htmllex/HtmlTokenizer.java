@@ -0,0 +1,489 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.htmllex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Pull tokenizer for HTML, working on a decoded character stream through a
+ * fixed-size window rather than holding the whole document in memory.
+ * <p>
+ * Each call to {@link #next()} returns the same {@link HtmlToken} instance,
+ * describing the next token in place within the window, so no per-tag 
+ * objects are created unless a caller asks for Strings. Concatenating the
+ * raw text of all tokens reproduces the input exactly; text outside of
+ * markup is returned as-is, and may be split into several TEXT tokens.
+ * <p>
+ * As with {@link ContextAwareLexer}, the content of SCRIPT and STYLE 
+ * elements is returned as a single RAW_TEXT token rather than being 
+ * tokenized, so unescaped '&lt;' inside scripts does not derail parsing.
+ * The window grows as needed to hold a single token, up to 
+ * maxTokenLength characters; longer SCRIPT or STYLE content is split, and
+ * longer tags are treated as text.
+ */
+public class HtmlTokenizer {
+	/**
+	 * default window size, in chars
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 16 * 1024;
+	/**
+	 * default limit on the size of a single token, in chars
+	 */
+	public static final int DEFAULT_MAX_TOKEN_LENGTH = 4 * 1024 * 1024;
+
+	private static final int NEED_MORE = -1;
+	private static final int NOT_MARKUP = -2;
+
+	private static final String[] KNOWN_NAMES = { "A", "B", "I", "P", "U",
+		"BR", "HR", "LI", "TD", "TR", "TH", "UL", "OL", "DL", "DT", "DD",
+		"EM", "H1", "H2", "H3", "H4", "H5", "H6", "DIV", "IMG", "NAV", "SVG",
+		"BODY", "HEAD", "HTML", "LINK", "META", "SPAN", "BASE", "FORM",
+		"AREA", "FONT", "PATH", "STYLE", "TITLE", "TABLE", "TBODY", "INPUT",
+		"FRAME", "EMBED", "PARAM", "LABEL", "VIDEO", "AUDIO", "IFRAME",
+		"SCRIPT", "OBJECT", "APPLET", "BUTTON", "SELECT", "OPTION", "CENTER",
+		"STRONG", "SOURCE", "HEADER", "FOOTER", "BGSOUND", "SECTION",
+		"ARTICLE", "NOSCRIPT", "FRAMESET", "TEXTAREA", "!DOCTYPE" };
+	private static final String[][] KNOWN_BY_LENGTH;
+	static {
+		int max = 0;
+		for (String name : KNOWN_NAMES) {
+			max = Math.max(max, name.length());
+		}
+		int[] counts = new int[max + 1];
+		for (String name : KNOWN_NAMES) {
+			counts[name.length()]++;
+		}
+		KNOWN_BY_LENGTH = new String[max + 1][];
+		for (int i = 0; i <= max; i++) {
+			KNOWN_BY_LENGTH[i] = new String[counts[i]];
+			counts[i] = 0;
+		}
+		for (String name : KNOWN_NAMES) {
+			int len = name.length();
+			KNOWN_BY_LENGTH[len][counts[len]++] = name;
+		}
+	}
+
+	private final Reader in;
+	private final int maxTokenLength;
+	private char[] buf;
+	private int pos = 0;
+	private int limit = 0;
+	private boolean eof = false;
+	private final HtmlToken token = new HtmlToken();
+
+	// upper-case name of the SCRIPT or STYLE element we are inside, or null
+	private String rawTextElement = null;
+
+	/**
+	 * @param in decoded document characters
+	 */
+	public HtmlTokenizer(Reader in) {
+		this(in, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_TOKEN_LENGTH);
+	}
+
+	/**
+	 * @param in decoded document characters
+	 * @param windowSize initial window size, in chars
+	 * @param maxTokenLength largest single token the window will grow to
+	 */
+	public HtmlTokenizer(Reader in, int windowSize, int maxTokenLength) {
+		this.in = in;
+		this.buf = new char[Math.max(windowSize, 64)];
+		this.maxTokenLength = Math.max(maxTokenLength, buf.length);
+	}
+
+	/**
+	 * @return true if the last token returned was a SCRIPT or STYLE start
+	 * tag, or RAW_TEXT content, and the matching end tag has not been seen
+	 */
+	public boolean isInRawText() {
+		return rawTextElement != null;
+	}
+
+	/**
+	 * @return upper-case name of the SCRIPT or STYLE element whose content
+	 * is being returned, or null
+	 */
+	public String getRawTextElement() {
+		return rawTextElement;
+	}
+
+	/**
+	 * Advance to the next token
+	 * @return the token view, or null at the end of the document
+	 * @throws IOException if reading fails
+	 */
+	public HtmlToken next() throws IOException {
+		while (true) {
+			if ((pos >= limit) && !fill()) {
+				return null;
+			}
+			int end;
+			if (rawTextElement != null) {
+				end = scanRawText();
+				if (end == pos) {
+					// no content, or content done: go on to the end tag
+					rawTextElement = null;
+					continue;
+				}
+				if (end != NEED_MORE) {
+					token.reset(HtmlToken.RAW_TEXT, buf, pos);
+					return finish(end);
+				}
+			} else if (buf[pos] == '<') {
+				end = scanMarkup();
+				if (end >= 0) {
+					return finish(end);
+				}
+				if (end == NOT_MARKUP) {
+					end = scanText(pos + 1);
+					if (end != NEED_MORE) {
+						token.reset(HtmlToken.TEXT, buf, pos);
+						return finish(end);
+					}
+				}
+			} else {
+				end = scanText(pos);
+				if (end != NEED_MORE) {
+					token.reset(HtmlToken.TEXT, buf, pos);
+					return finish(end);
+				}
+			}
+			// the token runs past the window: read more and rescan
+			if (!more()) {
+				// the token is longer than maxTokenLength
+				if (rawTextElement == null) {
+					// treat the '<' as text
+					token.reset(HtmlToken.TEXT, buf, pos);
+					return finish(pos + 1);
+				}
+				// split the content, leaving room to see a split end tag
+				token.reset(HtmlToken.RAW_TEXT, buf, pos);
+				return finish(limit - rawTextElement.length() - 2);
+			}
+		}
+	}
+
+	private HtmlToken finish(int end) {
+		token.end = end;
+		pos = end;
+		if ((token.type == HtmlToken.START_TAG) && !token.isEmptyElement()) {
+			String name = token.getName();
+			if ("SCRIPT".equals(name) || "STYLE".equals(name)) {
+				rawTextElement = name;
+			}
+		}
+		return token;
+	}
+
+	// read into the free space at the end of the window
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		if (pos >= limit) {
+			pos = limit = 0;
+		}
+		int amt = in.read(buf, limit, buf.length - limit);
+		if (amt == -1) {
+			eof = true;
+			return false;
+		}
+		limit += amt;
+		return true;
+	}
+
+	// make room for, and read, more of the token starting at pos. Returns
+	// false only if the token would exceed maxTokenLength.
+	private boolean more() throws IOException {
+		int len = limit - pos;
+		if (eof || (len >= maxTokenLength)) {
+			return false;
+		}
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, len);
+			limit = len;
+			pos = 0;
+		}
+		if (limit == buf.length) {
+			char[] bigger = new char[Math.min(buf.length * 2,
+					maxTokenLength + 1)];
+			System.arraycopy(buf, 0, bigger, 0, limit);
+			buf = bigger;
+		}
+		int amt = in.read(buf, limit, buf.length - limit);
+		if (amt == -1) {
+			// rescan once more, now knowing nothing else is coming
+			eof = true;
+		} else {
+			limit += amt;
+		}
+		return true;
+	}
+
+	private int scanText(int from) {
+		for (int i = from; i < limit; i++) {
+			if (buf[i] == '<') {
+				return i;
+			}
+		}
+		// text can be split anywhere, so just return what we have
+		return (limit > pos) ? limit : NEED_MORE;
+	}
+
+	// find the start of the end tag of the current SCRIPT or STYLE element
+	private int scanRawText() {
+		String name = rawTextElement;
+		int nameLen = name.length();
+		for (int i = pos; i < limit; i++) {
+			if ((buf[i] != '<')) {
+				continue;
+			}
+			// need "</", the name, and one more char
+			if (i + nameLen + 2 >= limit) {
+				return eof ? limit : NEED_MORE;
+			}
+			if ((buf[i + 1] == '/') && regionMatches(i + 2, name)) {
+				char c = buf[i + nameLen + 2];
+				if ((c == '>') || (c == '/') || isWhitespace(c)) {
+					return i;
+				}
+			}
+		}
+		return eof ? limit : NEED_MORE;
+	}
+
+	private boolean regionMatches(int offset, String upperName) {
+		int len = upperName.length();
+		for (int i = 0; i < len; i++) {
+			if (Character.toUpperCase(buf[offset + i]) != upperName.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// scan markup starting with '<' at pos
+	private int scanMarkup() {
+		if (pos + 1 >= limit) {
+			return eof ? NOT_MARKUP : NEED_MORE;
+		}
+		char c = buf[pos + 1];
+		if (c == '!') {
+			if (startsWith(pos, "<!--")) {
+				return scanDelimited(HtmlToken.COMMENT, pos + 4, "-->");
+			}
+			if (startsWith(pos, "<![CDATA[")) {
+				return scanDelimited(HtmlToken.CDATA, pos + 9, "]]>");
+			}
+			if ((pos + 9 > limit) && !eof) {
+				// might still turn out to be a comment or CDATA
+				return NEED_MORE;
+			}
+			return scanTag(HtmlToken.DECLARATION);
+		} else if (c == '?') {
+			return scanTag(HtmlToken.DECLARATION);
+		} else if (c == '/') {
+			if (pos + 2 >= limit) {
+				return eof ? NOT_MARKUP : NEED_MORE;
+			}
+			return isLetter(buf[pos + 2]) ? scanTag(HtmlToken.END_TAG) 
+					: NOT_MARKUP;
+		} else if (isLetter(c)) {
+			return scanTag(HtmlToken.START_TAG);
+		}
+		return NOT_MARKUP;
+	}
+
+	private boolean startsWith(int offset, String s) {
+		int len = s.length();
+		if (offset + len > limit) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (buf[offset + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int scanDelimited(int type, int from, String close) {
+		int len = close.length();
+		char first = close.charAt(0);
+		for (int i = from; i + len <= limit; i++) {
+			if ((buf[i] == first) && startsWith(i, close)) {
+				token.reset(type, buf, pos);
+				return i + len;
+			}
+		}
+		return eof ? NOT_MARKUP : NEED_MORE;
+	}
+
+	private int scanTag(int type) {
+		token.reset(type, buf, pos);
+		// tag name, including any leading '/', '!' or '?'
+		int i = pos + 1;
+		int seg = token.addSegment(HtmlToken.SEGMENT_ATTRIBUTE);
+		token.nameStart[seg] = i;
+		while (i < limit) {
+			char c = buf[i];
+			if ((c == '>') || isWhitespace(c)) {
+				break;
+			}
+			if ((c == '/') && (i > pos + 1)) {
+				if (i + 1 >= limit) {
+					return eof ? NOT_MARKUP : NEED_MORE;
+				}
+				if (buf[i + 1] == '>') {
+					break;
+				}
+			}
+			i++;
+		}
+		token.nameEnd[seg] = i;
+
+		while (i < limit) {
+			char c = buf[i];
+			if (c == '>') {
+				return i + 1;
+			}
+			if (isWhitespace(c)) {
+				seg = token.addSegment(HtmlToken.SEGMENT_WHITESPACE);
+				token.nameStart[seg] = i;
+				while ((i < limit) && isWhitespace(buf[i])) {
+					i++;
+				}
+				token.nameEnd[seg] = i;
+				continue;
+			}
+			i = scanAttribute(i);
+			if (i < 0) {
+				return i;
+			}
+		}
+		return eof ? NOT_MARKUP : NEED_MORE;
+	}
+
+	// scan one attribute starting at i, returning the offset after it
+	private int scanAttribute(int i) {
+		int seg = token.addSegment(HtmlToken.SEGMENT_ATTRIBUTE);
+		token.nameStart[seg] = i;
+		if ((buf[i] == '/') || (buf[i] == '=')) {
+			// stray '/' or '=': a name of its own
+			i++;
+		} else {
+			while (i < limit) {
+				char c = buf[i];
+				if ((c == '>') || (c == '=') || isWhitespace(c)) {
+					break;
+				}
+				if (c == '/') {
+					if (i + 1 >= limit) {
+						return eof ? NOT_MARKUP : NEED_MORE;
+					}
+					if (buf[i + 1] == '>') {
+						break;
+					}
+				}
+				i++;
+			}
+		}
+		token.nameEnd[seg] = i;
+
+		// look past whitespace for '='
+		int j = i;
+		while ((j < limit) && isWhitespace(buf[j])) {
+			j++;
+		}
+		if (j >= limit) {
+			return eof ? NOT_MARKUP : NEED_MORE;
+		}
+		if ((buf[j] != '=') || (token.nameEnd[seg] - token.nameStart[seg] == 1
+				&& buf[token.nameStart[seg]] == '=')) {
+			// no value: any whitespace becomes its own segment
+			return i;
+		}
+		token.assignStart[seg] = i;
+		j++;
+		while ((j < limit) && isWhitespace(buf[j])) {
+			j++;
+		}
+		if (j >= limit) {
+			return eof ? NOT_MARKUP : NEED_MORE;
+		}
+		token.assignEnd[seg] = j;
+		char c = buf[j];
+		if ((c == '"') || (c == '\'')) {
+			token.quote[seg] = c;
+			int k = j + 1;
+			while ((k < limit) && (buf[k] != c)) {
+				k++;
+			}
+			if (k >= limit) {
+				return eof ? NOT_MARKUP : NEED_MORE;
+			}
+			token.valueStart[seg] = j + 1;
+			token.valueEnd[seg] = k;
+			return k + 1;
+		}
+		int k = j;
+		while ((k < limit) && (buf[k] != '>') && !isWhitespace(buf[k])) {
+			k++;
+		}
+		token.valueStart[seg] = j;
+		token.valueEnd[seg] = k;
+		return k;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return (c == ' ') || (c == '\n') || (c == '\t') || (c == '\r')
+				|| (c == '\f');
+	}
+
+	private static boolean isLetter(char c) {
+		return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+	}
+
+	/**
+	 * @return upper-case String for the name in buf, shared for common
+	 * tag names
+	 */
+	static String upperCaseName(char[] buf, int offset, int len) {
+		if (len < KNOWN_BY_LENGTH.length) {
+			for (String known : KNOWN_BY_LENGTH[len]) {
+				boolean match = true;
+				for (int i = 0; i < len; i++) {
+					if (Character.toUpperCase(buf[offset + i]) != known.charAt(i)) {
+						match = false;
+						break;
+					}
+				}
+				if (match) {
+					return known;
+				}
+			}
+		}
+		return new String(buf, offset, len).toUpperCase(Locale.ENGLISH);
+	}
+}
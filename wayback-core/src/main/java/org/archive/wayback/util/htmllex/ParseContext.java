@@ -50,6 +50,10 @@ public class ParseContext {
 
 	protected UsableURI baseUrl = null;
 
+	// fast path resolver for baseUrl, rebuilt whenever baseUrl changes
+	private UsableURI fastResolverBase = null;
+	private RelativeUrlResolver fastResolver = null;
+
 	private boolean inHTML = false;
 	private boolean inCSS = false;
 	private boolean inJS = false;
@@ -100,6 +104,8 @@ public class ParseContext {
 	 * this object. 
 	 * <p>Caveat: this method no longer unescape HTML entities in {@code url}.
 	 * HTML entities must be all unescaped before calling method.</p>
+	 * <p>Simple relative forms are resolved by {@link RelativeUrlResolver}
+	 * without building a {@code UsableURI}.</p>
 	 * @param url which should be resolved
 	 * @return absolute URL.
 	 * @throws URISyntaxException if the input URL is malformed
@@ -116,7 +122,18 @@ public class ParseContext {
 			// TODO: log ?
 			return url + frag;
 		}
-		
+
+		if (fastResolverBase != baseUrl) {
+			fastResolver = RelativeUrlResolver.forBase(baseUrl.toString());
+			fastResolverBase = baseUrl;
+		}
+		if (fastResolver != null) {
+			String resolved = fastResolver.resolve(url);
+			if (resolved != null) {
+				return resolved + frag;
+			}
+		}
+
 		try {
 			url = UsableURIFactory.getInstance(baseUrl, url).toString() + frag;
 		} catch (URIException e) {
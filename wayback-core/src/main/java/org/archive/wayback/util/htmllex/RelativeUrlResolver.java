@@ -0,0 +1,205 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.htmllex;
+
+/**
+ * Resolves the common, already-clean relative URL forms found in HTML
+ * against a fixed, already-normalized base URL with plain String
+ * concatenation, so that {@link ParseContext#resolve(String)} can skip
+ * {@code UsableURIFactory} for them.
+ * <p>Only inputs for which concatenation is guaranteed to give the same
+ * result as {@code UsableURIFactory.getInstance(base, url)} are handled:
+ * <ul>
+ * <li>{@code /path}, {@code path} and {@code //host/path}, optionally
+ * followed by a query,</li>
+ * <li>the empty string (what remains of {@code #frag} after the fragment
+ * has been split off).</li>
+ * </ul>
+ * Anything else &mdash; a scheme, whitespace, {@code %}-escapes, backslashes,
+ * dot segments, empty path segments, upper case or numeric host names,
+ * ports &mdash; makes {@link #resolve(String)} return {@code null}, and the
+ * caller must fall back to full parsing.</p>
+ * <p>Instances are immutable and only valid for the base they were built
+ * for.</p>
+ */
+public class RelativeUrlResolver {
+	/**
+	 * results longer than this are left to {@code UsableURIFactory}, which
+	 * applies its own length limit.
+	 */
+	public static final int MAX_RESOLVED_LENGTH = 2083;
+
+	private final String scheme;
+	private final String prefix;
+	private final String directory;
+	private final String document;
+
+	private RelativeUrlResolver(String scheme, String prefix,
+			String directory, String document) {
+		this.scheme = scheme;
+		this.prefix = prefix;
+		this.directory = directory;
+		this.document = document;
+	}
+
+	/**
+	 * @param base normalized absolute base URL, as produced by
+	 * {@code UsableURI.toString()}
+	 * @return resolver for {@code base}, or {@code null} if {@code base} is
+	 * not a plain http or https URL with a path
+	 */
+	public static RelativeUrlResolver forBase(String base) {
+		if (base == null) {
+			return null;
+		}
+		String scheme;
+		if (base.startsWith("http://")) {
+			scheme = "http:";
+		} else if (base.startsWith("https://")) {
+			scheme = "https:";
+		} else {
+			return null;
+		}
+		int hashIdx = base.indexOf('#');
+		String document = hashIdx == -1 ? base : base.substring(0, hashIdx);
+		int authStart = scheme.length() + 2;
+		int pathStart = document.indexOf('/', authStart);
+		if (pathStart == -1 || pathStart == authStart) {
+			return null;
+		}
+		int queryIdx = document.indexOf('?', authStart);
+		if (queryIdx != -1 && queryIdx < pathStart) {
+			return null;
+		}
+		int pathEnd = queryIdx == -1 ? document.length() : queryIdx;
+		int dirEnd = document.lastIndexOf('/', pathEnd - 1) + 1;
+		return new RelativeUrlResolver(scheme,
+				document.substring(0, pathStart),
+				document.substring(0, dirEnd), document);
+	}
+
+	/**
+	 * @param url relative URL, with any fragment already removed
+	 * @return absolute URL, or {@code null} if {@code url} is not one of the
+	 * forms this class can resolve exactly
+	 */
+	public String resolve(String url) {
+		final int len = url.length();
+		if (len == 0) {
+			return document;
+		}
+		String head;
+		int pathStart;
+		if (url.charAt(0) == '/') {
+			if (len > 1 && url.charAt(1) == '/') {
+				pathStart = url.indexOf('/', 2);
+				if (pathStart == -1 || !isPlainHost(url, 2, pathStart)) {
+					return null;
+				}
+				head = scheme;
+			} else {
+				pathStart = 0;
+				head = prefix;
+			}
+		} else if (url.charAt(0) == '?') {
+			return null;
+		} else {
+			pathStart = 0;
+			head = directory;
+		}
+		if (!isPlainPathAndQuery(url, pathStart)) {
+			return null;
+		}
+		if (head.length() + len > MAX_RESOLVED_LENGTH) {
+			return null;
+		}
+		return head.concat(url);
+	}
+
+	private static boolean isPlainHost(String url, int start, int end) {
+		if (start == end || url.charAt(start) == '.' ||
+				url.charAt(end - 1) == '.') {
+			return false;
+		}
+		boolean letter = false;
+		char prev = 0;
+		for (int i = start; i < end; i++) {
+			char c = url.charAt(i);
+			if (c >= 'a' && c <= 'z') {
+				letter = true;
+			} else if (c == '.') {
+				if (prev == '.') {
+					return false;
+				}
+			} else if (!(c >= '0' && c <= '9') && c != '-') {
+				return false;
+			}
+			prev = c;
+		}
+		return letter;
+	}
+
+	private static boolean isPlainPathAndQuery(String url, int start) {
+		final int len = url.length();
+		int segStart = start;
+		int i = start;
+		// path: no dot segments, no empty segments except the leading one
+		for (; i < len; i++) {
+			char c = url.charAt(i);
+			if (c == '/' || c == '?') {
+				if (c == '/' && i > start && i == segStart) {
+					return false;
+				}
+				if (isDotSegment(url, segStart, i)) {
+					return false;
+				}
+				segStart = i + 1;
+				if (c == '?') {
+					break;
+				}
+			} else if (!isPlainChar(c)) {
+				return false;
+			}
+		}
+		if (i == len && isDotSegment(url, segStart, len)) {
+			return false;
+		}
+		for (i++; i < len; i++) {
+			char c = url.charAt(i);
+			if (c != '/' && c != '?' && !isPlainChar(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDotSegment(String url, int start, int end) {
+		int n = end - start;
+		return (n == 1 && url.charAt(start) == '.') ||
+				(n == 2 && url.charAt(start) == '.' &&
+				url.charAt(start + 1) == '.');
+	}
+
+	private static boolean isPlainChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+				(c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' ||
+				c == '~' || c == '=' || c == '&';
+	}
+}
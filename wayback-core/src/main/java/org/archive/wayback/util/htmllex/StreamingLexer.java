@@ -0,0 +1,147 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.htmllex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Vector;
+
+import org.htmlparser.Attribute;
+import org.htmlparser.Node;
+import org.htmlparser.nodes.RemarkNode;
+import org.htmlparser.nodes.TagNode;
+import org.htmlparser.nodes.TextNode;
+
+/**
+ * Drop-in alternative to {@link ContextAwareLexer}, driven by an 
+ * {@link HtmlTokenizer} instead of the htmlparser Lexer and Page.
+ * <p>
+ * Nodes handed to ParseEventHandlers are the same plain TagNode, TextNode
+ * and RemarkNode types the htmlparser Lexer produces, so existing handlers
+ * and rules work unchanged, and unmodified nodes serialize back to the 
+ * original markup. The document is read through a fixed-size window
+ * rather than being held in a Page, and ParseContext's script and style
+ * flags are maintained exactly as ContextAwareLexer does.
+ */
+public class StreamingLexer extends NodeUtils {
+
+	private HtmlTokenizer tokenizer = null;
+	private ParseContext context = null;
+
+	/**
+	 * @param in decoded document characters
+	 * @param context the ParseContext to maintain
+	 */
+	public StreamingLexer(Reader in, ParseContext context) {
+		this(new HtmlTokenizer(in), context);
+	}
+
+	/**
+	 * @param tokenizer the tokenizer to read from
+	 * @param context the ParseContext to maintain
+	 */
+	public StreamingLexer(HtmlTokenizer tokenizer, ParseContext context) {
+		this.tokenizer = tokenizer;
+		this.context = context;
+	}
+
+	/**
+	 * @return the next Node, or null at the end of the document
+	 * @throws IOException if reading the document fails
+	 */
+	public Node nextNode() throws IOException {
+		HtmlToken token = tokenizer.next();
+		if (token == null) {
+			return null;
+		}
+		switch (token.getType()) {
+		case HtmlToken.RAW_TEXT:
+			if (context.isInJS()) {
+				context.setInScriptText(true);
+				context.setInJS(false);
+			}
+			return new TextNode(token.getRaw());
+
+		case HtmlToken.TEXT:
+			return new TextNode(token.getRaw());
+
+		case HtmlToken.COMMENT:
+			return new RemarkNode(token.getText());
+
+		case HtmlToken.CDATA:
+			return cdataNode(token);
+
+		case HtmlToken.START_TAG:
+			if (!token.isEmptyElement()) {
+				if (token.isNamed(SCRIPT_TAG_NAME)) {
+					context.setInJS(true);
+				} else if (token.isNamed(STYLE_TAG_NAME)) {
+					context.setInCSS(true);
+				}
+			}
+			return tagNode(token);
+
+		case HtmlToken.END_TAG:
+			if (token.isNamed(SCRIPT_TAG_NAME)) {
+				context.setInJS(false);
+				context.setInScriptText(false);
+			} else if (token.isNamed(STYLE_TAG_NAME)) {
+				context.setInCSS(false);
+			}
+			return tagNode(token);
+
+		default:
+			return tagNode(token);
+		}
+	}
+
+	private static TagNode tagNode(HtmlToken token) {
+		int count = token.getSegmentCount();
+		Vector<Attribute> attributes = new Vector<Attribute>(count);
+		for (int i = 0; i < count; i++) {
+			if (token.getSegmentType(i) == HtmlToken.SEGMENT_WHITESPACE) {
+				attributes.add(new Attribute(token.getSegmentName(i)));
+			} else {
+				// not the four-argument constructor: it quotes unquoted
+				// values like "/a.gif", changing the markup.
+				Attribute attribute = new Attribute();
+				attribute.setName(token.getSegmentName(i));
+				attribute.setAssignment(token.getSegmentAssignment(i));
+				attribute.setValue(token.getSegmentValue(i));
+				attribute.setQuote(token.getSegmentQuote(i));
+				attributes.add(attribute);
+			}
+		}
+		TagNode node = new TagNode();
+		node.setAttributesEx(attributes);
+		return node;
+	}
+
+	// htmlparser delivers CDATA sections as a TagNode named "![CDATA[...]]"
+	private static TagNode cdataNode(HtmlToken token) {
+		String raw = token.getRaw();
+		Vector<Attribute> attributes = new Vector<Attribute>(1);
+		attributes.add(new Attribute(raw.substring(1, raw.length() - 1),
+				null, null, (char) 0));
+		TagNode node = new TagNode();
+		node.setAttributesEx(attributes);
+		return node;
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds.
+ * <p>Buckets are log-linear: each power of two is split into
+ * {@value #SUB_BUCKETS} equal sub-buckets, so any recorded value is known
+ * to within 12.5%, from 1ns up to more than an hour. Larger values are
+ * counted in the last bucket. Recording is a few atomic increments and
+ * never blocks, so it can be shared by all request threads.</p>
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	/** number of sub-buckets per power of two */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 41;
+	private static final int NUM_BUCKETS =
+		(MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos duration to add; negative values are counted as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(bucketIndex(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		long m;
+		while (nanos > (m = max.get())) {
+			if (max.compareAndSet(m, nanos)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return copy of the current state. Concurrent recording may make the
+	 * total count differ slightly from the sum of the bucket counts.
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[NUM_BUCKETS];
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return new Snapshot(counts, count.get(), sum.get(), max.get());
+	}
+
+	/**
+	 * forget everything recorded so far
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return NUM_BUCKETS - 1;
+		}
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) &
+			(SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return largest value that falls into bucket {@code index}
+	 */
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	/**
+	 * Immutable copy of a {@link LatencyHistogram}.
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * @return number of recorded values
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return total of all recorded values, in nanoseconds
+		 */
+		public long getSum() {
+			return sum;
+		}
+
+		/**
+		 * @return largest recorded value, in nanoseconds
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @param quantile between 0 and 1, e.g. 0.99
+		 * @return upper bound of the bucket holding the value at
+		 * {@code quantile}, never more than {@link #getMax()}; 0 if empty
+		 */
+		public long getValueAtQuantile(double quantile) {
+			long total = 0;
+			for (long c : counts) {
+				total += c;
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * total);
+			if (rank < 1) {
+				rank = 1;
+			}
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(bucketUpperBound(i), max);
+				}
+			}
+			return max;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.archive.wayback.util.webapp.AbstractRequestHandler;
+
+/**
+ * RequestHandler exposing {@link StageMetrics} histograms in the Prometheus
+ * text format, as a summary per AccessPoint, collection and stage, and a
+ * gauge of the largest time seen:
+ * <pre>
+ * wayback_stage_seconds{accesspoint="wayback",collection="-",stage="total",quantile="0.99"} 0.25
+ * wayback_stage_seconds_sum{accesspoint="wayback",collection="-",stage="total"} 12.5
+ * wayback_stage_seconds_count{accesspoint="wayback",collection="-",stage="total"} 100
+ * wayback_stage_seconds_max{accesspoint="wayback",collection="-",stage="total"} 1.5
+ * </pre>
+ * <p>Configuring this handler turns collection on, unless
+ * {@code enabled} is set to false. A POST request with {@code reset=true}
+ * discards the histograms after writing them; GET requests never do, so
+ * scrapers and browsers cannot wipe them by accident.</p>
+ */
+public class MetricsRequestHandler extends AbstractRequestHandler {
+	private static final String METRIC = "wayback_stage_seconds";
+	private static final String MAX_METRIC = METRIC + "_max";
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private double[] quantiles = { 0.5, 0.9, 0.99, 0.999 };
+
+	/**
+	 * Enable {@link StageMetrics} collection.
+	 */
+	public MetricsRequestHandler() {
+		StageMetrics.setEnabled(true);
+	}
+
+	/**
+	 * @return true if stage times are being collected
+	 */
+	public boolean isEnabled() {
+		return StageMetrics.isEnabled();
+	}
+
+	/**
+	 * @param enabled whether to collect stage times, default true
+	 */
+	public void setEnabled(boolean enabled) {
+		StageMetrics.setEnabled(enabled);
+	}
+
+	/**
+	 * @return the quantiles reported for each stage
+	 */
+	public double[] getQuantiles() {
+		return quantiles;
+	}
+
+	/**
+	 * @param quantiles the quantiles to report for each stage, each between
+	 * 0 and 1. Default 0.5, 0.9, 0.99 and 0.999.
+	 */
+	public void setQuantiles(double[] quantiles) {
+		this.quantiles = quantiles;
+	}
+
+	@Override
+	public boolean handleRequest(HttpServletRequest httpRequest,
+			HttpServletResponse httpResponse) throws ServletException,
+			IOException {
+
+		httpResponse.setContentType("text/plain; version=0.0.4");
+		httpResponse.setCharacterEncoding("UTF-8");
+		PrintWriter writer = httpResponse.getWriter();
+		writeMetrics(writer);
+		writer.flush();
+
+		if ("POST".equals(httpRequest.getMethod()) &&
+				"true".equals(httpRequest.getParameter("reset"))) {
+			StageMetrics.reset();
+		}
+		return true;
+	}
+
+	/**
+	 * Write all StageMetrics histograms in the Prometheus text format.
+	 * @param writer where to write
+	 */
+	public void writeMetrics(PrintWriter writer) {
+		// snapshot once, so the summary and the max agree:
+		List<String> labelList = new ArrayList<String>();
+		List<LatencyHistogram.Snapshot> snapshots =
+			new ArrayList<LatencyHistogram.Snapshot>();
+		for (StageMetrics.Segment segment : StageMetrics.getSegments()) {
+			for (Stage stage : Stage.values()) {
+				LatencyHistogram.Snapshot snapshot =
+					segment.getHistogram(stage).snapshot();
+				if (snapshot.getCount() > 0) {
+					labelList.add(labels(segment, stage));
+					snapshots.add(snapshot);
+				}
+			}
+		}
+
+		writer.println("# HELP " + METRIC +
+				" Time spent in each request processing stage.");
+		writer.println("# TYPE " + METRIC + " summary");
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < snapshots.size(); i++) {
+			String labels = labelList.get(i);
+			LatencyHistogram.Snapshot snapshot = snapshots.get(i);
+			for (double quantile : quantiles) {
+				sb.setLength(0);
+				sb.append(METRIC).append('{').append(labels);
+				sb.append(",quantile=\"").append(quantile).append("\"} ");
+				sb.append(seconds(snapshot.getValueAtQuantile(quantile)));
+				writer.println(sb.toString());
+			}
+			writer.println(METRIC + "_sum{" + labels + "} " +
+					seconds(snapshot.getSum()));
+			writer.println(METRIC + "_count{" + labels + "} " +
+					snapshot.getCount());
+		}
+
+		// a summary has no max, so it is a family of its own:
+		writer.println("# HELP " + MAX_METRIC +
+				" Longest time spent in each request processing stage.");
+		writer.println("# TYPE " + MAX_METRIC + " gauge");
+		for (int i = 0; i < snapshots.size(); i++) {
+			writer.println(MAX_METRIC + "{" + labelList.get(i) + "} " +
+					seconds(snapshots.get(i).getMax()));
+		}
+	}
+
+	private static String labels(StageMetrics.Segment segment, Stage stage) {
+		return "accesspoint=\"" + escape(segment.getAccessPoint()) +
+			"\",collection=\"" + escape(segment.getCollection()) +
+			"\",stage=\"" + stage.getLabel() + "\"";
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / NANOS_PER_SECOND;
+	}
+
+	static String escape(String value) {
+		StringBuilder sb = null;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			String replacement = null;
+			if (c == '\\') {
+				replacement = "\\\\";
+			} else if (c == '"') {
+				replacement = "\\\"";
+			} else if (c == '\n') {
+				replacement = "\\n";
+			}
+			if (replacement != null && sb == null) {
+				sb = new StringBuilder(value.length() + 8);
+				sb.append(value, 0, i);
+			}
+			if (sb != null) {
+				if (replacement != null) {
+					sb.append(replacement);
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb == null ? value : sb.toString();
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.metrics;
+
+/**
+ * Request processing stages timed by {@link StageMetrics}. Stages may nest
+ * (robots checks run inside the index query, for example), so their times
+ * do not add up to {@link #TOTAL}.
+ */
+public enum Stage {
+	/** ResourceIndex query, including filtering */
+	INDEX_QUERY,
+	/** robots.txt checks */
+	ROBOTS,
+	/** administrative / oracle exclusion checks */
+	EXCLUSION,
+	/** retrieval of ARC/WARC records from the ResourceStore */
+	RESOURCE_FETCH,
+	/** character set detection of text documents */
+	CHARSET_DETECTION,
+	/** parsing and rewriting of text documents */
+	REWRITE,
+	/** ReplayRenderer, including charset detection and rewriting */
+	RENDER,
+	/** whole request, within the AccessPoint */
+	TOTAL;
+
+	private final String label = name().toLowerCase();
+
+	/**
+	 * @return lower case name, as used in the metrics output
+	 */
+	public String getLabel() {
+		return label;
+	}
+}
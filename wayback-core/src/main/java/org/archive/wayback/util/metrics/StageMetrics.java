@@ -0,0 +1,321 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-stage request latency histograms, segmented by AccessPoint and
+ * collection.
+ * <p>The AccessPoint brackets each request with
+ * {@link #beginRequest(String, String)} and {@link #endRequest()}. Code
+ * anywhere below it times a stage with</p>
+ * <pre>
+ * long start = StageMetrics.start();
+ * try {
+ *     ...
+ * } finally {
+ *     StageMetrics.end(Stage.ROBOTS, start);
+ * }
+ * </pre>
+ * <p>Time spent in a stage is summed over the request, so a stage entered
+ * once per capture still gives one value per request, and each request
+ * records that value into the histogram of its segment. Time recorded
+ * outside of a request is dropped. Stages run for the request on other
+ * threads are timed through a {@link Branch}.</p>
+ * <p>Collection is off until {@link #setEnabled(boolean)} is called, usually
+ * by configuring a {@link MetricsRequestHandler}; while off, {@link #start()}
+ * and {@link #end(Stage, long)} only read a volatile flag.</p>
+ */
+public class StageMetrics {
+	private static final long NOT_TIMED = Long.MIN_VALUE;
+	private static final String NO_NAME = "-";
+
+	private static volatile boolean enabled = false;
+
+	private static final ConcurrentMap<String, Segment> segments =
+		new ConcurrentHashMap<String, Segment>();
+
+	private static final ThreadLocal<RequestTimes> current =
+		new ThreadLocal<RequestTimes>() {
+		@Override
+		protected RequestTimes initialValue() {
+			return new RequestTimes();
+		}
+	};
+
+	/**
+	 * Histograms of one AccessPoint / collection pair.
+	 */
+	public static class Segment {
+		private final String accessPoint;
+		private final String collection;
+		private final LatencyHistogram[] histograms;
+
+		Segment(String accessPoint, String collection) {
+			this.accessPoint = accessPoint;
+			this.collection = collection;
+			histograms = new LatencyHistogram[Stage.values().length];
+			for (int i = 0; i < histograms.length; i++) {
+				histograms[i] = new LatencyHistogram();
+			}
+		}
+
+		/**
+		 * @return AccessPoint bean name
+		 */
+		public String getAccessPoint() {
+			return accessPoint;
+		}
+
+		/**
+		 * @return collection bean name
+		 */
+		public String getCollection() {
+			return collection;
+		}
+
+		/**
+		 * @param stage Stage of interest
+		 * @return histogram of per-request time spent in {@code stage}
+		 */
+		public LatencyHistogram getHistogram(Stage stage) {
+			return histograms[stage.ordinal()];
+		}
+	}
+
+	/**
+	 * Per-thread totals for the request being handled.
+	 */
+	private static class RequestTimes {
+		Segment segment = null;
+		final long[] totals = new long[Stage.values().length];
+		final boolean[] timed = new boolean[totals.length];
+
+		void add(Stage stage, long nanos) {
+			int i = stage.ordinal();
+			totals[i] += nanos;
+			timed[i] = true;
+		}
+
+		void flush() {
+			for (int i = 0; i < totals.length; i++) {
+				if (timed[i]) {
+					segment.histograms[i].record(totals[i]);
+					totals[i] = 0;
+					timed[i] = false;
+				}
+			}
+			segment = null;
+		}
+	}
+
+	/**
+	 * Stage times of a request collected on another thread, such as a
+	 * {@link org.archive.wayback.webapp.StageExecutor} pool thread:
+	 * <pre>
+	 * final StageMetrics.Branch metrics = StageMetrics.branch();
+	 * result = stage.execute(new Callable() {
+	 *     public Object call() {
+	 *         metrics.enter();
+	 *         try {
+	 *             ...
+	 *         } finally {
+	 *             metrics.exit();
+	 *         }
+	 *     }
+	 * });
+	 * metrics.join();
+	 * </pre>
+	 */
+	public static final class Branch {
+		private final RequestTimes times = new RequestTimes();
+
+		private Branch(Segment segment) {
+			times.segment = segment;
+		}
+
+		/**
+		 * On the thread running the branch: add stages ended on this
+		 * thread to the branch, until {@link #exit()}.
+		 */
+		public void enter() {
+			if (times.segment != null) {
+				current.set(times);
+			}
+		}
+
+		/**
+		 * On the thread running the branch: stop adding stages to it.
+		 */
+		public void exit() {
+			if (times.segment != null) {
+				current.remove();
+			}
+		}
+
+		/**
+		 * On the thread of the request, once the branch has exited: add the
+		 * stage times of the branch to the request.
+		 */
+		public void join() {
+			if (times.segment == null) {
+				return;
+			}
+			RequestTimes request = current.get();
+			if (request.segment != times.segment) {
+				return;
+			}
+			for (int i = 0; i < times.totals.length; i++) {
+				if (times.timed[i]) {
+					request.totals[i] += times.totals[i];
+					request.timed[i] = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Branch for timing stages of the current request on another
+	 * thread, which does nothing if there is no current request
+	 */
+	public static Branch branch() {
+		return new Branch(enabled ? current.get().segment : null);
+	}
+
+	/**
+	 * @return true if stage times are being collected
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled whether to collect stage times
+	 */
+	public static void setEnabled(boolean enabled) {
+		StageMetrics.enabled = enabled;
+	}
+
+	/**
+	 * Start collecting stage times for a request on the current thread.
+	 * @param accessPoint name of the AccessPoint handling the request
+	 * @param collection name of its collection, may be null
+	 */
+	public static void beginRequest(String accessPoint, String collection) {
+		if (!enabled) {
+			return;
+		}
+		RequestTimes times = current.get();
+		times.segment = getSegment(accessPoint, collection);
+		for (int i = 0; i < times.totals.length; i++) {
+			times.totals[i] = 0;
+			times.timed[i] = false;
+		}
+	}
+
+	/**
+	 * Record the stage times collected since
+	 * {@link #beginRequest(String, String)}.
+	 */
+	public static void endRequest() {
+		if (!enabled) {
+			return;
+		}
+		RequestTimes times = current.get();
+		if (times.segment != null) {
+			times.flush();
+		}
+	}
+
+	/**
+	 * @return start time to pass to {@link #end(Stage, long)}
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : NOT_TIMED;
+	}
+
+	/**
+	 * Add the time since {@code start} to {@code stage} for the current
+	 * request.
+	 * @param stage Stage that has ended
+	 * @param start value returned by {@link #start()}
+	 */
+	public static void end(Stage stage, long start) {
+		if (start == NOT_TIMED) {
+			return;
+		}
+		long elapsed = System.nanoTime() - start;
+		RequestTimes times = current.get();
+		if (times.segment != null) {
+			times.add(stage, elapsed);
+		}
+	}
+
+	/**
+	 * @param accessPoint AccessPoint name, may be null
+	 * @param collection collection name, may be null
+	 * @return the Segment for the pair, created if needed
+	 */
+	public static Segment getSegment(String accessPoint, String collection) {
+		if (accessPoint == null) {
+			accessPoint = NO_NAME;
+		}
+		if (collection == null) {
+			collection = NO_NAME;
+		}
+		String key = accessPoint + '\n' + collection;
+		Segment segment = segments.get(key);
+		if (segment == null) {
+			segment = new Segment(accessPoint, collection);
+			Segment prev = segments.putIfAbsent(key, segment);
+			if (prev != null) {
+				segment = prev;
+			}
+		}
+		return segment;
+	}
+
+	/**
+	 * @return all Segments, ordered by AccessPoint then collection name
+	 */
+	public static List<Segment> getSegments() {
+		List<Segment> list = new ArrayList<Segment>(segments.values());
+		Collections.sort(list, new Comparator<Segment>() {
+			public int compare(Segment a, Segment b) {
+				int cmp = a.accessPoint.compareTo(b.accessPoint);
+				return cmp != 0 ? cmp : a.collection.compareTo(b.collection);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Discard all Segments and their histograms.
+	 */
+	public static void reset() {
+		segments.clear();
+	}
+}
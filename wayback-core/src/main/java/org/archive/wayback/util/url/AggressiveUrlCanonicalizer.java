@@ -52,7 +52,7 @@ public class AggressiveUrlCanonicalizer implements UrlCanonicalizer {
      */
     private static final Pattern STRIP_WWW_REGEX =
         Pattern.compile("(?i)^(?:https?://)(www[0-9]*\\.)(?:[^/]*/.+)$");
-    private static final String STRIP_WWW_CHOOSER = "/www";
+    static final String STRIP_WWW_CHOOSER = "/www";
 //    /**
 //     * Strip leading 'www44.', 'www3.', etc.
 //     */
@@ -153,7 +153,8 @@ public class AggressiveUrlCanonicalizer implements UrlCanonicalizer {
     private static final String STRIP_CFSESSION_CHOOSER = "cftoken=";
         
 	
-	private static final String choosers[] = {
+	// also used by FastUrlCanonicalizer to pick URLs it cannot handle:
+	static final String choosers[] = {
 			STRIP_USERINFO_CHOOSER,
 			STRIP_WWW_CHOOSER,
 			STRIP_PHPSESSION_ID_CHOOSER,
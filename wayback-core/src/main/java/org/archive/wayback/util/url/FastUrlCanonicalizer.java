@@ -0,0 +1,323 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.url;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.httpclient.URIException;
+
+/**
+ * AggressiveUrlCanonicalizer which computes keys for common URLs in a single
+ * pass over the URL, without regular expressions or UsableURIs.
+ * <p>URLs which are handled are plain ASCII http or https URLs, or URLs
+ * without a scheme, with a host name, optional port, path and query made
+ * of characters which UsableURI would neither escape nor unescape, no
+ * "." or ".." path segments, and none of the session id parameters removed
+ * by {@link AggressiveUrlCanonicalizer#canonicalize(String)}. For these,
+ * the key is the same as AggressiveUrlCanonicalizer would return. All other
+ * URLs are passed to AggressiveUrlCanonicalizer.</p>
+ */
+public class FastUrlCanonicalizer extends AggressiveUrlCanonicalizer {
+
+	private static final String HTTP_SCHEME = UrlOperations.HTTP_SCHEME;
+	private static final String HTTPS_SCHEME = UrlOperations.HTTPS_SCHEME;
+
+	private static final int MAX_PORT = 65535;
+
+	// characters which UsableURI leaves as is in paths and queries, except
+	// '@', which makes canonicalize() strip userinfo, and '?'
+	private static final boolean[] PLAIN = new boolean[128];
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			PLAIN[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			PLAIN[c] = true;
+		}
+		for (char c : "-._~!*;:&=+,/".toCharArray()) {
+			PLAIN[c] = true;
+		}
+	}
+
+	// choosers of URLs canonicalize() may strip, except for the "www"
+	// prefix, which is handled in fastUrlStringToKey():
+	static final String[] NON_WWW_CHOOSERS;
+	static {
+		List<String> nonWww = new ArrayList<String>();
+		for (String chooser : choosers) {
+			if (!chooser.equals(STRIP_WWW_CHOOSER)) {
+				nonWww.add(chooser);
+			}
+		}
+		NON_WWW_CHOOSERS = nonWww.toArray(new String[nonWww.size()]);
+	}
+
+	private static final ThreadLocal<StringBuilder> SCRATCH =
+		new ThreadLocal<StringBuilder>() {
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	@Override
+	public String urlStringToKey(final String urlString) throws URIException {
+		String key = fastUrlStringToKey(urlString);
+		if (key != null) {
+			return key;
+		}
+		return super.urlStringToKey(urlString);
+	}
+
+	/**
+	 * @param urlString URL to canonicalize
+	 * @return key for {@code urlString}, or null if it is not a URL
+	 * this class handles
+	 */
+	protected String fastUrlStringToKey(final String urlString) {
+		if (urlString == null) {
+			return null;
+		}
+		final int len = urlString.length();
+		if (len == 0 || urlString.startsWith("dns:")) {
+			return null;
+		}
+		StringBuilder sb = SCRATCH.get();
+		sb.setLength(0);
+
+		// one pass to lowercase, check characters and find the parts:
+		int start = 0;
+		boolean https = false;
+		if (urlString.regionMatches(true, 0, HTTP_SCHEME, 0,
+				HTTP_SCHEME.length())) {
+			start = HTTP_SCHEME.length();
+		} else if (urlString.regionMatches(true, 0, HTTPS_SCHEME, 0,
+				HTTPS_SCHEME.length())) {
+			start = HTTPS_SCHEME.length();
+			https = true;
+		}
+		int portStart = -1;
+		int pathStart = -1;
+		int queryStart = -1;
+		int lastQuery = -1;
+		for (int i = start; i < len; i++) {
+			char c = urlString.charAt(i);
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			} else if (c >= 128) {
+				return null;
+			} else if (c == '?') {
+				if (pathStart < 0) {
+					return null;
+				}
+				if (queryStart < 0) {
+					queryStart = sb.length();
+				}
+				lastQuery = sb.length();
+				sb.append(c);
+				continue;
+			} else if (!PLAIN[c]) {
+				return null;
+			}
+			if (pathStart < 0) {
+				if (c == '/') {
+					pathStart = sb.length();
+				} else if (c == ':') {
+					if (portStart >= 0) {
+						return null;
+					}
+					portStart = sb.length();
+				}
+			}
+			sb.append(c);
+		}
+		// leave URLs which canonicalize() may strip to it:
+		for (String chooser : NON_WWW_CHOOSERS) {
+			if (sb.indexOf(chooser) >= 0) {
+				return null;
+			}
+		}
+
+		// what canonicalize() does to the end of the query:
+		int end = sb.length();
+		if (lastQuery > 0) {
+			if (lastQuery == end - 1) {
+				end--;
+			} else if (sb.charAt(lastQuery + 1) == '&') {
+				if (end == lastQuery + 2) {
+					end -= 2;
+				} else {
+					sb.deleteCharAt(lastQuery + 1);
+					end--;
+				}
+			} else if (sb.charAt(end - 1) == '&') {
+				end--;
+			}
+			if (queryStart >= end) {
+				// no query left
+				queryStart = -1;
+			} else if (queryStart == end - 1) {
+				// empty query
+				return null;
+			}
+		}
+
+		int authorityEnd = pathStart >= 0 ? pathStart : end;
+		int hostEnd = portStart >= 0 ? portStart : authorityEnd;
+
+		// host, less one "www\d*." prefix:
+		int hostStart = wwwPrefixLength(sb, 0, hostEnd);
+		if (wwwPrefixLength(sb, hostStart, hostEnd) > 0
+				|| !isPlainHost(sb, hostStart, hostEnd)) {
+			return null;
+		}
+
+		int port = -1;
+		if (portStart >= 0) {
+			port = parsePort(sb, portStart + 1, authorityEnd);
+			if (port < 0) {
+				return null;
+			}
+			if (port == (https ? 443 : 80)) {
+				port = -1;
+			}
+		}
+
+		StringBuilder key = new StringBuilder(end - hostStart + 1);
+		key.append(sb, hostStart, hostEnd);
+		if (port >= 0) {
+			key.append(':').append(port);
+		}
+		if (pathStart < 0) {
+			key.append('/');
+			return key.toString();
+		}
+		int pathEnd = queryStart >= 0 ? queryStart : end;
+		if (!appendPath(sb, pathStart, pathEnd, key)) {
+			return null;
+		}
+		if (queryStart >= 0) {
+			key.append(sb, queryStart, end);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return length of a "www\d*." prefix of sb[start,end), or 0
+	 */
+	private static int wwwPrefixLength(StringBuilder sb, int start, int end) {
+		if (end - start < 4 || sb.charAt(start) != 'w'
+				|| sb.charAt(start + 1) != 'w' || sb.charAt(start + 2) != 'w') {
+			return 0;
+		}
+		int i = start + 3;
+		while (i < end && sb.charAt(i) >= '0' && sb.charAt(i) <= '9') {
+			i++;
+		}
+		if (i < end && sb.charAt(i) == '.') {
+			return i + 1 - start;
+		}
+		return 0;
+	}
+
+	/**
+	 * @return true if sb[start,end) is a host name which UsableURI would
+	 * leave as is: non-empty labels of letters, digits and inner '-', not all
+	 * numeric, and not IDN encoded
+	 */
+	private static boolean isPlainHost(StringBuilder sb, int start, int end) {
+		if (start >= end || end - start > 253) {
+			return false;
+		}
+		boolean hasLetter = false;
+		int labelStart = start;
+		for (int i = start; i <= end; i++) {
+			char c = (i == end) ? '.' : sb.charAt(i);
+			if (c == '.') {
+				int labelLen = i - labelStart;
+				if (labelLen == 0 || labelLen > 63
+						|| sb.charAt(labelStart) == '-'
+						|| sb.charAt(i - 1) == '-') {
+					return false;
+				}
+				if (labelLen > 3 && sb.charAt(labelStart) == 'x'
+						&& sb.charAt(labelStart + 1) == 'n'
+						&& sb.charAt(labelStart + 2) == '-'
+						&& sb.charAt(labelStart + 3) == '-') {
+					return false;
+				}
+				labelStart = i + 1;
+			} else if (c >= 'a' && c <= 'z') {
+				hasLetter = true;
+			} else if (!(c >= '0' && c <= '9') && c != '-') {
+				return false;
+			}
+		}
+		return hasLetter;
+	}
+
+	/**
+	 * @return port in sb[start,end), or -1 if it is not a plain port number
+	 */
+	private static int parsePort(StringBuilder sb, int start, int end) {
+		if (start >= end || end - start > 5 || sb.charAt(start) == '0') {
+			return -1;
+		}
+		int port = 0;
+		for (int i = start; i < end; i++) {
+			char c = sb.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			port = port * 10 + (c - '0');
+		}
+		return port <= MAX_PORT ? port : -1;
+	}
+
+	/**
+	 * append sb[start,end) to key, collapsing runs of '/'
+	 * @return false if the path has "." or ".." segments
+	 */
+	private static boolean appendPath(StringBuilder sb, int start, int end,
+			StringBuilder key) {
+		int segmentStart = start + 1;
+		for (int i = start; i < end; i++) {
+			char c = sb.charAt(i);
+			if (c == '/') {
+				if (isDotSegment(sb, segmentStart, i)) {
+					return false;
+				}
+				segmentStart = i + 1;
+				if (key.charAt(key.length() - 1) == '/') {
+					continue;
+				}
+			}
+			key.append(c);
+		}
+		return !isDotSegment(sb, segmentStart, end);
+	}
+
+	private static boolean isDotSegment(StringBuilder sb, int start, int end) {
+		int len = end - start;
+		return (len == 1 && sb.charAt(start) == '.')
+			|| (len == 2 && sb.charAt(start) == '.'
+				&& sb.charAt(start + 1) == '.');
+	}
+}
@@ -30,6 +30,10 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,10 +75,19 @@ import org.archive.wayback.exception.WaybackException;
 import org.archive.wayback.memento.DefaultMementoHandler;
 import org.archive.wayback.memento.MementoHandler;
 import org.archive.wayback.memento.MementoUtils;
+import org.archive.wayback.replay.cache.CachedReplay;
+import org.archive.wayback.replay.cache.RecordingHttpServletResponse;
+import org.archive.wayback.replay.cache.ReplayCache;
+import org.archive.wayback.replay.template.InsertTemplateRegistry;
+import org.archive.wayback.resourceindex.RevisitPayloadCache;
+import org.archive.wayback.resourceindex.filterfactory.AccessPointFilterPlan;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.archive.wayback.resourceindex.filters.WARCRevisitAnnotationFilter;
+import org.archive.wayback.resourcestore.PooledBlockReaders;
 import org.archive.wayback.resourcestore.resourcefile.WarcResource;
 import org.archive.wayback.util.Timestamp;
+import org.archive.wayback.util.metrics.Stage;
+import org.archive.wayback.util.metrics.StageMetrics;
 import org.archive.wayback.util.operator.BooleanOperator;
 import org.archive.wayback.util.url.UrlOperations;
 import org.archive.wayback.util.webapp.AbstractRequestHandler;
@@ -148,6 +161,10 @@ implements ShutdownListener {
 	private boolean enableErrorMsgHeader = false;
 	private boolean enablePerfStatsHeader = false;
 	private boolean enableWarcFileHeader = false;
+	
+	private ReplayCache replayCache = null;
+	private RevisitPayloadCache revisitPayloadCache = null;
+	private InsertTemplateRegistry insertTemplates = null;
 	private boolean enableMemento = true;
 		
 	private LiveWebRedirector liveWebRedirector;
@@ -190,6 +207,11 @@ implements ShutdownListener {
 	
 	private boolean fixedEmbeds = false;
 
+	private StageExecutor indexStage = null;
+	private StageExecutor fetchStage = null;
+
+	private volatile AccessPointFilterPlan filterPlan = null;
+
 	public void init() {
 		checkAccessPointAware(collection,exception,query,parser,replay,
 				uriConverter,exclusionFactory, authentication, filterFactory);
@@ -252,6 +274,9 @@ implements ShutdownListener {
 		WaybackRequest wbRequest = null;
 		boolean handled = false;
 
+		StageMetrics.beginRequest(getBeanName(),
+			(collection != null) ? collection.getBeanName() : null);
+		long totalStart = StageMetrics.start();
 		try {
 			PerfStats.clearAll();
 			
@@ -362,6 +387,8 @@ implements ShutdownListener {
 		 } finally {      
 	        //Slightly hacky, but ensures that all block loaders are closed
 	        ZipNumBlockLoader.closeAllReaders();
+	        StageMetrics.end(Stage.TOTAL, totalStart);
+	        StageMetrics.endRequest();
 	      }
 		
 		return handled;
@@ -546,18 +573,62 @@ implements ShutdownListener {
 		return false;
 	}
 	
-	public SearchResults queryIndex(WaybackRequest wbRequest) throws ResourceIndexNotAvailableException, ResourceNotInArchiveException, BadQueryException, AccessControlException, ConfigurationException
+	public SearchResults queryIndex(final WaybackRequest wbRequest) throws ResourceIndexNotAvailableException, ResourceNotInArchiveException, BadQueryException, AccessControlException, ConfigurationException
 	{
+		long start = StageMetrics.start();
 		try {
 			PerfStats.timeStart(PerfStat.IndexQueryTotal);
-			return getCollection().getResourceIndex().query(wbRequest);
+			StageExecutor stage = getIndexStage();
+			if (stage == null) {
+				return getCollection().getResourceIndex().query(wbRequest);
+			}
+			final StageMetrics.Branch metrics = StageMetrics.branch();
+			SearchResults results = stage.execute(new Callable<SearchResults>() {
+				public SearchResults call() throws Exception {
+					metrics.enter();
+					try {
+						return getCollection().getResourceIndex().query(wbRequest);
+					} finally {
+						// block readers are per thread, and handleRequest()
+						// only closes those of the container thread. Results
+						// are read in full, so none is still in use:
+						ZipNumBlockLoader.closeAllReaders();
+						metrics.exit();
+					}
+				}
+			});
+			metrics.join();
+			return results;
+		} catch (RejectedExecutionException e) {
+			throw new ResourceIndexNotAvailableException(e.getMessage());
+		} catch (TimeoutException e) {
+			throw new ResourceIndexNotAvailableException(e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceIndexNotAvailableException("Interrupted");
+		} catch (ExecutionException e) {
+			WaybackException cause = stageFailure(e);
+			if (cause instanceof ResourceIndexNotAvailableException) {
+				throw (ResourceIndexNotAvailableException)cause;
+			} else if (cause instanceof ResourceNotInArchiveException) {
+				throw (ResourceNotInArchiveException)cause;
+			} else if (cause instanceof BadQueryException) {
+				throw (BadQueryException)cause;
+			} else if (cause instanceof AccessControlException) {
+				throw (AccessControlException)cause;
+			} else if (cause instanceof ConfigurationException) {
+				throw (ConfigurationException)cause;
+			}
+			throw new ResourceIndexNotAvailableException(cause.getMessage());
 		} finally {
 			PerfStats.timeEnd(PerfStat.IndexQueryTotal);			
+			StageMetrics.end(Stage.INDEX_QUERY, start);
 		}
 	}
 	
 	protected Resource getResource(CaptureSearchResult closest, Set<String> skipFiles) throws ResourceNotAvailableException, ConfigurationException
 	{		
+		long start = StageMetrics.start();
 		try {
 			PerfStats.timeStart(PerfStat.WArcResource);
 			
@@ -565,10 +636,64 @@ implements ShutdownListener {
 				throw new ResourceNotAvailableException("Revisit: Skipping already failed " + closest.getFile());
 			}
 			
-			return getCollection().getResourceStore().retrieveResource(closest);
+			StageExecutor stage = getFetchStage();
+			if (stage == null) {
+				return getCollection().getResourceStore().retrieveResource(closest);
+			}
+			final CaptureSearchResult capture = closest;
+			final StageMetrics.Branch metrics = StageMetrics.branch();
+			Resource resource = stage.execute(new Callable<Resource>() {
+				public Resource call() throws Exception {
+					metrics.enter();
+					try {
+						return getCollection().getResourceStore().retrieveResource(capture);
+					} finally {
+						// the Resource streams from a block reader of this
+						// thread, released once it and earlier ones are closed:
+						PooledBlockReaders.release();
+						metrics.exit();
+					}
+				}
+			});
+			metrics.join();
+			return resource;
+		} catch (RejectedExecutionException e) {
+			throw new ResourceNotAvailableException(e.getMessage());
+		} catch (TimeoutException e) {
+			throw new ResourceNotAvailableException(e.getMessage(), closest.getFile());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceNotAvailableException("Interrupted");
+		} catch (ExecutionException e) {
+			WaybackException cause = stageFailure(e);
+			if (cause instanceof ResourceNotAvailableException) {
+				throw (ResourceNotAvailableException)cause;
+			} else if (cause instanceof ConfigurationException) {
+				throw (ConfigurationException)cause;
+			}
+			throw new ResourceNotAvailableException(cause.getMessage());
 		} finally {
 			PerfStats.timeEnd(PerfStat.WArcResource);
+			StageMetrics.end(Stage.RESOURCE_FETCH, start);
+		}
+	}
+	
+	/**
+	 * @param e failure of a task run on a StageExecutor
+	 * @return the WaybackException thrown by the task
+	 * @throws RuntimeException if the task threw one
+	 * @throws Error if the task threw one
+	 */
+	private static WaybackException stageFailure(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException)cause;
+		} else if (cause instanceof Error) {
+			throw (Error)cause;
+		} else if (cause instanceof WaybackException) {
+			return (WaybackException)cause;
 		}
+		throw new RuntimeException(cause);
 	}
 	
 	public boolean isWaybackReferer(WaybackRequest wbRequest, String path)
@@ -698,6 +823,8 @@ implements ShutdownListener {
 			Resource httpHeadersResource = null;
 			Resource payloadResource = null;
 			boolean isRevisit = false;
+			ReplayCache cache = getReplayCache();
+			String cacheKey = null;
 			
 			try {
 				counter++;
@@ -733,10 +860,33 @@ implements ShutdownListener {
 					handleReplayRedirect(wbRequest, httpResponse, captureResults, closest);
 				}			
 				
+				// Serve a previously rendered copy of this capture, if cached
+				if ((cache != null) && (counter == 1)) {
+					cacheKey = cache.makeKey(httpRequest, wbRequest, closest, getUriConverter(), captureResults);
+					CachedReplay cached = cache.get(cacheKey);
+					if (cached != null) {
+						addCaptureHeaders(httpResponse, wbRequest, captureResults, closest, closest.isDuplicateDigest());
+						cached.writeTo(httpResponse);
+						p.retrieved();
+						p.rendered();
+						p.write(wbRequest.getReplayTimestamp() + " " +
+								wbRequest.getRequestUrl());
+						break;
+					}
+				}
+				
 				// If revisit, may load two resources separately
 				if (closest.isDuplicateDigest()) {
 					isRevisit = true;
 					
+					// Payload location may be known from an earlier query or replay,
+					// if this AccessPoint's file filters allow it
+					if ((closest.getDuplicatePayloadFile() == null) &&
+							(getRevisitPayloadCache() != null)) {
+						getRevisitPayloadCache().resolve(closest,
+								getFilterPlan().getSharedFilters());
+					}
+					
 					// If the payload record is known and it failed before with this payload, don't try
 					// loading the header resource even.. outcome will likely be same
 					if ((closest.getDuplicatePayloadFile() != null) &&
@@ -797,6 +947,9 @@ implements ShutdownListener {
 				} else {
 					httpHeadersResource = getResource(closest, skipFiles);
 					payloadResource = httpHeadersResource;
+					if (getRevisitPayloadCache() != null) {
+						getRevisitPayloadCache().remember(closest);
+					}
 				}
 				
 				// Ensure that we are not self-redirecting!
@@ -818,21 +971,22 @@ implements ShutdownListener {
 				ReplayRenderer renderer = 
 					getReplay().getRenderer(wbRequest, closest, httpHeadersResource, payloadResource);
 				
-				if (this.isEnableWarcFileHeader() && (warcFileHeader != null)) {
-					if (isRevisit && (closest.getDuplicatePayloadFile() != null)) {
-						httpResponse.addHeader(warcFileHeader, closest.getDuplicatePayloadFile());
+				addCaptureHeaders(httpResponse, wbRequest, captureResults, closest, isRevisit);
+				
+				long renderStart = StageMetrics.start();
+				try {
+					if (cacheKey != null) {
+						RecordingHttpServletResponse recorder = cache.startRecording(httpResponse);
+						renderer.renderResource(httpRequest, recorder, wbRequest,
+								closest, httpHeadersResource, payloadResource, getUriConverter(), captureResults);
+						cache.finishRecording(cacheKey, recorder);
 					} else {
-						httpResponse.addHeader(warcFileHeader, closest.getFile());
+						renderer.renderResource(httpRequest, httpResponse, wbRequest,
+								closest, httpHeadersResource, payloadResource, getUriConverter(), captureResults);
 					}
+				} finally {
+					StageMetrics.end(Stage.RENDER, renderStart);
 				}
-				
-				// Memento URL-M response
-				if (this.isEnableMemento()) {
-					MementoUtils.addMementoHeaders(httpResponse, captureResults, closest, wbRequest);
-				}
-		
-				renderer.renderResource(httpRequest, httpResponse, wbRequest,
-						closest, httpHeadersResource, payloadResource, getUriConverter(), captureResults);
 			
 				p.rendered();
 				p.write(wbRequest.getReplayTimestamp() + " " +
@@ -912,6 +1066,27 @@ implements ShutdownListener {
 		}
 	}
 	
+	/**
+	 * Add the headers identifying the capture being replayed: the optional
+	 * WARC filename header, and Memento headers if enabled.
+	 */
+	protected void addCaptureHeaders(HttpServletResponse httpResponse,
+			WaybackRequest wbRequest, CaptureSearchResults captureResults,
+			CaptureSearchResult closest, boolean isRevisit) {
+		if (this.isEnableWarcFileHeader() && (warcFileHeader != null)) {
+			if (isRevisit && (closest.getDuplicatePayloadFile() != null)) {
+				httpResponse.addHeader(warcFileHeader, closest.getDuplicatePayloadFile());
+			} else {
+				httpResponse.addHeader(warcFileHeader, closest.getFile());
+			}
+		}
+		
+		// Memento URL-M response
+		if (this.isEnableMemento()) {
+			MementoUtils.addMementoHeaders(httpResponse, captureResults, closest, wbRequest);
+		}
+	}
+	
 	protected CaptureSearchResult findNextClosest(CaptureSearchResult currentClosest, CaptureSearchResults results, long requestMS)
 	{
 		CaptureSearchResult prev = currentClosest.getPrevResult();
@@ -1050,6 +1225,11 @@ implements ShutdownListener {
 			}
 			CaptureSearchResults payloadCaptureResults = (CaptureSearchResults) results;
 			payloadLocation = getReplay().getClosest(wbr, payloadCaptureResults);
+			
+			if ((payloadLocation != null) && (getRevisitPayloadCache() != null)) {
+				getRevisitPayloadCache().remember(closest.getUrlKey(),
+						closest.getDigest(), payloadLocation);
+			}
 		}
 		
 //		if (payloadLocation != null) {
@@ -1172,6 +1352,12 @@ implements ShutdownListener {
 		if(exclusionFactory != null) {
 			exclusionFactory.shutdown();
 		}
+		if(indexStage != null) {
+			indexStage.shutdown();
+		}
+		if(fetchStage != null) {
+			fetchStage.shutdown();
+		}
 	}
 	
 	protected void closeResources(Resource payloadResource, Resource httpHeadersResource)
@@ -1483,6 +1669,7 @@ implements ShutdownListener {
 	 */
 	public void setFilePatterns(List<String> filePatterns) {
 		this.filePatterns = filePatterns;
+		filterPlan = null;
 	}
 
 	/**
@@ -1500,6 +1687,7 @@ implements ShutdownListener {
 	 */
 	public void setFileIncludePrefixes(List<String> fileIncludePrefixes) {
 		this.fileIncludePrefixes = fileIncludePrefixes;
+		filterPlan = null;
 	}
 
 	/**
@@ -1517,6 +1705,7 @@ implements ShutdownListener {
 	 */
 	public void setFileExcludePrefixes(List<String> fileExcludePrefixes) {
 		this.fileExcludePrefixes = fileExcludePrefixes;
+		filterPlan = null;
 	}
 
 
@@ -1706,6 +1895,7 @@ implements ShutdownListener {
 	 */
 	public void setEmbargoMS(long ms) {
 		this.embargoMS = ms;
+		filterPlan = null;
 	}
 
 	/**
@@ -1733,6 +1923,7 @@ implements ShutdownListener {
 	 */
 	public void setFilterFactory(CustomResultFilterFactory filterFactory) {
 		this.filterFactory = filterFactory;
+		filterPlan = null;
 	}
 
 	/**
@@ -1847,4 +2038,81 @@ implements ShutdownListener {
 	public void setMementoHandler(MementoHandler mementoHandler) {
 		this.mementoHandler = mementoHandler;
 	}
+
+	public ReplayCache getReplayCache() {
+		return replayCache;
+	}
+
+	/**
+	 * @param replayCache optional cache of rendered replay responses for
+	 * frequently requested captures
+	 */
+	public void setReplayCache(ReplayCache replayCache) {
+		this.replayCache = replayCache;
+	}
+
+	public RevisitPayloadCache getRevisitPayloadCache() {
+		return revisitPayloadCache;
+	}
+
+	/**
+	 * @param revisitPayloadCache optional cache of revisit payload locations,
+	 * consulted before loading the whole timeline of a URL again to find the
+	 * original of a revisit. On a CompositeAccessPoint, it sets the size of
+	 * the separate cache each collection gets.
+	 */
+	public void setRevisitPayloadCache(RevisitPayloadCache revisitPayloadCache) {
+		this.revisitPayloadCache = revisitPayloadCache;
+	}
+
+	public InsertTemplateRegistry getInsertTemplates() {
+		return insertTemplates;
+	}
+
+	/**
+	 * @param insertTemplates optional precompiled templates rendered in
+	 * place of banner/toolbar insert JSPs during replay
+	 */
+	public void setInsertTemplates(InsertTemplateRegistry insertTemplates) {
+		this.insertTemplates = insertTemplates;
+	}
+
+	/**
+	 * @return the capture filters of this AccessPoint, compiled from its
+	 * current configuration on first use
+	 */
+	public AccessPointFilterPlan getFilterPlan() {
+		AccessPointFilterPlan plan = filterPlan;
+		if (plan == null) {
+			plan = new AccessPointFilterPlan(this);
+			filterPlan = plan;
+		}
+		return plan;
+	}
+
+	public StageExecutor getIndexStage() {
+		return indexStage;
+	}
+
+	/**
+	 * @param indexStage optional bounded pool to run index queries on, so
+	 * a slow index rejects or times out requests instead of holding every
+	 * container thread
+	 */
+	public void setIndexStage(StageExecutor indexStage) {
+		this.indexStage = indexStage;
+	}
+
+	public StageExecutor getFetchStage() {
+		return fetchStage;
+	}
+
+	/**
+	 * @param fetchStage optional bounded pool to fetch resources from the
+	 * ResourceStore on, so slow storage rejects or times out requests
+	 * instead of holding every container thread
+	 */
+	public void setFetchStage(StageExecutor fetchStage) {
+		this.fetchStage = fetchStage;
+	}
 }
@@ -250,7 +250,9 @@ public class LiveWebAccessPoint extends LiveWebRequestHandler {
 			result.setMimeType(ar.getMetaData().getMimetype());
 			return r;
 		}
-		
+
+		// not returned to the caller, so release the live web connection:
+		r.close();
 		return null;
 	}
 	
@@ -0,0 +1,276 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.webapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Bounded thread pool for one stage of request handling, such as index
+ * queries or resource fetches, which keeps a slow backend from tying up
+ * every container thread.
+ * <p>At most {@code maxThreads} tasks of the stage run at once, and at most
+ * {@code maxQueued} more wait for a thread. Tasks submitted beyond that are
+ * rejected at once. The calling thread waits at most {@code timeoutMS} for
+ * the result, queueing included, and then gives up on the task: it is
+ * interrupted, and a Closeable result which arrives after all is closed.</p>
+ * <p>Tasks run on pool threads, so ThreadLocal state of the calling thread
+ * is not seen by them: tasks pass it along themselves, as AccessPoint does
+ * with a {@link org.archive.wayback.util.metrics.StageMetrics.Branch}.</p>
+ */
+public class StageExecutor {
+	private static final Logger LOGGER =
+		Logger.getLogger(StageExecutor.class.getName());
+
+	private String name = "stage";
+	private int maxThreads = 32;
+	private int maxQueued = 32;
+	private long timeoutMS = 30000;
+
+	private ThreadPoolExecutor executor = null;
+
+	private final AtomicLong completed = new AtomicLong(0);
+	private final AtomicLong rejected = new AtomicLong(0);
+	private final AtomicLong timedOut = new AtomicLong(0);
+
+	/**
+	 * Run {@code task} on the stage pool, and wait for its result.
+	 * @param task work of the stage
+	 * @return result of {@code task}
+	 * @throws RejectedExecutionException if the stage is saturated
+	 * @throws TimeoutException if {@code task} did not complete in time
+	 * @throws ExecutionException if {@code task} threw an exception, which
+	 * is its cause
+	 * @throws InterruptedException if the calling thread was interrupted
+	 */
+	public <T> T execute(Callable<T> task) throws TimeoutException,
+			ExecutionException, InterruptedException {
+		StageTask<T> stageTask = new StageTask<T>(task);
+		Future<T> future;
+		try {
+			future = getExecutor().submit(stageTask);
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw new RejectedExecutionException("Stage " + name +
+					" saturated: " + maxThreads + " running, " + maxQueued +
+					" queued");
+		}
+		try {
+			T result = future.get(timeoutMS, TimeUnit.MILLISECONDS);
+			completed.incrementAndGet();
+			return result;
+		} catch (TimeoutException e) {
+			if (!stageTask.abandon()) {
+				// completed while we gave up:
+				completed.incrementAndGet();
+				return future.get();
+			}
+			future.cancel(true);
+			timedOut.incrementAndGet();
+			throw new TimeoutException("Stage " + name + " timed out after "
+					+ timeoutMS + "ms");
+		} catch (InterruptedException e) {
+			if (stageTask.abandon()) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Callable which closes its result if nobody is waiting for it anymore.
+	 */
+	private static class StageTask<T> implements Callable<T> {
+		private final Callable<T> task;
+		private boolean delivered = false;
+		private boolean abandoned = false;
+
+		StageTask(Callable<T> task) {
+			this.task = task;
+		}
+
+		public T call() throws Exception {
+			T result = task.call();
+			synchronized (this) {
+				if (!abandoned) {
+					delivered = true;
+					return result;
+				}
+			}
+			if (result instanceof Closeable) {
+				try {
+					((Closeable) result).close();
+				} catch (IOException e) {
+					LOGGER.warning("Failed to close abandoned result: " +
+							e.getMessage());
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return false if the result was already delivered
+		 */
+		synchronized boolean abandon() {
+			if (delivered) {
+				return false;
+			}
+			abandoned = true;
+			return true;
+		}
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60,
+					TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+							Math.max(1, maxQueued)),
+					new StageThreadFactory(name));
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	/**
+	 * stop the stage thread pool, interrupting running tasks.
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private static class StageThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		StageThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Stage-" + name + "-" +
+					count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * @return summary of stage load and outcomes
+	 */
+	public String getStatus() {
+		StringBuilder sb = new StringBuilder(name);
+		synchronized (this) {
+			if (executor != null) {
+				sb.append(" active=").append(executor.getActiveCount());
+				sb.append(" queued=").append(executor.getQueue().size());
+			}
+		}
+		sb.append(" completed=").append(completed.get());
+		sb.append(" rejected=").append(rejected.get());
+		sb.append(" timedOut=").append(timedOut.get());
+		return sb.toString();
+	}
+
+	/**
+	 * @return number of tasks rejected because the stage was saturated
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return number of tasks given up on after timeoutMS
+	 */
+	public long getTimedOutCount() {
+		return timedOut.get();
+	}
+
+	/**
+	 * @return name of the stage, used in thread names and messages
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name name of the stage, used in thread names and messages
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return maximum number of tasks running at once
+	 */
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * @param maxThreads maximum number of tasks running at once
+	 */
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * @return maximum number of tasks waiting for a thread
+	 */
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+
+	/**
+	 * @param maxQueued maximum number of tasks waiting for a thread
+	 */
+	public void setMaxQueued(int maxQueued) {
+		this.maxQueued = maxQueued;
+	}
+
+	/**
+	 * @return milliseconds a caller waits for a task, queueing included
+	 */
+	public long getTimeoutMS() {
+		return timeoutMS;
+	}
+
+	/**
+	 * @param timeoutMS milliseconds a caller waits for a task, queueing
+	 * included
+	 */
+	public void setTimeoutMS(long timeoutMS) {
+		this.timeoutMS = timeoutMS;
+	}
+}
@@ -26,6 +26,7 @@ import org.archive.wayback.ResourceIndex;
 import org.archive.wayback.ResourceStore;
 import org.archive.wayback.Shutdownable;
 import org.archive.wayback.exception.ConfigurationException;
+import org.springframework.beans.factory.BeanNameAware;
 
 /**
  * Composite class containing a ResourceStore, and a ResourceIndex, to simplify
@@ -34,7 +35,8 @@ import org.archive.wayback.exception.ConfigurationException;
  * @author brad
  * @version $Date$, $Revision$
  */
-public class WaybackCollection {
+public class WaybackCollection implements BeanNameAware {
+	private String beanName = null;
 	private ResourceStore resourceStore = null;
 	private ResourceIndex resourceIndex = null;
 	private List<Shutdownable> shutdownables = null;
@@ -62,6 +64,18 @@ public class WaybackCollection {
 		shutdownDone = true;
 	}
 
+	/**
+	 * @return the name of this WaybackCollection bean, or null if it was
+	 * declared without one
+	 */
+	public String getBeanName() {
+		return beanName;
+	}
+
+	public void setBeanName(String beanName) {
+		this.beanName = beanName;
+	}
+
 	/**
 	 * @return the ResourceStore used with this WaybackCollection
 	 * @throws ConfigurationException if none is configured
@@ -0,0 +1,217 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.oracleclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.archive.accesscontrol.AccessControlClient;
+import org.archive.accesscontrol.RobotsUnavailableException;
+import org.archive.accesscontrol.RuleDao;
+import org.archive.accesscontrol.RuleOracleUnavailableException;
+import org.archive.accesscontrol.model.Rule;
+import org.archive.accesscontrol.model.RuleSet;
+import org.archive.wayback.util.Timestamp;
+
+/**
+ * Test for {@link OraclePolicySnapshot}, and its use by
+ * {@link OracleExclusionFilter}.
+ */
+public class OraclePolicySnapshotTest extends TestCase {
+
+	private static final String GROUP = "public";
+
+	/**
+	 * RuleDao returning the same rules for every SURT, counting fetches.
+	 */
+	private static class StubRuleDao implements RuleDao {
+		RuleSet rules = new RuleSet();
+		boolean unavailable = false;
+		Map<String, Integer> fetches = new HashMap<String, Integer>();
+
+		public RuleSet getRuleTree(String surt)
+				throws RuleOracleUnavailableException {
+			Integer count = fetches.get(surt);
+			fetches.put(surt, (count == null) ? 1 : count + 1);
+			if (unavailable) {
+				throw new RuleOracleUnavailableException(
+						new IOException("Oracle down"));
+			}
+			return rules;
+		}
+
+		public void prepare(Collection<String> surts) {
+		}
+
+		int getFetchCount() {
+			int total = 0;
+			for (Integer count : fetches.values()) {
+				total += count;
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * AccessControlClient recording the retrieval dates it is asked about.
+	 */
+	private static class RecordingClient extends AccessControlClient {
+		List<Date> retrievalDates = new ArrayList<Date>();
+
+		RecordingClient(RuleDao ruleDao) {
+			super(ruleDao, null);
+		}
+
+		@Override
+		public String getPolicy(String url, Date captureDate,
+				Date retrievalDate, String who)
+				throws RobotsUnavailableException,
+				RuleOracleUnavailableException {
+			retrievalDates.add(retrievalDate);
+			return "allow";
+		}
+	}
+
+	private StubRuleDao dao;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		dao = new StubRuleDao();
+		dao.rules.add(rule("http://(com,example,", "allow", null, null, null));
+		dao.rules.add(rule("http://(com,example,)/private", "block",
+				"20050101000000", "20070101000000", null));
+		dao.rules.add(rule("http://(com,example,)/staff", "block", null, null,
+				"staff"));
+		dao.rules.add(rule("http://(com,example,)/robots", "robots", null, null,
+				null));
+	}
+
+	private static Rule rule(String surt, String policy, String captureStart,
+			String captureEnd, String who) {
+		Rule rule = new Rule();
+		rule.setSurt(surt);
+		rule.setPolicy(policy);
+		if (captureStart != null) {
+			rule.setCaptureStart(date(captureStart));
+			rule.setCaptureEnd(date(captureEnd));
+		}
+		rule.setWho(who);
+		return rule;
+	}
+
+	private static Date date(String timestamp) {
+		return Timestamp.parseBefore(timestamp).getDate();
+	}
+
+	private OraclePolicySnapshot snapshot(Date retrievalDate) {
+		// no caching in RuleSetCache, so every fetch reaches the dao:
+		return new OraclePolicySnapshot(new RuleSetCache(dao, 0, 10), GROUP,
+				retrievalDate);
+	}
+
+	public void testOneFetchPerSurt() throws Exception {
+		OraclePolicySnapshot snapshot = snapshot(new Date());
+		for (int year = 2000; year < 2010; year++) {
+			Date captureDate = date(year + "0601000000");
+			snapshot.getPolicy("http://example.com/private/a", captureDate);
+			snapshot.getPolicy("example.com/private/a", captureDate);
+			snapshot.getPolicy("http://example.com/other", captureDate);
+		}
+		assertEquals(2, dao.getFetchCount());
+		assertEquals(2, dao.fetches.size());
+	}
+
+	public void testFailureRemembered() throws Exception {
+		dao.unavailable = true;
+		OraclePolicySnapshot snapshot = snapshot(new Date());
+		for (int i = 0; i < 3; i++) {
+			try {
+				snapshot.getPolicy("http://example.com/a",
+						date("20060101000000"));
+				fail("expected RuleOracleUnavailableException");
+			} catch (RuleOracleUnavailableException e) {
+				// expected
+			}
+		}
+		assertEquals(1, dao.getFetchCount());
+
+		// other URLs are still tried:
+		dao.unavailable = false;
+		assertEquals("allow", snapshot.getPolicy("http://example.com/b",
+				date("20060101000000")));
+		assertEquals(2, dao.getFetchCount());
+	}
+
+	public void testSameAsClient() throws Exception {
+		Date retrievalDate = new Date();
+		OraclePolicySnapshot snapshot = snapshot(retrievalDate);
+		AccessControlClient client = new AccessControlClient(dao, null);
+		String[] urls = {
+			"http://example.com/",
+			"http://www.example.com/private/page.html",
+			"http://example.com/staff/",
+			"example.com/private",
+			"http://other.org/",
+		};
+		String[] timestamps = {
+			"19990101000000", "20041231235959", "20050101000000",
+			"20060615120000", "20070101000000", "20080101000000",
+		};
+		for (String url : urls) {
+			for (String timestamp : timestamps) {
+				Date captureDate = date(timestamp);
+				assertEquals(url + " " + timestamp,
+					client.getPolicy(url, captureDate, retrievalDate, GROUP),
+					snapshot.getPolicy(url, captureDate));
+			}
+		}
+		assertEquals("block", snapshot.getPolicy(
+				"http://example.com/private/a", date("20060101000000")));
+		assertEquals("allow", snapshot.getPolicy(
+				"http://example.com/private/a", date("20080101000000")));
+	}
+
+	public void testRobotsPassedToClient() throws Exception {
+		OracleExclusionFilter filter =
+			new OracleExclusionFilter("http://localhost/oracle/", GROUP);
+		RecordingClient client = new RecordingClient(dao);
+		filter.client = client;
+		Date retrievalDate = date("20100101000000");
+		filter.setPolicySnapshot(snapshot(retrievalDate));
+
+		Date captureDate = date("20060101000000");
+		assertEquals("block",
+				filter.getPolicy("http://example.com/private/a", captureDate));
+		assertEquals(0, client.retrievalDates.size());
+
+		// "robots" is resolved by the client, as of the snapshot's date:
+		assertEquals("allow",
+				filter.getPolicy("http://example.com/robots/a", captureDate));
+		assertEquals(1, client.retrievalDates.size());
+		assertEquals(retrievalDate, client.retrievalDates.get(0));
+	}
+}
@@ -0,0 +1,113 @@
+package org.archive.wayback.accesscontrol.robotstxt.redis;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.accesscontrol.robotstxt.redis.RedisRobotsLogic.RedisValue;
+
+/**
+ * Test for {@link DiskRobotsStore}.
+ */
+public class DiskRobotsStoreTest extends TestCase {
+
+	private static final String ROBOTS =
+		"User-agent: *\nDisallow: /private/\nDisallow: /tmp/\n";
+
+	File file;
+	DiskRobotsStore cut;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("robots", ".log");
+		file.delete();
+		cut = new DiskRobotsStore(file);
+		cut.open();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		cut.close();
+		file.delete();
+		new File(file.getPath() + ".compact").delete();
+	}
+
+	private DiskRobotsStore reopen() throws Exception {
+		cut.close();
+		cut = new DiskRobotsStore(file);
+		cut.open();
+		return cut;
+	}
+
+	public void testPutGet() throws Exception {
+		cut.put("http://a.com/robots.txt", ROBOTS, 3600);
+		cut.put("http://b.com/robots.txt", "0_ROBOTS_EMPTY", 3600);
+		RedisValue value = cut.get("http://a.com/robots.txt");
+		assertEquals(ROBOTS, value.value);
+		assertTrue(value.ttl > 3500 && value.ttl <= 3600);
+		assertEquals("0_ROBOTS_EMPTY", cut.get("http://b.com/robots.txt").value);
+		assertNull(cut.get("http://c.com/robots.txt"));
+	}
+
+	public void testExpiry() throws Exception {
+		cut.put("http://a.com/robots.txt", ROBOTS, 0);
+		assertNull(cut.get("http://a.com/robots.txt"));
+		assertFalse(cut.expire("http://a.com/robots.txt", 3600));
+
+		cut.put("http://b.com/robots.txt", ROBOTS, 10);
+		assertTrue(cut.expire("http://b.com/robots.txt", 3600));
+		assertTrue(cut.get("http://b.com/robots.txt").ttl > 3500);
+	}
+
+	public void testReopen() throws Exception {
+		cut.put("http://a.com/robots.txt", "old", 3600);
+		cut.put("http://a.com/robots.txt", ROBOTS, 10);
+		cut.expire("http://a.com/robots.txt", 7200);
+		reopen();
+		RedisValue value = cut.get("http://a.com/robots.txt");
+		assertEquals(ROBOTS, value.value);
+		assertTrue(value.ttl > 7000);
+	}
+
+	public void testTornRecord() throws Exception {
+		cut.put("http://a.com/robots.txt", ROBOTS, 3600);
+		cut.put("http://b.com/robots.txt", ROBOTS, 3600);
+		cut.close();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 5);
+		raf.close();
+		cut = new DiskRobotsStore(file);
+		cut.open();
+		assertEquals(ROBOTS, cut.get("http://a.com/robots.txt").value);
+		assertNull(cut.get("http://b.com/robots.txt"));
+		cut.put("http://c.com/robots.txt", ROBOTS, 3600);
+		reopen();
+		assertEquals(ROBOTS, cut.get("http://a.com/robots.txt").value);
+		assertEquals(ROBOTS, cut.get("http://c.com/robots.txt").value);
+	}
+
+	public void testCompact() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			cut.put("http://a.com/robots.txt", ROBOTS + i, 3600);
+		}
+		cut.put("http://b.com/robots.txt", ROBOTS, 0);
+		cut.put("http://c.com/robots.txt", ROBOTS, 10);
+		cut.expire("http://c.com/robots.txt", 7200);
+		long before = file.length();
+		cut.setMinCompactBytes(0);
+		assertTrue(cut.compactIfNeeded());
+		assertTrue(file.length() < before / 10);
+		assertEquals(2, cut.size());
+		assertEquals(ROBOTS + 99, cut.get("http://a.com/robots.txt").value);
+		assertTrue(cut.get("http://c.com/robots.txt").ttl > 7000);
+		assertFalse(cut.compactIfNeeded());
+
+		cut.put("http://d.com/robots.txt", ROBOTS, 3600);
+		reopen();
+		assertEquals(3, cut.size());
+		assertEquals(ROBOTS + 99, cut.get("http://a.com/robots.txt").value);
+		assertEquals(ROBOTS, cut.get("http://d.com/robots.txt").value);
+		assertTrue(cut.get("http://c.com/robots.txt").ttl > 7000);
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesspoint;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.resourceindex.RevisitPayloadCache;
+import org.archive.wayback.resourceindex.filterfactory.AccessPointFilterPlan;
+
+/**
+ * Test for adapter caching in {@link CompositeAccessPoint}.
+ */
+public class CompositeAccessPointTest extends TestCase {
+
+	CompositeAccessPoint cut;
+	HashMap<String, AccessPointConfig> configMap;
+
+	@Override
+	protected void setUp() throws Exception {
+		cut = new CompositeAccessPoint();
+		configMap = new HashMap<String, AccessPointConfig>();
+		configMap.put("a", newConfig("a", "a-"));
+		AccessPointConfigs configs = new AccessPointConfigs();
+		configs.setAccessPointConfigs(configMap);
+		cut.setAccessPointConfigs(configs);
+	}
+
+	private static AccessPointConfig newConfig(String name, String prefix) {
+		AccessPointConfig config = new AccessPointConfig();
+		config.setBeanName(name);
+		config.setFileIncludePrefixes(Arrays.asList(prefix));
+		return config;
+	}
+
+	public void testAdapterCached() {
+		AccessPointAdapter adapter = cut.getAdapter("a");
+		assertNotNull(adapter);
+		assertSame(adapter, cut.getAdapter("a"));
+		assertSame(adapter.getFilterPlan(), adapter.getFilterPlan());
+		assertNull(cut.getAdapter("b"));
+	}
+
+	public void testAdapterReplacedWithConfig() {
+		AccessPointAdapter adapter = cut.getAdapter("a");
+		AccessPointFilterPlan plan = adapter.getFilterPlan();
+		assertEquals(1, plan.getSharedFilters().size());
+
+		AccessPointConfig replacement = newConfig("a", "a2-");
+		configMap.put("a", replacement);
+		AccessPointAdapter fresh = cut.getAdapter("a");
+		assertNotSame(adapter, fresh);
+		assertSame(replacement, fresh.getAccessPointConfig());
+		assertNotSame(plan, fresh.getFilterPlan());
+		assertSame(fresh, cut.getAdapter("a"));
+
+		configMap.remove("a");
+		assertNull(cut.getAdapter("a"));
+	}
+
+	public void testRevisitPayloadCachePerCollection() {
+		configMap.put("b", newConfig("b", "b-"));
+		assertNull(cut.getAdapter("a").getRevisitPayloadCache());
+
+		RevisitPayloadCache template = new RevisitPayloadCache();
+		template.setMaxEntries(10);
+		cut.setRevisitPayloadCache(template);
+		RevisitPayloadCache a = cut.getAdapter("a").getRevisitPayloadCache();
+		RevisitPayloadCache b = cut.getAdapter("b").getRevisitPayloadCache();
+		assertNotNull(a);
+		assertNotSame(template, a);
+		assertNotSame(a, b);
+		assertSame(a, cut.getAdapter("a").getRevisitPayloadCache());
+		assertEquals(10, a.getMaxEntries());
+	}
+}
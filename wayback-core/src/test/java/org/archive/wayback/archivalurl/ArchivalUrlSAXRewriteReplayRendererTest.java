@@ -169,6 +169,54 @@ public class ArchivalUrlSAXRewriteReplayRendererTest extends TestCase {
         assertEquals("baseUrl is correctly set up", "http://www.example.com/a.html", context.resolve("a.html"));
     }
     
+    /**
+     * test that {@link org.archive.wayback.util.htmllex.StreamingLexer} produces nodes which serialize back
+     * to the original document, and maintains the script context.
+     * @throws Exception
+     */
+    public void testStreamingLexer() throws Exception {
+        String payload = "<!DOCTYPE html>\n<HTML><head>" +
+                "<script type='text/javascript'>if (a<b) { x(\"</p>\"); }</script>" +
+                "<!-- note --></head>\n<body class=main onload = \"init()\">" +
+                "a < b &amp; c<br/><img src=/a.gif checked></body></HTML>\n";
+        final byte[] payloadBytes = payload.getBytes("UTF-8");
+        Resource payloadResource = createTestHtmlResource(payloadBytes);
+        cut.setStreamingLexer(true);
+
+        nodeHandler.handleParseStart(EasyMock.<ReplayParseContext>anyObject());
+        nodeHandler.handleParseComplete(EasyMock.<ReplayParseContext>anyObject());
+        final StringBuilder scriptText = new StringBuilder();
+        TestParseEventHandler delegate = new TestParseEventHandler() {
+            @Override
+            public void handleNode(ParseContext context, Node node)
+                    throws IOException {
+                if (context.isInScriptText()) {
+                    scriptText.append(node.toHtml());
+                }
+                super.handleNode(context, node);
+            }
+        };
+        nodeHandler.handleNode(EasyMock.<ReplayParseContext>anyObject(), EasyMock.<Node>anyObject());
+        EasyMock.expectLastCall().andDelegateTo(delegate).atLeastOnce();
+
+        response.setStatus(200);
+        response.setCharacterEncoding("utf-8");
+        response.setHeader("Content-Length", Integer.toString(payloadBytes.length));
+        response.setHeader(TextReplayRenderer.GUESSED_CHARSET_HEADER, "UTF-8");
+        response.setHeader("Content-Type", "text/html");
+        response.setHeader(EasyMock.matches("X-Archive-Orig-.*"), EasyMock.<String>notNull());
+        EasyMock.expectLastCall().anyTimes();
+
+        EasyMock.replay(nodeHandler, response, uriConverter);
+
+        cut.renderResource(null, response, wbRequest, result, payloadResource, payloadResource, uriConverter, null);
+
+        EasyMock.verify(nodeHandler, response, uriConverter);
+
+        assertEquals("servlet output", payload, servletOutput.getString());
+        assertEquals("if (a<b) { x(\"</p>\"); }", scriptText.toString());
+    }
+
     /**
      * test revisit record (in new format with HTTP headers).
      * @throws Exception
@@ -0,0 +1,96 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.core;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.util.Timestamp;
+
+/**
+ * Test for {@link NearestCaptureCollector}.
+ */
+public class NearestCaptureCollectorTest extends TestCase {
+
+	private static CaptureSearchResult capture(String timestamp) {
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setCaptureTimestamp(timestamp);
+		return result;
+	}
+
+	private static long ms(String timestamp) {
+		return Timestamp.parseBefore(timestamp).getDate().getTime();
+	}
+
+	private static String timestamps(CaptureSearchResults results) {
+		StringBuilder sb = new StringBuilder();
+		Iterator<CaptureSearchResult> itr = results.iterator();
+		while (itr.hasNext()) {
+			if (sb.length() > 0) {
+				sb.append(" ");
+			}
+			sb.append(itr.next().getCaptureTimestamp().substring(0, 4));
+		}
+		return sb.toString();
+	}
+
+	public void testKeepsNearestAndEnds() {
+		NearestCaptureCollector cut = new NearestCaptureCollector(
+			ms("20050101000000"), 2);
+		for (int year = 2000; year <= 2010; year++) {
+			cut.add(capture(year + "0101000000"));
+		}
+		assertEquals(11, cut.getSeenCount());
+		CaptureSearchResults results = new CaptureSearchResults();
+		cut.fill(results);
+		assertEquals("2000 2004 2005 2006 2007 2010", timestamps(results));
+		assertEquals("20000101000000", results.getFirstResultTimestamp());
+		assertEquals("20100101000000", results.getLastResultTimestamp());
+	}
+
+	public void testAnyOrder() {
+		NearestCaptureCollector cut = new NearestCaptureCollector(
+			ms("20050101000000"), 2);
+		String[] years = { "2010", "2003", "2005", "2000", "2008", "2004",
+				"2006" };
+		for (String year : years) {
+			cut.add(capture(year + "0101000000"));
+		}
+		CaptureSearchResults results = new CaptureSearchResults();
+		cut.fill(results);
+		assertEquals("2000 2004 2005 2006 2008 2010", timestamps(results));
+	}
+
+	public void testKeep() {
+		NearestCaptureCollector cut = new NearestCaptureCollector(
+			ms("20050101000000"), 2);
+		CaptureSearchResult pinned = capture("20010101000000");
+		cut.add(pinned);
+		for (int year = 2000; year <= 2010; year++) {
+			cut.add(capture(year + "0601000000"));
+		}
+		cut.keep(pinned);
+		CaptureSearchResults results = new CaptureSearchResults();
+		cut.fill(results);
+		assertEquals("2000 2001 2003 2004 2005 2006 2010", timestamps(results));
+		assertEquals(7, cut.getKeptCount());
+	}
+}
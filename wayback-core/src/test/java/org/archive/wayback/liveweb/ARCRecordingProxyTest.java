@@ -0,0 +1,115 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.liveweb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ARCRecordingProxy} reuse and coalescing of recordings.
+ */
+public class ARCRecordingProxyTest extends TestCase {
+
+	File arc;
+	AtomicInteger fetches;
+	CountDownLatch started;
+	CountDownLatch release;
+	ARCRecordingProxy proxy;
+
+	@Override
+	protected void setUp() throws Exception {
+		arc = File.createTempFile("arc-recording-proxy", ".arc.gz");
+		FileOutputStream fos = new FileOutputStream(arc);
+		fos.write("RECORD".getBytes("UTF-8"));
+		fos.close();
+		fetches = new AtomicInteger();
+		started = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		proxy = new ARCRecordingProxy();
+		proxy.setCacher(new URLtoARCCacher() {
+			@Override
+			public FileRegion cacheURL(String url, ARCCacheDirectory cache)
+					throws IOException {
+				fetches.incrementAndGet();
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new IOException("interrupted");
+				}
+				FileRegion r = new FileRegion();
+				r.file = arc;
+				r.start = 0;
+				r.end = arc.length();
+				return r;
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		arc.delete();
+	}
+
+	class Fetcher extends Thread {
+		FileRegion region;
+		@Override
+		public void run() {
+			try {
+				region = proxy.getRegion("http://example.com/");
+			} catch (IOException e) {
+				fail(e.getMessage());
+			}
+		}
+	}
+
+	public void testCoalesceAndReuse() throws Exception {
+		Fetcher first = new Fetcher();
+		first.start();
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		Fetcher second = new Fetcher();
+		second.start();
+		// give the second request time to find the fetch in progress
+		Thread.sleep(100);
+		release.countDown();
+		first.join();
+		second.join();
+		assertEquals(1, fetches.get());
+		assertSame(first.region, second.region);
+		assertTrue(first.region.getExpires() > System.currentTimeMillis());
+
+		assertSame(first.region, proxy.getRegion("http://example.com/"));
+		assertEquals(1, fetches.get());
+	}
+
+	public void testNoReuse() throws Exception {
+		release.countDown();
+		proxy.setRecentIndexSize(0);
+		proxy.getRegion("http://example.com/");
+		proxy.getRegion("http://example.com/");
+		assertEquals(2, fetches.get());
+	}
+}
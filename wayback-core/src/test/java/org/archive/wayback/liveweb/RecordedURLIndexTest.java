@@ -0,0 +1,127 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.liveweb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.archive.format.ArchiveFileConstants;
+
+/**
+ * Tests for {@link RecordedURLIndex}.
+ */
+public class RecordedURLIndexTest extends TestCase {
+
+	File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("recorded-url-index", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	private FileRegion region(String name, String content, int start)
+			throws IOException {
+		File f = new File(dir, name);
+		FileOutputStream fos = new FileOutputStream(f);
+		try {
+			fos.write(content.getBytes("UTF-8"));
+		} finally {
+			fos.close();
+		}
+		FileRegion r = new FileRegion();
+		r.file = f;
+		r.start = start;
+		r.end = content.length();
+		return r;
+	}
+
+	private static String copy(FileRegion r) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		r.copyToOutputStream(baos);
+		return baos.toString("UTF-8");
+	}
+
+	public void testExpiry() throws Exception {
+		RecordedURLIndex index = new RecordedURLIndex(10, 0);
+		FileRegion r = region("a.arc.gz", "xxxRECORD", 3);
+		index.put("http://a.com/", r, 1000);
+		assertSame(r, index.get("http://a.com/", 999));
+		assertEquals(1000, index.get("http://a.com/", 999).getExpires());
+		assertEquals("RECORD", copy(index.get("http://a.com/", 0)));
+		assertNull(index.get("http://b.com/", 0));
+		assertNull(index.get("http://a.com/", 1000));
+		assertEquals(0, index.size());
+	}
+
+	public void testMemoryRecord() throws Exception {
+		RecordedURLIndex index = new RecordedURLIndex(10, 6);
+		FileRegion small = region("a.arc.gz", "xxxRECORD", 3);
+		FileRegion large = region("b.arc.gz", "LARGE RECORD", 0);
+		index.put("http://a.com/", small, 1000);
+		index.put("http://b.com/", large, 1000);
+		assertTrue(small.file.delete());
+		assertEquals("RECORD", copy(index.get("http://a.com/", 0)));
+		assertTrue(large.file.delete());
+		assertNull(index.get("http://b.com/", 0));
+	}
+
+	public void testClosedFile() throws Exception {
+		RecordedURLIndex index = new RecordedURLIndex(10, 0);
+		FileRegion r = region("a.arc.gz" + ArchiveFileConstants.OCCUPIED_SUFFIX,
+				"RECORD", 0);
+		index.put("http://a.com/", r, 1000);
+		File closed = new File(dir, "a.arc.gz");
+		assertTrue(r.file.renameTo(closed));
+		FileRegion moved = index.get("http://a.com/", 0);
+		assertEquals(closed, moved.file);
+		assertEquals(1000, moved.getExpires());
+		assertEquals("RECORD", copy(moved));
+	}
+
+	public void testBounded() throws Exception {
+		RecordedURLIndex index = new RecordedURLIndex(2, 0);
+		FileRegion r = region("a.arc.gz", "RECORD", 0);
+		index.put("http://a.com/", r, 1000);
+		index.put("http://b.com/", r, 1000);
+		index.get("http://a.com/", 0);
+		index.put("http://c.com/", r, 1000);
+		assertEquals(2, index.size());
+		assertNotNull(index.get("http://a.com/", 0));
+		assertNull(index.get("http://b.com/", 0));
+		assertNotNull(index.get("http://c.com/", 0));
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.liveweb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.exception.LiveDocumentNotAvailableException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for {@link RemoteLiveWebCache} against a local server returning
+ * gzipped ARC records the way {@link ARCRecordingProxy} does.
+ */
+public class RemoteLiveWebCacheTest extends TestCase {
+
+	static final String BODY = "<html><body>live</body></html>";
+
+	HttpServer server;
+	byte[] record;
+	RemoteLiveWebCache cut;
+
+	@Override
+	protected void setUp() throws Exception {
+		record = buildRecord("http://example.com/", BODY);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().set("Content-Type",
+						"application/x-arc-record");
+				exchange.sendResponseHeaders(200, record.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(record);
+				os.close();
+			}
+		});
+		server.start();
+		cut = new RemoteLiveWebCache();
+		cut.setRequestPrefix("http://127.0.0.1:" +
+				server.getAddress().getPort() + "/");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	private static byte[] buildRecord(String url, String body)
+			throws IOException {
+		String http = "HTTP/1.0 200 OK\r\nContent-Type: text/html\r\n" +
+			"Content-Length: " + body.length() + "\r\n\r\n" + body;
+		String arc = url + " 1.2.3.4 20010203040506 text/html " +
+			http.length() + "\n" + http + "\n";
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream gz = new GZIPOutputStream(baos);
+		gz.write(arc.getBytes("ISO-8859-1"));
+		gz.close();
+		return baos.toByteArray();
+	}
+
+	private String fetch() throws Exception {
+		Resource r = cut.getCachedResource(new URL("http://example.com/"),
+				0, false);
+		try {
+			assertEquals(200, r.getStatusCode());
+			return IOUtils.toString(r, "UTF-8");
+		} finally {
+			r.close();
+		}
+	}
+
+	public void testBuffered() throws Exception {
+		assertEquals(BODY, fetch());
+		assertEquals(1, cut.getRequestCount());
+		assertEquals(0, cut.getStreamedCount());
+		assertEquals(record.length, cut.getBytesRead());
+	}
+
+	public void testStreamed() throws Exception {
+		cut.setMaxBufferedSize(0);
+		assertEquals(BODY, fetch());
+		// connection was returned: a second fetch succeeds with one
+		// connection allowed
+		cut.setMaxTotalConnections(1);
+		cut.setConnectionWaitTimeoutMS(1000);
+		assertEquals(BODY, fetch());
+		assertEquals(2, cut.getStreamedCount());
+		assertEquals(0, cut.getFailureCount());
+		assertTrue(cut.getMaxLatencyNanos() > 0);
+	}
+
+	public void testStreamedAbandoned() throws Exception {
+		cut.setMaxBufferedSize(0);
+		cut.setMaxTotalConnections(1);
+		cut.setConnectionWaitTimeoutMS(1000);
+		Resource r = cut.getCachedResource(new URL("http://example.com/"),
+				0, false);
+		r.close();
+		assertEquals(BODY, fetch());
+	}
+
+	public void testHostLimitReleased() throws Exception {
+		cut.setMaxConcurrentPerHost(1);
+		cut.setMaxBufferedSize(0);
+		Resource r = cut.getCachedResource(new URL("http://example.com/"),
+				0, false);
+		// the host permit is returned once the proxy answers, not on close:
+		assertEquals(0, cut.getActiveHostCount());
+		r.close();
+		assertEquals(BODY, fetch());
+		assertEquals(0, cut.getActiveHostCount());
+	}
+
+	public void testTooLarge() throws Exception {
+		cut.setMaxRecordSize(record.length - 1);
+		try {
+			fetch();
+			fail("expected LiveDocumentNotAvailableException");
+		} catch (LiveDocumentNotAvailableException e) {
+			// expected
+		}
+		assertEquals(1, cut.getFailureCount());
+		cut.setMaxRecordSize(record.length);
+		assertEquals(BODY, fetch());
+	}
+}
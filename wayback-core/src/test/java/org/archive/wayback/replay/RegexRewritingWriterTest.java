@@ -0,0 +1,152 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link RegexRewritingWriter}.
+ */
+public class RegexRewritingWriterTest extends TestCase {
+
+	// matches are at most 29 characters long
+	private static final Pattern URL_PATTERN =
+		Pattern.compile("url\\(\\s{0,2}([^)\\s]{1,20})\\s{0,2}\\)");
+
+	private static final RegexRewritingWriter.Replacer URL_REPLACER =
+		new RegexRewritingWriter.Replacer() {
+		public String replace(Matcher matcher) {
+			return "url(/web/" + matcher.group(1) + ")";
+		}
+	};
+
+	private static String replaceAll(String text, Pattern pattern,
+			RegexRewritingWriter.Replacer replacer) {
+		StringBuffer sb = new StringBuffer();
+		Matcher m = pattern.matcher(text);
+		while (m.find()) {
+			String replacement = replacer.replace(m);
+			m.appendReplacement(sb,
+				Matcher.quoteReplacement(replacement != null ? replacement : m.group()));
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	private static String randomText(Random random, int length) {
+		final String[] pieces = { "a", " ", "\n", "url(", ")", "x.png",
+			"url( http://foo.com/b.gif )", "url(/c.css)" };
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < length) {
+			sb.append(pieces[random.nextInt(pieces.length)]);
+		}
+		return sb.toString();
+	}
+
+	private static String rewrite(String text, int chunkSize, int windowSize,
+			int maxMatchLength) throws Exception {
+		StringWriter sw = new StringWriter();
+		RegexRewritingWriter w = new RegexRewritingWriter(sw, URL_PATTERN,
+			URL_REPLACER, windowSize, maxMatchLength);
+		for (int i = 0; i < text.length(); i += chunkSize) {
+			w.write(text, i, Math.min(chunkSize, text.length() - i));
+		}
+		w.finish();
+		return sw.toString();
+	}
+
+	/**
+	 * output is the same as rewriting whole text at once, for matches
+	 * spanning window boundaries.
+	 * @throws Exception
+	 */
+	public void testSameAsWholeText() throws Exception {
+		Random random = new Random(42);
+		for (int i = 0; i < 200; i++) {
+			String text = randomText(random, random.nextInt(2000));
+			String expected = replaceAll(text, URL_PATTERN, URL_REPLACER);
+			assertEquals(expected, rewrite(text, 1 + random.nextInt(100), 64, 32));
+			assertEquals(expected, rewrite(text, 1000, 64, 32));
+		}
+	}
+
+	public void testMatchAtWindowEnd() throws Exception {
+		// greedy match must not be cut short at the end of the window
+		Pattern pattern = Pattern.compile("a+");
+		RegexRewritingWriter.Replacer replacer =
+			new RegexRewritingWriter.Replacer() {
+			public String replace(Matcher matcher) {
+				return "[" + matcher.group().length() + "]";
+			}
+		};
+		StringWriter sw = new StringWriter();
+		RegexRewritingWriter w = new RegexRewritingWriter(sw, pattern,
+			replacer, 16, 8);
+		StringBuilder text = new StringBuilder("b");
+		for (int i = 0; i < 100; i++) {
+			text.append('a');
+		}
+		text.append("b");
+		for (char c : text.toString().toCharArray()) {
+			w.write(c);
+		}
+		w.finish();
+		assertEquals("b[100]b", sw.toString());
+	}
+
+	public void testChained() throws Exception {
+		Pattern pattern = Pattern.compile("/web/");
+		RegexRewritingWriter.Replacer replacer =
+			new RegexRewritingWriter.Replacer() {
+			public String replace(Matcher matcher) {
+				return "/archive/";
+			}
+		};
+		StringWriter sw = new StringWriter();
+		RegexRewritingWriter inner = new RegexRewritingWriter(sw, pattern,
+			replacer, 64, 16);
+		RegexRewritingWriter outer = new RegexRewritingWriter(inner,
+			URL_PATTERN, URL_REPLACER, 64, 32);
+		String text = randomText(new Random(7), 5000);
+		outer.write(text);
+		outer.finish();
+		String expected = replaceAll(text, URL_PATTERN, URL_REPLACER)
+			.replace("/web/", "/archive/");
+		assertEquals(expected, sw.toString());
+	}
+
+	public void testNullReplacement() throws Exception {
+		StringWriter sw = new StringWriter();
+		RegexRewritingWriter w = new RegexRewritingWriter(sw, URL_PATTERN,
+			new RegexRewritingWriter.Replacer() {
+			public String replace(Matcher matcher) {
+				return null;
+			}
+		});
+		w.write("a url(b.png) c");
+		w.close();
+		assertEquals("a url(b.png) c", sw.toString());
+	}
+}
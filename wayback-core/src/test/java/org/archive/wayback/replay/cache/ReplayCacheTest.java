@@ -0,0 +1,243 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.ResultURIConverter;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.TransparentReplayRendererTest.TestServletOutputStream;
+import org.easymock.EasyMock;
+
+/**
+ * Test for {@link ReplayCache} and {@link RecordingHttpServletResponse}
+ */
+public class ReplayCacheTest extends TestCase {
+
+	private File dir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("replaycache", "");
+		dir.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		dir.delete();
+		super.tearDown();
+	}
+
+	private CachedReplay entry(String key, int size) {
+		List<String[]> headers = new ArrayList<String[]>();
+		headers.add(new String[] { "X-Test", key });
+		byte[] body = new byte[size];
+		for (int i = 0; i < size; i++) {
+			body[i] = (byte) (key.hashCode() + i);
+		}
+		return new CachedReplay(key, 200, "text/html", "UTF-8", headers, body);
+	}
+
+	public void testMemoryHit() {
+		ReplayCache cache = new ReplayCache();
+		assertNull(cache.get("a"));
+		cache.store(entry("a", 100));
+		CachedReplay hit = cache.get("a");
+		assertNotNull(hit);
+		assertEquals(100, hit.getBody().length);
+		assertEquals(1, hit.getHits());
+		assertEquals(1, cache.getMemoryHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	public void testMemoryEvictionWithoutDisk() {
+		ReplayCache cache = new ReplayCache();
+		cache.setMaxMemoryBytes(3000);
+		cache.store(entry("a", 1000));
+		cache.store(entry("b", 1000));
+		// touch a, so b is least recently used
+		assertNotNull(cache.get("a"));
+		cache.store(entry("c", 1000));
+		assertEquals(2, cache.getMemoryCount());
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+	}
+
+	public void testSpillToDisk() throws IOException {
+		ReplayCache cache = new ReplayCache();
+		cache.setMaxMemoryBytes(3000);
+		cache.setMaxDiskBytes(100000);
+		cache.setCacheDir(dir);
+		cache.init();
+		CachedReplay a = entry("a", 1000);
+		cache.store(a);
+		cache.store(entry("b", 1000));
+		cache.store(entry("c", 1000));
+		assertEquals(2, cache.getMemoryCount());
+		assertEquals(1, cache.getDiskCount());
+
+		CachedReplay fromDisk = cache.get("a");
+		assertNotNull(fromDisk);
+		assertEquals(1, cache.getDiskHits());
+		assertEquals(200, fromDisk.getStatus());
+		assertEquals("a", fromDisk.getHeaders().get(0)[1]);
+		assertTrue(java.util.Arrays.equals(a.getBody(), fromDisk.getBody()));
+		// promoted back into memory
+		assertNotNull(cache.get("a"));
+		assertEquals(1, cache.getMemoryHits());
+	}
+
+	public void testDiskBound() throws IOException {
+		ReplayCache cache = new ReplayCache();
+		cache.setMaxMemoryBytes(1500);
+		cache.setMaxDiskBytes(2500);
+		cache.setCacheDir(dir);
+		cache.init();
+		for (int i = 0; i < 5; i++) {
+			cache.store(entry("k" + i, 1000));
+		}
+		assertEquals(1, cache.getMemoryCount());
+		assertEquals(2, cache.getDiskCount());
+		assertNull(cache.get("k0"));
+		assertNotNull(cache.get("k2"));
+		cache.clear();
+		assertNull(cache.get("k4"));
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	public void testMaxAge() throws InterruptedException {
+		ReplayCache cache = new ReplayCache();
+		cache.setMaxAgeMS(1);
+		cache.store(entry("a", 10));
+		Thread.sleep(10);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getMemoryCount());
+	}
+
+	private CaptureSearchResult capture(String timestamp) {
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setOriginalUrl("http://example.com/");
+		result.setCaptureTimestamp(timestamp);
+		result.setFile("a.warc.gz");
+		result.setOffset(100);
+		result.setDigest("sha1:AAAA");
+		return result;
+	}
+
+	public void testKeyCoversResults() {
+		HttpServletRequest httpRequest =
+			EasyMock.createMock(HttpServletRequest.class);
+		EasyMock.expect(httpRequest.getLocale()).andReturn(Locale.ENGLISH)
+			.anyTimes();
+		EasyMock.replay(httpRequest);
+		ResultURIConverter uriConverter = new ResultURIConverter() {
+			public String makeReplayURI(String datespec, String url) {
+				return "/web/" + datespec + "/" + url;
+			}
+		};
+		WaybackRequest wbRequest = new WaybackRequest();
+		wbRequest.setReplayTimestamp("20100101000000");
+		wbRequest.setRequestUrl("http://example.com/");
+		CaptureSearchResult closest = capture("20100101000000");
+
+		CaptureSearchResults results = new CaptureSearchResults();
+		results.addSearchResult(closest);
+		ReplayCache cache = new ReplayCache();
+		String key = cache.makeKey(httpRequest, wbRequest, closest,
+				uriConverter, results);
+		assertEquals(key, cache.makeKey(httpRequest, wbRequest, closest,
+				uriConverter, results));
+
+		// a newer capture changes the toolbar, so must change the key
+		results.addSearchResult(capture("20120101000000"));
+		assertFalse(key.equals(cache.makeKey(httpRequest, wbRequest, closest,
+				uriConverter, results)));
+	}
+
+	public void testRecording() throws IOException {
+		HttpServletResponse response =
+			EasyMock.createNiceMock(HttpServletResponse.class);
+		TestServletOutputStream out = new TestServletOutputStream();
+		EasyMock.expect(response.getOutputStream()).andReturn(out).anyTimes();
+		EasyMock.expect(response.getCharacterEncoding()).andReturn("UTF-8").anyTimes();
+		EasyMock.replay(response);
+
+		ReplayCache cache = new ReplayCache();
+		RecordingHttpServletResponse recorder = cache.startRecording(response);
+		recorder.setStatus(200);
+		recorder.setContentType("text/html");
+		recorder.setHeader("Content-Length", "5");
+		recorder.setHeader("X-A", "1");
+		recorder.setHeader("X-A", "2");
+		PrintWriter pw = recorder.getWriter();
+		pw.print("hello");
+		assertTrue(cache.finishRecording("k", recorder));
+		assertEquals("hello", out.getString());
+
+		CachedReplay hit = cache.get("k");
+		assertNotNull(hit);
+		assertEquals("hello", new String(hit.getBody(), "UTF-8"));
+		assertEquals(1, hit.getHeaders().size());
+		assertEquals("2", hit.getHeaders().get(0)[1]);
+	}
+
+	public void testNotCacheable() throws IOException {
+		HttpServletResponse response =
+			EasyMock.createNiceMock(HttpServletResponse.class);
+		TestServletOutputStream out = new TestServletOutputStream();
+		EasyMock.expect(response.getOutputStream()).andReturn(out).anyTimes();
+		EasyMock.replay(response);
+
+		ReplayCache cache = new ReplayCache();
+		cache.setMaxEntryBytes(4);
+		RecordingHttpServletResponse recorder = cache.startRecording(response);
+		recorder.getOutputStream().write("too long".getBytes("UTF-8"));
+		assertFalse(cache.finishRecording("big", recorder));
+		// output still passes through
+		assertEquals("too long", out.getString());
+
+		recorder = cache.startRecording(response);
+		recorder.sendRedirect("http://example.com/");
+		assertFalse(cache.finishRecording("redirect", recorder));
+
+		recorder = cache.startRecording(response);
+		recorder.setStatus(404);
+		assertFalse(cache.finishRecording("notfound", recorder));
+		assertEquals(0, cache.getMemoryCount());
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.charset;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.archive.io.warc.TestWARCReader;
+import org.archive.io.warc.TestWARCRecordInfo;
+import org.archive.io.warc.WARCRecord;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.resourcestore.resourcefile.WarcResource;
+
+/**
+ * test for {@link FastCharsetDetector}.
+ */
+public class FastCharsetDetectorTest extends TestCase {
+
+	protected WarcResource createResource(String contentType, byte[] payloadBytes) throws IOException {
+		TestWARCRecordInfo recinfo = TestWARCRecordInfo.createHttpResponse(contentType, payloadBytes);
+		TestWARCReader wr = new TestWARCReader(recinfo);
+		WARCRecord rec = wr.get(0);
+		WarcResource resource = new WarcResource(rec, wr);
+		resource.parseHeaders();
+		return resource;
+	}
+
+	protected WarcResource createResource(String contentType, String payload, String encoding) throws IOException {
+		return createResource(contentType, payload.getBytes(encoding));
+	}
+
+	protected CaptureSearchResult createResult(String digest) {
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setDigest(digest);
+		return result;
+	}
+
+	public void testAsciiAndUtf8() throws Exception {
+		FastCharsetDetector cut = new FastCharsetDetector();
+		WaybackRequest wbRequest = new WaybackRequest();
+		WarcResource resource = createResource("text/html",
+			"<html><body>plain</body></html>", "UTF-8");
+		assertEquals("UTF-8", cut.getCharset(resource, wbRequest));
+
+		resource = createResource("text/html",
+			"<html><body>\u00E9t\u00E9 \u65E5\u672C</body></html>", "UTF-8");
+		assertEquals("UTF-8", cut.getCharset(resource, wbRequest));
+	}
+
+	public void testMetaTag() throws Exception {
+		FastCharsetDetector cut = new FastCharsetDetector();
+		final String payload = "<html><head>" +
+				"<meta http-equiv=\"Content-Type\" content=\"text/html; charset=shift_jis\">" +
+				"</head><body>\u65E5\u672C</body></html>";
+		WarcResource resource = createResource("text/html", payload, "shift_jis");
+		assertEquals("shift_jis", cut.getCharset(resource, new WaybackRequest()));
+	}
+
+	public void testByteOrderMark() throws Exception {
+		FastCharsetDetector cut = new FastCharsetDetector();
+		WarcResource resource = createResource("text/html; charset=iso-8859-1",
+			"\uFEFF<html></html>", "UTF-16LE");
+		assertEquals("UTF-16LE", cut.getCharset(resource, new WaybackRequest()));
+	}
+
+	/**
+	 * content sniffing result is reused for the same digest, but
+	 * {@code Content-Type} header is still honored.
+	 * @throws Exception
+	 */
+	public void testDigestCache() throws Exception {
+		FastCharsetDetector cut = new FastCharsetDetector();
+		WaybackRequest wbRequest = new WaybackRequest();
+		final String payload = "<html><head>" +
+				"<meta http-equiv=\"Content-Type\" content=\"text/html; charset=shift_jis\">" +
+				"</head><body></body></html>";
+		CaptureSearchResult result = createResult("sha1:AAAABBBBCCCCDDDDEEEEFFFFGGGGHHHH");
+
+		WarcResource resource = createResource("text/html", payload, "UTF-8");
+		assertEquals("shift_jis", cut.getCharset(resource, resource, result, wbRequest));
+		assertEquals(0, cut.getCacheHits());
+		assertEquals(1, cut.getCacheMisses());
+
+		// content is not looked at again for the same digest
+		resource = createResource("text/html", "<html></html>", "UTF-8");
+		assertEquals("shift_jis", cut.getCharset(resource, resource, result, wbRequest));
+		assertEquals(1, cut.getCacheHits());
+
+		resource = createResource("text/html; charset=euc-jp", payload, "UTF-8");
+		assertEquals("euc-jp", cut.getCharset(resource, resource, result, wbRequest));
+		assertEquals(2, cut.getCacheHits());
+
+		// no digest, no caching
+		resource = createResource("text/html", "<html></html>", "UTF-8");
+		assertEquals("UTF-8", cut.getCharset(resource, resource, createResult("-"), wbRequest));
+		assertEquals(2, cut.getCacheHits());
+		assertEquals(1, cut.getCacheMisses());
+	}
+
+	public void testIsUtf8() throws Exception {
+		byte[] b = "ascii \u00E9\u65E5\uD83D\uDE00".getBytes("UTF-8");
+		assertTrue(FastCharsetDetector.isUtf8(b, b.length, false));
+		// cut in the middle of a sequence
+		assertFalse(FastCharsetDetector.isUtf8(b, b.length - 1, false));
+		assertTrue(FastCharsetDetector.isUtf8(b, b.length - 1, true));
+
+		b = "caf\u00E9".getBytes("ISO-8859-1");
+		assertFalse(FastCharsetDetector.isUtf8(b, b.length, false));
+		// overlong '/'
+		b = new byte[] { 'a', (byte)0xC0, (byte)0xAF };
+		assertFalse(FastCharsetDetector.isUtf8(b, b.length, false));
+		// surrogate
+		b = new byte[] { (byte)0xED, (byte)0xA0, (byte)0x80 };
+		assertFalse(FastCharsetDetector.isUtf8(b, b.length, false));
+		// beyond U+10FFFF
+		b = new byte[] { (byte)0xF4, (byte)0x90, (byte)0x80, (byte)0x80 };
+		assertFalse(FastCharsetDetector.isUtf8(b, b.length, false));
+	}
+
+	/**
+	 * 7-bit encodings are valid {@code UTF-8}, but must be sniffed.
+	 * @throws Exception
+	 */
+	public void testSevenBitEncodings() throws Exception {
+		FastCharsetDetector cut = new FastCharsetDetector();
+		final String payload = "<html><body>\u65E5\u672C\u8A9E\u306E" +
+				"\u30DA\u30FC\u30B8\u3067\u3059\u3002</body></html>";
+		WarcResource resource = createResource("text/html", payload, "ISO-2022-JP");
+		assertEquals("ISO-2022-JP", cut.getCharset(resource, new WaybackRequest()));
+
+		byte[] b = "ascii ~ {}".getBytes("UTF-8");
+		assertFalse(FastCharsetDetector.hasSevenBitEscapes(b, b.length));
+		b = "a ~{<:Ky2;S{#,~}".getBytes("UTF-8");
+		assertTrue(FastCharsetDetector.hasSevenBitEscapes(b, b.length));
+		assertFalse(FastCharsetDetector.hasSevenBitEscapes(b, 3));
+		b = payload.getBytes("ISO-2022-JP");
+		assertTrue(FastCharsetDetector.hasSevenBitEscapes(b, b.length));
+	}
+
+	public void testByteOrderMarkSniffer() throws Exception {
+		ByteOrderMarkSniffer cut = new ByteOrderMarkSniffer();
+		assertEquals("UTF-8", cut.sniff(new byte[] { (byte)0xEF, (byte)0xBB, (byte)0xBF }, 3));
+		assertEquals("UTF-16BE", cut.sniff(new byte[] { (byte)0xFE, (byte)0xFF, 0 }, 3));
+		assertNull(cut.sniff(new byte[] { (byte)0xEF, (byte)0xBB, 'a' }, 3));
+		assertNull(cut.sniff(new byte[0], -1));
+	}
+}
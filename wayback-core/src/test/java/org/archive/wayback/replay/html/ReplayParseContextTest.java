@@ -0,0 +1,104 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.html;
+
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.ResultURIConverter;
+
+/**
+ * Tests for {@link ReplayParseContext}.
+ */
+public class ReplayParseContextTest extends TestCase {
+
+	static class CountingConverter implements ResultURIConverter {
+		int calls = 0;
+		final String prefix;
+		CountingConverter(String prefix) {
+			this.prefix = prefix;
+		}
+		@Override
+		public String makeReplayURI(String datespec, String url) {
+			calls++;
+			return prefix + datespec + "/" + url;
+		}
+	}
+
+	CountingConverter converter;
+	ReplayParseContext cut;
+
+	@Override
+	protected void setUp() throws Exception {
+		converter = new CountingConverter("/w/");
+		cut = new ReplayParseContext(new ContextResultURIConverterFactory() {
+			@Override
+			public ResultURIConverter getContextConverter(String flags) {
+				return converter;
+			}
+		}, new URL("http://foo.com/dir/bar.html"), "20010203040506");
+	}
+
+	public void testMemoized() throws Exception {
+		String expected = "/w/20010203040506/http://foo.com/dir/a.gif";
+		assertEquals(expected, cut.contextualizeUrl("a.gif", "im_"));
+		assertEquals(expected, cut.contextualizeUrl("a.gif", "im_"));
+		assertEquals(expected, cut.contextualizeUrl("/dir/a.gif", "im_"));
+		assertEquals(2, converter.calls);
+
+		// different flags are not confused
+		assertEquals(expected, cut.contextualizeUrl("a.gif", "js_"));
+		assertEquals(3, converter.calls);
+
+		// non-rewritable URLs are returned as-is
+		String js = "javascript:void(0)";
+		assertSame(js, cut.contextualizeUrl(js, "im_"));
+		assertEquals(3, converter.calls);
+	}
+
+	public void testInvalidatedByBase() throws Exception {
+		assertEquals("/w/20010203040506/http://foo.com/dir/a.gif",
+				cut.contextualizeUrl("a.gif", ""));
+		cut.setBaseUrl(new URL("http://bar.com/x/"));
+		assertEquals("/w/20010203040506/http://bar.com/x/a.gif",
+				cut.contextualizeUrl("a.gif", ""));
+		cut.setDatespec("2002");
+		assertEquals("/w/2002/http://bar.com/x/a.gif",
+				cut.contextualizeUrl("a.gif", ""));
+		assertEquals(3, converter.calls);
+	}
+
+	public void testIdentityPreserved() throws Exception {
+		cut.setRewriteHttpsOnly(true);
+		String url1 = new String("/a.gif");
+		String url2 = new String("/a.gif");
+		assertSame(url1, cut.contextualizeUrl(url1, ""));
+		assertSame(url2, cut.contextualizeUrl(url2, ""));
+		assertEquals(0, converter.calls);
+	}
+
+	public void testCacheDisabled() throws Exception {
+		cut.setUrlCacheSize(0);
+		cut.contextualizeUrl("a.gif", "");
+		cut.contextualizeUrl("a.gif", "");
+		assertEquals(2, converter.calls);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay.template;
+
+import java.util.Collections;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.ResultURIConverter;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.UIResults;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.webapp.AccessPoint;
+
+/**
+ * Tests for {@link InsertTemplate} and {@link InsertTemplateRegistry}.
+ */
+public class InsertTemplateTest extends TestCase {
+
+	AccessPoint accessPoint;
+	UIResults uiResults;
+
+	@Override
+	protected void setUp() throws Exception {
+		accessPoint = new AccessPoint();
+		accessPoint.setStaticPrefix("http://web.example.org/static/");
+		accessPoint.setReplayPrefix("http://web.example.org/web/");
+		accessPoint.setQueryPrefix("http://web.example.org/query/");
+		Properties configs = new Properties();
+		configs.setProperty("banner.title", "Example <Archive>");
+		accessPoint.setConfigs(configs);
+
+		WaybackRequest wbRequest = WaybackRequest.createReplayRequest(
+			"http://example.com/a?b=c&d=e", "20010203040506", null, null);
+		wbRequest.setAccessPoint(accessPoint);
+
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setOriginalUrl("http://example.com/a?b=c&d=e");
+		result.setCaptureTimestamp("20010203040506");
+
+		ResultURIConverter uriConverter = new ResultURIConverter() {
+			@Override
+			public String makeReplayURI(String datespec, String url) {
+				return "http://web.example.org/web/" + datespec + "/" + url;
+			}
+		};
+		uiResults = new UIResults(wbRequest, uriConverter, null, result,
+			null);
+	}
+
+	public void testRender() {
+		InsertTemplate t = InsertTemplate.compile(
+			"<script src=\"${staticPrefix}js/banner.js\"></script>" +
+			"<div title=\"${config.banner.title}\">${url}</div>" +
+			"<script>var u = \"${js:url}\", t = \"${captureTimestamp}\";</script>" +
+			"<a href=\"${replayUrl}\">?url=${url:url}</a>${raw:config.banner.title}");
+		assertEquals(
+			"<script src=\"http://web.example.org/static/js/banner.js\"></script>" +
+			"<div title=\"Example &lt;Archive&gt;\">http://example.com/a?b=c&amp;d=e</div>" +
+			"<script>var u = \"http:\\/\\/example.com\\/a?b=c&d=e\", t = \"20010203040506\";</script>" +
+			"<a href=\"http://web.example.org/web/20010203040506/http://example.com/a?b=c&amp;d=e\">" +
+			"?url=http%3A%2F%2Fexample.com%2Fa%3Fb%3Dc%26d%3De</a>Example <Archive>",
+			t.render(uiResults));
+	}
+
+	public void testPrefixes() {
+		assertEquals("http://web.example.org/static/ " +
+			"http://web.example.org/web/ http://web.example.org/query/ " +
+			"http://web.example.org/query/ http://web.example.org/query/",
+			InsertTemplate.compile("${staticPrefix} ${replayPrefix} " +
+				"${queryPrefix} ${contextPrefix} ${serverPrefix}")
+				.render(uiResults));
+	}
+
+	public void testLiteral() {
+		assertEquals("plain $ text", InsertTemplate.compile("plain $ text")
+			.render(uiResults));
+		assertEquals("${url} http://example.com/a?b=c&amp;d=e",
+			InsertTemplate.compile("$${url} ${ url }").render(uiResults));
+		assertEquals("<>", InsertTemplate.compile("<${config.missing}>")
+			.render(uiResults));
+	}
+
+	public void testCompileErrors() {
+		String[] bad = { "${url", "${nosuchname}", "${xml:url}" };
+		for (String text : bad) {
+			try {
+				InsertTemplate.compile(text);
+				fail("expected failure for " + text);
+			} catch (IllegalArgumentException ex) {
+				// expected
+			}
+		}
+	}
+
+	public void testRegistry() {
+		InsertTemplateRegistry registry = new InsertTemplateRegistry();
+		registry.setTemplates(Collections.singletonMap(
+			"/WEB-INF/replay/Banner.jsp", "<b>${captureTimestamp}</b>"));
+		accessPoint.setInsertTemplates(registry);
+
+		assertSame(registry,
+			InsertTemplateRegistry.forRequest(uiResults.getWbRequest()));
+		assertEquals("<b>20010203040506</b>",
+			registry.render("/WEB-INF/replay/Banner.jsp", uiResults));
+		assertNull(registry.render("/WEB-INF/replay/Other.jsp", uiResults));
+
+		registry.setJspFallback(false);
+		assertEquals("",
+			registry.render("/WEB-INF/replay/Other.jsp", uiResults));
+	}
+}
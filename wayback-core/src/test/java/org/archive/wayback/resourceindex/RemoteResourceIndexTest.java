@@ -20,9 +20,14 @@
 package org.archive.wayback.resourceindex;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -30,6 +35,11 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.SearchResults;
+import org.archive.wayback.core.UrlSearchResult;
+import org.archive.wayback.core.UrlSearchResults;
+import org.archive.wayback.exception.BadQueryException;
+import org.archive.wayback.exception.ResourceNotInArchiveException;
+import org.archive.wayback.query.CompactResultsFormat;
 import org.archive.wayback.util.ObjectFilter;
 import org.archive.wayback.util.ObjectFilterChain;
 import org.w3c.dom.Document;
@@ -99,4 +109,156 @@ public class RemoteResourceIndexTest extends TestCase {
 		}
 	}
 
+	private static final String TWO_RESULTS_XML =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+		+ "<wayback>\n"
+		+ "  <request>\n"
+		+ "    <url>dixienet.org/</url>\n"
+		+ "    <resultstype>resultstypecapture</resultstype>\n"
+		+ "  </request>\n"
+		+ "  <results>\n"
+		+ "    <result>\n"
+		+ "      <file>a.warc.gz</file>\n"
+		+ "      <compressedoffset>100</compressedoffset>\n"
+		+ "      <url>http://dixienet.org/?a=1&amp;b=2</url>\n"
+		+ "      <capturedate>20090204213443</capturedate>\n"
+		+ "    </result>\n"
+		+ "    <result>\n"
+		+ "      <file>b.warc.gz</file>\n"
+		+ "      <compressedoffset>200</compressedoffset>\n"
+		+ "      <url>http://dixienet.org/</url>\n"
+		+ "      <capturedate>20100204213443</capturedate>\n"
+		+ "    </result>\n"
+		+ "  </results>\n"
+		+ "</wayback>";
+
+	private static InputStream stream(String s) throws Exception {
+		return new ByteArrayInputStream(s.getBytes("UTF-8"));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testStreamToSearchResults() throws Exception {
+		RemoteResourceIndex r = new RemoteResourceIndex();
+		CaptureSearchResults sr = (CaptureSearchResults) 
+			r.streamToSearchResults(stream(TWO_RESULTS_XML), "test", null);
+		assertEquals(2, sr.getResults().size());
+		CaptureSearchResult first = sr.getResults().get(0);
+		assertEquals("20090204213443", first.getCaptureTimestamp());
+		assertEquals("a.warc.gz", first.getFile());
+		assertEquals(100, first.getOffset());
+		assertEquals("http://dixienet.org/?a=1&b=2", first.getOriginalUrl());
+		assertEquals("dixienet.org/", sr.getFilter("url"));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testStreamFilterAbort() throws Exception {
+		RemoteResourceIndex r = new RemoteResourceIndex();
+		ObjectFilter<CaptureSearchResult> abortSecond = 
+			new ObjectFilter<CaptureSearchResult>() {
+			int seen = 0;
+			public int filterObject(CaptureSearchResult o) {
+				return (++seen > 1) ? FILTER_ABORT : FILTER_INCLUDE;
+			}
+		};
+		CaptureSearchResults sr = (CaptureSearchResults) 
+			r.streamToSearchResults(stream(TWO_RESULTS_XML), "test", abortSecond);
+		assertEquals(1, sr.getResults().size());
+
+		ObjectFilter<CaptureSearchResult> excludeAll = 
+			new ObjectFilter<CaptureSearchResult>() {
+			public int filterObject(CaptureSearchResult o) {
+				return FILTER_EXCLUDE;
+			}
+		};
+		try {
+			r.streamToSearchResults(stream(TWO_RESULTS_XML), "test", excludeAll);
+			fail("Expected ResourceNotInArchiveException");
+		} catch (ResourceNotInArchiveException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testStreamError() throws Exception {
+		RemoteResourceIndex r = new RemoteResourceIndex();
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<wayback><error>"
+			+ "<title>Bad Query Exception</title>"
+			+ "<message>No url</message>"
+			+ "</error></wayback>";
+		try {
+			r.streamToSearchResults(stream(xml), "test", null);
+			fail("Expected BadQueryException");
+		} catch (BadQueryException e) {
+			assertEquals("No url", e.getMessage());
+		}
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testCompactRoundTrip() throws Exception {
+		CaptureSearchResults orig = new CaptureSearchResults();
+		CaptureSearchResult a = new CaptureSearchResult();
+		a.setOriginalUrl("http://example.com/\ta\\b\nc");
+		a.setCaptureTimestamp("20090204213443");
+		a.setFile("a.warc.gz");
+		a.setOffset(100);
+		orig.addSearchResult(a, true);
+		CaptureSearchResult b = new CaptureSearchResult();
+		b.setOriginalUrl("http://example.com/");
+		b.setCaptureTimestamp("20100204213443");
+		b.setFile("b.warc.gz");
+		b.setOffset(200);
+		b.setMimeType("text/html");
+		orig.addSearchResult(b, true);
+		Map<String,String> filters = new HashMap<String,String>();
+		filters.put("url", "example.com/");
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Writer w = new OutputStreamWriter(baos, "UTF-8");
+		CompactResultsFormat.writeHeader(filters, 
+				SearchResults.RESULTS_TYPE_CAPTURE, w);
+		CompactResultsFormat.writeResults(orig.iterator(), w);
+		w.flush();
+
+		RemoteResourceIndex r = new RemoteResourceIndex();
+		CaptureSearchResults sr = (CaptureSearchResults) 
+			r.compactToSearchResults(
+				new ByteArrayInputStream(baos.toByteArray()), null);
+		assertEquals(2, sr.getResults().size());
+		assertEquals(a.getOriginalUrl(), sr.getResults().get(0).getOriginalUrl());
+		assertEquals(100, sr.getResults().get(0).getOffset());
+		assertEquals("text/html", sr.getResults().get(1).getMimeType());
+		assertEquals("example.com/", sr.getFilter("url"));
+	}
+
+	/**
+	 * @throws Exception
+	 */
+	public void testCompactUrlResults() throws Exception {
+		UrlSearchResults orig = new UrlSearchResults();
+		UrlSearchResult u = new UrlSearchResult();
+		u.setOriginalUrl("http://example.com/");
+		orig.addSearchResult(u, true);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Writer w = new OutputStreamWriter(baos, "UTF-8");
+		CompactResultsFormat.writeHeader(new HashMap<String,String>(), 
+				SearchResults.RESULTS_TYPE_URL, w);
+		CompactResultsFormat.writeResults(orig.iterator(), w);
+		w.flush();
+
+		RemoteResourceIndex r = new RemoteResourceIndex();
+		UrlSearchResults sr = (UrlSearchResults) r.compactToSearchResults(
+				new ByteArrayInputStream(baos.toByteArray()), null);
+		assertEquals("http://example.com/", 
+				sr.iterator().next().getOriginalUrl());
+	}
 }
@@ -0,0 +1,133 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.resourceindex.filters.FilePrefixFilter;
+import org.archive.wayback.resourceindex.filters.WARCRevisitAnnotationFilter;
+import org.archive.wayback.util.ObjectFilter;
+
+/**
+ * Test for {@link RevisitPayloadCache}.
+ */
+public class RevisitPayloadCacheTest extends TestCase {
+
+	RevisitPayloadCache cut;
+
+	@Override
+	protected void setUp() throws Exception {
+		cut = new RevisitPayloadCache();
+	}
+
+	private static CaptureSearchResult capture(String timestamp,
+			String digest, String file, String mimeType) {
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setUrlKey("example.com)/");
+		result.setOriginalUrl("http://example.com/");
+		result.setCaptureTimestamp(timestamp);
+		result.setDigest(digest);
+		result.setFile(file);
+		result.setOffset(file.equals("-") ? -1 : 100);
+		result.setCompressedLength(file.equals("-") ? -1 : 2000);
+		result.setMimeType(mimeType);
+		return result;
+	}
+
+	public void testRememberAndResolve() {
+		cut.remember(capture("20100101000000", "AAAA", "a.warc.gz",
+				"text/html"));
+		CaptureSearchResult revisit = capture("20120101000000", "AAAA",
+				"b.warc.gz", "warc/revisit");
+		assertTrue(cut.resolve(revisit));
+		assertTrue(revisit.isDuplicateDigest());
+		assertEquals("a.warc.gz", revisit.getDuplicatePayloadFile());
+		assertEquals(Long.valueOf(100), revisit.getDuplicatePayloadOffset());
+		assertEquals(2000, revisit.getDuplicatePayloadCompressedLength());
+		assertEquals(1, cut.getHitCount());
+
+		CaptureSearchResult other = capture("20120101000000", "BBBB",
+				"b.warc.gz", "warc/revisit");
+		assertFalse(cut.resolve(other));
+		assertEquals(1, cut.getMissCount());
+	}
+
+	public void testRevisitsNotRemembered() {
+		cut.remember(capture("20100101000000", "AAAA", "b.warc.gz",
+				"warc/revisit"));
+		cut.remember(capture("20100101000000", "AAAA", "-", "text/html"));
+		assertEquals(0, cut.size());
+	}
+
+	public void testBounded() {
+		cut.setMaxEntries(2);
+		cut.remember(capture("20100101000000", "AAAA", "a.warc.gz",
+				"text/html"));
+		cut.remember(capture("20100101000000", "BBBB", "a.warc.gz",
+				"text/html"));
+		// touch AAAA, so BBBB is evicted
+		assertNotNull(cut.get("example.com)/", "AAAA"));
+		cut.remember(capture("20100101000000", "CCCC", "a.warc.gz",
+				"text/html"));
+		assertEquals(2, cut.size());
+		assertNotNull(cut.get("example.com)/", "AAAA"));
+		assertNull(cut.get("example.com)/", "BBBB"));
+		assertNotNull(cut.get("example.com)/", "CCCC"));
+	}
+
+	public void testAnnotationFilterAcrossQueries() {
+		WARCRevisitAnnotationFilter first = new WARCRevisitAnnotationFilter(cut);
+		first.filterObject(capture("20100101000000", "AAAA", "a.warc.gz",
+				"text/html"));
+
+		// later query which does not see the original
+		WARCRevisitAnnotationFilter second = new WARCRevisitAnnotationFilter(cut);
+		CaptureSearchResult revisit = capture("20120101000000", "AAAA",
+				"b.warc.gz", "warc/revisit");
+		second.filterObject(revisit);
+		assertEquals("a.warc.gz", revisit.getDuplicatePayloadFile());
+		assertEquals("20100101000000",
+				revisit.getDuplicateDigestStoredTimestamp());
+	}
+
+	public void testResolveFiltered() {
+		cut.remember(capture("20100101000000", "AAAA", "other-a.warc.gz",
+				"text/html"));
+		FilePrefixFilter prefixFilter = new FilePrefixFilter();
+		prefixFilter.setPrefixes(new String[] { "mine-" });
+		List<ObjectFilter<CaptureSearchResult>> filters =
+			new ArrayList<ObjectFilter<CaptureSearchResult>>();
+		filters.add(prefixFilter);
+
+		CaptureSearchResult revisit = capture("20120101000000", "AAAA",
+				"mine-b.warc.gz", "warc/revisit");
+		assertFalse(cut.resolve(revisit, filters));
+		assertNull(revisit.getDuplicatePayloadFile());
+
+		cut.remember(capture("20100101000000", "AAAA", "mine-a.warc.gz",
+				"text/html"));
+		assertTrue(cut.resolve(revisit, filters));
+		assertEquals("mine-a.warc.gz", revisit.getDuplicatePayloadFile());
+	}
+}
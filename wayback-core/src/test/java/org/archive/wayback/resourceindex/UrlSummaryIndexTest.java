@@ -0,0 +1,240 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.util.io.RuntimeIOException;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.UrlSearchResult;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.exception.ResourceIndexNotAvailableException;
+import org.archive.wayback.resourceindex.adapters.CaptureToUrlSearchResultIterator;
+import org.archive.wayback.resourceindex.adapters.UrlSummarySearchResultIterator;
+import org.archive.wayback.resourceindex.filters.DateRangeFilter;
+import org.archive.wayback.resourceindex.filters.ExclusionFilter;
+import org.archive.wayback.util.ObjectFilterIterator;
+import org.archive.wayback.util.WrappedCloseableIterator;
+
+/**
+ * Test for {@link UrlSummaryIndex} and {@link UrlSummarySearchResultIterator}.
+ */
+public class UrlSummaryIndexTest extends TestCase {
+
+	/**
+	 * SearchResultSource over a sorted List
+	 */
+	private static class ListSource implements SearchResultSource {
+		private List<CaptureSearchResult> captures;
+		private int read = 0;
+		public ListSource(List<CaptureSearchResult> captures) {
+			this.captures = captures;
+		}
+		public CloseableIterator<CaptureSearchResult> getPrefixIterator(
+				String prefix) throws ResourceIndexNotAvailableException {
+			int i = 0;
+			while (i < captures.size() &&
+					captures.get(i).getUrlKey().compareTo(prefix) < 0) {
+				i++;
+			}
+			List<CaptureSearchResult> tail = captures.subList(i, captures.size());
+			read += tail.size();
+			return new WrappedCloseableIterator<CaptureSearchResult>(
+				tail.iterator());
+		}
+		public CloseableIterator<CaptureSearchResult> getPrefixReverseIterator(
+				String prefix) {
+			throw new UnsupportedOperationException();
+		}
+		public void cleanup(CloseableIterator<CaptureSearchResult> c) {
+		}
+		public void shutdown() {
+		}
+	}
+
+	private static CaptureSearchResult capture(String urlKey, String timestamp,
+			String url, String digest) {
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setUrlKey(urlKey);
+		result.setCaptureTimestamp(timestamp);
+		result.setOriginalUrl(url);
+		result.setDigest(digest);
+		result.setMimeType("text/html");
+		return result;
+	}
+
+	private static List<CaptureSearchResult> captures() {
+		List<CaptureSearchResult> captures = new ArrayList<CaptureSearchResult>();
+		captures.add(capture("com,example)/", "20010101000000", "http://example.com/", "A"));
+		captures.add(capture("com,example)/", "20020101000000", "http://www.example.com/", "B"));
+		captures.add(capture("com,example)/", "20030101000000", "http://example.com/", "A"));
+		captures.add(capture("com,example)/a", "20010601000000", "http://example.com/a", "C"));
+		// omitted by CoreCaptureFilterGroup:
+		CaptureSearchResult dat = capture("com,example)/b", "20020101000000", "http://example.com/b", "D");
+		dat.setMimeType("alexa/dat");
+		captures.add(dat);
+		captures.add(capture("com,example)/c", "20020601000000", "http://example.com/c", "E"));
+		captures.add(capture("com,example)/c", "20040101000000", "http://example.com/c", "F"));
+		return captures;
+	}
+
+	private static List<String> summaryLines(List<CaptureSearchResult> captures) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		UrlSummaryIndex.write(captures.iterator(), pw);
+		pw.flush();
+		List<String> lines = new ArrayList<String>();
+		for (String line : sw.toString().split("\n")) {
+			lines.add(line.trim());
+		}
+		return lines;
+	}
+
+	public void testWrite() {
+		List<String> lines = summaryLines(captures());
+		assertEquals(3, lines.size());
+		assertEquals("com,example)/ 20010101000000 20030101000000 3 2 http://example.com/",
+			lines.get(0));
+		assertEquals("com,example)/a 20010601000000 20010601000000 1 1 http://example.com/a",
+			lines.get(1));
+		assertEquals("com,example)/c 20020601000000 20040101000000 2 2 http://example.com/c",
+			lines.get(2));
+		for (String line : lines) {
+			assertEquals(line,
+				UrlSummaryIndex.formatLine(UrlSummaryIndex.parseLine(line)));
+		}
+		assertNull(UrlSummaryIndex.parseLine("com,example)/ 2001 2003 x 2 http://example.com/"));
+		assertNull(UrlSummaryIndex.parseLine("com,example)/ 2001"));
+	}
+
+	public void testMalformedLineSkipped() throws Exception {
+		List<String> lines = summaryLines(captures());
+		File file = File.createTempFile("urlsummary", ".txt");
+		try {
+			PrintWriter pw = new PrintWriter(file, "UTF-8");
+			pw.println(lines.get(0));
+			pw.println("com,example)/a 2001");
+			pw.println(lines.get(2));
+			pw.close();
+			UrlSummaryIndex index = new UrlSummaryIndex(file.getAbsolutePath());
+			List<String> expected = new ArrayList<String>();
+			expected.add(lines.get(0));
+			expected.add(lines.get(2));
+			assertEquals(expected, query(index.getPrefixIterator("com,example)/")));
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testNotUsedWithExclusions() {
+		LocalResourceIndex index = new LocalResourceIndex();
+		index.setUrlSummary(new UrlSummaryIndex());
+		WaybackRequest wbRequest = new WaybackRequest();
+		assertTrue(index.canUseUrlSummary(wbRequest));
+		// exclusion rules may depend on the date of each capture:
+		wbRequest.setExclusionFilter(new ExclusionFilter() {
+			public int filterObject(CaptureSearchResult o) {
+				return FILTER_INCLUDE;
+			}
+		});
+		assertFalse(index.canUseUrlSummary(wbRequest));
+	}
+
+	private static List<String> query(CloseableIterator<UrlSearchResult> itr)
+			throws IOException {
+		List<String> results = new ArrayList<String>();
+		while (itr.hasNext()) {
+			results.add(UrlSummaryIndex.formatLine(itr.next()));
+		}
+		itr.close();
+		return results;
+	}
+
+	public void testQueryMatchesCaptures() throws IOException {
+		List<CaptureSearchResult> captures = new ArrayList<CaptureSearchResult>();
+		for (CaptureSearchResult capture : captures()) {
+			if (!capture.getMimeType().equals("alexa/dat")) {
+				captures.add(capture);
+			}
+		}
+		List<UrlSearchResult> summaries = new ArrayList<UrlSearchResult>();
+		for (String line : summaryLines(captures)) {
+			summaries.add(UrlSummaryIndex.parseLine(line));
+		}
+		String[][] ranges = {
+			{ "19960101000000", "20991231235959" },
+			{ "20010101000000", "20010601000000" },
+			{ "20020101000000", "20030101000000" },
+			{ "20050101000000", "20991231235959" },
+		};
+		for (String[] range : ranges) {
+			ListSource source = new ListSource(captures);
+			List<String> expected = query(new CaptureToUrlSearchResultIterator(
+				new ObjectFilterIterator<CaptureSearchResult>(captures.iterator(),
+					new DateRangeFilter(range[0], range[1]))));
+			UrlSummarySearchResultIterator itr =
+				new UrlSummarySearchResultIterator(
+					new WrappedCloseableIterator<UrlSearchResult>(
+						summaries.iterator()),
+					source, new DateRangeFilter(range[0], range[1]),
+					range[0], range[1]);
+			assertEquals(range[0], expected, query(itr));
+			if (range == ranges[0]) {
+				// every summary covers the range:
+				assertEquals(0, itr.getCapturesRead());
+				assertEquals(0, source.read);
+			}
+		}
+	}
+
+	public void testCaptureIndexUnavailable() {
+		List<UrlSearchResult> summaries = new ArrayList<UrlSearchResult>();
+		for (String line : summaryLines(captures())) {
+			summaries.add(UrlSummaryIndex.parseLine(line));
+		}
+		ListSource source = new ListSource(captures()) {
+			public CloseableIterator<CaptureSearchResult> getPrefixIterator(
+					String prefix) throws ResourceIndexNotAvailableException {
+				throw new ResourceIndexNotAvailableException("down");
+			}
+		};
+		// a range no summary covers, so captures must be read:
+		UrlSummarySearchResultIterator itr =
+			new UrlSummarySearchResultIterator(
+				new WrappedCloseableIterator<UrlSearchResult>(
+					summaries.iterator()),
+				source, new DateRangeFilter("20020101000000", "20020201000000"),
+				"20020101000000", "20020201000000");
+		try {
+			itr.hasNext();
+			fail("expected RuntimeIOException");
+		} catch (RuntimeIOException e) {
+			assertEquals("down", e.getMessage());
+		}
+	}
+}
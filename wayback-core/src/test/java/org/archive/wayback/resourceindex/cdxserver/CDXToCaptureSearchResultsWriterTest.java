@@ -0,0 +1,150 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.cdxserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.cdxserver.CDXQuery;
+import org.archive.format.cdx.CDXFieldConstants;
+import org.archive.format.cdx.CDXLine;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.NearestCaptureCollector;
+import org.archive.wayback.util.Timestamp;
+
+/**
+ * Test for {@link CDXToCaptureSearchResultsWriter}: closest, first and last
+ * capture, and counts, for forward and reverse queries, with and without
+ * a {@link NearestCaptureCollector}.
+ */
+public class CDXToCaptureSearchResultsWriterTest extends TestCase {
+
+	/**
+	 * one capture a year, 2001 to 2009
+	 */
+	private static List<CDXLine> lines(boolean reverse) {
+		List<CDXLine> lines = new ArrayList<CDXLine>();
+		for (int year = 2001; year <= 2009; year++) {
+			CDXLine line = new CDXLine("com,example)/ " + year +
+					"0101000000 http://example.com/ text/html 200 D" + year +
+					" - - 1000 " + year + " a.warc.gz",
+					CDXFieldConstants.CDX_ALL_NAMES);
+			if (reverse) {
+				lines.add(0, line);
+			} else {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+
+	private static CaptureSearchResults write(boolean reverse, String target,
+			int perSide) {
+		CDXQuery query = new CDXQuery("http://example.com/");
+		if (reverse) {
+			query.setSort(CDXQuery.SortType.reverse);
+		}
+		CDXToCaptureSearchResultsWriter writer =
+			new CDXToCaptureSearchResultsWriter(query, true, false, null);
+		writer.setTargetTimestamp(target);
+		if (perSide > 0) {
+			long wantMS = (target != null ? Timestamp.parseAfter(target)
+					: Timestamp.latestTimestamp()).getDate().getTime();
+			writer.setNearestCaptureCollector(
+				new NearestCaptureCollector(wantMS, perSide));
+		}
+		writer.begin();
+		for (CDXLine line : lines(reverse)) {
+			writer.writeLine(line);
+		}
+		writer.end();
+		return writer.getSearchResults();
+	}
+
+	private static String years(CaptureSearchResults results) {
+		StringBuilder sb = new StringBuilder();
+		for (CaptureSearchResult result : results) {
+			if (sb.length() > 0) {
+				sb.append(",");
+			}
+			sb.append(result.getCaptureTimestamp().substring(0, 4));
+		}
+		return sb.toString();
+	}
+
+	private static void assertResults(CaptureSearchResults results,
+			String closest, String years) {
+		assertEquals(closest, results.getClosest().getCaptureTimestamp());
+		assertEquals(years, years(results));
+		assertEquals("20010101000000", results.getFirstResultTimestamp());
+		assertEquals("20090101000000", results.getLastResultTimestamp());
+		assertEquals(9, results.getMatchingCount());
+		assertEquals(years.split(",").length, results.getReturnedCount());
+	}
+
+	public void testTarget() {
+		String all = "2001,2002,2003,2004,2005,2006,2007,2008,2009";
+		for (boolean reverse : new boolean[] { false, true }) {
+			// exact:
+			assertResults(write(reverse, "20050101000000", 0),
+					"20050101000000", all);
+			// nearer to 2005 than to 2004:
+			assertResults(write(reverse, "20040901000000", 0),
+					"20050101000000", all);
+			// nearer to 2004 than to 2005:
+			assertResults(write(reverse, "20040301000000", 0),
+					"20040101000000", all);
+			// outside the timeline:
+			assertResults(write(reverse, "19990101000000", 0),
+					"20010101000000", all);
+			assertResults(write(reverse, "20120101000000", 0),
+					"20090101000000", all);
+		}
+	}
+
+	public void testNoTarget() {
+		String all = "2001,2002,2003,2004,2005,2006,2007,2008,2009";
+		// the latest capture, whichever way the lines come:
+		assertResults(write(false, null, 0), "20090101000000", all);
+		assertResults(write(true, null, 0), "20090101000000", all);
+		assertResults(write(false, null, 2), "20090101000000",
+				"2001,2008,2009");
+		assertResults(write(true, null, 2), "20090101000000",
+				"2001,2008,2009");
+	}
+
+	public void testNearestCaptureCollector() {
+		for (boolean reverse : new boolean[] { false, true }) {
+			// two on each side, and the first and last:
+			assertResults(write(reverse, "20050101000000", 2),
+					"20050101000000", "2001,2004,2005,2006,2007,2009");
+			assertResults(write(reverse, "20040901000000", 2),
+					"20050101000000", "2001,2003,2004,2005,2006,2009");
+			// the closest is kept, even if the collector would not:
+			assertResults(write(reverse, "19990101000000", 2),
+					"20010101000000", "2001,2002,2009");
+			assertResults(write(reverse, "20120101000000", 2),
+					"20090101000000", "2001,2008,2009");
+		}
+	}
+}
@@ -211,6 +211,43 @@ public class EmbeddedCDXServerIndexTest extends TestCase {
 		}
 	}
 	
+	/**
+	 * {@link EmbeddedCDXServerIndex#setFilterExpr(String)} compiles the
+	 * expression once, and every query shares it.
+	 * @throws Exception
+	 */
+	public void testFilterExpr() throws Exception {
+		WaybackRequest wbr = new WaybackRequest();
+		wbr.setRequestUrl("http://example.com/");
+		wbr.setCaptureQueryRequest();
+		setCdxLines(CDXLINE1);
+
+		try {
+			cut.setFilterExpr("statuscode === 200");
+			fail("bad expression accepted");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+
+		cut.setFilterExpr("mimetype != warc/revisit");
+		cut.query(wbr);
+		cut.query(wbr);
+		assertEquals(2, testCDXServer.capturedArgs.size());
+		CDXQuery query1 = (CDXQuery)testCDXServer.capturedArgs.get(0)[0];
+		CDXQuery query2 = (CDXQuery)testCDXServer.capturedArgs.get(1)[0];
+		assertNotNull(query1.getCompiledFilterExpr());
+		assertSame(query1.getCompiledFilterExpr(),
+			query2.getCompiledFilterExpr());
+		assertEquals("mimetype != warc/revisit", query1.getFilterExpr());
+
+		testCDXServer.clearCapturedArgs();
+		cut.setFilterExpr("");
+		cut.query(wbr);
+		CDXQuery query = (CDXQuery)testCDXServer.capturedArgs.get(0)[0];
+		assertNull(query.getCompiledFilterExpr());
+		assertEquals("", query.getFilterExpr());
+	}
+
 	/**
 	 * for those SURT prefixes in {@code ignoreRobotsPaths}, 
 	 * {@link AuthToken#isIgnoreRobots()} flag is set.
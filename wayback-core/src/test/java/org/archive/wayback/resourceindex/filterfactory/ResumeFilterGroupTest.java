@@ -0,0 +1,91 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.filterfactory;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.exception.BadQueryException;
+import org.archive.wayback.resourceindex.ResumeCursor;
+
+/**
+ * Test for checks of the request's resume key in {@link ResumeFilterGroup}.
+ */
+public class ResumeFilterGroupTest extends TestCase {
+
+	private static final String URL_KEY = "com,example)/";
+
+	private static WaybackRequest captureQuery(ResumeCursor cursor) {
+		WaybackRequest request = WaybackRequest.createCaptureQueryRequet(
+				"http://example.com/", null, null, null);
+		request.setResumeKey(cursor.encode());
+		return request;
+	}
+
+	private static WaybackRequest urlQuery(ResumeCursor cursor) {
+		WaybackRequest request = WaybackRequest.createUrlQueryRequest(
+				"http://example.com/", null, null);
+		request.setResumeKey(cursor.encode());
+		return request;
+	}
+
+	private static void assertRejected(WaybackRequest request) {
+		try {
+			new ResumeFilterGroup(request, URL_KEY);
+			fail("expected BadQueryException");
+		} catch (BadQueryException e) {
+			// expected
+		}
+	}
+
+	public void testCaptureQuery() throws Exception {
+		ResumeFilterGroup group = new ResumeFilterGroup(captureQuery(
+				ResumeCursor.forCaptureQuery(URL_KEY, "20020101000000", 1, 10,
+						20)), URL_KEY);
+		assertEquals(URL_KEY + " 20020101000000", group.getSeekKey(URL_KEY));
+
+		// past the end of the query, and outside of it:
+		assertRejected(captureQuery(ResumeCursor.forCaptureQuery("zzz",
+				"20020101000000", 1, 10, 20)));
+		assertRejected(captureQuery(ResumeCursor.forCaptureQuery(
+				URL_KEY + "a", "20020101000000", 1, 10, 20)));
+		// a URL query cursor:
+		assertRejected(captureQuery(ResumeCursor.forUrlQuery(URL_KEY, 10,
+				20)));
+	}
+
+	public void testUrlQuery() throws Exception {
+		ResumeFilterGroup group = new ResumeFilterGroup(urlQuery(
+				ResumeCursor.forUrlQuery(URL_KEY + "a", 10, 20)), URL_KEY);
+		assertEquals(URL_KEY + "a", group.getSeekKey(URL_KEY));
+
+		assertRejected(urlQuery(ResumeCursor.forUrlQuery("zzz", 10, 20)));
+		assertRejected(urlQuery(ResumeCursor.forUrlQuery("com,example)", 10,
+				20)));
+	}
+
+	public void testNoResumeKey() throws Exception {
+		WaybackRequest request = WaybackRequest.createUrlQueryRequest(
+				"http://example.com/", null, null);
+		ResumeFilterGroup group = new ResumeFilterGroup(request, URL_KEY);
+		assertNull(group.getCursor());
+		assertEquals(URL_KEY, group.getSeekKey(URL_KEY));
+	}
+}
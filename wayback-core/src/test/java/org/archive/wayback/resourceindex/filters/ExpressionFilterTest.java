@@ -0,0 +1,133 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.filters;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.util.ObjectFilter;
+
+/**
+ * Test for {@link ExpressionFilter}.
+ */
+public class ExpressionFilterTest extends TestCase {
+
+	private CaptureSearchResult capture;
+
+	@Override
+	protected void setUp() throws Exception {
+		capture = new CaptureSearchResult();
+		capture.setUrlKey("com,example)/index.html?a=1");
+		capture.setCaptureTimestamp("20050614070159");
+		capture.setOriginalUrl("http://www.example.com/index.html?a=1");
+		capture.setMimeType("text/html");
+		capture.setHttpCode("200");
+		capture.setDigest("AAAABBBBCCCC");
+		capture.setFile("IA-001102.arc.gz");
+		capture.setOffset(3456);
+		capture.setCompressedLength(1200);
+	}
+
+	private boolean matches(String expression) {
+		int ruling = new ExpressionFilter(expression).filterObject(capture);
+		assertTrue(ruling != ObjectFilter.FILTER_ABORT);
+		return ruling == ObjectFilter.FILTER_INCLUDE;
+	}
+
+	public void testComparisons() {
+		assertTrue(matches("statuscode == 200"));
+		assertFalse(matches("statuscode != 200"));
+		assertTrue(matches("mimetype == 'text/html'"));
+		assertFalse(matches("timestamp < 20050614070159"));
+		assertTrue(matches("timestamp <= 20050614070159"));
+		// numeric, not String, ordering:
+		assertTrue(matches("length > 999"));
+		assertFalse(matches("length < 999"));
+		assertTrue(matches("offset in [3000, 4000]"));
+		assertFalse(matches("offset in [0,3455]"));
+		assertTrue(matches("timestamp in [20050101000000, 20051231235959]"));
+		// partial timestamps stand for the whole period:
+		assertTrue(matches("timestamp >= 2005"));
+		assertFalse(matches("timestamp >= 2006"));
+		assertTrue(matches("timestamp <= 2005"));
+		assertFalse(matches("timestamp < 2005"));
+		assertFalse(matches("timestamp > 2005"));
+		assertTrue(matches("timestamp > 200505"));
+		assertFalse(matches("timestamp <= 200505"));
+		assertTrue(matches("timestamp in [2005, 2005]"));
+		assertFalse(matches("timestamp in [2004, 200505]"));
+		// String range:
+		assertTrue(matches("filename in [IA-, IB-]"));
+		assertFalse(matches("filename in [IA-002, IB-]"));
+		// non-numeric values never match numeric comparisons:
+		assertFalse(matches("mimetype > 0"));
+		assertFalse(matches("mimetype < 0"));
+		assertTrue(matches("filename > IA-001102"));
+		assertFalse(matches("filename < IA-001102"));
+	}
+
+	public void testMatching() {
+		assertTrue(matches("filename ^= IA-"));
+		assertFalse(matches("filename ^= IB-"));
+		assertTrue(matches("original *= '?a='"));
+		assertTrue(matches("original =~ '.*\\?a=\\d'"));
+		assertFalse(matches("original =~ example"));
+		assertTrue(matches("original !~ example"));
+		assertTrue(matches("statuscode =~ '[23]..'"));
+		// unset fields match nothing:
+		assertFalse(matches("redirect == -"));
+		assertTrue(matches("!(redirect == -)"));
+	}
+
+	public void testBooleans() {
+		assertTrue(matches("statuscode == 200 && mimetype ^= text/"));
+		assertFalse(matches("statuscode == 200 and mimetype ^= image/"));
+		assertTrue(matches("statuscode == 404 || mimetype ^= text/"));
+		assertTrue(matches("statuscode == 404 or not mimetype ^= image/"));
+		assertTrue(matches("!statuscode == 404"));
+		// && binds tighter than ||:
+		assertTrue(matches("statuscode == 200 || statuscode == 404 && length > 5000"));
+		assertFalse(matches("(statuscode == 200 || statuscode == 404) && length > 5000"));
+		assertTrue(matches(" ( ( original^=http:// ) )&&(digest==AAAABBBBCCCC) "));
+	}
+
+	public void testErrors() {
+		String[] bad = {
+			"",
+			"statuscode",
+			"status == 200",
+			"statuscode === 200",
+			"statuscode == 200 &&",
+			"(statuscode == 200",
+			"statuscode == 200)",
+			"statuscode in [200 300]",
+			"original =~ '('",
+			"original == 'unterminated",
+		};
+		for (String expression : bad) {
+			try {
+				new ExpressionFilter(expression);
+				fail("expected IllegalArgumentException for " + expression);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
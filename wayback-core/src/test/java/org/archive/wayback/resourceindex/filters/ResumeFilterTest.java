@@ -0,0 +1,157 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.exception.BadQueryException;
+import org.archive.wayback.resourceindex.ResumeCursor;
+import org.archive.wayback.util.ObjectFilter;
+
+/**
+ * Test for {@link ResumeFilter} and {@link ResumeCursor}.
+ */
+public class ResumeFilterTest extends TestCase {
+
+	private static CaptureSearchResult capture(String urlKey, String timestamp,
+			String url) {
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setUrlKey(urlKey);
+		result.setCaptureTimestamp(timestamp);
+		result.setOriginalUrl(url);
+		return result;
+	}
+
+	private static List<CaptureSearchResult> captures() {
+		List<CaptureSearchResult> captures = new ArrayList<CaptureSearchResult>();
+		captures.add(capture("com,example)/", "20010101000000", "http://example.com/"));
+		captures.add(capture("com,example)/", "20020101000000", "http://example.com/"));
+		// same urlKey and timestamp, different URL:
+		captures.add(capture("com,example)/", "20020101000000", "https://example.com/"));
+		// duplicate of the record before:
+		captures.add(capture("com,example)/", "20020101000000", "https://example.com/"));
+		captures.add(capture("com,example)/", "20020101000000", "http://www.example.com/"));
+		captures.add(capture("com,example)/", "20030101000000", "http://example.com/"));
+		captures.add(capture("com,example)/a", "20010101000000", "http://example.com/a"));
+		captures.add(capture("com,example)/a", "20020101000000", "http://example.com/a"));
+		captures.add(capture("com,example)/b", "20010101000000", "http://example.com/b"));
+		return captures;
+	}
+
+	/**
+	 * read one page of {@code pageSize} captures after {@code cursor}, the
+	 * way LocalResourceIndex does.
+	 * @return cursor for the next page, or null at the end
+	 */
+	private static ResumeCursor readPage(List<CaptureSearchResult> index,
+			ResumeCursor cursor, int pageSize, List<CaptureSearchResult> out) {
+		ResumeFilter resumeFilter = new ResumeFilter(cursor);
+		DuplicateRecordFilter dupeFilter = new DuplicateRecordFilter();
+		int returned = 0;
+		CaptureSearchResult last = null;
+		int lastSkip = 0;
+		for (CaptureSearchResult capture : index) {
+			if (resumeFilter.filterObject(capture) != ObjectFilter.FILTER_INCLUDE) {
+				continue;
+			}
+			if (dupeFilter.filterObject(capture) != ObjectFilter.FILTER_INCLUDE) {
+				continue;
+			}
+			if (returned == pageSize) {
+				long offset = (cursor == null ? 0 : cursor.getOffset()) + returned;
+				return ResumeCursor.forCaptureQuery(last.getUrlKey(),
+					last.getCaptureTimestamp(), lastSkip, offset, 0);
+			}
+			out.add(capture);
+			returned++;
+			last = capture;
+			lastSkip = resumeFilter.getRunLength();
+		}
+		return null;
+	}
+
+	public void testCapturePaging() throws Exception {
+		List<CaptureSearchResult> index = captures();
+		// what a single pass over the index returns:
+		List<CaptureSearchResult> expected = new ArrayList<CaptureSearchResult>();
+		assertNull(readPage(index, null, 100, expected));
+		assertEquals(index.size() - 1, expected.size());
+
+		for (int pageSize = 1; pageSize < expected.size(); pageSize++) {
+			List<CaptureSearchResult> paged = new ArrayList<CaptureSearchResult>();
+			ResumeCursor cursor = readPage(index, null, pageSize, paged);
+			while (cursor != null) {
+				assertEquals(paged.size(), cursor.getOffset());
+				// cursors make it through their String form:
+				cursor = ResumeCursor.decode(cursor.encode());
+				cursor = readPage(index, cursor, pageSize, paged);
+			}
+			assertEquals(expected, paged);
+		}
+	}
+
+	public void testUrlQuery() throws Exception {
+		ResumeFilter filter = new ResumeFilter(
+			ResumeCursor.forUrlQuery("com,example)/a", 2, 3));
+		List<String> included = new ArrayList<String>();
+		for (CaptureSearchResult capture : captures()) {
+			if (filter.filterObject(capture) == ObjectFilter.FILTER_INCLUDE) {
+				included.add(capture.getUrlKey());
+			}
+		}
+		assertEquals(1, included.size());
+		assertEquals("com,example)/b", included.get(0));
+	}
+
+	public void testEncoding() throws Exception {
+		ResumeCursor cursor = ResumeCursor.forCaptureQuery(
+			"com,example)/?q=\u00E9", "20020101000000", 3, 150, 1000);
+		String encoded = cursor.encode();
+		assertTrue(encoded.matches("[A-Za-z0-9_-]+"));
+		ResumeCursor decoded = ResumeCursor.decode(encoded);
+		assertFalse(decoded.isUrlQuery());
+		assertEquals("com,example)/?q=\u00E9", decoded.getUrlKey());
+		assertEquals("20020101000000", decoded.getTimestamp());
+		assertEquals("com,example)/?q=\u00E9 20020101000000", decoded.getSeekKey());
+		assertEquals(3, decoded.getSkip());
+		assertEquals(150, decoded.getOffset());
+		assertEquals(1000, decoded.getTotal());
+
+		decoded = ResumeCursor.decode(
+			ResumeCursor.forUrlQuery("com,example)/", 10, 20).encode());
+		assertTrue(decoded.isUrlQuery());
+		assertNull(decoded.getTimestamp());
+		assertEquals("com,example)/", decoded.getSeekKey());
+
+		String[] bad = { "", "garbage", encoded.substring(0, encoded.length() / 2) };
+		for (String key : bad) {
+			try {
+				ResumeCursor.decode(key);
+				fail("expected BadQueryException for " + key);
+			} catch (BadQueryException e) {
+				// expected
+			}
+		}
+	}
+}
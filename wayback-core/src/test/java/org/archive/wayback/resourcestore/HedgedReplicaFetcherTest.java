@@ -0,0 +1,150 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.resourcestore.HedgedReplicaFetcher.ReplicaLoader;
+
+public class HedgedReplicaFetcherTest extends TestCase {
+
+	private static class NamedResource extends Resource {
+		String path;
+		CountDownLatch closed = null;
+		NamedResource(String path) {
+			this.path = path;
+		}
+		public void close() throws IOException {
+			if (closed != null) {
+				closed.countDown();
+			}
+		}
+		public int getStatusCode() {
+			return 200;
+		}
+		public long getRecordLength() {
+			return 0;
+		}
+		public Map<String, String> getHttpHeaders() {
+			return null;
+		}
+	}
+
+	/**
+	 * "slow" hosts take 2 seconds, "dead" hosts fail, others answer at once.
+	 */
+	private ReplicaLoader loader = new ReplicaLoader() {
+		public Resource load(String path) throws IOException {
+			if (path.contains("slow")) {
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			if (path.contains("dead")) {
+				throw new IOException("dead " + path);
+			}
+			return new NamedResource(path);
+		}
+	};
+
+	public void testHostOf() {
+		assertEquals("host:8080",
+				HedgedReplicaFetcher.hostOf("http://host:8080/a/b.warc.gz"));
+		assertEquals("host", HedgedReplicaFetcher.hostOf("http://host"));
+		assertEquals("file", HedgedReplicaFetcher.hostOf("/data/b.warc.gz"));
+	}
+
+	public void testHedgeWinsOverSlowReplica() throws Exception {
+		HedgedReplicaFetcher fetcher = new HedgedReplicaFetcher();
+		fetcher.setMaxHedgeDelayMS(50);
+		long start = System.currentTimeMillis();
+		NamedResource r = (NamedResource) fetcher.fetch(new String[] {
+				"http://slow/a.warc.gz", "http://fast/a.warc.gz"}, loader);
+		assertEquals("http://fast/a.warc.gz", r.path);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+
+		// the slow host is now ordered after the fast one:
+		List<String> ordered = fetcher.orderByHealth(new String[] {
+				"http://slow/a.warc.gz", "http://fast/a.warc.gz"});
+		assertEquals("http://fast/a.warc.gz", ordered.get(0));
+		fetcher.shutdown();
+	}
+
+	public void testFailedHostsOrderedLast() throws Exception {
+		HedgedReplicaFetcher fetcher = new HedgedReplicaFetcher();
+		fetcher.setHedging(false);
+		fetcher.setFailureThreshold(2);
+		String[] paths = {"http://dead/a.warc.gz", "/data/a.warc.gz"};
+		for (int i = 0; i < 2; i++) {
+			NamedResource r = (NamedResource) fetcher.fetch(paths, loader);
+			assertEquals("/data/a.warc.gz", r.path);
+		}
+		assertEquals("/data/a.warc.gz", fetcher.orderByHealth(paths).get(0));
+	}
+
+	public void testAbandonedWinnerClosed() throws Exception {
+		HedgedReplicaFetcher fetcher = new HedgedReplicaFetcher();
+		final CountDownLatch closed = new CountDownLatch(1);
+		final Thread caller = Thread.currentThread();
+		// the caller gives up while the replica is winning:
+		ReplicaLoader interrupting = new ReplicaLoader() {
+			public Resource load(String path) throws IOException {
+				caller.interrupt();
+				NamedResource resource = new NamedResource(path);
+				resource.closed = closed;
+				return resource;
+			}
+		};
+		try {
+			fetcher.fetch(new String[] {
+					"http://a/a.warc.gz", "http://b/a.warc.gz"}, interrupting);
+			fail("expected IOException");
+		} catch (IOException e) {
+			// expected
+		} finally {
+			Thread.interrupted();
+		}
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		fetcher.shutdown();
+	}
+
+	public void testAllFail() throws Exception {
+		HedgedReplicaFetcher fetcher = new HedgedReplicaFetcher();
+		try {
+			fetcher.fetch(new String[] {
+					"http://dead1/a.warc.gz", "http://dead2/a.warc.gz"}, loader);
+			fail("expected IOException");
+		} catch (IOException e) {
+			// expected
+		}
+		assertNull(fetcher.fetch(new String[0], loader));
+		fetcher.shutdown();
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+public class MemoryPathIndexTest extends TestCase {
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("path-index", ".txt");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	private void writeIndex(String[] lines, long mtime) throws IOException {
+		Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		for (String line : lines) {
+			w.write(line);
+			w.write("\n");
+		}
+		w.close();
+		file.setLastModified(mtime);
+	}
+
+	public void testLookup() throws Exception {
+		writeIndex(new String[] {
+				"a.arc.gz\t/1/a.arc.gz",
+				"b.warc.gz\t/1/b.warc.gz",
+				"b.warc.gz\thttp://host2/b.warc.gz",
+				"cé.warc.gz\t/2/cé.warc.gz"
+		}, 10000);
+		MemoryPathIndex pi = new MemoryPathIndex();
+		pi.setPathIndex(file.getAbsolutePath());
+		pi.init();
+		assertEquals(3, pi.getSize());
+
+		String[] paths = pi.lookupPath("b.warc.gz");
+		assertEquals(2, paths.length);
+		assertEquals("/1/b.warc.gz", paths[0]);
+		assertEquals("http://host2/b.warc.gz", paths[1]);
+
+		paths = pi.lookupPath("cé.warc.gz");
+		assertEquals(1, paths.length);
+		assertEquals("/2/cé.warc.gz", paths[0]);
+
+		assertEquals(0, pi.lookupPath("a.arc").length);
+		assertEquals(0, pi.lookupPath("b.warc.gz.open").length);
+		assertEquals(0, pi.lookupPath("0.arc.gz").length);
+		// negative cache hit:
+		assertEquals(0, pi.lookupPath("0.arc.gz").length);
+
+		pi.setPrefixPath("/mnt");
+		assertEquals("/mnt/1/a.arc.gz", pi.lookupPath("a.arc.gz")[0]);
+	}
+
+	public void testReload() throws Exception {
+		writeIndex(new String[] {"a.arc.gz\t/1/a.arc.gz"}, 10000);
+		MemoryPathIndex pi = new MemoryPathIndex();
+		pi.setPathIndex(file.getAbsolutePath());
+		pi.init();
+		assertEquals(0, pi.lookupPath("b.arc.gz").length);
+
+		writeIndex(new String[] {
+				"a.arc.gz\t/1/a.arc.gz",
+				"b.arc.gz\t/1/b.arc.gz"
+		}, 20000);
+		pi.reloadFile();
+		assertEquals(2, pi.getSize());
+		assertEquals("/1/b.arc.gz", pi.lookupPath("b.arc.gz")[0]);
+
+		// unsorted files are rejected, and the previous index is kept:
+		writeIndex(new String[] {
+				"b.arc.gz\t/1/b.arc.gz",
+				"a.arc.gz\t/1/a.arc.gz"
+		}, 30000);
+		try {
+			pi.reloadFile();
+			fail("unsorted path index loaded");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(2, pi.getSize());
+		assertEquals("/1/a.arc.gz", pi.lookupPath("a.arc.gz")[0]);
+	}
+}
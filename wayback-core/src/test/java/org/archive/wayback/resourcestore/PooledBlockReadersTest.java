@@ -0,0 +1,94 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.TestCase;
+
+import org.archive.format.gzip.zipnum.ZipNumBlockLoader;
+import org.archive.util.binsearch.SeekableLineReader;
+
+/**
+ * Test for {@link PooledBlockReaders}.
+ */
+public class PooledBlockReadersTest extends TestCase {
+
+	private File file;
+	private ZipNumBlockLoader loader;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("PooledBlockReadersTest", ".warc.gz");
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write("line 1\nline 2\n".getBytes("UTF-8"));
+		fos.close();
+		loader = new ZipNumBlockLoader();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ZipNumBlockLoader.closeAllReaders();
+		file.delete();
+		super.tearDown();
+	}
+
+	public void testReleasedOnceClosed() throws Exception {
+		SeekableLineReader inUse = loader.createBlockReader(file.getPath());
+		PooledBlockReaders.track(inUse);
+		SeekableLineReader done = loader.createBlockReader(file.getPath());
+		PooledBlockReaders.track(done);
+		done.close();
+		assertEquals(1, PooledBlockReaders.getOpenCount());
+
+		// a reader still read by a Resource is left alone:
+		assertFalse(PooledBlockReaders.release());
+		assertFalse(inUse.isClosed());
+
+		inUse.close();
+		assertTrue(PooledBlockReaders.release());
+		assertEquals(0, PooledBlockReaders.getOpenCount());
+	}
+
+	public void testLeakedReaderClosed() throws Exception {
+		// created on this thread, but never handed out in a Resource:
+		SeekableLineReader leaked = loader.createBlockReader(file.getPath());
+		assertTrue(PooledBlockReaders.release());
+		assertTrue(leaked.isClosed());
+	}
+
+	public void testPerThread() throws Exception {
+		SeekableLineReader inUse = loader.createBlockReader(file.getPath());
+		PooledBlockReaders.track(inUse);
+		final boolean[] released = new boolean[1];
+		Thread other = new Thread() {
+			public void run() {
+				released[0] = PooledBlockReaders.release();
+			}
+		};
+		other.start();
+		other.join();
+		assertTrue(released[0]);
+		assertFalse(inUse.isClosed());
+		inUse.close();
+	}
+}
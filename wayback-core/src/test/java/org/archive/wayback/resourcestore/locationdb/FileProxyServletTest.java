@@ -0,0 +1,120 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore.locationdb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+public class FileProxyServletTest extends TestCase {
+
+	public void testParseRange() {
+		long[] r = FileProxyServlet.parseRange("bytes=100-");
+		assertEquals(100, r[0]);
+		assertEquals(-1, r[1]);
+
+		r = FileProxyServlet.parseRange("bytes=100-199");
+		assertEquals(100, r[0]);
+		assertEquals(199, r[1]);
+
+		r = FileProxyServlet.parseRange("bytes=0-0");
+		assertEquals(0, r[0]);
+		assertEquals(0, r[1]);
+
+		assertNull(FileProxyServlet.parseRange("bytes=200-100"));
+		assertNull(FileProxyServlet.parseRange("bytes=-500"));
+		assertNull(FileProxyServlet.parseRange("bytes=0-1,5-6"));
+		assertNull(FileProxyServlet.parseRange("100-"));
+		assertNull(FileProxyServlet.parseRange("bytes=abc-"));
+	}
+
+	public void testParseContentRange() {
+		long[] r = FileProxyServlet.parseContentRange("bytes 100-199/1000");
+		assertEquals(100, r[0]);
+		assertEquals(199, r[1]);
+		assertEquals(1000, r[2]);
+
+		r = FileProxyServlet.parseContentRange("bytes 0-9/*");
+		assertEquals(0, r[0]);
+		assertEquals(9, r[1]);
+		assertEquals(-1, r[2]);
+
+		assertNull(FileProxyServlet.parseContentRange("bytes 9-0/10"));
+		assertNull(FileProxyServlet.parseContentRange("bytes */1000"));
+	}
+
+	public void testUnsatisfiedRange() {
+		assertEquals("bytes 100-199/1000",
+				FileProxyServlet.makeContentRange(100, 100, 1000));
+		assertEquals("bytes */1000",
+				FileProxyServlet.makeContentRange(1000, 0, 1000));
+		assertNull(FileProxyServlet.makeContentRange(1000, 0, -1));
+
+		assertEquals(1000, FileProxyServlet.parseUnsatisfiedRange("bytes */1000"));
+		assertEquals(-1, FileProxyServlet.parseUnsatisfiedRange("bytes 0-9/10"));
+	}
+
+	public void testRangeAtEndOfFile() throws Exception {
+		File file = File.createTempFile("FileProxyServletTest", ".warc.gz");
+		file.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(new byte[10]);
+		fos.close();
+
+		ResourceFileLocationDB locationDB =
+			EasyMock.createMock(ResourceFileLocationDB.class);
+		EasyMock.expect(locationDB.nameToUrls("a.warc.gz"))
+			.andReturn(new String[] { file.getAbsolutePath() }).anyTimes();
+		EasyMock.replay(locationDB);
+
+		FileProxyServlet servlet = new FileProxyServlet();
+		servlet.setLocationDB(locationDB);
+		try {
+			for (String range : new String[] { "bytes=10-", "bytes=20-30" }) {
+				HttpServletRequest request =
+					EasyMock.createNiceMock(HttpServletRequest.class);
+				EasyMock.expect(request.getRequestURI())
+					.andReturn("/files/a.warc.gz").anyTimes();
+				EasyMock.expect(request.getHeader("Range")).andReturn(range)
+					.anyTimes();
+				EasyMock.replay(request);
+
+				HttpServletResponse response =
+					EasyMock.createMock(HttpServletResponse.class);
+				response.setHeader("Content-Range", "bytes */10");
+				response.sendError(
+						HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				EasyMock.replay(response);
+
+				assertTrue(servlet.handleRequest(request, response));
+				EasyMock.verify(response);
+			}
+		} finally {
+			servlet.destroy();
+			file.delete();
+		}
+	}
+}
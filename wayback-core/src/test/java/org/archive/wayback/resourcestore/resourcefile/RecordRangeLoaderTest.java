@@ -0,0 +1,201 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourcestore.resourcefile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.core.Resource;
+
+public class RecordRangeLoaderTest extends TestCase {
+
+	private final static String HTTP_RESPONSE = "HTTP/1.1 200 OK\r\n"
+		+ "Content-Type: text/plain\r\n\r\n";
+	private final static String BODY = "Hello, range loaded world";
+
+	private static byte[] bytes(String s) throws IOException {
+		return s.getBytes("UTF-8");
+	}
+
+	private static byte[] warcRecord(String url) throws IOException {
+		byte[] block = bytes(HTTP_RESPONSE + BODY);
+		return bytes("WARC/1.0\r\n"
+				+ "WARC-Type: response\r\n"
+				+ "WARC-Target-URI: " + url + "\r\n"
+				+ "WARC-Date: 2010-01-01T00:00:00Z\r\n"
+				+ "WARC-Record-ID: <urn:uuid:" + url.hashCode() + ">\r\n"
+				+ "Content-Type: application/http; msgtype=response\r\n"
+				+ "Content-Length: " + block.length + "\r\n\r\n"
+				+ HTTP_RESPONSE + BODY + "\r\n\r\n");
+	}
+
+	private static byte[] arcRecord(String url) throws IOException {
+		byte[] block = bytes(HTTP_RESPONSE + BODY);
+		return bytes(url + " 127.0.0.1 20100101000000 text/plain " 
+				+ block.length + "\n" + HTTP_RESPONSE + BODY + "\n");
+	}
+
+	/**
+	 * @return file holding the members, and after it the offsets of each
+	 */
+	private static File writeFile(String suffix, byte[][] members, 
+			long[] offsets) throws IOException {
+		File file = File.createTempFile("RecordRangeLoaderTest", suffix);
+		file.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(file);
+		long offset = 0;
+		for (int i = 0; i < members.length; i++) {
+			offsets[i] = offset;
+			fos.write(members[i]);
+			offset += members[i].length;
+		}
+		offsets[members.length] = offset;
+		fos.close();
+		return file;
+	}
+
+	private static String readBody(Resource r) throws IOException {
+		try {
+			return new String(readAll(r), "UTF-8");
+		} finally {
+			r.close();
+		}
+	}
+
+	private void checkRecords(String suffix, byte[][] members) 
+	throws Exception {
+		long[] offsets = new long[members.length + 1];
+		File file = writeFile(suffix, members, offsets);
+		String path = file.getAbsolutePath();
+		RecordRangeLoader loader = new RecordRangeLoader();
+		try {
+			for (int i = 0; i < members.length; i++) {
+				Resource r = loader.getResource(path, offsets[i], 
+						members[i].length);
+				assertEquals(200, r.getStatusCode());
+				assertEquals(BODY, readBody(r));
+			}
+			// range running into the next record, only the first is read:
+			Resource r = loader.getResource(path, offsets[0], 
+					members[0].length + 10);
+			assertEquals(BODY, readBody(r));
+
+			// range past the end of the file:
+			int last = members.length - 1;
+			try {
+				loader.getResource(path, offsets[last], 
+						members[last].length + 10);
+				fail("read past end of file");
+			} catch (IOException e) {
+				// expected
+			}
+
+			// range cut short in the middle of the record:
+			try {
+				readBody(loader.getResource(path, offsets[last], 
+						members[last].length / 2));
+				fail("truncated record read");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testWarcGzRecords() throws Exception {
+		checkRecords(".warc.gz", new byte[][] {
+				gzip(warcRecord("http://example.com/a")),
+				gzip(warcRecord("http://example.com/b"))});
+	}
+
+	public void testArcGzRecords() throws Exception {
+		checkRecords(".arc.gz", new byte[][] {
+				gzip(arcRecord("http://example.com/a")),
+				gzip(arcRecord("http://example.com/b"))});
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream gzos = new GZIPOutputStream(baos);
+		gzos.write(data);
+		gzos.close();
+		return baos.toByteArray();
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buf = new byte[333];
+		int r;
+		while ((r = is.read(buf, 0, buf.length)) != -1) {
+			baos.write(buf, 0, r);
+		}
+		is.close();
+		return baos.toByteArray();
+	}
+
+	public void testGZIPMemberInputStream() throws IOException {
+		byte[] data = new byte[100000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + (i * 31 % 26));
+		}
+		byte[] gz = gzip(data);
+		// member embedded in a larger, pooled-size buffer:
+		byte[] buffer = new byte[gz.length + 1024];
+		System.arraycopy(gz, 0, buffer, 0, gz.length);
+
+		InputStream is = new RecordRangeLoader.GZIPMemberInputStream(buffer, 0,
+				gz.length);
+		assertTrue(Arrays.equals(data, readAll(is)));
+
+		byte[] empty = gzip(new byte[0]);
+		is = new RecordRangeLoader.GZIPMemberInputStream(empty, 0, 
+				empty.length);
+		assertEquals(-1, is.read());
+	}
+
+	public void testGZIPMemberInputStreamTruncated() throws IOException {
+		byte[] gz = gzip("Some record content".getBytes("UTF-8"));
+		InputStream is = new RecordRangeLoader.GZIPMemberInputStream(gz, 0,
+				gz.length - 4);
+		try {
+			readAll(is);
+			fail("truncated member read");
+		} catch (IOException e) {
+			// expected
+		}
+		gz[gz.length - 8] ^= 0x01;
+		is = new RecordRangeLoader.GZIPMemberInputStream(gz, 0, gz.length);
+		try {
+			readAll(is);
+			fail("bad CRC not detected");
+		} catch (ZipException e) {
+			// expected
+		}
+	}
+}
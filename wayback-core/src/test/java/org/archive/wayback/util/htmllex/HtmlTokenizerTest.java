@@ -0,0 +1,240 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.htmllex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link HtmlTokenizer}
+ */
+public class HtmlTokenizerTest extends TestCase {
+
+	private static final String DOC = 
+		"<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01//EN\">\n"
+		+ "<HTML><head>\n"
+		+ "<title>a < b</title>\n"
+		+ "<script type='text/javascript'>for(var i=0; i<23; i++) { document.write(\"<b>\"+i+\"</b>\"); }</script>\n"
+		+ "<style>a > b { background: url(/x.png) }</style>\n"
+		+ "<!-- comment <a href=\"/no\"> -->\n"
+		+ "<script src=\"/a.js\"/>\n"
+		+ "</head>\n"
+		+ "<body onload = \"init()\" class=main>\n"
+		+ "<a href=\"/x?a=1&amp;b=2\" title='it > is'>x</a> 3<4 </ b>\n"
+		+ "<input type=checkbox checked/><br/><img src=/y.gif />\n"
+		+ "<![CDATA[ raw <data> ]]>\n"
+		+ "</BODY></html>\n";
+
+	// returns at most chunk chars per read, to exercise window boundaries
+	private static class ChunkedReader extends Reader {
+		private Reader in;
+		private int chunk;
+		public ChunkedReader(String s, int chunk) {
+			this.in = new StringReader(s);
+			this.chunk = chunk;
+		}
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			return in.read(cbuf, off, Math.min(len, chunk));
+		}
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private List<String> tokens(HtmlTokenizer tok, StringBuilder raw) 
+	throws IOException {
+		List<String> list = new ArrayList<String>();
+		HtmlToken t;
+		while ((t = tok.next()) != null) {
+			raw.append(t.getRaw());
+			list.add(t.getType() + ":" + (t.isTag() ? t.getName() : t.getRaw()));
+		}
+		return list;
+	}
+
+	/**
+	 * Concatenated token text must reproduce the document exactly,
+	 * whatever the window and read sizes
+	 * @throws IOException
+	 */
+	public void testRoundTrip() throws IOException {
+		int[] windows = { 64, 100, 1024, 16 * 1024 };
+		int[] chunks = { 1, 7, 64, 4096 };
+		for (int window : windows) {
+			for (int chunk : chunks) {
+				StringBuilder raw = new StringBuilder();
+				HtmlTokenizer tok = new HtmlTokenizer(
+						new ChunkedReader(DOC, chunk), window, 1024 * 1024);
+				tokens(tok, raw);
+				assertEquals("window " + window + " chunk " + chunk,
+						DOC, raw.toString());
+			}
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	public void testTokens() throws IOException {
+		HtmlTokenizer tok = new HtmlTokenizer(new StringReader(DOC));
+		HtmlToken t = tok.next();
+		assertEquals(HtmlToken.DECLARATION, t.getType());
+		assertEquals("!DOCTYPE", t.getName());
+		tok.next(); // newline
+		t = tok.next();
+		assertEquals(HtmlToken.START_TAG, t.getType());
+		assertEquals("HTML", t.getName());
+		assertEquals("HTML", t.getRawName());
+		t = tok.next();
+		assertEquals("HEAD", t.getName());
+		tok.next();
+		assertEquals("TITLE", tok.next().getName());
+		t = tok.next();
+		assertEquals(HtmlToken.TEXT, t.getType());
+		assertEquals("a ", t.getRaw());
+		t = tok.next();
+		assertEquals(HtmlToken.TEXT, t.getType());
+		assertEquals("< b", t.getRaw());
+		t = tok.next();
+		assertEquals(HtmlToken.END_TAG, t.getType());
+		assertEquals("TITLE", t.getName());
+		assertEquals("/title", t.getRawName());
+		tok.next();
+
+		t = tok.next();
+		assertEquals("SCRIPT", t.getName());
+		assertEquals("text/javascript", t.getAttribute("TYPE"));
+		assertEquals('\'', t.getSegmentQuote(2));
+		assertTrue(tok.isInRawText());
+		t = tok.next();
+		assertEquals(HtmlToken.RAW_TEXT, t.getType());
+		assertEquals("for(var i=0; i<23; i++) { document.write(\"<b>\"+i+\"</b>\"); }",
+				t.getRaw());
+		t = tok.next();
+		assertEquals(HtmlToken.END_TAG, t.getType());
+		assertEquals("SCRIPT", t.getName());
+		assertFalse(tok.isInRawText());
+		tok.next();
+
+		assertEquals("STYLE", tok.next().getName());
+		t = tok.next();
+		assertEquals(HtmlToken.RAW_TEXT, t.getType());
+		assertEquals("a > b { background: url(/x.png) }", t.getRaw());
+		assertEquals("STYLE", tok.next().getName());
+		tok.next();
+
+		t = tok.next();
+		assertEquals(HtmlToken.COMMENT, t.getType());
+		assertEquals(" comment <a href=\"/no\"> ", t.getText());
+		tok.next();
+
+		t = tok.next();
+		assertEquals("SCRIPT", t.getName());
+		assertTrue(t.isEmptyElement());
+		assertEquals("/a.js", t.getAttribute("src"));
+		assertFalse(tok.isInRawText());
+		tok.next();
+		assertEquals(HtmlToken.END_TAG, tok.next().getType());
+		tok.next();
+
+		t = tok.next();
+		assertEquals("BODY", t.getName());
+		assertEquals("init()", t.getAttribute("onload"));
+		assertEquals(" = ", t.getSegmentAssignment(2));
+		assertEquals("main", t.getAttribute("class"));
+		assertEquals((char) 0, t.getSegmentQuote(4));
+		tok.next();
+
+		t = tok.next();
+		assertEquals("A", t.getName());
+		assertEquals("/x?a=1&amp;b=2", t.getAttribute("href"));
+		assertEquals("it > is", t.getAttribute("title"));
+		assertNull(t.getAttribute("alt"));
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	public void testEmptyAndValuelessAttributes() throws IOException {
+		HtmlTokenizer tok = new HtmlTokenizer(new StringReader(
+				"<input type=checkbox checked/><br/><img src=/y.gif />"));
+		HtmlToken t = tok.next();
+		assertEquals("INPUT", t.getName());
+		assertEquals("", t.getAttribute("checked"));
+		assertTrue(t.isEmptyElement());
+		t = tok.next();
+		assertEquals("BR", t.getName());
+		assertTrue(t.isEmptyElement());
+		t = tok.next();
+		assertEquals("IMG", t.getName());
+		assertEquals("/y.gif", t.getAttribute("src"));
+		assertTrue(t.isEmptyElement());
+		assertNull(tok.next());
+	}
+
+	/**
+	 * Markup cut off by the end of the document is passed through as text
+	 * @throws IOException
+	 */
+	public void testUnterminated() throws IOException {
+		String[] docs = { "abc <a href=\"x", "<!-- no end", "<script>x<y",
+				"<", "a</", "<![CDATA[ x" };
+		for (String doc : docs) {
+			StringBuilder raw = new StringBuilder();
+			tokens(new HtmlTokenizer(new ChunkedReader(doc, 3), 64, 1024), 
+					raw);
+			assertEquals(doc, raw.toString());
+		}
+		HtmlTokenizer tok = new HtmlTokenizer(new StringReader("<script>x<y"));
+		assertEquals("SCRIPT", tok.next().getName());
+		HtmlToken t = tok.next();
+		assertEquals(HtmlToken.RAW_TEXT, t.getType());
+		assertEquals("x<y", t.getRaw());
+		assertNull(tok.next());
+	}
+
+	/**
+	 * Content longer than maxTokenLength is split, not lost
+	 * @throws IOException
+	 */
+	public void testMaxTokenLength() throws IOException {
+		StringBuilder sb = new StringBuilder("<script>");
+		for (int i = 0; i < 1000; i++) {
+			sb.append("var x").append(i).append(" = 1;\n");
+		}
+		sb.append("</script><a href='");
+		for (int i = 0; i < 500; i++) {
+			sb.append("xxxxxxxxxx");
+		}
+		sb.append("'>link</a>");
+		String doc = sb.toString();
+		StringBuilder raw = new StringBuilder();
+		List<String> list = tokens(new HtmlTokenizer(
+				new ChunkedReader(doc, 100), 64, 1024), raw);
+		assertEquals(doc, raw.toString());
+		assertTrue(list.contains(HtmlToken.END_TAG + ":SCRIPT"));
+		assertFalse(list.contains(HtmlToken.START_TAG + ":A"));
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.htmllex;
+
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import org.archive.url.UsableURI;
+import org.archive.url.UsableURIFactory;
+
+/**
+ * Tests for {@link RelativeUrlResolver}.
+ */
+public class RelativeUrlResolverTest extends TestCase {
+
+	static final String[] BASES = {
+		"http://foo.com/",
+		"http://foo.com/dir/bar.html",
+		"http://foo.com/dir/sub/",
+		"http://foo.com/dir/bar.html?a=b&c=d",
+		"https://www.example.org:8443/a/b/c.php?x=1",
+		"http://user@foo.com/dir/",
+		"http://foo.com/dir/bar.html#REF",
+	};
+
+	static final String[] RELATIVES = {
+		"",
+		"/",
+		"/images.gif",
+		"images.gif",
+		"dir2/images.gif",
+		"dir2/",
+		"/im/images.gif",
+		"/search?q=foo&lang=en",
+		"page.html?x=1",
+		"/?q=1",
+		"path/?q=1",
+		"//cdn.example.com/lib/jquery.js",
+		"//cdn.example.com/",
+		"//cdn-1.example.co.uk/a/b.css?v=3",
+		"/a~b/c_d-e.f",
+	};
+
+	/** forms left to UsableURIFactory */
+	static final String[] FALLBACK = {
+		"?q=1",
+		"./images.gif",
+		"../images.gif",
+		"/../images.gif",
+		"dir/./x",
+		"dir/..",
+		"dir//x",
+		"/ im.gif",
+		"images.gif   ",
+		"/a%20b",
+		"/a\\b",
+		"foo:bar",
+		"http://other.com/",
+		"//CDN.example.com/x",
+		"//cdn.example.com:80/x",
+		"//cdn.example.com",
+		"//cdn.example.com./x",
+		"//.example.com/x",
+		"//a..b/x",
+		"//1234/x",
+		"//user@host/x",
+		"/caf\u00e9.html",
+		"/a|b",
+	};
+
+	public void testResolve() {
+		RelativeUrlResolver r =
+			RelativeUrlResolver.forBase("http://foo.com/dir/bar.html?a=b#REF");
+		assertNotNull(r);
+		assertEquals("http://foo.com/dir/bar.html?a=b", r.resolve(""));
+		assertEquals("http://foo.com/", r.resolve("/"));
+		assertEquals("http://foo.com/images.gif", r.resolve("/images.gif"));
+		assertEquals("http://foo.com/dir/images.gif", r.resolve("images.gif"));
+		assertEquals("http://foo.com/dir/d2/i.gif?x=1&y=/z",
+				r.resolve("d2/i.gif?x=1&y=/z"));
+		assertEquals("http://foo.com/?q=1", r.resolve("/?q=1"));
+		assertEquals("http://cdn.example.com/lib/a.js",
+				r.resolve("//cdn.example.com/lib/a.js"));
+
+		r = RelativeUrlResolver.forBase("https://foo.com/");
+		assertEquals("https://cdn.example.com/", r.resolve("//cdn.example.com/"));
+		assertEquals("https://foo.com/a", r.resolve("a"));
+	}
+
+	public void testFallback() {
+		RelativeUrlResolver r =
+			RelativeUrlResolver.forBase("http://foo.com/dir/bar.html");
+		for (String rel : RELATIVES) {
+			assertNotNull(rel, r.resolve(rel));
+		}
+		for (String rel : FALLBACK) {
+			assertNull(rel, r.resolve(rel));
+		}
+	}
+
+	public void testUnsupportedBase() {
+		assertNull(RelativeUrlResolver.forBase(null));
+		assertNull(RelativeUrlResolver.forBase("ftp://foo.com/"));
+		assertNull(RelativeUrlResolver.forBase("http://foo.com"));
+		assertNull(RelativeUrlResolver.forBase("http://foo.com?x=/"));
+	}
+
+	public void testLength() {
+		RelativeUrlResolver r = RelativeUrlResolver.forBase("http://foo.com/");
+		StringBuilder sb = new StringBuilder("/");
+		while (sb.length() < RelativeUrlResolver.MAX_RESOLVED_LENGTH) {
+			sb.append('a');
+		}
+		assertNull(r.resolve(sb.toString()));
+	}
+
+	/**
+	 * every URL the fast path accepts must resolve exactly as
+	 * {@link UsableURIFactory} would.
+	 * @throws Exception
+	 */
+	public void testMatchesUsableURIFactory() throws Exception {
+		for (String base : BASES) {
+			UsableURI baseUri = UsableURIFactory.getInstance(base);
+			RelativeUrlResolver r =
+				RelativeUrlResolver.forBase(baseUri.toString());
+			assertNotNull(base, r);
+			for (String rel : RELATIVES) {
+				assertEquals(base + " + " + rel,
+						UsableURIFactory.getInstance(baseUri, rel).toString(),
+						r.resolve(rel));
+			}
+		}
+	}
+
+	/**
+	 * {@link ParseContext#resolve(String)} gives the same results with or
+	 * without the fast path.
+	 * @throws Exception
+	 */
+	public void testParseContextResolve() throws Exception {
+		for (String base : BASES) {
+			ParseContext pc = new ParseContext();
+			pc.setBaseUrl(new URL(base));
+			UsableURI baseUri = UsableURIFactory.getInstance(base);
+			for (String rel : RELATIVES) {
+				assertEquals(base + " + " + rel,
+						UsableURIFactory.getInstance(baseUri, rel) + "#F",
+						pc.resolve(rel + "#F"));
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+	public void testBucketIndexMonotonic() {
+		int prev = -1;
+		for (long v = 0; v < 100000; v++) {
+			int index = LatencyHistogram.bucketIndex(v);
+			assertTrue(index >= prev);
+			assertTrue(v <= LatencyHistogram.bucketUpperBound(index));
+			if (index > 0) {
+				assertTrue(v > LatencyHistogram.bucketUpperBound(index - 1));
+			}
+			prev = index;
+		}
+	}
+
+	public void testBucketPrecision() {
+		long[] values = { 9, 1000, 123456, 987654321L, 3600000000000L };
+		for (long v : values) {
+			long upper = LatencyHistogram.bucketUpperBound(
+					LatencyHistogram.bucketIndex(v));
+			assertTrue(upper >= v);
+			assertTrue(upper - v <= v / LatencyHistogram.SUB_BUCKETS);
+		}
+	}
+
+	public void testHugeValues() {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(Long.MAX_VALUE);
+		h.record(-5);
+		LatencyHistogram.Snapshot s = h.snapshot();
+		assertEquals(2, s.getCount());
+		assertEquals(Long.MAX_VALUE, s.getMax());
+		assertEquals(0, s.getValueAtQuantile(0.5));
+	}
+
+	public void testQuantiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.snapshot().getValueAtQuantile(0.99));
+		for (long ms = 1; ms <= 1000; ms++) {
+			h.record(ms * 1000000);
+		}
+		LatencyHistogram.Snapshot s = h.snapshot();
+		assertEquals(1000, s.getCount());
+		assertEquals(500500L * 1000000, s.getSum());
+		assertEquals(1000000000L, s.getMax());
+		assertNear(500000000L, s.getValueAtQuantile(0.5));
+		assertNear(900000000L, s.getValueAtQuantile(0.9));
+		assertNear(990000000L, s.getValueAtQuantile(0.99));
+		assertEquals(1000000000L, s.getValueAtQuantile(1.0));
+
+		h.reset();
+		assertEquals(0, h.snapshot().getCount());
+		assertEquals(0, h.snapshot().getMax());
+	}
+
+	public void testConcurrentRecord() throws InterruptedException {
+		final LatencyHistogram h = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						h.record(j);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		LatencyHistogram.Snapshot s = h.snapshot();
+		assertEquals(40000, s.getCount());
+		assertEquals(4L * 9999 * 10000 / 2, s.getSum());
+		assertEquals(9999, s.getMax());
+	}
+
+	private static void assertNear(long expected, long actual) {
+		assertTrue("expected about " + expected + " but was " + actual,
+				actual >= expected &&
+				actual - expected <= expected / LatencyHistogram.SUB_BUCKETS);
+	}
+}
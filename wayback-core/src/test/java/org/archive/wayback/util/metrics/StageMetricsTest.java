@@ -0,0 +1,201 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+
+/**
+ * Test for {@link StageMetrics} and {@link MetricsRequestHandler}.
+ */
+public class StageMetricsTest extends TestCase {
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		StageMetrics.reset();
+		StageMetrics.setEnabled(true);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		StageMetrics.setEnabled(false);
+		StageMetrics.reset();
+		super.tearDown();
+	}
+
+	public void testStagesSummedPerRequest() throws InterruptedException {
+		StageMetrics.beginRequest("wayback", "main");
+		for (int i = 0; i < 3; i++) {
+			long start = StageMetrics.start();
+			Thread.sleep(2);
+			StageMetrics.end(Stage.ROBOTS, start);
+		}
+		StageMetrics.endRequest();
+
+		StageMetrics.Segment segment = StageMetrics.getSegment("wayback", "main");
+		LatencyHistogram.Snapshot robots =
+			segment.getHistogram(Stage.ROBOTS).snapshot();
+		assertEquals(1, robots.getCount());
+		assertTrue(robots.getSum() >= 6000000);
+		assertEquals(0, segment.getHistogram(Stage.REWRITE).snapshot().getCount());
+	}
+
+	public void testOutsideRequestDropped() {
+		long start = StageMetrics.start();
+		StageMetrics.end(Stage.RENDER, start);
+		StageMetrics.endRequest();
+		assertTrue(StageMetrics.getSegments().isEmpty());
+	}
+
+	public void testDisabled() {
+		StageMetrics.setEnabled(false);
+		StageMetrics.beginRequest("wayback", null);
+		StageMetrics.end(Stage.TOTAL, StageMetrics.start());
+		StageMetrics.endRequest();
+		assertTrue(StageMetrics.getSegments().isEmpty());
+	}
+
+	public void testSegments() {
+		StageMetrics.beginRequest("wayback", "b");
+		StageMetrics.end(Stage.TOTAL, StageMetrics.start());
+		StageMetrics.endRequest();
+		StageMetrics.beginRequest("wayback", null);
+		StageMetrics.end(Stage.TOTAL, StageMetrics.start());
+		StageMetrics.endRequest();
+		StageMetrics.beginRequest("wayback", "b");
+		StageMetrics.end(Stage.TOTAL, StageMetrics.start());
+		StageMetrics.endRequest();
+
+		List<StageMetrics.Segment> segments = StageMetrics.getSegments();
+		assertEquals(2, segments.size());
+		assertEquals("-", segments.get(0).getCollection());
+		assertEquals("b", segments.get(1).getCollection());
+		assertEquals(2, segments.get(1).getHistogram(Stage.TOTAL).snapshot()
+				.getCount());
+	}
+
+	public void testBranch() throws InterruptedException {
+		StageMetrics.beginRequest("wayback", null);
+		final StageMetrics.Branch metrics = StageMetrics.branch();
+		Thread other = new Thread() {
+			public void run() {
+				metrics.enter();
+				try {
+					StageMetrics.end(Stage.ROBOTS, StageMetrics.start() - 5000);
+				} finally {
+					metrics.exit();
+				}
+				// after exit(), times are dropped again:
+				StageMetrics.end(Stage.EXCLUSION, StageMetrics.start());
+			}
+		};
+		other.start();
+		other.join();
+		metrics.join();
+		StageMetrics.end(Stage.ROBOTS, StageMetrics.start() - 1000);
+		StageMetrics.endRequest();
+
+		StageMetrics.Segment segment = StageMetrics.getSegment("wayback", null);
+		LatencyHistogram.Snapshot robots =
+			segment.getHistogram(Stage.ROBOTS).snapshot();
+		// one value for the request, summed over both threads:
+		assertEquals(1, robots.getCount());
+		assertTrue(robots.getSum() >= 6000);
+		assertEquals(0, segment.getHistogram(Stage.EXCLUSION).snapshot()
+				.getCount());
+	}
+
+	public void testBranchOutsideRequest() {
+		StageMetrics.Branch metrics = StageMetrics.branch();
+		metrics.enter();
+		StageMetrics.end(Stage.ROBOTS, StageMetrics.start());
+		metrics.exit();
+		metrics.join();
+		assertTrue(StageMetrics.getSegments().isEmpty());
+	}
+
+	public void testPrometheusOutput() {
+		StageMetrics.getSegment("wayback", "a\"b").getHistogram(Stage.TOTAL)
+			.record(250000000L);
+		MetricsRequestHandler handler = new MetricsRequestHandler();
+		handler.setQuantiles(new double[] { 0.5 });
+		StringWriter sw = new StringWriter();
+		handler.writeMetrics(new PrintWriter(sw));
+		String out = sw.toString();
+		String labels =
+			"{accesspoint=\"wayback\",collection=\"a\\\"b\",stage=\"total\"";
+		assertTrue(out, out.contains("# TYPE wayback_stage_seconds summary\n"));
+		assertTrue(out, out.contains("wayback_stage_seconds" + labels +
+				",quantile=\"0.5\"} 0.25\n"));
+		assertTrue(out, out.contains("wayback_stage_seconds_sum" + labels +
+				"} 0.25\n"));
+		assertTrue(out, out.contains("wayback_stage_seconds_count" + labels +
+				"} 1\n"));
+		assertFalse(out, out.contains("stage=\"rewrite\""));
+
+		int summaryType = out.indexOf("# TYPE wayback_stage_seconds summary\n");
+		int maxType = out.indexOf("# TYPE wayback_stage_seconds_max gauge\n");
+		int max = out.indexOf("wayback_stage_seconds_max" + labels + "} 0.25\n");
+		assertTrue(out, summaryType >= 0 && maxType > summaryType);
+		assertTrue(out, max > maxType);
+		assertTrue(out, out.lastIndexOf("wayback_stage_seconds_count") < maxType);
+	}
+
+	public void testResetRequiresPost() throws Exception {
+		StageMetrics.getSegment("wayback", null).getHistogram(Stage.TOTAL)
+			.record(1000L);
+		MetricsRequestHandler handler = new MetricsRequestHandler();
+
+		handler.handleRequest(request("GET"), response());
+		assertEquals(1, StageMetrics.getSegments().size());
+
+		handler.handleRequest(request("POST"), response());
+		assertTrue(StageMetrics.getSegments().isEmpty());
+	}
+
+	private static HttpServletRequest request(String method) {
+		HttpServletRequest request =
+			EasyMock.createNiceMock(HttpServletRequest.class);
+		EasyMock.expect(request.getMethod()).andReturn(method).anyTimes();
+		EasyMock.expect(request.getParameter("reset")).andReturn("true")
+			.anyTimes();
+		EasyMock.replay(request);
+		return request;
+	}
+
+	private static HttpServletResponse response() throws IOException {
+		HttpServletResponse response =
+			EasyMock.createNiceMock(HttpServletResponse.class);
+		EasyMock.expect(response.getWriter())
+			.andReturn(new PrintWriter(new StringWriter())).anyTimes();
+		EasyMock.replay(response);
+		return response;
+	}
+}
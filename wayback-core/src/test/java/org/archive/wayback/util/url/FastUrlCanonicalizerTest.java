@@ -0,0 +1,170 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.url;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.httpclient.URIException;
+
+/**
+ * Differential test of {@link FastUrlCanonicalizer} against
+ * {@link AggressiveUrlCanonicalizer}.
+ */
+public class FastUrlCanonicalizerTest extends TestCase {
+	private AggressiveUrlCanonicalizer aggressive =
+		new AggressiveUrlCanonicalizer();
+	private FastUrlCanonicalizer fast = new FastUrlCanonicalizer();
+
+	private static final String[] SCHEMES = {
+		"", "http://", "https://", "HTTP://", "Https://", "ftp://", "rtsp://",
+		"dns:", "mailto:"
+	};
+	private static final String[] HOSTS = {
+		"example.com", "www.example.com", "WWW.Example.COM", "www12.example.com",
+		"www.www.example.com", "wwwexample.com", "www.", "www3.com",
+		"sub-domain.example.co.uk", "-bad.example.com", "bad-.example.com",
+		"example..com", "example.com.", "xn--bcher-kva.de", "b\u00FCcher.de",
+		"127.0.0.1", "10.1.2", "localhost", "under_score.example.com",
+		"user@example.com", "user:pass@example.com", "", "EXAMPLE.com"
+	};
+	private static final String[] PORTS = {
+		"", "", "", ":80", ":443", ":8080", ":0", ":080", ":65535", ":65536",
+		":", ":x"
+	};
+	private static final String[] SEGMENTS = {
+		"a", "index.html", "A%20B", "a%2fb", "%7e", "~user", "a+b", "a b",
+		"(x)", "!", "*", "'", ";p=1", ":", "@n05", "$", ",", "=", "&", ".",
+		"..", "...", ".a", "", "UPPER", "page.aspx", "{a}", "a|b", "%",
+		"%25", "\u00E9", "a\tb", "a#frag", "a\\b", "www.x"
+	};
+	private static final String[] QUERIES = {
+		"", "", "?", "?&", "?a=1", "?a=1&b=2", "?a=1&", "?&a=1", "??",
+		"?a=b?c", "?a=b?", "?a=%20", "?a= b", "?u=http://x.com//y",
+		"?PHPSESSID=9682993c8daa2c5497996114facdc805",
+		"?jsessionid=999A9EF028317A82AC83F0FDFE59385A&x=1",
+		"?sid=9682993c8daa2c5497996114facdc805",
+		"?ASPSESSIONIDAQBSDSRT=EOHBLBDDPFCLHKPGGKLILNAM",
+		"?CFID=12412453&CFTOKEN=15501799", "?x=[1]", "?a=1#frag",
+		"?A=B", "?a=@", "?a=1&&b=2"
+	};
+
+	private static String pick(Random random, String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	private static String randomUrl(Random random) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(pick(random, SCHEMES));
+		sb.append(pick(random, HOSTS));
+		sb.append(pick(random, PORTS));
+		int segments = random.nextInt(5);
+		for (int i = 0; i < segments; i++) {
+			sb.append(random.nextInt(8) == 0 ? "//" : "/");
+			sb.append(pick(random, SEGMENTS));
+		}
+		if (random.nextBoolean()) {
+			sb.append("/");
+		}
+		sb.append(pick(random, QUERIES));
+		return sb.toString();
+	}
+
+	private static String keyOf(AggressiveUrlCanonicalizer c, String url) {
+		try {
+			return c.urlStringToKey(url);
+		} catch (URIException e) {
+			return "URIException";
+		} catch (RuntimeException e) {
+			return e.getClass().getName();
+		}
+	}
+
+	private void checkSame(String url) {
+		assertEquals(url, keyOf(aggressive, url), keyOf(fast, url));
+	}
+
+	public void testCorpus() {
+		Random random = new Random(42);
+		for (int i = 0; i < 50000; i++) {
+			checkSame(randomUrl(random));
+		}
+	}
+
+	public void testExhaustiveParts() {
+		for (String scheme : SCHEMES) {
+			for (String host : HOSTS) {
+				for (String port : PORTS) {
+					checkSame(scheme + host + port);
+					checkSame(scheme + host + port + "/");
+				}
+				for (String segment : SEGMENTS) {
+					checkSame(scheme + host + "/" + segment);
+					checkSame(scheme + host + "/" + segment + "/");
+				}
+				for (String query : QUERIES) {
+					checkSame(scheme + host + "/path" + query);
+					checkSame(scheme + host + query);
+				}
+			}
+		}
+	}
+
+	public void testFastPath() {
+		String[][] cases = {
+			{ "http://www.example.com/", "example.com/" },
+			{ "http://www.example.com", "example.com/" },
+			{ "HTTPS://WWW12.Example.com:443/A/B.html?X=1&y=2",
+				"example.com/a/b.html?x=1&y=2" },
+			{ "www.chub.org:443/foo", "chub.org:443/foo" },
+			{ "http://www.chub.org:8080/foo", "chub.org:8080/foo" },
+			{ "foo.com///goo/", "foo.com/goo/" },
+			{ "foo.com/b?jar=//goo", "foo.com/b?jar=//goo" },
+			{ "http://foo.com/a?", "foo.com/a" },
+			{ "http://foo.com/a?&b=1", "foo.com/a?b=1" },
+			{ "http://foo.com/a?b=1&", "foo.com/a?b=1" },
+		};
+		for (String[] c : cases) {
+			assertEquals(c[0], c[1], fast.fastUrlStringToKey(c[0]));
+			checkSame(c[0]);
+		}
+		String[] slow = {
+			"dns:example.com", "http://foo.com/pa%20th", "http://user@foo.com/",
+			"http://foo.com/a/../b", "ftp://foo.com/", "http://127.0.0.1/",
+			"http://foo.com/bar?jsessionid=999A9EF028317A82AC83F0FDFE59385A",
+			"http://b\u00FCcher.de/", "http://www.www.example.com/"
+		};
+		for (String url : slow) {
+			assertNull(url, fast.fastUrlStringToKey(url));
+			checkSame(url);
+		}
+	}
+
+	public void testNonWwwChoosers() {
+		List<String> nonWww =
+			Arrays.asList(FastUrlCanonicalizer.NON_WWW_CHOOSERS);
+		assertEquals(AggressiveUrlCanonicalizer.choosers.length - 1,
+			nonWww.size());
+		assertFalse(nonWww.contains(AggressiveUrlCanonicalizer.STRIP_WWW_CHOOSER));
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.webapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link StageExecutor}.
+ */
+public class StageExecutorTest extends TestCase {
+
+	StageExecutor cut;
+	CountDownLatch release;
+
+	@Override
+	protected void setUp() throws Exception {
+		cut = new StageExecutor();
+		cut.setName("test");
+		cut.setMaxThreads(1);
+		cut.setMaxQueued(1);
+		cut.setTimeoutMS(200);
+		release = new CountDownLatch(1);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		release.countDown();
+		cut.shutdown();
+	}
+
+	static class TestResult implements Closeable {
+		volatile boolean closed = false;
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	public void testResult() throws Exception {
+		String result = cut.execute(new Callable<String>() {
+			public String call() throws Exception {
+				return "done";
+			}
+		});
+		assertEquals("done", result);
+	}
+
+	public void testException() throws Exception {
+		try {
+			cut.execute(new Callable<String>() {
+				public String call() throws Exception {
+					throw new IOException("failed");
+				}
+			});
+			fail("expected ExecutionException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	public void testTimeoutClosesLateResult() throws Exception {
+		final TestResult late = new TestResult();
+		final CountDownLatch returned = new CountDownLatch(1);
+		try {
+			cut.execute(new Callable<TestResult>() {
+				public TestResult call() throws Exception {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						// interrupted by timeout: finish anyway
+					}
+					returned.countDown();
+					return late;
+				}
+			});
+			fail("expected TimeoutException");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertTrue(returned.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 50 && !late.closed; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(late.closed);
+		assertEquals(1, cut.getTimedOutCount());
+	}
+
+	public void testSaturated() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		Callable<String> blocking = new Callable<String>() {
+			public String call() throws Exception {
+				started.countDown();
+				release.await();
+				return "blocked";
+			}
+		};
+		// one running and one queued, each waiting in its own thread:
+		for (int i = 0; i < 2; i++) {
+			final Callable<String> task = blocking;
+			Thread t = new Thread() {
+				public void run() {
+					try {
+						cut.execute(task);
+					} catch (Exception e) {
+						// timed out
+					}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+			if (i == 0) {
+				assertTrue(started.await(5, TimeUnit.SECONDS));
+			}
+		}
+		for (int i = 0; i < 50 && cut.getStatus().indexOf("queued=1") < 0;
+				i++) {
+			Thread.sleep(10);
+		}
+		try {
+			cut.execute(blocking);
+			fail("expected RejectedExecutionException");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(1, cut.getRejectedCount());
+	}
+}